@@ -0,0 +1,212 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.commons.bcel6.analysis;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import org.apache.commons.bcel6.generic.CodeExceptionGen;
+import org.apache.commons.bcel6.generic.InstructionHandle;
+import org.apache.commons.bcel6.generic.InstructionList;
+import org.apache.commons.bcel6.generic.InstructionListObserver;
+import org.apache.commons.bcel6.generic.MethodGen;
+import org.apache.commons.bcel6.generic.MethodObserver;
+
+/**
+ * Caches the flow graph, dominator trees and loops of MethodGen objects,
+ * so that transformations running one after another do not recompute
+ * them. The structures of a method are computed on first request and
+ * dropped when
+ * <ul>
+ * <li>the method's InstructionList or MethodGen reports a change through
+ * its update() method,</li>
+ * <li>the method gets a different InstructionList, a different number of
+ * instructions or different exception handlers, or</li>
+ * <li>{@link #invalidate} is called.</li>
+ * </ul>
+ * Other edits that are not followed by update(), e.g. retargeting a branch,
+ * are not noticed and require an explicit {@link #invalidate}.
+ * <p>
+ * Methods are held by identity. The cache is not thread safe.
+ *
+ * @version $Id$
+ * @since 6.0
+ */
+public class AnalysisCache {
+
+    private final Map<MethodGen, Entry> entries = new IdentityHashMap<>();
+
+
+    /** @return the flow graph of the method */
+    public FlowGraph getFlowGraph( MethodGen mg ) {
+        return getEntry(mg).graph;
+    }
+
+
+    /** @return the dominator tree of the method */
+    public DominatorTree getDominators( MethodGen mg ) {
+        Entry e = getEntry(mg);
+        if (e.dominators == null) {
+            e.dominators = DominatorTree.dominators(e.graph);
+        }
+        return e.dominators;
+    }
+
+
+    /** @return the post-dominator tree of the method */
+    public DominatorTree getPostDominators( MethodGen mg ) {
+        Entry e = getEntry(mg);
+        if (e.post_dominators == null) {
+            e.post_dominators = DominatorTree.postDominators(e.graph);
+        }
+        return e.post_dominators;
+    }
+
+
+    /** @return the loops of the method */
+    public Loops getLoops( MethodGen mg ) {
+        Entry e = getEntry(mg);
+        if (e.loops == null) {
+            e.loops = new Loops(e.graph, getDominators(mg));
+        }
+        return e.loops;
+    }
+
+
+    /**
+     * Drops the structures computed for the method.
+     */
+    public void invalidate( MethodGen mg ) {
+        Entry e = entries.remove(mg);
+        if (e != null) {
+            e.detach();
+        }
+    }
+
+
+    /**
+     * Drops all cached structures.
+     */
+    public void clear() {
+        for (Entry e : entries.values()) {
+            e.detach();
+        }
+        entries.clear();
+    }
+
+
+    /** @return the number of methods with cached structures */
+    public int size() {
+        return entries.size();
+    }
+
+
+    private Entry getEntry( MethodGen mg ) {
+        Entry e = entries.get(mg);
+        if (e != null && !e.isValid()) {
+            invalidate(mg);
+            e = null;
+        }
+        if (e == null) {
+            e = new Entry(mg);
+            entries.put(mg, e);
+        }
+        return e;
+    }
+
+
+    private static final class Entry implements InstructionListObserver, MethodObserver {
+
+        final MethodGen method;
+        final InstructionList il;
+        final int length;
+        final InstructionHandle[] ranges;
+        final FlowGraph graph;
+        DominatorTree dominators;
+        DominatorTree post_dominators;
+        Loops loops;
+        /** Set by the observers; the entry cannot detach itself while the observers are being notified. */
+        boolean stale;
+
+
+        Entry( MethodGen mg ) {
+            method = mg;
+            il = mg.getInstructionList();
+            length = il == null ? 0 : il.getLength();
+            ranges = getRanges(mg);
+            graph = new FlowGraph(il, mg.getExceptionHandlers());
+            if (il != null) {
+                il.addObserver(this);
+            }
+            mg.addObserver(this);
+        }
+
+
+        private static InstructionHandle[] getRanges( MethodGen mg ) {
+            CodeExceptionGen[] handlers = mg.getExceptionHandlers();
+            InstructionHandle[] ranges = new InstructionHandle[handlers.length * 3];
+            for (int i = 0; i < handlers.length; i++) {
+                ranges[i * 3] = handlers[i].getStartPC();
+                ranges[i * 3 + 1] = handlers[i].getEndPC();
+                ranges[i * 3 + 2] = handlers[i].getHandlerPC();
+            }
+            return ranges;
+        }
+
+
+        boolean isValid() {
+            if (stale) {
+                return false;
+            }
+            InstructionList current = method.getInstructionList();
+            if (current != il || (il != null && il.getLength() != length)) {
+                return false;
+            }
+            InstructionHandle[] current_ranges = getRanges(method);
+            if (current_ranges.length != ranges.length) {
+                return false;
+            }
+            for (int i = 0; i < ranges.length; i++) {
+                if (current_ranges[i] != ranges[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+
+        void detach() {
+            if (il != null) {
+                il.removeObserver(this);
+            }
+            method.removeObserver(this);
+        }
+
+
+        @Override
+        public void notify( InstructionList list ) {
+            stale = true;
+        }
+
+
+        @Override
+        public void notify( MethodGen mg ) {
+            stale = true;
+        }
+    }
+}
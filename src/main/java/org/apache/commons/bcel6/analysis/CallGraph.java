@@ -0,0 +1,186 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.commons.bcel6.analysis;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The call graph of a program, computed by {@link CallGraphBuilder}.
+ * Methods are numbered from 0: first the methods declared by the classes
+ * of the program, then the methods outside the program that are called,
+ * e.g. library methods. Edges are kept in sorted int arrays indexed by
+ * method number, in both directions.
+ * <p>
+ * A method is identified by the name of its class, its name and its
+ * signature; {@link #toString(int)} returns them in the form
+ * <code>java.lang.Object.equals(Ljava/lang/Object;)Z</code>.
+ * <p>
+ * Instances are immutable and thread safe.
+ *
+ * @version $Id$
+ * @since 6.0
+ */
+public final class CallGraph {
+
+    private final String[] methods;
+    private final int declared;
+    private final Map<String, Integer> index;
+    private final int[][] callees;
+    private final int[][] callers;
+
+
+    /**
+     * @param methods the methods in the form of toString(int)
+     * @param declared how many of them are declared by the program
+     * @param callees the sorted callees of every method
+     */
+    CallGraph( String[] methods, int declared, int[][] callees ) {
+        this.methods = methods;
+        this.declared = declared;
+        this.callees = callees;
+        this.callers = FlowGraph.invert(callees);
+        index = new HashMap<>(methods.length * 2);
+        for (int m = 0; m < methods.length; m++) {
+            index.put(methods[m], Integer.valueOf(m));
+        }
+    }
+
+
+    /**
+     * @return the method in the form used by toString(int)
+     */
+    static String key( String className, String name, String signature ) {
+        return className + "." + name + signature;
+    }
+
+
+    /** @return the number of methods */
+    public int getMethodCount() {
+        return methods.length;
+    }
+
+
+    /** @return whether the method is declared by a class of the program */
+    public boolean isDeclared( int m ) {
+        return m < declared;
+    }
+
+
+    /**
+     * @return the number of the method, -1 if it is not part of the graph
+     */
+    public int indexOf( String className, String name, String signature ) {
+        Integer m = index.get(key(className, name, signature));
+        return m == null ? -1 : m.intValue();
+    }
+
+
+    /** @return the name of the class declaring the method */
+    public String getClassName( int m ) {
+        String key = methods[m];
+        return key.substring(0, key.lastIndexOf('.', key.indexOf('(')));
+    }
+
+
+    /** @return the name of the method */
+    public String getMethodName( int m ) {
+        String key = methods[m];
+        int paren = key.indexOf('(');
+        return key.substring(key.lastIndexOf('.', paren) + 1, paren);
+    }
+
+
+    /** @return the signature of the method */
+    public String getSignature( int m ) {
+        String key = methods[m];
+        return key.substring(key.indexOf('('));
+    }
+
+
+    /**
+     * @return the methods the method may call, sorted; the array must not
+     * be modified
+     */
+    public int[] getCallees( int m ) {
+        return callees[m];
+    }
+
+
+    /**
+     * @return the methods that may call the method, sorted; the array must
+     * not be modified
+     */
+    public int[] getCallers( int m ) {
+        return callers[m];
+    }
+
+
+    /** @return the number of caller to callee edges */
+    public int getEdgeCount() {
+        int count = 0;
+        for (int[] c : callees) {
+            count += c.length;
+        }
+        return count;
+    }
+
+
+    /**
+     * @return for every method, whether it may be called, directly or
+     * indirectly, from one of the given methods, including themselves
+     */
+    public boolean[] getReachable( int... roots ) {
+        boolean[] reachable = new boolean[methods.length];
+        int[] stack = new int[methods.length];
+        int sp = 0;
+        for (int root : roots) {
+            if (!reachable[root]) {
+                reachable[root] = true;
+                stack[sp++] = root;
+            }
+        }
+        while (sp > 0) {
+            for (int c : callees[stack[--sp]]) {
+                if (!reachable[c]) {
+                    reachable[c] = true;
+                    stack[sp++] = c;
+                }
+            }
+        }
+        return reachable;
+    }
+
+
+    /**
+     * @return the method as class name, method name and signature
+     */
+    public String toString( int m ) {
+        return methods[m];
+    }
+
+
+    /**
+     * @return the number of methods and edges
+     */
+    @Override
+    public String toString() {
+        return "CallGraph(" + methods.length + " methods, " + declared + " declared, "
+                + getEdgeCount() + " edges)";
+    }
+}
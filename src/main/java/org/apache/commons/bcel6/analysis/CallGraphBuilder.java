@@ -0,0 +1,457 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.commons.bcel6.analysis;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.bcel6.Constants;
+import org.apache.commons.bcel6.classfile.Code;
+import org.apache.commons.bcel6.classfile.JavaClass;
+import org.apache.commons.bcel6.classfile.Method;
+import org.apache.commons.bcel6.generic.ArrayType;
+import org.apache.commons.bcel6.generic.ConstantPoolGen;
+import org.apache.commons.bcel6.generic.INVOKEDYNAMIC;
+import org.apache.commons.bcel6.generic.Instruction;
+import org.apache.commons.bcel6.generic.InstructionHandle;
+import org.apache.commons.bcel6.generic.InstructionList;
+import org.apache.commons.bcel6.generic.InvokeInstruction;
+import org.apache.commons.bcel6.generic.NEW;
+import org.apache.commons.bcel6.generic.ObjectType;
+import org.apache.commons.bcel6.generic.ReferenceType;
+import org.apache.commons.bcel6.generic.Type;
+import org.apache.commons.bcel6.util.Batches;
+import org.apache.commons.bcel6.util.Repository;
+
+/**
+ * Builds the {@link CallGraph} of a program, given as a set of classes.
+ * <p>
+ * The targets of INVOKESTATIC and INVOKESPECIAL are the methods they
+ * resolve to. The targets of INVOKEVIRTUAL and INVOKEINTERFACE are
+ * computed by Class Hierarchy Analysis: the implementations of the method
+ * in the concrete classes of the program that are subtypes of the
+ * referenced class. If the method resolves to a method outside the
+ * program, e.g. Object.toString(), that method is a target as well,
+ * standing for the implementations in the library. With Rapid Type
+ * Analysis, only the classes instantiated by a NEW instruction somewhere
+ * in the program are considered; classes only instantiated by library
+ * code or through reflection are then missed. INVOKEDYNAMIC instructions
+ * are ignored.
+ * <p>
+ * The classes of the program are read from the repository and scanned
+ * in parallel, and so are their call sites resolved. Classes outside the
+ * program are looked up in the repository as needed to resolve methods;
+ * classes that cannot be found are treated as declaring no methods.
+ *
+ * @version $Id$
+ * @since 6.0
+ */
+public class CallGraphBuilder {
+
+    /** Number of classes scanned per task. */
+    private static final int BATCH_SIZE = 16;
+
+    private final Repository repository;
+    private boolean rapid_type_analysis;
+
+    /* The methods and supertypes of the classes looked at, by name */
+    private final ConcurrentMap<String, ClassInfo> infos = new ConcurrentHashMap<>();
+
+
+    /**
+     * Classes and methods as needed for method resolution.
+     */
+    private static final class ClassInfo {
+
+        static final ClassInfo MISSING = new ClassInfo();
+
+        final String super_name; // null for java.lang.Object and missing classes
+        final String[] interfaces;
+        final boolean concrete;
+        final Map<String, Boolean> methods; // name + signature -> abstract
+
+
+        private ClassInfo() {
+            super_name = null;
+            interfaces = new String[0];
+            concrete = false;
+            methods = new HashMap<>();
+        }
+
+
+        ClassInfo( JavaClass clazz ) {
+            String name = clazz.getClassName();
+            super_name = name.equals("java.lang.Object") ? null : clazz.getSuperclassName();
+            interfaces = clazz.getInterfaceNames();
+            concrete = !clazz.isInterface() && !clazz.isAbstract();
+            methods = new HashMap<>();
+            for (Method m : clazz.getMethods()) {
+                methods.put(m.getName() + m.getSignature(), Boolean.valueOf(m.isAbstract()));
+            }
+        }
+    }
+
+
+    /**
+     * A class of the program: its methods and their call sites.
+     */
+    private static final class ClassScan {
+
+        final String name;
+        final List<String> methods = new ArrayList<>(); // name + signature
+        final List<List<InvokeInstruction>> sites = new ArrayList<>();
+        final Set<String> instantiated = new HashSet<>();
+        ConstantPoolGen cp;
+        List<List<String>> targets; // resolved sites, as CallGraph keys
+
+
+        ClassScan( String name ) {
+            this.name = name;
+        }
+    }
+
+
+    /**
+     * @param repository repository to read the classes of the program and
+     * the classes they use from
+     */
+    public CallGraphBuilder(Repository repository) {
+        this.repository = repository;
+    }
+
+
+    /**
+     * Whether to consider only classes instantiated by the program as
+     * receivers of virtual calls. Off by default.
+     */
+    public void setRapidTypeAnalysis( boolean rapid_type_analysis ) {
+        this.rapid_type_analysis = rapid_type_analysis;
+    }
+
+
+    /** @return whether Rapid Type Analysis is used */
+    public boolean isRapidTypeAnalysis() {
+        return rapid_type_analysis;
+    }
+
+
+    /**
+     * Builds the call graph of the classes, using one thread per available
+     * processor.
+     *
+     * @param classNames fully qualified names of the classes of the program
+     * @throws ClassNotFoundException if a class of the program is not in the repository
+     * @throws InterruptedException if interrupted while waiting for the worker threads
+     */
+    public CallGraph build( Collection<String> classNames ) throws ClassNotFoundException,
+            InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        try {
+            return build(executor, classNames);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+
+    /**
+     * Builds the call graph of the classes with the given executor.
+     *
+     * @param executor executor to run the scanning and resolving tasks
+     * @param classNames fully qualified names of the classes of the program
+     * @throws ClassNotFoundException if a class of the program is not in the repository
+     * @throws InterruptedException if interrupted while waiting for the worker threads
+     */
+    public CallGraph build( ExecutorService executor, Collection<String> classNames )
+            throws ClassNotFoundException, InterruptedException {
+        String[] names = new TreeSet<>(classNames).toArray(new String[0]);
+        final ClassScan[] scans = new ClassScan[names.length];
+        for (int i = 0; i < names.length; i++) {
+            scans[i] = new ClassScan(names[i]);
+        }
+
+        // Scan the classes for methods, call sites and instantiations
+        runBatches(executor, scans, new Task() {
+
+            @Override
+            public void run( ClassScan scan ) throws ClassNotFoundException {
+                scan(scan);
+            }
+        });
+
+        // Index the concrete classes of the program by their supertypes
+        final Map<String, List<String>> subtypes = new HashMap<>();
+        final Set<String> instantiated = new HashSet<>();
+        for (ClassScan scan : scans) {
+            instantiated.addAll(scan.instantiated);
+            if (!getInfo(scan.name).concrete) {
+                continue;
+            }
+            for (String supertype : getSupertypes(scan.name)) {
+                List<String> list = subtypes.get(supertype);
+                if (list == null) {
+                    list = new ArrayList<>();
+                    subtypes.put(supertype, list);
+                }
+                list.add(scan.name);
+            }
+        }
+        final Set<String> program = new HashSet<>(Arrays.asList(names));
+
+        // Resolve the call sites
+        runBatches(executor, scans, new Task() {
+
+            @Override
+            public void run( ClassScan scan ) {
+                scan.targets = new ArrayList<>();
+                for (List<InvokeInstruction> sites : scan.sites) {
+                    Set<String> targets = new LinkedHashSet<>();
+                    for (InvokeInstruction site : sites) {
+                        resolve(site, scan.cp, subtypes, instantiated, program, targets);
+                    }
+                    scan.targets.add(new ArrayList<>(targets));
+                }
+                scan.cp = null;
+                scan.sites.clear();
+            }
+        });
+
+        // Number the methods, those of the program first
+        Map<String, Integer> index = new HashMap<>();
+        List<String> methods = new ArrayList<>();
+        for (ClassScan scan : scans) {
+            for (String method : scan.methods) {
+                index.put(scan.name + "." + method, Integer.valueOf(methods.size()));
+                methods.add(scan.name + "." + method);
+            }
+        }
+        int declared = methods.size();
+        Set<String> external = new TreeSet<>();
+        for (ClassScan scan : scans) {
+            for (List<String> targets : scan.targets) {
+                for (String target : targets) {
+                    if (!index.containsKey(target)) {
+                        external.add(target);
+                    }
+                }
+            }
+        }
+        for (String method : external) {
+            index.put(method, Integer.valueOf(methods.size()));
+            methods.add(method);
+        }
+        int[][] callees = new int[methods.size()][];
+        int m = 0;
+        for (ClassScan scan : scans) {
+            for (List<String> targets : scan.targets) {
+                int[] c = new int[targets.size()];
+                for (int i = 0; i < c.length; i++) {
+                    c[i] = index.get(targets.get(i)).intValue();
+                }
+                Arrays.sort(c);
+                callees[m++] = c;
+            }
+        }
+        for (; m < callees.length; m++) {
+            callees[m] = new int[0];
+        }
+        infos.clear();
+        return new CallGraph(methods.toArray(new String[methods.size()]), declared, callees);
+    }
+
+
+    private interface Task {
+
+        void run( ClassScan scan ) throws ClassNotFoundException;
+    }
+
+
+    private static void runBatches( ExecutorService executor, ClassScan[] scans, final Task task )
+            throws ClassNotFoundException, InterruptedException {
+        List<Future<Void>> futures = Batches.submit(executor, Arrays.asList(scans), BATCH_SIZE,
+                new Batches.Task<ClassScan, Void>() {
+
+                    @Override
+                    public Void run( List<ClassScan> batch ) throws ClassNotFoundException {
+                        for (ClassScan scan : batch) {
+                            task.run(scan);
+                        }
+                        return null;
+                    }
+                });
+        for (Future<Void> future : futures) {
+            Batches.get(future, ClassNotFoundException.class);
+        }
+    }
+
+
+    private void scan( ClassScan scan ) throws ClassNotFoundException {
+        JavaClass clazz = repository.loadClass(scan.name);
+        infos.put(scan.name, new ClassInfo(clazz));
+        scan.cp = new ConstantPoolGen(clazz.getConstantPool());
+        for (Method m : clazz.getMethods()) {
+            scan.methods.add(m.getName() + m.getSignature());
+            List<InvokeInstruction> sites = new ArrayList<>();
+            scan.sites.add(sites);
+            Code code = m.getCode();
+            if (code == null) {
+                continue;
+            }
+            InstructionList il = new InstructionList(code.getCode());
+            for (InstructionHandle ih = il.getStart(); ih != null; ih = ih.getNext()) {
+                Instruction inst = ih.getInstruction();
+                if (inst instanceof InvokeInstruction && !(inst instanceof INVOKEDYNAMIC)) {
+                    sites.add((InvokeInstruction) inst);
+                } else if (inst instanceof NEW) {
+                    scan.instantiated.add(((NEW) inst).getLoadClassType(scan.cp).getClassName());
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Adds the methods the call site may invoke to the targets.
+     */
+    private void resolve( InvokeInstruction site, ConstantPoolGen cp, Map<String, List<String>> subtypes,
+            Set<String> instantiated, Set<String> program, Set<String> targets ) {
+        String method = site.getMethodName(cp) + site.getSignature(cp);
+        ReferenceType type = site.getReferenceType(cp);
+        if (type instanceof ArrayType) {
+            // Arrays inherit all their methods, clone() included, from Object
+            targets.add(CallGraph.key(Type.OBJECT.getClassName(), "", method));
+            return;
+        }
+        String class_name = ((ObjectType) type).getClassName();
+        String declaration = findDeclaration(class_name, method);
+        short opcode = site.getOpcode();
+        if (opcode == Constants.INVOKESTATIC || opcode == Constants.INVOKESPECIAL) {
+            targets.add(CallGraph.key(declaration, "", method));
+            return;
+        }
+        List<String> receivers = subtypes.get(class_name);
+        if (receivers != null) {
+            for (String receiver : receivers) {
+                if (rapid_type_analysis && !instantiated.contains(receiver)) {
+                    continue;
+                }
+                String implementation = findImplementation(receiver, method);
+                if (implementation != null) {
+                    targets.add(CallGraph.key(implementation, "", method));
+                }
+            }
+        }
+        if (!program.contains(declaration)) {
+            targets.add(CallGraph.key(declaration, "", method));
+        }
+    }
+
+
+    /**
+     * @return the class declaring the method as seen from the given class,
+     * i.e., the class itself, a superclass or superinterface; the class
+     * itself if there is none
+     */
+    private String findDeclaration( String class_name, String method ) {
+        for (String c = class_name; c != null; c = getInfo(c).super_name) {
+            if (getInfo(c).methods.containsKey(method)) {
+                return c;
+            }
+        }
+        for (String c : getSupertypes(class_name)) {
+            if (getInfo(c).methods.containsKey(method)) {
+                return c;
+            }
+        }
+        return class_name;
+    }
+
+
+    /**
+     * @return the class whose implementation of the method is invoked for
+     * instances of the given class, null if there is none
+     */
+    private String findImplementation( String class_name, String method ) {
+        for (String c = class_name; c != null; c = getInfo(c).super_name) {
+            Boolean is_abstract = getInfo(c).methods.get(method);
+            if (is_abstract != null) {
+                return is_abstract.booleanValue() ? null : c;
+            }
+        }
+        for (String c : getSupertypes(class_name)) { // default methods
+            Boolean is_abstract = getInfo(c).methods.get(method);
+            if (is_abstract != null && !is_abstract.booleanValue()) {
+                return c;
+            }
+        }
+        return null;
+    }
+
+
+    /**
+     * @return the class, its superclasses and all interfaces they
+     * implement, directly or indirectly
+     */
+    private Set<String> getSupertypes( String class_name ) {
+        Set<String> result = new LinkedHashSet<>();
+        List<String> queue = new ArrayList<>();
+        queue.add(class_name);
+        for (int i = 0; i < queue.size(); i++) {
+            String c = queue.get(i);
+            if (!result.add(c)) {
+                continue;
+            }
+            ClassInfo info = getInfo(c);
+            if (info.super_name != null) {
+                queue.add(info.super_name);
+            }
+            queue.addAll(Arrays.asList(info.interfaces));
+        }
+        return result;
+    }
+
+
+    private ClassInfo getInfo( String class_name ) {
+        ClassInfo info = infos.get(class_name);
+        if (info == null) {
+            try {
+                info = new ClassInfo(repository.loadClass(class_name));
+            } catch (ClassNotFoundException e) {
+                info = ClassInfo.MISSING;
+            }
+            ClassInfo previous = infos.putIfAbsent(class_name, info);
+            if (previous != null) {
+                info = previous;
+            }
+        }
+        return info;
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.commons.bcel6.analysis;
+
+import org.apache.commons.bcel6.generic.ConstantPushInstruction;
+import org.apache.commons.bcel6.generic.IINC;
+import org.apache.commons.bcel6.generic.Instruction;
+import org.apache.commons.bcel6.generic.InstructionHandle;
+import org.apache.commons.bcel6.generic.LoadInstruction;
+import org.apache.commons.bcel6.generic.StoreInstruction;
+
+/**
+ * Constant values of local variables, derived from {@link ReachingDefinitions}.
+ * A definition has a constant value if it is
+ * <ul>
+ * <li>a store directly preceded, in the same block, by a
+ * ConstantPushInstruction or by a load of a local with a constant value, or</li>
+ * <li>an IINC of a local with a constant value.</li>
+ * </ul>
+ * A local has a constant value at a point if all definitions of it that
+ * reach the point have the same constant value. Entry definitions are never
+ * constant, and neither are definitions whose value depends on itself
+ * through a loop.
+ *
+ * @version $Id$
+ * @since 6.0
+ */
+public class ConstantPropagation {
+
+    /** Marks a definition without constant value. */
+    private static final Object NOT_CONSTANT = new Object();
+    /** Marks a definition whose value is being computed. */
+    private static final Object PENDING = new Object();
+
+    private final FlowGraph graph;
+    private final ReachingDefinitions definitions;
+    private final InstructionHandle[] handles;
+    private final Object[] values;
+
+
+    /**
+     * @param definitions the reaching definitions of the method to analyze
+     */
+    public ConstantPropagation( ReachingDefinitions definitions ) {
+        this.definitions = definitions;
+        graph = definitions.getGraph();
+        handles = graph.getInstructionHandles();
+        values = new Object[definitions.getDefinitionCount()];
+    }
+
+
+    /**
+     * @return the constant value of definition d, null if it is not constant
+     */
+    public Number getDefinitionValue( int d ) {
+        Object value = values[d];
+        if (value == null) {
+            values[d] = PENDING;
+            value = computeValue(d);
+            values[d] = value;
+        } else if (value == PENDING) {
+            return null; // depends on itself
+        }
+        return value == NOT_CONSTANT ? null : (Number) value;
+    }
+
+
+    private Object computeValue( int d ) {
+        if (definitions.isEntryDefinition(d)) {
+            return NOT_CONSTANT;
+        }
+        int i = definitions.getDefinitionInstruction(d);
+        Instruction inst = handles[i].getInstruction();
+        Number value = null;
+        if (inst instanceof IINC) {
+            Number base = getLocalValue(i, ((IINC) inst).getIndex(), 1);
+            if (base instanceof Integer) {
+                value = Integer.valueOf(base.intValue() + ((IINC) inst).getIncrement());
+            }
+        } else if (inst instanceof StoreInstruction && i > graph.getFirstInstruction(graph.getBlockOfInstruction(i))) {
+            value = getValue(i - 1);
+        }
+        return value == null ? NOT_CONSTANT : value;
+    }
+
+
+    /**
+     * @return the constant value of the local read by a LoadInstruction or
+     * IINC, or the value pushed by a ConstantPushInstruction, given by
+     * instruction number; null if not constant or if the instruction is of
+     * another kind
+     */
+    public Number getValue( int instruction ) {
+        Instruction inst = handles[instruction].getInstruction();
+        if (inst instanceof ConstantPushInstruction) {
+            return ((ConstantPushInstruction) inst).getValue();
+        }
+        if (inst instanceof LoadInstruction || inst instanceof IINC) {
+            return getLocalValue(instruction, Locals.getUse(inst), Locals.getSize(inst));
+        }
+        return null;
+    }
+
+
+    /**
+     * @return the constant value of the local read by the instruction, null if not constant
+     */
+    public Number getValue( InstructionHandle ih ) {
+        int i = graph.getInstructionIndex(ih);
+        return i < 0 ? null : getValue(i);
+    }
+
+
+    private Number getLocalValue( int instruction, int slot, int size ) {
+        Number result = null;
+        for (int d : definitions.getReaching(instruction, slot)) {
+            if (definitions.getDefinitionSlot(d) != slot || definitions.isEntryDefinition(d)
+                    || Locals.getSize(handles[definitions.getDefinitionInstruction(d)].getInstruction()) != size) {
+                return null; // partly overwritten or not assigned in the method
+            }
+            Number value = getDefinitionValue(d);
+            if (value == null || (result != null && !result.equals(value))) {
+                return null;
+            }
+            result = value;
+        }
+        return result;
+    }
+}
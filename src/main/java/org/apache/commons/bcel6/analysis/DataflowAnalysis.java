@@ -0,0 +1,273 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.commons.bcel6.analysis;
+
+import java.util.Arrays;
+
+/**
+ * Base class of dataflow analyses over the blocks of a {@link FlowGraph}
+ * whose values are sets of a fixed number of facts, stored as bits of a
+ * long[]. Sets are combined by union. The solver iterates a worklist of
+ * blocks in reverse postorder for forward problems, and in postorder for
+ * backward problems, until nothing changes.
+ * <p>
+ * Subclasses fill in the {@link #gen} and {@link #kill} sets of each block,
+ * or override {@link #transfer}, and call {@link #solve()} at the end of
+ * their constructor. Unreachable blocks are analyzed too, after the
+ * reachable ones.
+ * <p>
+ * Exception edges are treated specially, since a handler can be entered
+ * from any instruction of the blocks it covers: in a forward problem the
+ * handler receives the value produced by {@link #exceptionalFlow}, in a
+ * backward problem the value at the entry of the handler is added to the
+ * value at the entry of each covered block.
+ *
+ * @version $Id$
+ * @since 6.0
+ */
+public abstract class DataflowAnalysis {
+
+    protected final FlowGraph graph;
+    /** The facts generated by each block. */
+    protected final long[][] gen;
+    /** The facts killed by each block. */
+    protected final long[][] kill;
+    private final int bits;
+    private final boolean forward;
+    private final long[][] entry;
+    private final long[][] exit;
+    private int iterations;
+
+
+    /**
+     * @param graph the graph to analyze
+     * @param bits the number of facts
+     * @param forward whether facts flow in the direction of control flow
+     */
+    protected DataflowAnalysis(FlowGraph graph, int bits, boolean forward) {
+        this.graph = graph;
+        this.bits = bits;
+        this.forward = forward;
+        int blocks = graph.getBlockCount();
+        int words = (bits + 63) >>> 6;
+        gen = new long[blocks][words];
+        kill = new long[blocks][words];
+        entry = new long[blocks][words];
+        exit = new long[blocks][words];
+    }
+
+
+    /**
+     * Computes the fixed point.
+     */
+    protected final void solve() {
+        int blocks = graph.getBlockCount();
+        int[] order = getOrder();
+        int[] position = new int[blocks];
+        for (int i = 0; i < blocks; i++) {
+            position[order[i]] = i;
+        }
+        boolean[] dirty = new boolean[blocks];
+        Arrays.fill(dirty, true);
+        int pending = blocks;
+        int words = (bits + 63) >>> 6;
+        long[] in = new long[words];
+        long[] out = new long[words];
+        int i = 0;
+        while (pending > 0) {
+            int b = order[i];
+            i = i + 1 == blocks ? 0 : i + 1;
+            if (!dirty[b]) {
+                continue;
+            }
+            dirty[b] = false;
+            pending--;
+            iterations++;
+            Arrays.fill(in, 0);
+            if (forward) {
+                if (b == graph.getEntry()) {
+                    boundary(in);
+                }
+                for (int p : graph.getNormalPredecessors(b)) {
+                    or(in, exit[p]);
+                }
+                for (int p : graph.getExceptionPredecessors(b)) {
+                    exceptionalFlow(p, entry[p], exit[p], in);
+                }
+                if (!Arrays.equals(in, entry[b])) {
+                    System.arraycopy(in, 0, entry[b], 0, words);
+                    // The handlers covering the block see its entry as well
+                    for (int h : graph.getExceptionSuccessors(b)) {
+                        if (!dirty[h]) {
+                            dirty[h] = true;
+                            pending++;
+                        }
+                    }
+                }
+                transfer(b, in, out);
+                if (!Arrays.equals(out, exit[b])) {
+                    System.arraycopy(out, 0, exit[b], 0, words);
+                    for (int s : graph.getSuccessors(b)) {
+                        if (!dirty[s]) {
+                            dirty[s] = true;
+                            pending++;
+                        }
+                    }
+                }
+            } else {
+                int[] succ = graph.getNormalSuccessors(b);
+                if (succ.length == 0) {
+                    boundary(in);
+                }
+                for (int s : succ) {
+                    or(in, entry[s]);
+                }
+                System.arraycopy(in, 0, exit[b], 0, words);
+                transfer(b, in, out);
+                for (int h : graph.getExceptionSuccessors(b)) {
+                    or(out, entry[h]);
+                }
+                if (!Arrays.equals(out, entry[b])) {
+                    System.arraycopy(out, 0, entry[b], 0, words);
+                    for (int p : graph.getPredecessors(b)) {
+                        if (!dirty[p]) {
+                            dirty[p] = true;
+                            pending++;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+
+    /**
+     * @return all blocks, the reachable ones in reverse postorder (forward)
+     * or postorder (backward), followed by the unreachable ones
+     */
+    private int[] getOrder() {
+        int blocks = graph.getBlockCount();
+        int[] rpo = graph.getReversePostorder();
+        int[] order = new int[blocks];
+        for (int i = 0; i < rpo.length; i++) {
+            order[i] = forward ? rpo[i] : rpo[rpo.length - 1 - i];
+        }
+        int n = rpo.length;
+        for (int b = 0; b < blocks; b++) {
+            if (!graph.isReachable(b)) {
+                order[n++] = b;
+            }
+        }
+        return order;
+    }
+
+
+    /**
+     * Computes the value on one side of a block from the value on the other
+     * side: from entry to exit for forward problems, from exit to entry for
+     * backward ones. The default is gen | (in &amp; ~kill).
+     *
+     * @param block the block
+     * @param in the value to read
+     * @param out receives the result
+     */
+    protected void transfer( int block, long[] in, long[] out ) {
+        long[] g = gen[block];
+        long[] k = kill[block];
+        for (int i = 0; i < out.length; i++) {
+            out[i] = g[i] | (in[i] & ~k[i]);
+        }
+    }
+
+
+    /**
+     * Sets the facts that hold at the entry of the method (forward) or at the
+     * end of the blocks that leave it (backward). The default is none.
+     */
+    protected void boundary( long[] value ) {
+    }
+
+
+    /**
+     * Adds the facts that flow from a block to the exception handlers
+     * covering it to result, in forward problems. The default is the union
+     * of the values at the entry and at the exit of the block.
+     */
+    protected void exceptionalFlow( int block, long[] block_entry, long[] block_exit, long[] result ) {
+        or(result, block_entry);
+        or(result, block_exit);
+    }
+
+
+    /**
+     * @return the facts at the start of the block; the array must not be modified
+     */
+    public long[] getEntry( int block ) {
+        return entry[block];
+    }
+
+
+    /**
+     * @return the facts at the end of the block; the array must not be modified
+     */
+    public long[] getExit( int block ) {
+        return exit[block];
+    }
+
+
+    /** @return the number of facts */
+    public int getBitCount() {
+        return bits;
+    }
+
+
+    /** @return how many times a block was evaluated until the result was stable */
+    public int getIterations() {
+        return iterations;
+    }
+
+
+    /** @return the graph analyzed */
+    public FlowGraph getGraph() {
+        return graph;
+    }
+
+
+    /** @return whether fact i is in the set */
+    public static boolean isSet( long[] set, int i ) {
+        return (set[i >>> 6] & (1L << i)) != 0;
+    }
+
+
+    protected static void set( long[] set, int i ) {
+        set[i >>> 6] |= 1L << i;
+    }
+
+
+    protected static void clear( long[] set, int i ) {
+        set[i >>> 6] &= ~(1L << i);
+    }
+
+
+    /** Adds the facts of value to set. */
+    protected static void or( long[] set, long[] value ) {
+        for (int i = 0; i < set.length; i++) {
+            set[i] |= value[i];
+        }
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.commons.bcel6.analysis;
+
+import org.apache.commons.bcel6.generic.CodeExceptionGen;
+import org.apache.commons.bcel6.generic.InstructionHandle;
+import org.apache.commons.bcel6.generic.InstructionList;
+import org.apache.commons.bcel6.generic.InstructionTargeter;
+import org.apache.commons.bcel6.generic.LineNumberGen;
+import org.apache.commons.bcel6.generic.LocalVariableGen;
+import org.apache.commons.bcel6.generic.MethodGen;
+import org.apache.commons.bcel6.generic.TargetLostException;
+
+/**
+ * Removes the instructions of a method that cannot be executed, such as
+ * code following an unconditional branch, return or ATHROW that is not
+ * the target of any reachable branch.
+ * <p>
+ * An instruction is reachable if its block is reachable in the
+ * {@link FlowGraph} of the method, i.e. from the entry or from the
+ * handler of an exception handler covering a reachable instruction.
+ * Exception handlers that do not cover any reachable instruction are
+ * removed, the others are narrowed to their reachable instructions.
+ * Local variables are narrowed the same way or removed if their range
+ * is unreachable as a whole. Line numbers of removed instructions are
+ * dropped, except for one that still applies to the reachable code
+ * following them.
+ *
+ * @version $Id$
+ * @since 6.0
+ */
+public class DeadCodeEliminator {
+
+    private final AnalysisCache cache;
+
+
+    public DeadCodeEliminator() {
+        this(new AnalysisCache());
+    }
+
+
+    /**
+     * @param cache the cache to take the flow graphs of the methods from
+     */
+    public DeadCodeEliminator( AnalysisCache cache ) {
+        this.cache = cache;
+    }
+
+
+    /**
+     * Removes the unreachable code of the method.
+     *
+     * @return true if the method was changed
+     */
+    public boolean eliminate( MethodGen mg ) {
+        InstructionList il = mg.getInstructionList();
+        if (il == null || il.isEmpty()) {
+            return false;
+        }
+        FlowGraph graph = cache.getFlowGraph(mg);
+        InstructionHandle[] handles = graph.getInstructionHandles();
+        int n = handles.length;
+        boolean[] live = new boolean[n];
+        int dead = 0;
+        for (int i = 0; i < n; i++) {
+            live[i] = graph.isReachable(graph.getBlockOfInstruction(i));
+            if (!live[i]) {
+                dead++;
+            }
+        }
+        boolean changed = false;
+        for (CodeExceptionGen h : mg.getExceptionHandlers()) {
+            int first = firstLive(live, graph.getInstructionIndex(h.getStartPC()),
+                    graph.getInstructionIndex(h.getEndPC()));
+            if (first < 0) {
+                mg.removeExceptionHandler(h);
+                h.setStartPC(null);
+                h.setEndPC(null);
+                h.setHandlerPC(null);
+                changed = true;
+                continue;
+            }
+            int last = lastLive(live, first, graph.getInstructionIndex(h.getEndPC()));
+            if (handles[first] != h.getStartPC() || handles[last] != h.getEndPC()) {
+                h.setStartPC(handles[first]);
+                h.setEndPC(handles[last]);
+                changed = true;
+            }
+        }
+        if (dead == 0) {
+            return changed;
+        }
+        for (LocalVariableGen l : mg.getLocalVariables()) {
+            int first = firstLive(live, graph.getInstructionIndex(l.getStart()),
+                    graph.getInstructionIndex(l.getEnd()));
+            if (first < 0) {
+                mg.removeLocalVariable(l);
+                continue;
+            }
+            l.setStart(handles[first]);
+            l.setEnd(handles[lastLive(live, first, graph.getInstructionIndex(l.getEnd()))]);
+        }
+        for (LineNumberGen l : mg.getLineNumbers()) {
+            int i = graph.getInstructionIndex(l.getInstruction());
+            if (i < 0 || live[i]) {
+                continue;
+            }
+            // Keep the last line number of a dead run for the code after it
+            int next = i + 1;
+            while (next < n && !live[next] && !hasLineNumber(handles[next])) {
+                next++;
+            }
+            if (next < n && live[next] && !hasLineNumber(handles[next])) {
+                l.setInstruction(handles[next]);
+            } else {
+                mg.removeLineNumber(l);
+                l.getInstruction().removeTargeter(l);
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            if (live[i]) {
+                continue;
+            }
+            int last = i;
+            while (last + 1 < n && !live[last + 1]) {
+                last++;
+            }
+            delete(il, handles[i], handles[last]);
+            i = last;
+        }
+        return true;
+    }
+
+
+    /**
+     * Deletes a run of unreachable instructions. The only remaining
+     * targeters can be unreachable branches, which are gone as well.
+     */
+    private static void delete( InstructionList il, InstructionHandle first, InstructionHandle last ) {
+        try {
+            il.delete(first, last);
+        } catch (TargetLostException e) {
+            for (InstructionHandle target : e.getTargets()) {
+                for (InstructionTargeter t : target.getTargeters()) {
+                    target.removeTargeter(t);
+                }
+            }
+        }
+    }
+
+
+    private static boolean hasLineNumber( InstructionHandle ih ) {
+        for (InstructionTargeter t : ih.getTargeters()) {
+            if (t instanceof LineNumberGen) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+    /**
+     * @return the first reachable instruction in the range, -1 if none
+     */
+    private static int firstLive( boolean[] live, int start, int end ) {
+        if (start < 0 || end < 0) {
+            return -1;
+        }
+        for (int i = start; i <= end; i++) {
+            if (live[i]) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+
+    /**
+     * @return the last reachable instruction in the range, which contains one
+     */
+    private static int lastLive( boolean[] live, int start, int end ) {
+        int i = end;
+        while (!live[i]) {
+            i--;
+        }
+        return i;
+    }
+}
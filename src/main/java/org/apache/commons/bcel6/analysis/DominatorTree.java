@@ -0,0 +1,212 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.commons.bcel6.analysis;
+
+import java.util.Arrays;
+
+/**
+ * The dominator or post-dominator tree of a {@link FlowGraph}. Block a
+ * dominates block b if every path from the entry to b passes through a;
+ * it post-dominates b if every path from b to the exit passes through a.
+ * Every block dominates itself.
+ * <p>
+ * The tree is computed with the iterative algorithm of Cooper, Harvey and
+ * Kennedy, "A Simple, Fast Dominance Algorithm". Nodes that are not
+ * reachable from the root, i.e. dead blocks for dominators and blocks that
+ * never reach the exit for post-dominators, are not part of the tree.
+ * The tree is numbered in depth first order so {@link #dominates} runs in
+ * constant time.
+ *
+ * @version $Id$
+ * @since 6.0
+ */
+public final class DominatorTree {
+
+    private static final int[] NONE = new int[0];
+
+    private final int root;
+    private final int[] idom;
+    private final int[][] children;
+    private final int[] pre;
+    private final int[] post;
+
+
+    private DominatorTree( int[][] succ, int root ) {
+        this.root = root;
+        int n = succ.length;
+        int[][] pred = FlowGraph.invert(succ);
+        int[] rpo = FlowGraph.reversePostorder(succ, root);
+        int[] order = new int[n];
+        Arrays.fill(order, -1);
+        for (int i = 0; i < rpo.length; i++) {
+            order[rpo[i]] = i;
+        }
+        idom = new int[n];
+        Arrays.fill(idom, -1);
+        idom[root] = root;
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int i = 1; i < rpo.length; i++) {
+                int b = rpo[i];
+                int new_idom = -1;
+                for (int p : pred[b]) {
+                    if (idom[p] < 0) {
+                        continue; // not processed yet or unreachable
+                    }
+                    new_idom = new_idom < 0 ? p : intersect(p, new_idom, order);
+                }
+                if (idom[b] != new_idom) {
+                    idom[b] = new_idom;
+                    changed = true;
+                }
+            }
+        }
+        idom[root] = -1;
+
+        // Children and depth first numbering of the tree
+        int[] count = new int[n];
+        for (int b = 0; b < n; b++) {
+            if (idom[b] >= 0) {
+                count[idom[b]]++;
+            }
+        }
+        children = new int[n][];
+        for (int b = 0; b < n; b++) {
+            children[b] = count[b] == 0 ? NONE : new int[count[b]];
+            count[b] = 0;
+        }
+        for (int b = 0; b < n; b++) {
+            if (idom[b] >= 0) {
+                children[idom[b]][count[idom[b]]++] = b;
+            }
+        }
+        pre = new int[n];
+        post = new int[n];
+        Arrays.fill(pre, -1);
+        Arrays.fill(post, -1);
+        int[] stack = new int[n];
+        int[] next = new int[n];
+        int sp = 0;
+        int clock = 0;
+        stack[sp++] = root;
+        pre[root] = clock++;
+        while (sp > 0) {
+            int b = stack[sp - 1];
+            if (next[b] < children[b].length) {
+                int c = children[b][next[b]++];
+                pre[c] = clock++;
+                stack[sp++] = c;
+            } else {
+                post[b] = clock++;
+                sp--;
+            }
+        }
+    }
+
+
+    private int intersect( int b1, int b2, int[] order ) {
+        while (b1 != b2) {
+            while (order[b1] > order[b2]) {
+                b1 = idom[b1];
+            }
+            while (order[b2] > order[b1]) {
+                b2 = idom[b2];
+            }
+        }
+        return b1;
+    }
+
+
+    /**
+     * @return the dominator tree of the graph, rooted at the entry block
+     */
+    public static DominatorTree dominators( FlowGraph graph ) {
+        int n = graph.getBlockCount();
+        if (n == 0) {
+            return new DominatorTree(new int[][] { NONE }, 0);
+        }
+        int[][] succ = new int[n][];
+        for (int b = 0; b < n; b++) {
+            succ[b] = graph.getSuccessors(b);
+        }
+        return new DominatorTree(succ, graph.getEntry());
+    }
+
+
+    /**
+     * @return the post-dominator tree of the graph, rooted at the virtual
+     * exit node {@link FlowGraph#getExit()}
+     */
+    public static DominatorTree postDominators( FlowGraph graph ) {
+        int n = graph.getBlockCount();
+        int[][] succ = new int[n + 1][];
+        for (int b = 0; b < n; b++) {
+            succ[b] = graph.getPredecessors(b);
+        }
+        succ[n] = graph.getExitBlocks();
+        return new DominatorTree(succ, n);
+    }
+
+
+    /** @return the root of the tree */
+    public int getRoot() {
+        return root;
+    }
+
+
+    /**
+     * @return the immediate dominator of the node, -1 for the root and for
+     * nodes not in the tree
+     */
+    public int getImmediateDominator( int node ) {
+        return idom[node];
+    }
+
+
+    /** @return the nodes immediately dominated by the node; the array must not be modified */
+    public int[] getChildren( int node ) {
+        return children[node];
+    }
+
+
+    /** @return whether the node is part of the tree */
+    public boolean contains( int node ) {
+        return pre[node] >= 0;
+    }
+
+
+    /**
+     * @return whether a dominates b; false if either is not part of the tree
+     */
+    public boolean dominates( int a, int b ) {
+        return pre[a] >= 0 && pre[b] >= 0 && pre[a] <= pre[b] && post[b] <= post[a];
+    }
+
+
+    /** @return whether a dominates b and a != b */
+    public boolean strictlyDominates( int a, int b ) {
+        return a != b && dominates(a, b);
+    }
+
+
+    @Override
+    public String toString() {
+        return "DominatorTree(root " + root + ", idom " + Arrays.toString(idom) + ")";
+    }
+}
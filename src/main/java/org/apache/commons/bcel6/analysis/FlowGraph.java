@@ -0,0 +1,510 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.commons.bcel6.analysis;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.bcel6.generic.ATHROW;
+import org.apache.commons.bcel6.generic.BranchInstruction;
+import org.apache.commons.bcel6.generic.CodeExceptionGen;
+import org.apache.commons.bcel6.generic.GotoInstruction;
+import org.apache.commons.bcel6.generic.Instruction;
+import org.apache.commons.bcel6.generic.InstructionHandle;
+import org.apache.commons.bcel6.generic.InstructionList;
+import org.apache.commons.bcel6.generic.JsrInstruction;
+import org.apache.commons.bcel6.generic.MethodGen;
+import org.apache.commons.bcel6.generic.RET;
+import org.apache.commons.bcel6.generic.ReturnInstruction;
+import org.apache.commons.bcel6.generic.Select;
+
+/**
+ * The control flow graph of a method, made up of basic blocks. Blocks are
+ * numbered from 0, the entry block, in the order of the instruction list,
+ * and instructions are numbered from 0 in the same order. Edges are kept
+ * in int arrays indexed by block number.
+ * <p>
+ * Besides the normal control flow, a block covered by an exception handler
+ * has an exceptional edge to the handler's block; blocks are split at the
+ * boundaries of the protected ranges, so a block is either covered as a
+ * whole or not at all. A RET is assumed to return to the instruction
+ * after any JSR of the method. Blocks ending in a return or ATHROW are
+ * connected to the virtual exit node {@link #getExit()}, which is not a
+ * block of its own.
+ * <p>
+ * A FlowGraph is a snapshot: it has to be rebuilt if the instruction list
+ * or the exception handlers change, which {@link AnalysisCache} does
+ * automatically.
+ *
+ * @version $Id$
+ * @since 6.0
+ */
+public final class FlowGraph {
+
+    private static final int[] NONE = new int[0];
+
+    private final InstructionHandle[] handles;
+    private final Map<InstructionHandle, Integer> index;
+    /** Index of the first instruction of each block, plus the number of instructions. */
+    private final int[] block_start;
+    /** Block of each instruction. */
+    private final int[] instruction_block;
+    private final int[][] successors;
+    private final int[][] normal_successors;
+    private final int[][] exception_successors;
+    private final int[][] predecessors;
+    private final int[][] normal_predecessors;
+    private final int[][] exception_predecessors;
+    private final int[] exit_blocks;
+    private final boolean[] handler;
+    private final int[] reverse_postorder;
+    private final int[] rpo_index;
+
+
+    /**
+     * Builds the flow graph of the code of a method.
+     */
+    public FlowGraph( MethodGen mg ) {
+        this(mg.getInstructionList(), mg.getExceptionHandlers());
+    }
+
+
+    /**
+     * Builds the flow graph of the given code.
+     *
+     * @param il the instructions
+     * @param handlers the exception handlers, may be null
+     */
+    public FlowGraph( InstructionList il, CodeExceptionGen[] handlers ) {
+        if (handlers == null) {
+            handlers = new CodeExceptionGen[0];
+        }
+        handles = il == null ? new InstructionHandle[0] : il.getInstructionHandles();
+        int n = handles.length;
+        index = new HashMap<>(n * 2);
+        for (int i = 0; i < n; i++) {
+            index.put(handles[i], Integer.valueOf(i));
+        }
+
+        // Find the leaders, i.e. the first instructions of the blocks
+        boolean[] leader = new boolean[n + 1];
+        leader[0] = true;
+        leader[n] = true;
+        List<Integer> return_points = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            Instruction inst = handles[i].getInstruction();
+            if (inst instanceof BranchInstruction) {
+                for (InstructionHandle target : getTargets((BranchInstruction) inst)) {
+                    leader[indexOf(target)] = true;
+                }
+                leader[i + 1] = true;
+                if (inst instanceof JsrInstruction) {
+                    return_points.add(Integer.valueOf(i + 1));
+                }
+            } else if (endsBlock(inst)) {
+                leader[i + 1] = true;
+            }
+        }
+        for (CodeExceptionGen h : handlers) {
+            leader[indexOf(h.getStartPC())] = true;
+            leader[indexOf(h.getEndPC()) + 1] = true;
+            leader[indexOf(h.getHandlerPC())] = true;
+        }
+
+        int blocks = 0;
+        for (int i = 0; i < n; i++) {
+            if (leader[i]) {
+                blocks++;
+            }
+        }
+        block_start = new int[blocks + 1];
+        instruction_block = new int[n];
+        int b = -1;
+        for (int i = 0; i < n; i++) {
+            if (leader[i]) {
+                block_start[++b] = i;
+            }
+            instruction_block[i] = b;
+        }
+        block_start[blocks] = n;
+
+        // Edges
+        successors = new int[blocks][];
+        normal_successors = new int[blocks][];
+        exception_successors = new int[blocks][];
+        handler = new boolean[blocks];
+        List<Integer> exits = new ArrayList<>();
+        for (CodeExceptionGen h : handlers) {
+            handler[instruction_block[indexOf(h.getHandlerPC())]] = true;
+        }
+        for (b = 0; b < blocks; b++) {
+            int last = block_start[b + 1] - 1;
+            Instruction inst = handles[last].getInstruction();
+            IntList succ = new IntList();
+            if (inst instanceof RET) {
+                for (Integer r : return_points) {
+                    if (r.intValue() < n) {
+                        succ.addUnique(instruction_block[r.intValue()]);
+                    }
+                }
+            } else if (inst instanceof BranchInstruction) {
+                for (InstructionHandle target : getTargets((BranchInstruction) inst)) {
+                    succ.addUnique(instruction_block[indexOf(target)]);
+                }
+                if (!(inst instanceof GotoInstruction || inst instanceof JsrInstruction
+                        || inst instanceof Select) && last + 1 < n) {
+                    succ.addUnique(instruction_block[last + 1]);
+                }
+            } else if (inst instanceof ReturnInstruction || inst instanceof ATHROW) {
+                exits.add(Integer.valueOf(b));
+            } else if (last + 1 < n) {
+                succ.addUnique(instruction_block[last + 1]);
+            } else {
+                exits.add(Integer.valueOf(b)); // falls off the end of the code
+            }
+            normal_successors[b] = succ.toArray();
+            IntList exc = new IntList();
+            for (CodeExceptionGen h : handlers) {
+                int first = block_start[b];
+                if (first >= indexOf(h.getStartPC()) && first <= indexOf(h.getEndPC())) {
+                    int target = instruction_block[indexOf(h.getHandlerPC())];
+                    exc.addUnique(target);
+                    succ.addUnique(target);
+                }
+            }
+            successors[b] = succ.toArray();
+            exception_successors[b] = exc.toArray();
+        }
+        exit_blocks = new int[exits.size()];
+        for (int i = 0; i < exit_blocks.length; i++) {
+            exit_blocks[i] = exits.get(i).intValue();
+        }
+        predecessors = invert(successors);
+        normal_predecessors = invert(normal_successors);
+        exception_predecessors = invert(exception_successors);
+
+        // Reverse postorder of the blocks reachable from the entry
+        reverse_postorder = blocks == 0 ? NONE : reversePostorder(successors, 0);
+        rpo_index = new int[blocks];
+        Arrays.fill(rpo_index, -1);
+        for (int i = 0; i < reverse_postorder.length; i++) {
+            rpo_index[reverse_postorder[i]] = i;
+        }
+    }
+
+
+    private int indexOf( InstructionHandle ih ) {
+        Integer i = index.get(ih);
+        if (i == null) {
+            throw new IllegalArgumentException("Instruction not in list: " + ih);
+        }
+        return i.intValue();
+    }
+
+
+    private static InstructionHandle[] getTargets( BranchInstruction branch ) {
+        if (branch instanceof Select) {
+            InstructionHandle[] targets = ((Select) branch).getTargets();
+            InstructionHandle[] all = Arrays.copyOf(targets, targets.length + 1);
+            all[targets.length] = branch.getTarget();
+            return all;
+        }
+        return new InstructionHandle[] { branch.getTarget() };
+    }
+
+
+    private static boolean endsBlock( Instruction inst ) {
+        return inst instanceof ReturnInstruction || inst instanceof ATHROW || inst instanceof RET;
+    }
+
+
+    /**
+     * @return the predecessor lists for the given successor lists
+     */
+    static int[][] invert( int[][] succ ) {
+        int n = succ.length;
+        int[] count = new int[n];
+        for (int[] s : succ) {
+            for (int t : s) {
+                count[t]++;
+            }
+        }
+        int[][] pred = new int[n][];
+        for (int i = 0; i < n; i++) {
+            pred[i] = count[i] == 0 ? NONE : new int[count[i]];
+            count[i] = 0;
+        }
+        for (int i = 0; i < n; i++) {
+            for (int t : succ[i]) {
+                pred[t][count[t]++] = i;
+            }
+        }
+        return pred;
+    }
+
+
+    /**
+     * @return the nodes reachable from root in reverse postorder of a depth first search
+     */
+    static int[] reversePostorder( int[][] succ, int root ) {
+        int n = succ.length;
+        boolean[] visited = new boolean[n];
+        int[] order = new int[n];
+        int count = 0;
+        int[] stack = new int[n];
+        int[] next_edge = new int[n];
+        int sp = 0;
+        stack[sp++] = root;
+        visited[root] = true;
+        while (sp > 0) {
+            int node = stack[sp - 1];
+            if (next_edge[node] < succ[node].length) {
+                int s = succ[node][next_edge[node]++];
+                if (!visited[s]) {
+                    visited[s] = true;
+                    stack[sp++] = s;
+                }
+            } else {
+                sp--;
+                order[count++] = node;
+            }
+        }
+        int[] rpo = new int[count];
+        for (int i = 0; i < count; i++) {
+            rpo[i] = order[count - 1 - i];
+        }
+        return rpo;
+    }
+
+
+    /** @return the number of blocks */
+    public int getBlockCount() {
+        return successors.length;
+    }
+
+
+    /** @return the entry block, 0 */
+    public int getEntry() {
+        return 0;
+    }
+
+
+    /**
+     * @return the number of the virtual exit node, which equals the number
+     * of blocks
+     */
+    public int getExit() {
+        return successors.length;
+    }
+
+
+    /** @return the blocks that leave the method, by return, ATHROW or falling off the code */
+    public int[] getExitBlocks() {
+        return exit_blocks.clone();
+    }
+
+
+    /** @return the instructions of the method, indexed by instruction number */
+    public InstructionHandle[] getInstructionHandles() {
+        return handles.clone();
+    }
+
+
+    /** @return the number of the given instruction, -1 if it is not part of the graph */
+    public int getInstructionIndex( InstructionHandle ih ) {
+        Integer i = index.get(ih);
+        return i == null ? -1 : i.intValue();
+    }
+
+
+    /** @return the block containing the instruction with the given number */
+    public int getBlockOfInstruction( int instruction ) {
+        return instruction_block[instruction];
+    }
+
+
+    /** @return the block containing the given instruction, -1 if it is not part of the graph */
+    public int getBlock( InstructionHandle ih ) {
+        Integer i = index.get(ih);
+        return i == null ? -1 : instruction_block[i.intValue()];
+    }
+
+
+    /** @return the number of the first instruction of the block */
+    public int getFirstInstruction( int block ) {
+        return block_start[block];
+    }
+
+
+    /** @return the number of the last instruction of the block */
+    public int getLastInstruction( int block ) {
+        return block_start[block + 1] - 1;
+    }
+
+
+    /** @return the first instruction of the block */
+    public InstructionHandle getStart( int block ) {
+        return handles[block_start[block]];
+    }
+
+
+    /** @return the last instruction of the block */
+    public InstructionHandle getEnd( int block ) {
+        return handles[block_start[block + 1] - 1];
+    }
+
+
+    /**
+     * @return the successors of the block, including exception handlers;
+     * the array must not be modified
+     */
+    public int[] getSuccessors( int block ) {
+        return successors[block];
+    }
+
+
+    /**
+     * @return the successors of the block by normal control flow; the array
+     * must not be modified
+     */
+    public int[] getNormalSuccessors( int block ) {
+        return normal_successors[block];
+    }
+
+
+    /**
+     * @return the handler blocks of the exception handlers covering the
+     * block; the array must not be modified
+     */
+    public int[] getExceptionSuccessors( int block ) {
+        return exception_successors[block];
+    }
+
+
+    /**
+     * @return the predecessors of the block, including the blocks covered by
+     * it if it is an exception handler; the array must not be modified
+     */
+    public int[] getPredecessors( int block ) {
+        return predecessors[block];
+    }
+
+
+    /**
+     * @return the predecessors of the block by normal control flow; the
+     * array must not be modified
+     */
+    public int[] getNormalPredecessors( int block ) {
+        return normal_predecessors[block];
+    }
+
+
+    /**
+     * @return the blocks covered by the exception handler starting at the
+     * block; the array must not be modified
+     */
+    public int[] getExceptionPredecessors( int block ) {
+        return exception_predecessors[block];
+    }
+
+
+    /** @return whether the block is the start of an exception handler */
+    public boolean isHandler( int block ) {
+        return handler[block];
+    }
+
+
+    /** @return whether the block can be reached from the entry */
+    public boolean isReachable( int block ) {
+        return rpo_index[block] >= 0;
+    }
+
+
+    /**
+     * @return the reachable blocks in reverse postorder, the entry first;
+     * the array must not be modified
+     */
+    public int[] getReversePostorder() {
+        return reverse_postorder;
+    }
+
+
+    /** @return the position of the block in the reverse postorder, -1 if unreachable */
+    public int getReversePostorderIndex( int block ) {
+        return rpo_index[block];
+    }
+
+
+    /**
+     * @return a listing of the blocks and their successors
+     */
+    @Override
+    public String toString() {
+        StringBuilder buf = new StringBuilder();
+        for (int b = 0; b < getBlockCount(); b++) {
+            buf.append("B").append(b).append(" [").append(getFirstInstruction(b)).append("..")
+                    .append(getLastInstruction(b)).append("] -> ").append(Arrays.toString(successors[b]));
+            if (exception_successors[b].length > 0) {
+                buf.append(" handlers ").append(Arrays.toString(exception_successors[b]));
+            }
+            buf.append('\n');
+        }
+        return buf.toString();
+    }
+
+
+    /**
+     * A growable list of ints.
+     */
+    static final class IntList {
+
+        private int[] data = new int[4];
+        private int size;
+
+
+        void add( int value ) {
+            if (size == data.length) {
+                data = Arrays.copyOf(data, size * 2);
+            }
+            data[size++] = value;
+        }
+
+
+        void addUnique( int value ) {
+            for (int i = 0; i < size; i++) {
+                if (data[i] == value) {
+                    return;
+                }
+            }
+            add(value);
+        }
+
+
+        int size() {
+            return size;
+        }
+
+
+        int[] toArray() {
+            return size == 0 ? NONE : Arrays.copyOf(data, size);
+        }
+    }
+}
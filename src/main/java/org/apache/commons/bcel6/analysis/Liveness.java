@@ -0,0 +1,129 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.commons.bcel6.analysis;
+
+import org.apache.commons.bcel6.generic.Instruction;
+import org.apache.commons.bcel6.generic.InstructionHandle;
+import org.apache.commons.bcel6.generic.MethodGen;
+
+/**
+ * Live local variables: slot s is live at a point if some path from there
+ * reads s before writing it. Fact i is slot i; a long or double occupies
+ * two slots. Loads, IINC and RET read slots, stores and IINC write them.
+ *
+ * @version $Id$
+ * @since 6.0
+ */
+public class Liveness extends DataflowAnalysis {
+
+    private final InstructionHandle[] handles;
+
+
+    /**
+     * Computes the live variables of a method.
+     */
+    public Liveness( MethodGen mg, AnalysisCache cache ) {
+        this(cache.getFlowGraph(mg), mg.getMaxLocals());
+    }
+
+
+    /**
+     * @param graph the graph to analyze
+     * @param max_locals the number of slots of the method; more are used
+     * if the instructions access them
+     */
+    public Liveness( FlowGraph graph, int max_locals ) {
+        super(graph, Locals.getSlotCount(graph, max_locals), false);
+        handles = graph.getInstructionHandles();
+        for (int b = 0; b < graph.getBlockCount(); b++) {
+            for (int i = graph.getLastInstruction(b); i >= graph.getFirstInstruction(b); i--) {
+                step(handles[i].getInstruction(), gen[b], kill[b]);
+            }
+        }
+        solve();
+    }
+
+
+    /**
+     * Moves the live set from after to before the instruction.
+     */
+    private static void step( Instruction inst, long[] live, long[] defined ) {
+        int def = Locals.getDef(inst);
+        if (def >= 0) {
+            for (int i = 0; i < Locals.getSize(inst); i++) {
+                clear(live, def + i);
+                if (defined != null) {
+                    set(defined, def + i);
+                }
+            }
+        }
+        int use = Locals.getUse(inst);
+        if (use >= 0) {
+            for (int i = 0; i < Locals.getSize(inst); i++) {
+                set(live, use + i);
+            }
+        }
+    }
+
+
+    /** @return whether the slot is live at the start of the block */
+    public boolean isLiveIn( int block, int slot ) {
+        return isSet(getEntry(block), slot);
+    }
+
+
+    /** @return whether the slot is live at the end of the block */
+    public boolean isLiveOut( int block, int slot ) {
+        return isSet(getExit(block), slot);
+    }
+
+
+    /**
+     * @return the slots live right before the instruction with the given number
+     */
+    public long[] getLiveBefore( int instruction ) {
+        return getLive(instruction, true);
+    }
+
+
+    /**
+     * @return the slots live right after the instruction with the given
+     * number, inside its block
+     */
+    public long[] getLiveAfter( int instruction ) {
+        return getLive(instruction, false);
+    }
+
+
+    private long[] getLive( int instruction, boolean before ) {
+        int b = graph.getBlockOfInstruction(instruction);
+        long[] live = getExit(b).clone();
+        int[] handlers = graph.getExceptionSuccessors(b);
+        for (int i = graph.getLastInstruction(b); i >= instruction; i--) {
+            if (i == instruction && !before) {
+                break;
+            }
+            step(handles[i].getInstruction(), live, null);
+            // A handler may be entered with the state before any covered instruction
+            for (int h : handlers) {
+                or(live, getEntry(h));
+            }
+        }
+        return live;
+    }
+}
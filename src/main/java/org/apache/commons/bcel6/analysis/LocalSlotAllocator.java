@@ -0,0 +1,367 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.commons.bcel6.analysis;
+
+import java.util.Arrays;
+
+import org.apache.commons.bcel6.generic.IINC;
+import org.apache.commons.bcel6.generic.Instruction;
+import org.apache.commons.bcel6.generic.InstructionHandle;
+import org.apache.commons.bcel6.generic.InstructionList;
+import org.apache.commons.bcel6.generic.LocalVariableGen;
+import org.apache.commons.bcel6.generic.LocalVariableInstruction;
+import org.apache.commons.bcel6.generic.MethodGen;
+import org.apache.commons.bcel6.generic.RET;
+import org.apache.commons.bcel6.generic.Type;
+
+/**
+ * Reassigns the local variable slots of a method so that variables whose
+ * live ranges do not overlap share a slot, and recomputes max_locals.
+ * <p>
+ * The unit of allocation is a web: the definitions (stores and IINC) that
+ * reach a common use, together with the uses they reach. The definitions
+ * of a slot within the range of one LocalVariableGen are kept in one web,
+ * so that every variable of the local variable table maps to a single
+ * slot. Two webs interfere if one of them is live where the other one is
+ * defined. The interference graph is colored greedily in program order,
+ * a long or double taking two adjacent slots.
+ * <p>
+ * The parameter slots, including the this reference, are never reused,
+ * and the webs reading the parameters keep their slots. Loads,
+ * stores, IINC and RET and the LocalVariableGen objects are rewritten;
+ * local variables that are never accessed are removed.
+ * <p>
+ * A method is left unchanged if it reads a slot that is not initialized
+ * on every path, or reads a slot with a different size than it was
+ * written with.
+ *
+ * @version $Id$
+ * @since 6.0
+ */
+public class LocalSlotAllocator {
+
+    private final AnalysisCache cache;
+
+
+    public LocalSlotAllocator() {
+        this(new AnalysisCache());
+    }
+
+
+    /**
+     * @param cache the cache to take the flow graphs of the methods from
+     */
+    public LocalSlotAllocator( AnalysisCache cache ) {
+        this.cache = cache;
+    }
+
+
+    /**
+     * Reallocates the local variable slots of the method.
+     *
+     * @return true if the method was changed
+     */
+    public boolean allocate( MethodGen mg ) {
+        InstructionList il = mg.getInstructionList();
+        if (il == null) {
+            return false;
+        }
+        FlowGraph graph = cache.getFlowGraph(mg);
+        InstructionHandle[] handles = graph.getInstructionHandles();
+        int params = mg.isStatic() ? 0 : 1;
+        for (Type t : mg.getArgumentTypes()) {
+            params += t.getSize();
+        }
+        ReachingDefinitions defs = new ReachingDefinitions(graph, params);
+        int def_count = defs.getDefinitionCount();
+        int n = handles.length;
+
+        // Build the webs
+        int[] parent = new int[def_count];
+        for (int d = 0; d < def_count; d++) {
+            parent[d] = d;
+        }
+        int[] use_def = new int[n]; // a definition reaching the use, -1 if none
+        int[] size = new int[def_count];
+        for (int i = 0; i < n; i++) {
+            Instruction inst = handles[i].getInstruction();
+            use_def[i] = -1;
+            int slot = Locals.getUse(inst);
+            if (slot >= 0) {
+                int[] reaching = defs.getReaching(i, slot);
+                for (int d : reaching) {
+                    if (defs.getDefinitionSlot(d) != slot) {
+                        return false; // reads part of a long or double
+                    }
+                    if (defs.isEntryDefinition(d) && slot >= params) {
+                        return false; // not initialized on some path
+                    }
+                    union(parent, d, reaching[0]);
+                }
+                if (reaching.length > 0) {
+                    use_def[i] = reaching[0];
+                    if (inst instanceof IINC) {
+                        union(parent, defs.getDefinition(i), reaching[0]);
+                    }
+                }
+            }
+            int d = defs.getDefinition(i);
+            if (d >= 0) {
+                size[d] = Locals.getSize(inst);
+            }
+        }
+        LocalVariableGen[] variables = mg.getLocalVariables();
+        int[] variable_def = new int[variables.length];
+        for (int v = 0; v < variables.length; v++) {
+            variable_def[v] = -1;
+            int slot = variables[v].getIndex();
+            int first = graph.getInstructionIndex(variables[v].getStart());
+            InstructionHandle end = variables[v].getEnd();
+            // The end is exclusive, unless it is the last instruction
+            int last = graph.getInstructionIndex(end) - (end.getNext() == null ? 0 : 1);
+            for (int i = Math.max(first, 0); i >= 0 && i <= last; i++) {
+                int d = getAccessedDefinition(handles[i].getInstruction(), i, slot, defs, use_def);
+                if (d >= 0) {
+                    if (variable_def[v] < 0) {
+                        variable_def[v] = d;
+                    } else {
+                        union(parent, d, variable_def[v]);
+                    }
+                }
+            }
+        }
+
+        // Number the webs and find their sizes and fixed slots
+        int[] web = new int[def_count];
+        int webs = 0;
+        int[] root_web = new int[def_count];
+        Arrays.fill(root_web, -1);
+        for (int d = 0; d < def_count; d++) {
+            int r = find(parent, d);
+            if (root_web[r] < 0) {
+                root_web[r] = webs++;
+            }
+            web[d] = root_web[r];
+        }
+        int[] web_size = new int[webs];
+        int[] color = new int[webs];
+        Arrays.fill(color, -1);
+        for (int d = 0; d < def_count; d++) {
+            int w = web[d];
+            if (defs.isEntryDefinition(d)) {
+                if (color[w] >= 0 && color[w] != defs.getDefinitionSlot(d)) {
+                    // Only the first slot of a long or double parameter is read
+                    if (defs.getDefinitionSlot(d) != color[w] + 1) {
+                        return false;
+                    }
+                } else {
+                    color[w] = defs.getDefinitionSlot(d);
+                }
+            } else if (!setSize(web_size, w, size[d])) {
+                return false;
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            if (use_def[i] >= 0 && !setSize(web_size, web[use_def[i]], Locals.getSize(handles[i].getInstruction()))) {
+                return false;
+            }
+        }
+
+        // Interference
+        WebLiveness live = new WebLiveness(graph, defs, web, webs, use_def);
+        long[][] interference = new long[webs][(webs + 63) >>> 6];
+        for (int b = 0; b < graph.getBlockCount(); b++) {
+            long[] set = live.getExit(b).clone();
+            int[] handlers = graph.getExceptionSuccessors(b);
+            for (int i = graph.getLastInstruction(b); i >= graph.getFirstInstruction(b); i--) {
+                int def_web = live.def_web[i];
+                if (def_web >= 0) {
+                    for (int k = 0; k < set.length; k++) {
+                        interference[def_web][k] |= set[k];
+                    }
+                    DataflowAnalysis.clear(set, def_web);
+                }
+                if (live.use_web[i] >= 0) {
+                    DataflowAnalysis.set(set, live.use_web[i]);
+                }
+                for (int h : handlers) {
+                    DataflowAnalysis.or(set, live.getEntry(h));
+                }
+            }
+        }
+        for (int a = 0; a < webs; a++) { // make the graph symmetric
+            DataflowAnalysis.clear(interference[a], a);
+            for (int b = 0; b < webs; b++) {
+                if (DataflowAnalysis.isSet(interference[a], b)) {
+                    DataflowAnalysis.set(interference[b], a);
+                }
+            }
+        }
+
+        // Color the webs in order of their first definition, parameters first
+        int[] order = new int[webs];
+        boolean[] ordered = new boolean[webs];
+        int count = 0;
+        for (int d = 0; d < def_count; d++) {
+            if (!ordered[web[d]]) {
+                ordered[web[d]] = true;
+                order[count++] = web[d];
+            }
+        }
+        int[] taken = new int[params + 2 * webs + 2]; // the web + 1 that found the slot taken
+        for (int w : order) {
+            if (color[w] >= 0) {
+                continue;
+            }
+            int width = Math.max(web_size[w], 1);
+            long[] neighbours = interference[w];
+            for (int k = 0; k < neighbours.length; k++) {
+                long word = neighbours[k];
+                while (word != 0) {
+                    int other = (k << 6) + Long.numberOfTrailingZeros(word);
+                    word &= word - 1;
+                    if (color[other] >= 0) {
+                        for (int s = 0; s < Math.max(web_size[other], 1); s++) {
+                            taken[color[other] + s] = w + 1;
+                        }
+                    }
+                }
+            }
+            int c = params;
+            while (taken[c] == w + 1 || (width == 2 && taken[c + 1] == w + 1)) {
+                c++;
+            }
+            color[w] = c;
+        }
+
+        // Rewrite the code
+        boolean changed = false;
+        for (int i = 0; i < n; i++) {
+            Instruction inst = handles[i].getInstruction();
+            int d = defs.getDefinition(i);
+            if (d < 0) {
+                d = use_def[i];
+            }
+            if (d < 0) {
+                continue; // unreachable
+            }
+            int slot = color[web[d]];
+            if (inst instanceof LocalVariableInstruction) {
+                LocalVariableInstruction lvi = (LocalVariableInstruction) inst;
+                if (lvi.getIndex() != slot) {
+                    lvi.setIndex(slot);
+                    changed = true;
+                }
+            } else if (inst instanceof RET && ((RET) inst).getIndex() != slot) {
+                ((RET) inst).setIndex(slot);
+                changed = true;
+            }
+        }
+        for (int v = 0; v < variables.length; v++) {
+            LocalVariableGen lv = variables[v];
+            if (variable_def[v] < 0) {
+                if (lv.getIndex() >= params) {
+                    mg.removeLocalVariable(lv);
+                    changed = true;
+                }
+                continue;
+            }
+            int slot = color[web[variable_def[v]]];
+            if (lv.getIndex() != slot) {
+                lv.setIndex(slot);
+                changed = true;
+            }
+        }
+        int max_locals = mg.getMaxLocals();
+        mg.setMaxLocals();
+        return changed || mg.getMaxLocals() != max_locals;
+    }
+
+
+    /**
+     * @return the definition made or read by the instruction if it accesses
+     * exactly the slot, -1 otherwise
+     */
+    private static int getAccessedDefinition( Instruction inst, int i, int slot, ReachingDefinitions defs,
+            int[] use_def ) {
+        if (Locals.getDef(inst) == slot) {
+            return defs.getDefinition(i);
+        }
+        if (Locals.getUse(inst) == slot) {
+            return use_def[i];
+        }
+        return -1;
+    }
+
+
+    private static boolean setSize( int[] web_size, int w, int size ) {
+        if (web_size[w] == 0) {
+            web_size[w] = size;
+        }
+        return web_size[w] == size;
+    }
+
+
+    private static int find( int[] parent, int x ) {
+        while (parent[x] != x) {
+            parent[x] = parent[parent[x]];
+            x = parent[x];
+        }
+        return x;
+    }
+
+
+    private static void union( int[] parent, int a, int b ) {
+        parent[find(parent, a)] = find(parent, b);
+    }
+
+
+    /**
+     * Liveness of webs rather than slots.
+     */
+    private static final class WebLiveness extends DataflowAnalysis {
+
+        final int[] def_web;
+        final int[] use_web;
+
+
+        WebLiveness(FlowGraph graph, ReachingDefinitions defs, int[] web, int webs, int[] use_def) {
+            super(graph, webs, false);
+            int n = use_def.length;
+            def_web = new int[n];
+            use_web = new int[n];
+            for (int i = 0; i < n; i++) {
+                int d = defs.getDefinition(i);
+                def_web[i] = d < 0 ? -1 : web[d];
+                use_web[i] = use_def[i] < 0 ? -1 : web[use_def[i]];
+            }
+            for (int b = 0; b < graph.getBlockCount(); b++) {
+                for (int i = graph.getLastInstruction(b); i >= graph.getFirstInstruction(b); i--) {
+                    if (def_web[i] >= 0) {
+                        clear(gen[b], def_web[i]);
+                        set(kill[b], def_web[i]);
+                    }
+                    if (use_web[i] >= 0) {
+                        set(gen[b], use_web[i]);
+                    }
+                }
+            }
+            solve();
+        }
+    }
+}
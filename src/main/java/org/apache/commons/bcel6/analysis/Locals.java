@@ -0,0 +1,93 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.commons.bcel6.analysis;
+
+import org.apache.commons.bcel6.generic.IINC;
+import org.apache.commons.bcel6.generic.Instruction;
+import org.apache.commons.bcel6.generic.InstructionHandle;
+import org.apache.commons.bcel6.generic.LoadInstruction;
+import org.apache.commons.bcel6.generic.LocalVariableInstruction;
+import org.apache.commons.bcel6.generic.RET;
+import org.apache.commons.bcel6.generic.StoreInstruction;
+
+/**
+ * The local variable slots read and written by instructions. A long or
+ * double occupies two slots, the one named by the instruction and the
+ * next one.
+ *
+ * @version $Id$
+ * @since 6.0
+ */
+final class Locals {
+
+    private Locals() {
+    }
+
+
+    /**
+     * @return the (first) slot read by the instruction, -1 if it reads none
+     */
+    static int getUse( Instruction inst ) {
+        if (inst instanceof LoadInstruction || inst instanceof IINC) {
+            return ((LocalVariableInstruction) inst).getIndex();
+        }
+        if (inst instanceof RET) {
+            return ((RET) inst).getIndex();
+        }
+        return -1;
+    }
+
+
+    /**
+     * @return the (first) slot written by the instruction, -1 if it writes none
+     */
+    static int getDef( Instruction inst ) {
+        if (inst instanceof StoreInstruction || inst instanceof IINC) {
+            return ((LocalVariableInstruction) inst).getIndex();
+        }
+        return -1;
+    }
+
+
+    /**
+     * @return the number of slots accessed by an instruction that reads or writes a local
+     */
+    static int getSize( Instruction inst ) {
+        if (inst instanceof LocalVariableInstruction) {
+            return ((LocalVariableInstruction) inst).getType(null).getSize();
+        }
+        return 1;
+    }
+
+
+    /**
+     * @return the number of slots needed by the instructions of the graph,
+     * at least min
+     */
+    static int getSlotCount( FlowGraph graph, int min ) {
+        int count = min;
+        for (InstructionHandle ih : graph.getInstructionHandles()) {
+            Instruction inst = ih.getInstruction();
+            int slot = Math.max(getUse(inst), getDef(inst));
+            if (slot >= 0) {
+                count = Math.max(count, slot + getSize(inst));
+            }
+        }
+        return count;
+    }
+}
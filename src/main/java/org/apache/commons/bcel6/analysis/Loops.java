@@ -0,0 +1,167 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.commons.bcel6.analysis;
+
+import java.util.Arrays;
+
+/**
+ * The natural loops of a {@link FlowGraph}. An edge from b to h is a back
+ * edge if h dominates b; the loop of header h consists of h and all blocks
+ * that reach a back edge to h without passing through h. Loops with the
+ * same header are merged. Irreducible cycles have no header dominating all
+ * of their blocks and are not reported as loops.
+ * <p>
+ * Loops are numbered from 0, outer loops before the loops nested in them.
+ *
+ * @version $Id$
+ * @since 6.0
+ */
+public final class Loops {
+
+    private final int[] header;
+    private final int[][] body;
+    private final int[] parent;
+    private final int[] innermost;
+    private final int[] depth;
+
+
+    /**
+     * Finds the loops of a graph.
+     *
+     * @param graph the graph
+     * @param dominators the dominator tree of graph
+     */
+    public Loops( FlowGraph graph, DominatorTree dominators ) {
+        int n = graph.getBlockCount();
+        // Collect the loops in reverse postorder of their headers, so outer loops come first
+        FlowGraph.IntList headers = new FlowGraph.IntList();
+        int[][] bodies = new int[n][];
+        for (int h : graph.getReversePostorder()) {
+            boolean[] in_loop = null;
+            FlowGraph.IntList work = new FlowGraph.IntList();
+            for (int b : graph.getPredecessors(h)) {
+                if (dominators.dominates(h, b)) {
+                    if (in_loop == null) {
+                        in_loop = new boolean[n];
+                        in_loop[h] = true;
+                    }
+                    if (!in_loop[b]) {
+                        in_loop[b] = true;
+                        work.add(b);
+                    }
+                }
+            }
+            if (in_loop == null) {
+                continue;
+            }
+            int[] stack = work.toArray();
+            int sp = stack.length;
+            stack = Arrays.copyOf(stack, n);
+            while (sp > 0) {
+                int b = stack[--sp];
+                for (int p : graph.getPredecessors(b)) {
+                    if (!in_loop[p] && graph.isReachable(p)) {
+                        in_loop[p] = true;
+                        stack[sp++] = p;
+                    }
+                }
+            }
+            FlowGraph.IntList members = new FlowGraph.IntList();
+            for (int b = 0; b < n; b++) {
+                if (in_loop[b]) {
+                    members.add(b);
+                }
+            }
+            bodies[headers.size()] = members.toArray();
+            headers.add(h);
+        }
+        int count = headers.size();
+        header = headers.toArray();
+        body = Arrays.copyOf(bodies, count);
+
+        // Since outer loops come first, the last loop containing a block is the innermost one
+        innermost = new int[n];
+        Arrays.fill(innermost, -1);
+        parent = new int[count];
+        for (int l = 0; l < count; l++) {
+            parent[l] = innermost[header[l]];
+            for (int b : body[l]) {
+                innermost[b] = l;
+            }
+        }
+        depth = new int[n];
+        for (int b = 0; b < n; b++) {
+            for (int l = innermost[b]; l >= 0; l = parent[l]) {
+                depth[b]++;
+            }
+        }
+    }
+
+
+    /** @return the number of loops */
+    public int getLoopCount() {
+        return header.length;
+    }
+
+
+    /** @return the header block of the loop */
+    public int getHeader( int loop ) {
+        return header[loop];
+    }
+
+
+    /** @return the blocks of the loop in ascending order; the array must not be modified */
+    public int[] getBody( int loop ) {
+        return body[loop];
+    }
+
+
+    /** @return whether the block is part of the loop */
+    public boolean contains( int loop, int block ) {
+        return Arrays.binarySearch(body[loop], block) >= 0;
+    }
+
+
+    /** @return the loop immediately enclosing the loop, -1 for an outermost loop */
+    public int getParent( int loop ) {
+        return parent[loop];
+    }
+
+
+    /** @return the innermost loop containing the block, -1 if it is in no loop */
+    public int getLoop( int block ) {
+        return innermost[block];
+    }
+
+
+    /** @return the number of loops containing the block */
+    public int getDepth( int block ) {
+        return depth[block];
+    }
+
+
+    @Override
+    public String toString() {
+        StringBuilder buf = new StringBuilder();
+        for (int l = 0; l < header.length; l++) {
+            buf.append("L").append(l).append(" header B").append(header[l]).append(" parent ")
+                    .append(parent[l]).append(' ').append(Arrays.toString(body[l])).append('\n');
+        }
+        return buf.toString();
+    }
+}
@@ -0,0 +1,237 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.commons.bcel6.analysis;
+
+import org.apache.commons.bcel6.generic.Instruction;
+import org.apache.commons.bcel6.generic.InstructionHandle;
+import org.apache.commons.bcel6.generic.MethodGen;
+
+/**
+ * Reaching definitions of local variables: a definition reaches a point if
+ * some path from the definition to the point does not write its slots
+ * again. The stores and IINC instructions of the method are definitions,
+ * numbered after one entry definition per slot that stands for the value
+ * the slot has when the method is entered, i.e. a parameter or nothing.
+ * A definition of a long or double writes two slots and is killed by a
+ * write to either of them.
+ *
+ * @version $Id$
+ * @since 6.0
+ */
+public class ReachingDefinitions extends DataflowAnalysis {
+
+    private final int slots;
+    private final InstructionHandle[] handles;
+    private final int[] def_instruction;
+    private final int[] def_slot;
+    private final int[] instruction_def;
+    /** The definitions writing each slot. */
+    private final long[][] slot_defs;
+    /** All definitions made in each block, whether they reach its end or not. */
+    private final long[][] block_defs;
+
+
+    /**
+     * Computes the reaching definitions of a method.
+     */
+    public ReachingDefinitions( MethodGen mg, AnalysisCache cache ) {
+        this(cache.getFlowGraph(mg), mg.getMaxLocals());
+    }
+
+
+    /**
+     * @param graph the graph to analyze
+     * @param max_locals the number of slots of the method; more are used
+     * if the instructions access them
+     */
+    public ReachingDefinitions( FlowGraph graph, int max_locals ) {
+        super(graph, countDefinitions(graph, max_locals), true);
+        slots = Locals.getSlotCount(graph, max_locals);
+        int count = getBitCount();
+        handles = graph.getInstructionHandles();
+        def_instruction = new int[count];
+        def_slot = new int[count];
+        instruction_def = new int[handles.length];
+        int words = (count + 63) >>> 6;
+        slot_defs = new long[slots][words];
+        for (int d = 0; d < slots; d++) {
+            def_instruction[d] = -1;
+            def_slot[d] = d;
+            set(slot_defs[d], d);
+        }
+        int d = slots;
+        for (int i = 0; i < handles.length; i++) {
+            Instruction inst = handles[i].getInstruction();
+            int slot = Locals.getDef(inst);
+            if (slot < 0) {
+                instruction_def[i] = -1;
+                continue;
+            }
+            instruction_def[i] = d;
+            def_instruction[d] = i;
+            def_slot[d] = slot;
+            for (int k = 0; k < Locals.getSize(inst); k++) {
+                set(slot_defs[slot + k], d);
+            }
+            d++;
+        }
+
+        block_defs = new long[graph.getBlockCount()][words];
+        for (int b = 0; b < graph.getBlockCount(); b++) {
+            for (int i = graph.getFirstInstruction(b); i <= graph.getLastInstruction(b); i++) {
+                d = instruction_def[i];
+                if (d >= 0) {
+                    killed(d, gen[b], kill[b]);
+                    set(gen[b], d);
+                    set(block_defs[b], d);
+                }
+            }
+        }
+        solve();
+    }
+
+
+    private static int countDefinitions( FlowGraph graph, int max_locals ) {
+        int count = Locals.getSlotCount(graph, max_locals);
+        for (InstructionHandle ih : graph.getInstructionHandles()) {
+            if (Locals.getDef(ih.getInstruction()) >= 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+
+    /**
+     * Removes the definitions killed by d from set and adds them to killed.
+     */
+    private void killed( int d, long[] set, long[] killed ) {
+        int slot = def_slot[d];
+        int size = def_instruction[d] < 0 ? 1 : Locals.getSize(getInstruction(d));
+        for (int k = 0; k < size; k++) {
+            long[] defs = slot_defs[slot + k];
+            for (int w = 0; w < set.length; w++) {
+                set[w] &= ~defs[w];
+                if (killed != null) {
+                    killed[w] |= defs[w];
+                }
+            }
+        }
+    }
+
+
+    private Instruction getInstruction( int d ) {
+        return handles[def_instruction[d]].getInstruction();
+    }
+
+
+    @Override
+    protected void boundary( long[] value ) {
+        for (int d = 0; d < slots; d++) {
+            set(value, d);
+        }
+    }
+
+
+    @Override
+    protected void exceptionalFlow( int block, long[] block_entry, long[] block_exit, long[] result ) {
+        // Any definition of the block may be the last one before an exception
+        or(result, block_entry);
+        or(result, block_defs[block]);
+    }
+
+
+    /** @return the number of definitions, including the entry definitions */
+    public int getDefinitionCount() {
+        return getBitCount();
+    }
+
+
+    /** @return the number of slots, which is also the number of entry definitions */
+    public int getSlotCount() {
+        return slots;
+    }
+
+
+    /** @return whether d stands for the value of a slot on entry to the method */
+    public boolean isEntryDefinition( int d ) {
+        return def_instruction[d] < 0;
+    }
+
+
+    /** @return the number of the instruction making definition d, -1 for an entry definition */
+    public int getDefinitionInstruction( int d ) {
+        return def_instruction[d];
+    }
+
+
+    /** @return the (first) slot written by definition d */
+    public int getDefinitionSlot( int d ) {
+        return def_slot[d];
+    }
+
+
+    /** @return the definition made by the instruction with the given number, -1 if none */
+    public int getDefinition( int instruction ) {
+        return instruction_def[instruction];
+    }
+
+
+    /**
+     * @return the definitions reaching the point right before the instruction
+     * with the given number
+     */
+    public long[] getReachingBefore( int instruction ) {
+        int b = graph.getBlockOfInstruction(instruction);
+        long[] set = getEntry(b).clone();
+        for (int i = graph.getFirstInstruction(b); i < instruction; i++) {
+            int d = instruction_def[i];
+            if (d >= 0) {
+                killed(d, set, null);
+                set(set, d);
+            }
+        }
+        return set;
+    }
+
+
+    /**
+     * @return the definitions writing the slot that reach the point right
+     * before the instruction with the given number, in ascending order
+     */
+    public int[] getReaching( int instruction, int slot ) {
+        int b = graph.getBlockOfInstruction(instruction);
+        for (int i = instruction - 1; i >= graph.getFirstInstruction(b); i--) {
+            int d = instruction_def[i];
+            if (d >= 0 && isSet(slot_defs[slot], d)) {
+                return new int[] { d };
+            }
+        }
+        long[] entry = getEntry(b);
+        long[] defs = slot_defs[slot];
+        FlowGraph.IntList result = new FlowGraph.IntList();
+        for (int w = 0; w < entry.length; w++) {
+            long word = entry[w] & defs[w];
+            while (word != 0) {
+                result.add((w << 6) + Long.numberOfTrailingZeros(word));
+                word &= word - 1;
+            }
+        }
+        return result.toArray();
+    }
+}
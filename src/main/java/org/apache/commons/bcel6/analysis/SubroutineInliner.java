@@ -0,0 +1,424 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.commons.bcel6.analysis;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.bcel6.generic.ATHROW;
+import org.apache.commons.bcel6.generic.BranchHandle;
+import org.apache.commons.bcel6.generic.BranchInstruction;
+import org.apache.commons.bcel6.generic.ClassGenException;
+import org.apache.commons.bcel6.generic.CodeExceptionGen;
+import org.apache.commons.bcel6.generic.GOTO;
+import org.apache.commons.bcel6.generic.GotoInstruction;
+import org.apache.commons.bcel6.generic.Instruction;
+import org.apache.commons.bcel6.generic.InstructionConstants;
+import org.apache.commons.bcel6.generic.InstructionHandle;
+import org.apache.commons.bcel6.generic.InstructionList;
+import org.apache.commons.bcel6.generic.JsrInstruction;
+import org.apache.commons.bcel6.generic.LineNumberGen;
+import org.apache.commons.bcel6.generic.LocalVariableGen;
+import org.apache.commons.bcel6.generic.MethodGen;
+import org.apache.commons.bcel6.generic.RET;
+import org.apache.commons.bcel6.generic.ReturnInstruction;
+import org.apache.commons.bcel6.generic.Select;
+
+/**
+ * Inlines the JSR/RET subroutines of a method at their call sites, so
+ * that the method can be verified by type checking and be given a
+ * StackMapTable, as required from class file version 50 on.
+ * <p>
+ * The code of the method is divided into the main routine and the
+ * subroutines: the instructions reachable from the entry of the method,
+ * or of a subroutine, without following JSR and RET. Exception handlers
+ * covering part of a routine belong to it as well. Every JSR is replaced
+ * by ACONST_NULL, standing for the return address the subroutine stores
+ * away, and a GOTO to a fresh copy of the subroutine; the RET of that
+ * copy becomes a GOTO back to the instruction following the JSR. Nested
+ * subroutines are copied again for each copy of their caller. Code
+ * shared by a subroutine and a routine calling it, e.g. after a break
+ * out of a finally block, is not copied but jumped to, with a GOTO added
+ * where the subroutine falls through into it. Code outside of
+ * all routines is unreachable and dropped.
+ * <p>
+ * Exception handlers, local variables and line numbers are duplicated
+ * along with the code they cover. The local variable that held the
+ * return address keeps its slot, holding null; no other local is
+ * affected, so the number of locals and the stack size do not change.
+ *
+ * @version $Id$
+ * @since 6.0
+ */
+public class SubroutineInliner {
+
+    /**
+     * A copy of a routine, for one call of the subroutine.
+     */
+    private static final class Instantiation {
+
+        final BitSet routine;
+        final Instantiation caller;
+        final int return_index; // instruction after the JSR, in the caller
+        final InstructionHandle[] copies;
+
+
+        Instantiation( BitSet routine, Instantiation caller, int return_index, int n ) {
+            for (Instantiation c = caller; c != null; c = c.caller) {
+                if (c.routine == routine) {
+                    throw new ClassGenException("Recursive subroutine call");
+                }
+            }
+            this.routine = routine;
+            this.caller = caller;
+            this.return_index = return_index;
+            this.copies = new InstructionHandle[n];
+        }
+
+
+        /**
+         * @return the copy that executes the instruction on behalf of this
+         * copy, i.e. this one or the outermost caller sharing the
+         * instruction, null if the instruction is not in the routine
+         */
+        Instantiation findOwner( int i, BitSet shared ) {
+            if (!routine.get(i)) {
+                return null;
+            }
+            Instantiation owner = this;
+            if (shared.get(i)) {
+                for (Instantiation c = caller; c != null; c = c.caller) {
+                    if (c.routine.get(i)) {
+                        owner = c;
+                    }
+                }
+            }
+            return owner;
+        }
+    }
+
+
+    /**
+     * A branch in the inlined code whose target is set once all copies
+     * exist.
+     */
+    private static final class Fixup {
+
+        final BranchHandle branch;
+        final Instantiation instantiation;
+        final int[] targets; // original indices, the default target first
+
+
+        Fixup( BranchHandle branch, Instantiation instantiation, int[] targets ) {
+            this.branch = branch;
+            this.instantiation = instantiation;
+            this.targets = targets;
+        }
+    }
+
+    private InstructionHandle[] handles;
+    private Map<InstructionHandle, Integer> index;
+    private BitSet shared;
+    private CodeExceptionGen[] handlers;
+
+
+    /**
+     * Inlines the subroutines of the method.
+     *
+     * @return true if the method had subroutines and was changed
+     * @throws ClassGenException if a subroutine calls itself, or a RET
+     * does not belong to a subroutine
+     */
+    public boolean inline( MethodGen mg ) {
+        InstructionList il = mg.getInstructionList();
+        if (il == null || il.isEmpty()) {
+            return false;
+        }
+        handles = il.getInstructionHandles();
+        int n = handles.length;
+        index = new IdentityHashMap<>();
+        for (int i = 0; i < n; i++) {
+            index.put(handles[i], Integer.valueOf(i));
+        }
+        Map<Integer, BitSet> subroutines = new LinkedHashMap<>(); // by entry
+        for (InstructionHandle ih : handles) {
+            if (ih.getInstruction() instanceof JsrInstruction) {
+                Integer entry = index.get(((JsrInstruction) ih.getInstruction()).getTarget());
+                if (!subroutines.containsKey(entry)) {
+                    subroutines.put(entry, new BitSet(n));
+                }
+            }
+        }
+        if (subroutines.isEmpty()) {
+            return false;
+        }
+        try {
+            handlers = mg.getExceptionHandlers();
+            shared = new BitSet(n);
+            BitSet visited = new BitSet(n);
+            BitSet main = new BitSet(n);
+            mark(main, 0, visited);
+            for (Map.Entry<Integer, BitSet> e : subroutines.entrySet()) {
+                mark(e.getValue(), e.getKey().intValue(), visited);
+            }
+
+            // Copy the routines, the callers before the subroutines they call
+            InstructionList out = new InstructionList();
+            List<Instantiation> instantiations = new ArrayList<>();
+            List<Fixup> fixups = new ArrayList<>();
+            instantiations.add(new Instantiation(main, null, -1, n));
+            for (int k = 0; k < instantiations.size(); k++) {
+                Instantiation inst = instantiations.get(k);
+                for (int i = 0; i < n; i++) {
+                    if (inst.findOwner(i, shared) != inst) {
+                        continue;
+                    }
+                    Instruction ins = handles[i].getInstruction();
+                    if (ins instanceof JsrInstruction) {
+                        int entry = index.get(((JsrInstruction) ins).getTarget()).intValue();
+                        Instantiation callee = new Instantiation(subroutines.get(Integer.valueOf(entry)), inst,
+                                i + 1, n);
+                        instantiations.add(callee);
+                        inst.copies[i] = out.append(InstructionConstants.ACONST_NULL);
+                        fixups.add(new Fixup(out.append(new GOTO(null)), callee, new int[] { entry }));
+                    } else if (ins instanceof RET) {
+                        if (inst.caller == null || inst.return_index >= n) {
+                            throw new ClassGenException("RET outside of a subroutine at " + handles[i]);
+                        }
+                        inst.copies[i] = out.append(new GOTO(null));
+                        fixups.add(new Fixup((BranchHandle) inst.copies[i], inst.caller,
+                                new int[] { inst.return_index }));
+                    } else if (ins instanceof BranchInstruction) {
+                        BranchInstruction copy = (BranchInstruction) ins.copy();
+                        inst.copies[i] = out.append(copy);
+                        fixups.add(new Fixup((BranchHandle) inst.copies[i], inst, getTargets(copy)));
+                    } else {
+                        inst.copies[i] = out.append(ins.copy());
+                    }
+                    if (!(ins instanceof JsrInstruction) && canFallThrough(ins) && i + 1 < n
+                            && inst.findOwner(i + 1, shared) != inst) {
+                        // falls through into code copied by a caller
+                        fixups.add(new Fixup(out.append(new GOTO(null)), inst, new int[] { i + 1 }));
+                    }
+                }
+            }
+            for (Fixup f : fixups) {
+                BranchInstruction branch = (BranchInstruction) f.branch.getInstruction();
+                branch.setTarget(getCopy(f.instantiation, f.targets[0]));
+                if (branch instanceof Select) {
+                    for (int t = 1; t < f.targets.length; t++) {
+                        ((Select) branch).setTarget(t - 1, getCopy(f.instantiation, f.targets[t]));
+                    }
+                }
+            }
+
+            copyRanges(mg, instantiations);
+            mg.setInstructionList(out);
+            return true;
+        } finally {
+            handles = null;
+            index = null;
+            shared = null;
+            handlers = null;
+        }
+    }
+
+
+    /**
+     * Adds the instructions of a routine starting at the given instruction,
+     * and the exception handlers covering them.
+     */
+    private void mark( BitSet routine, int entry, BitSet visited ) {
+        walk(routine, entry, visited);
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (CodeExceptionGen h : handlers) {
+                int handler = index.get(h.getHandlerPC()).intValue();
+                if (routine.get(handler)) {
+                    continue;
+                }
+                int covered = routine.nextSetBit(index.get(h.getStartPC()).intValue());
+                if (covered >= 0 && covered <= index.get(h.getEndPC()).intValue()) {
+                    walk(routine, handler, visited);
+                    changed = true;
+                }
+            }
+        }
+    }
+
+
+    private void walk( BitSet routine, int entry, BitSet visited ) {
+        List<Integer> pending = new ArrayList<>();
+        pending.add(Integer.valueOf(entry));
+        while (!pending.isEmpty()) {
+            int i = pending.remove(pending.size() - 1).intValue();
+            while (i < handles.length && !routine.get(i)) {
+                routine.set(i);
+                if (visited.get(i)) {
+                    shared.set(i);
+                }
+                visited.set(i);
+                Instruction ins = handles[i].getInstruction();
+                if (ins instanceof BranchInstruction && !(ins instanceof JsrInstruction)) {
+                    for (int t : getTargets((BranchInstruction) ins)) {
+                        pending.add(Integer.valueOf(t));
+                    }
+                }
+                if (!canFallThrough(ins)) {
+                    break;
+                }
+                i++;
+            }
+        }
+    }
+
+
+    /**
+     * @return whether execution may continue with the next instruction,
+     * for a JSR once the subroutine returns
+     */
+    private static boolean canFallThrough( Instruction ins ) {
+        return !(ins instanceof GotoInstruction || ins instanceof Select || ins instanceof RET
+                || ins instanceof ReturnInstruction || ins instanceof ATHROW);
+    }
+
+
+    /**
+     * @return the indices of the targets of a branch, the default target of
+     * a Select first
+     */
+    private int[] getTargets( BranchInstruction branch ) {
+        if (!(branch instanceof Select)) {
+            return new int[] { index.get(branch.getTarget()).intValue() };
+        }
+        InstructionHandle[] targets = ((Select) branch).getTargets();
+        int[] result = new int[targets.length + 1];
+        result[0] = index.get(branch.getTarget()).intValue();
+        for (int t = 0; t < targets.length; t++) {
+            result[t + 1] = index.get(targets[t]).intValue();
+        }
+        return result;
+    }
+
+
+    private InstructionHandle getCopy( Instantiation inst, int i ) {
+        Instantiation owner = inst.findOwner(i, shared);
+        if (owner == null) {
+            throw new ClassGenException("Branch out of a subroutine to " + handles[i]);
+        }
+        return owner.copies[i];
+    }
+
+
+    /**
+     * Moves the exception handlers, local variables and line numbers to the
+     * copies of their instructions; the original objects are kept for the
+     * first copy.
+     */
+    private void copyRanges( MethodGen mg, List<Instantiation> instantiations ) {
+        mg.removeExceptionHandlers();
+        for (CodeExceptionGen h : handlers) {
+            int start = index.get(h.getStartPC()).intValue();
+            int end = index.get(h.getEndPC()).intValue();
+            int handler = index.get(h.getHandlerPC()).intValue();
+            for (Instantiation inst : instantiations) {
+                for (int[] run : getRuns(inst, start, end)) {
+                    mg.addExceptionHandler(inst.copies[run[0]], getLast(inst, run[1]), getCopy(inst, handler),
+                            h.getCatchType());
+                }
+            }
+        }
+        for (LocalVariableGen l : mg.getLocalVariables()) {
+            int start = index.get(l.getStart()).intValue();
+            int end = index.get(l.getEnd()).intValue();
+            boolean first = true;
+            for (Instantiation inst : instantiations) {
+                for (int[] run : getRuns(inst, start, end)) {
+                    if (first) {
+                        l.setStart(inst.copies[run[0]]);
+                        l.setEnd(getLast(inst, run[1]));
+                        first = false;
+                    } else {
+                        mg.addLocalVariable(l.getName(), l.getType(), l.getIndex(), inst.copies[run[0]],
+                                getLast(inst, run[1]));
+                    }
+                }
+            }
+            if (first) {
+                mg.removeLocalVariable(l);
+            }
+        }
+        for (LineNumberGen l : mg.getLineNumbers()) {
+            int i = index.get(l.getInstruction()).intValue();
+            boolean first = true;
+            for (Instantiation inst : instantiations) {
+                if (inst.findOwner(i, shared) != inst) {
+                    continue;
+                }
+                if (first) {
+                    l.setInstruction(inst.copies[i]);
+                    first = false;
+                } else {
+                    mg.addLineNumber(inst.copies[i], l.getSourceLine());
+                }
+            }
+            if (first) {
+                mg.removeLineNumber(l);
+                l.getInstruction().removeTargeter(l);
+            }
+        }
+    }
+
+
+    /**
+     * @return the maximal runs of instructions between start and end, both
+     * inclusive, that are copied contiguously by the instantiation
+     */
+    private List<int[]> getRuns( Instantiation inst, int start, int end ) {
+        List<int[]> runs = new ArrayList<>();
+        int i = start;
+        while (i <= end) {
+            if (inst.findOwner(i, shared) != inst) {
+                i++;
+                continue;
+            }
+            int first = i;
+            while (i + 1 <= end && inst.findOwner(i + 1, shared) == inst) {
+                i++;
+            }
+            runs.add(new int[] { first, i });
+            i++;
+        }
+        return runs;
+    }
+
+
+    /**
+     * @return the last instruction copied for the original one, i.e. the
+     * GOTO following the ACONST_NULL that replaces a JSR
+     */
+    private InstructionHandle getLast( Instantiation inst, int i ) {
+        InstructionHandle copy = inst.copies[i];
+        return handles[i].getInstruction() instanceof JsrInstruction ? copy.getNext() : copy;
+    }
+}
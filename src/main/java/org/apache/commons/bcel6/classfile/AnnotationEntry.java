@@ -53,7 +53,6 @@ public class AnnotationEntry implements Node {
 
         final AnnotationEntry annotationEntry = new AnnotationEntry(input.readUnsignedShort(), constant_pool, isRuntimeVisible);
         final int num_element_value_pairs = input.readUnsignedShort();
-        annotationEntry.element_value_pairs = new ArrayList<>();
         for (int i = 0; i < num_element_value_pairs; i++) {
             annotationEntry.element_value_pairs.add(
                     new ElementValuePair(input.readUnsignedShort(), ElementValue.readElementValue(input, constant_pool),
@@ -66,6 +65,7 @@ public class AnnotationEntry implements Node {
         this.type_index = type_index;
         this.constant_pool = constant_pool;
         this.isRuntimeVisible = isRuntimeVisible;
+        this.element_value_pairs = new ArrayList<>();
     }
 
     public int getTypeIndex() {
@@ -105,6 +105,15 @@ public abstract class Attribute implements Cloneable, Node {
         file.writeInt(length);
     }
 
+    /**
+     * @return number of bytes written by dump(), i.e., the attribute header
+     * plus its content length
+     */
+    final int getDumpSize()
+    {
+        return 6 + length;
+    }
+
     private static final Map<String, Object> readers = new HashMap<>();
 
     /**
@@ -167,6 +176,57 @@ public abstract class Attribute implements Cloneable, Node {
      */
     public static Attribute readAttribute(DataInput file, ConstantPool constant_pool)
             throws IOException, ClassFormatException
+    {
+        return readAttribute(file, constant_pool, 0);
+    }
+
+    /**
+     * Read an attribute count followed by that many attributes, leaving out
+     * the ones skipped by <em>options</em>.
+     *
+     * @param file Input stream
+     * @param constant_pool Array of constants
+     * @param options SKIP_* options of ClassParser
+     * @return the attributes read
+     * @throws IOException
+     * @throws ClassFormatException
+     */
+    static Attribute[] readAttributes(DataInput file, ConstantPool constant_pool, int options)
+            throws IOException, ClassFormatException
+    {
+        int attributes_count = file.readUnsignedShort();
+        Attribute[] attributes = new Attribute[attributes_count];
+        int n = 0;
+        for (int i = 0; i < attributes_count; i++)
+        {
+            Attribute attribute = readAttribute(file, constant_pool, options);
+            if (attribute != null)
+            {
+                attributes[n++] = attribute;
+            }
+        }
+        if (n < attributes_count)
+        {
+            Attribute[] tmp = new Attribute[n];
+            System.arraycopy(attributes, 0, tmp, 0, n);
+            attributes = tmp;
+        }
+        return attributes;
+    }
+
+    /**
+     * Read one attribute, or skip over it by its length if <em>options</em>
+     * say so.
+     *
+     * @param file Input stream
+     * @param constant_pool Array of constants
+     * @param options SKIP_* options of ClassParser
+     * @return Attribute, or null if it was skipped
+     * @throws IOException
+     * @throws ClassFormatException
+     */
+    static Attribute readAttribute(DataInput file, ConstantPool constant_pool, int options)
+            throws IOException, ClassFormatException
     {
         byte tag = Constants.ATTR_UNKNOWN; // Unknown attribute
         // Get class name from constant pool via `name_index' indirection
@@ -187,6 +247,12 @@ public abstract class Attribute implements Cloneable, Node {
             }
         }
 
+        if (options != 0 && isSkipped(tag, name, options))
+        {
+            skipFully(file, length);
+            return null;
+        }
+
         // Call proper constructor, depending on `tag'
         switch (tag)
         {
@@ -202,7 +268,7 @@ public abstract class Attribute implements Cloneable, Node {
             case Constants.ATTR_SOURCE_FILE:
                 return new SourceFile(name_index, length, file, constant_pool);
             case Constants.ATTR_CODE:
-                return new Code(name_index, length, file, constant_pool);
+                return new Code(name_index, length, file, constant_pool, options);
             case Constants.ATTR_EXCEPTIONS:
                 return new ExceptionTable(name_index, length, file, constant_pool);
             case Constants.ATTR_LINE_NUMBER_TABLE:
@@ -247,6 +313,52 @@ public abstract class Attribute implements Cloneable, Node {
         }
     }
 
+    private static boolean isSkipped(byte tag, String name, int options)
+    {
+        switch (tag)
+        {
+            case Constants.ATTR_UNKNOWN:
+                return (options & ClassParser.SKIP_UNKNOWN) != 0
+                        && !(readers.get(name) instanceof UnknownAttributeReader);
+            case Constants.ATTR_SOURCE_FILE:
+            case Constants.ATTR_LINE_NUMBER_TABLE:
+            case Constants.ATTR_LOCAL_VARIABLE_TABLE:
+            case Constants.ATTR_LOCAL_VARIABLE_TYPE_TABLE:
+                return (options & ClassParser.SKIP_DEBUG) != 0;
+            case Constants.ATTR_STACK_MAP:
+            case Constants.ATTR_STACK_MAP_TABLE:
+                return (options & ClassParser.SKIP_FRAMES) != 0;
+            case Constants.ATTR_RUNTIME_VISIBLE_ANNOTATIONS:
+            case Constants.ATTR_RUNTIME_INVISIBLE_ANNOTATIONS:
+            case Constants.ATTR_RUNTIME_VISIBLE_PARAMETER_ANNOTATIONS:
+            case Constants.ATTR_RUNTIME_INVISIBLE_PARAMETER_ANNOTATIONS:
+            case Constants.ATTR_ANNOTATION_DEFAULT:
+                return (options & ClassParser.SKIP_ANNOTATIONS) != 0;
+            case Constants.ATTR_CODE:
+                return (options & ClassParser.SKIP_CODE) != 0;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Skip exactly <em>length</em> bytes, without reading them into memory
+     * where the underlying stream allows it.
+     */
+    private static void skipFully(DataInput file, int length) throws IOException
+    {
+        while (length > 0)
+        {
+            int skipped = file.skipBytes(length);
+            if (skipped <= 0)
+            {
+                file.readByte(); // throws EOFException at the end of input
+                skipped = 1;
+            }
+            length -= skipped;
+        }
+    }
+
     /**
      * @return Name of attribute
      * @since 6.0
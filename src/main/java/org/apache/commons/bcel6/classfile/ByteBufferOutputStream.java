@@ -0,0 +1,91 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.commons.bcel6.classfile;
+
+import java.io.DataOutputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Unsynchronized output stream writing into a ByteBuffer, which is
+ * typically sized exactly for the data to be written. Used by
+ * JavaClass to serialize a class without intermediate copies and
+ * without the locking of DataOutputStream, see {@link #newDataOutputStream(ByteBuffer)}.
+ *
+ * @version $Id$
+ * @see JavaClass#getBytes()
+ * @since 6.0
+ */
+final class ByteBufferOutputStream extends OutputStream {
+
+    private final ByteBuffer buffer;
+
+
+    /**
+     * @param buffer Target buffer; writing beyond its limit raises a
+     * java.nio.BufferOverflowException
+     */
+    ByteBufferOutputStream(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+
+    @Override
+    public void write( int b ) {
+        buffer.put((byte) b);
+    }
+
+
+    @Override
+    public void write( byte[] b, int off, int len ) {
+        buffer.put(b, off, len);
+    }
+
+
+    /**
+     * Returns a DataOutputStream writing into the buffer. Its write methods,
+     * which are synchronized in DataOutputStream and through which
+     * writeUTF() writes, pass the bytes straight on without locking; the
+     * other write methods write to this unsynchronized stream anyway. The
+     * byte count of the DataOutputStream is not maintained.
+     */
+    static DataOutputStream newDataOutputStream( ByteBuffer buffer ) {
+        final ByteBufferOutputStream stream = new ByteBufferOutputStream(buffer);
+        return new DataOutputStream(stream) {
+
+            @Override
+            public void write( int b ) {
+                stream.write(b);
+            }
+
+
+            @Override
+            public void write( byte[] b, int off, int len ) {
+                stream.write(b, off, len);
+            }
+        };
+    }
+
+
+    /**
+     * @return the target buffer
+     */
+    ByteBuffer getBuffer() {
+        return buffer;
+    }
+}
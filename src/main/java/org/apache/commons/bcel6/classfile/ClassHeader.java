@@ -0,0 +1,176 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.commons.bcel6.classfile;
+
+import org.apache.commons.bcel6.Constants;
+
+/**
+ * The header of a Java class file, i.e., its version, access flags and the
+ * names of the class, its superclass and its interfaces. Unlike JavaClass it
+ * holds no constant pool, fields, methods or attributes and is therefore
+ * cheap to create and to keep in memory for large numbers of classes.
+ *
+ * @version $Id$
+ * @see ClassParser#parseHeader()
+ * @since 6.0
+ */
+public final class ClassHeader extends AccessFlags {
+
+    private static final String[] NO_INTERFACES = new String[0];
+
+    private final String class_name;
+    private final String superclass_name;
+    private final String[] interface_names;
+    private final String file_name;
+    private final int major;
+    private final int minor;
+
+
+    /**
+     * Resolve the header from the constant pool of a parsed class file.
+     *
+     * @param class_name_index Index into constant pool referencing a
+     * ConstantClass that represents this class.
+     * @param superclass_name_index Index into constant pool referencing a
+     * ConstantClass that represents this class's superclass.
+     * @param file_name File name
+     * @param major Major compiler version
+     * @param minor Minor compiler version
+     * @param access_flags Access rights defined by bit flags
+     * @param constant_pool Array of constants
+     * @param interfaces Implemented interfaces
+     */
+    ClassHeader(int class_name_index, int superclass_name_index, String file_name, int major,
+            int minor, int access_flags, ConstantPool constant_pool, int[] interfaces) {
+        super(access_flags);
+        this.file_name = file_name;
+        this.major = major;
+        this.minor = minor;
+        class_name = Utility.compactClassName(
+                constant_pool.getConstantString(class_name_index, Constants.CONSTANT_Class), false);
+        if (superclass_name_index > 0) {
+            superclass_name = Utility.compactClassName(
+                    constant_pool.getConstantString(superclass_name_index, Constants.CONSTANT_Class), false);
+        } else {
+            superclass_name = "java.lang.Object"; // like JavaClass
+        }
+        if (interfaces.length == 0) {
+            interface_names = NO_INTERFACES;
+        } else {
+            interface_names = new String[interfaces.length];
+            for (int i = 0; i < interfaces.length; i++) {
+                interface_names[i] = Utility.compactClassName(
+                        constant_pool.getConstantString(interfaces[i], Constants.CONSTANT_Class), false);
+            }
+        }
+    }
+
+
+    /**
+     * Extract the header of an existing class.
+     *
+     * @param clazz the class
+     */
+    public ClassHeader(JavaClass clazz) {
+        super(clazz.getAccessFlags());
+        file_name = clazz.getFileName();
+        major = clazz.getMajor();
+        minor = clazz.getMinor();
+        class_name = clazz.getClassName();
+        superclass_name = clazz.getSuperclassName();
+        interface_names = clazz.getInterfaceNames().clone();
+    }
+
+
+    /**
+     * @return Class name.
+     */
+    public String getClassName() {
+        return class_name;
+    }
+
+
+    /**
+     * @return Superclass name; java.lang.Object for java.lang.Object itself,
+     * as in JavaClass.
+     */
+    public String getSuperclassName() {
+        return superclass_name;
+    }
+
+
+    /**
+     * @return Names of implemented interfaces.
+     */
+    public String[] getInterfaceNames() {
+        return interface_names.length == 0 ? interface_names : interface_names.clone();
+    }
+
+
+    /**
+     * @return Name of the file the class was parsed from
+     */
+    public String getFileName() {
+        return file_name;
+    }
+
+
+    /**
+     * @return Major number of class file version.
+     */
+    public int getMajor() {
+        return major;
+    }
+
+
+    /**
+     * @return Minor number of class file version.
+     */
+    public int getMinor() {
+        return minor;
+    }
+
+
+    /**
+     * @return true if this is java.lang.Object, the root of the class hierarchy
+     */
+    public boolean isRoot() {
+        return "java.lang.Object".equals(class_name);
+    }
+
+
+    /**
+     * @return String representation
+     */
+    @Override
+    public String toString() {
+        StringBuilder buf = new StringBuilder();
+        buf.append(Utility.classOrInterface(super.getAccessFlags())).append(' ').append(class_name)
+                .append(" extends ").append(superclass_name);
+        if (interface_names.length > 0) {
+            buf.append(" implements ");
+            for (int i = 0; i < interface_names.length; i++) {
+                if (i > 0) {
+                    buf.append(", ");
+                }
+                buf.append(interface_names[i]);
+            }
+        }
+        return buf.toString();
+    }
+}
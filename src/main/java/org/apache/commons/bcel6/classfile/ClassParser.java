@@ -20,12 +20,15 @@ package org.apache.commons.bcel6.classfile;
 import java.io.BufferedInputStream;
 import java.io.DataInputStream;
 import java.io.FileInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
 import org.apache.commons.bcel6.Constants;
+import org.apache.commons.bcel6.util.Metric;
+import org.apache.commons.bcel6.util.Metrics;
 
 /**
  * Wrapper class that parses a given Java .class file. The method <A
@@ -59,6 +62,50 @@ public final class ClassParser {
     private Attribute[] attributes; // attributes defined in the class
     private final boolean is_zip; // Loaded from zip file
     private static final int BUFSIZE = 8192;
+    private CountingInputStream counter; // Only used if metrics are enabled
+    private int options; // Combination of the SKIP_* flags
+
+    /**
+     * Option to skip the debug attributes <em>SourceFile</em>,
+     * <em>LineNumberTable</em>, <em>LocalVariableTable</em> and
+     * <em>LocalVariableTypeTable</em>.
+     *
+     * @since 6.0
+     */
+    public static final int SKIP_DEBUG = 1;
+
+    /**
+     * Option to skip the <em>StackMap</em> and <em>StackMapTable</em>
+     * attributes of method code.
+     *
+     * @since 6.0
+     */
+    public static final int SKIP_FRAMES = 2;
+
+    /**
+     * Option to skip all (parameter) annotation attributes and
+     * <em>AnnotationDefault</em>.
+     *
+     * @since 6.0
+     */
+    public static final int SKIP_ANNOTATIONS = 4;
+
+    /**
+     * Option to skip attributes BCEL does not know about and for which no
+     * reader has been registered with
+     * {@link Attribute#addAttributeReader(String, UnknownAttributeReader)}.
+     *
+     * @since 6.0
+     */
+    public static final int SKIP_UNKNOWN = 8;
+
+    /**
+     * Option to skip the <em>Code</em> attribute of methods, including all
+     * attributes nested in it.
+     *
+     * @since 6.0
+     */
+    public static final int SKIP_CODE = 16;
 
 
     /**
@@ -104,6 +151,39 @@ public final class ClassParser {
     }
 
 
+    /**
+     * Select the attributes that are skipped while parsing. Skipped
+     * attributes are passed over by their declared length without being
+     * decoded, which saves both time and memory when only part of the class
+     * file is of interest, e.g., for dependency analysis.
+     * <p>
+     * The parsed JavaClass simply lacks the skipped attributes, and the
+     * lengths of the remaining <em>Code</em> attributes are adjusted
+     * accordingly, so {@link JavaClass#dump(java.io.OutputStream)} still
+     * writes a well formed class file. Whether that file is still usable
+     * depends on what was dropped: without debug attributes or annotations
+     * it loads fine, without <em>StackMapTable</em> attributes classes of
+     * version 50 and up may fail verification, and without <em>Code</em>
+     * attributes the non-abstract, non-native methods are invalid.
+     *
+     * @param options combination of SKIP_DEBUG, SKIP_FRAMES,
+     * SKIP_ANNOTATIONS, SKIP_UNKNOWN and SKIP_CODE, 0 to read everything
+     * @since 6.0
+     */
+    public void setOptions( int options ) {
+        this.options = options;
+    }
+
+
+    /**
+     * @return the SKIP_* options in effect
+     * @since 6.0
+     */
+    public int getOptions() {
+        return options;
+    }
+
+
     /**
      * Parse the given Java class file and return an object that represents
      * the contained data, i.e., constants, methods, fields and commands.
@@ -117,22 +197,13 @@ public final class ClassParser {
      */
     public JavaClass parse() throws IOException, ClassFormatException {
         ZipFile zip = null;
+        long start = Metrics.start();
         try {
-            if (fileOwned) {
-                if (is_zip) {
-                    zip = new ZipFile(zip_file);
-                    ZipEntry entry = zip.getEntry(file_name);
-
-                    if (entry == null) {
-                        throw new IOException("File " + file_name + " not found");
-                    }
-
-                    dataInputStream = new DataInputStream(new BufferedInputStream(zip.getInputStream(entry),
-                            BUFSIZE));
-                } else {
-                    dataInputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(
-                            file_name), BUFSIZE));
-                }
+            zip = open();
+            if (start != 0) {
+                // Count the bytes read per phase, only if someone is listening
+                counter = new CountingInputStream(dataInputStream);
+                dataInputStream = new DataInputStream(counter);
             }
             /****************** Read headers ********************************/
             // Check magic tag of class file
@@ -141,18 +212,30 @@ public final class ClassParser {
             readVersion();
             /****************** Read constant pool and related **************/
             // Read constant pool entries
+            long phase = Metrics.start();
+            long offset = getBytesRead();
             readConstantPool();
+            Metrics.time(Metric.PARSE_CONSTANT_POOL, file_name, getBytesRead() - offset, phase);
             // Get class information
             readClassInfo();
             // Get interface information, i.e., implemented interfaces
             readInterfaces();
             /****************** Read class fields and methods ***************/
             // Read class fields, i.e., the variables of the class
+            phase = Metrics.start();
+            offset = getBytesRead();
             readFields();
+            Metrics.time(Metric.PARSE_FIELDS, file_name, getBytesRead() - offset, phase);
             // Read class methods, i.e., the functions in the class
+            phase = Metrics.start();
+            offset = getBytesRead();
             readMethods();
+            Metrics.time(Metric.PARSE_METHODS, file_name, getBytesRead() - offset, phase);
             // Read class attributes
+            phase = Metrics.start();
+            offset = getBytesRead();
             readAttributes();
+            Metrics.time(Metric.PARSE_ATTRIBUTES, file_name, getBytesRead() - offset, phase);
             // Check for unknown variables
             //Unknown[] u = Unknown.getUnknownAttributes();
             //for(int i=0; i < u.length; i++)
@@ -169,19 +252,9 @@ public final class ClassParser {
             //      }
         } finally {
             // Read everything of interest, so close the file
-            if (fileOwned) {
-                try {
-                    if (dataInputStream != null) {
-                        dataInputStream.close();
-                    }
-                    if (zip != null) {
-                        zip.close();
-                    }
-                } catch (IOException ioe) {
-                    //ignore close exceptions
-                }
-            }
+            close(zip);
         }
+        Metrics.time(Metric.PARSE, file_name, getBytesRead(), start);
         // Return the information we have gathered in a new object
         return new JavaClass(class_name_index, superclass_name_index, file_name, major, minor,
                 access_flags, constant_pool, interfaces, fields, methods, attributes, is_zip
@@ -190,17 +263,98 @@ public final class ClassParser {
     }
 
 
+    /**
+     * Parse only the header of the given Java class file, i.e., everything up
+     * to and including the implemented interfaces, and return the access
+     * flags, version and the names of the class, its superclass and its
+     * interfaces. Fields, methods and attributes are not read at all, which
+     * makes this considerably cheaper than parse() when only the class
+     * hierarchy is of interest.
+     *
+     * @return header of the parsed class file
+     * @throws  IOException
+     * @throws  ClassFormatException
+     * @since 6.0
+     */
+    public ClassHeader parseHeader() throws IOException, ClassFormatException {
+        ZipFile zip = null;
+        try {
+            zip = open();
+            readID();
+            readVersion();
+            readConstantPool();
+            readClassInfo();
+            readInterfaces();
+        } finally {
+            close(zip);
+        }
+        return new ClassHeader(class_name_index, superclass_name_index, file_name, major, minor,
+                access_flags, constant_pool, interfaces);
+    }
+
+
+    /**
+     * Open the class file, if it is owned by this parser.
+     *
+     * @return the zip file opened, if any
+     */
+    private ZipFile open() throws IOException {
+        ZipFile zip = null;
+        if (fileOwned) {
+            if (is_zip) {
+                zip = new ZipFile(zip_file);
+                ZipEntry entry = zip.getEntry(file_name);
+
+                if (entry == null) {
+                    zip.close();
+                    throw new IOException("File " + file_name + " not found");
+                }
+
+                dataInputStream = new DataInputStream(new BufferedInputStream(zip.getInputStream(entry),
+                        BUFSIZE));
+            } else {
+                dataInputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(
+                        file_name), BUFSIZE));
+            }
+        }
+        return zip;
+    }
+
+
+    /**
+     * Close the class file, if it is owned by this parser.
+     */
+    private void close( ZipFile zip ) {
+        if (fileOwned) {
+            try {
+                if (dataInputStream != null) {
+                    dataInputStream.close();
+                }
+                if (zip != null) {
+                    zip.close();
+                }
+            } catch (IOException ioe) {
+                //ignore close exceptions
+            }
+        }
+    }
+
+
+    /**
+     * @return number of bytes parsed so far, 0 if metrics are disabled
+     */
+    private long getBytesRead() {
+        return counter != null ? counter.count : 0;
+    }
+
+
     /**
      * Read information about the attributes of the class.
      * @throws  IOException
      * @throws  ClassFormatException
      */
     private void readAttributes() throws IOException, ClassFormatException {
-        int attributes_count = dataInputStream.readUnsignedShort();
-        attributes = new Attribute[attributes_count];
-        for (int i = 0; i < attributes_count; i++) {
-            attributes[i] = Attribute.readAttribute(dataInputStream, constant_pool);
-        }
+        attributes = Attribute.readAttributes(dataInputStream, constant_pool, options);
     }
 
 
@@ -245,7 +399,7 @@ public final class ClassParser {
         int fields_count = dataInputStream.readUnsignedShort();
         fields = new Field[fields_count];
         for (int i = 0; i < fields_count; i++) {
-            fields[i] = new Field(dataInputStream, constant_pool);
+            fields[i] = new Field(dataInputStream, constant_pool, options);
         }
     }
 
@@ -287,7 +441,7 @@ public final class ClassParser {
         int methods_count = dataInputStream.readUnsignedShort();
         methods = new Method[methods_count];
         for (int i = 0; i < methods_count; i++) {
-            methods[i] = new Method(dataInputStream, constant_pool);
+            methods[i] = new Method(dataInputStream, constant_pool, options);
         }
     }
 
@@ -301,4 +455,46 @@ public final class ClassParser {
         minor = dataInputStream.readUnsignedShort();
         major = dataInputStream.readUnsignedShort();
     }
+
+
+    /**
+     * Stream counting the bytes read through it.
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+
+        long count;
+
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+
+        @Override
+        public int read( byte[] b, int off, int len ) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+
+
+        @Override
+        public long skip( long n ) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
 }
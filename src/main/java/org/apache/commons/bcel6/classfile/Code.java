@@ -68,6 +68,19 @@ public final class Code extends Attribute {
      */
     Code(int name_index, int length, DataInput file, ConstantPool constant_pool)
             throws IOException {
+        this(name_index, length, file, constant_pool, 0);
+    }
+
+
+    /**
+     * @param name_index Index pointing to the name <em>Code</em>
+     * @param length Content length in bytes
+     * @param file Input stream
+     * @param constant_pool Array of constants
+     * @param options SKIP_* options of ClassParser for the nested attributes
+     */
+    Code(int name_index, int length, DataInput file, ConstantPool constant_pool, int options)
+            throws IOException {
         // Initialize with some default values which will be overwritten later
         this(name_index, length, file.readUnsignedShort(), file.readUnsignedShort(), (byte[]) null,
                 (CodeException[]) null, (Attribute[]) null, constant_pool);
@@ -85,16 +98,14 @@ public final class Code extends Attribute {
         /* Read all attributes, currently `LineNumberTable' and
          * `LocalVariableTable'
          */
-        int attributes_count = file.readUnsignedShort();
-        attributes = new Attribute[attributes_count];
-        for (int i = 0; i < attributes_count; i++) {
-            attributes[i] = Attribute.readAttribute(file, constant_pool);
-        }
+        attributes = Attribute.readAttributes(file, constant_pool, options);
         /* Adjust length, because of setAttributes in this(), s.b.  length
          * is incorrect, because it didn't take the internal attributes
          * into account yet! Very subtle bug, fixed in 3.1.1.
+         * If nested attributes were skipped, the declared length is too
+         * large though, and has to be recomputed to keep dump() consistent.
          */
-        super.setLength(length);
+        super.setLength(options == 0 ? length : calculateLength());
     }
 
 
@@ -83,6 +83,34 @@ public abstract class Constant implements Cloneable, Node {
     public abstract void dump( DataOutputStream file ) throws IOException;
 
 
+    /**
+     * @return number of bytes written by dump(), including the tag byte
+     */
+    int getDumpSize() {
+        switch (tag) {
+            case Constants.CONSTANT_Class:
+            case Constants.CONSTANT_String:
+            case Constants.CONSTANT_MethodType:
+                return 3;
+            case Constants.CONSTANT_MethodHandle:
+                return 4;
+            case Constants.CONSTANT_Integer:
+            case Constants.CONSTANT_Float:
+            case Constants.CONSTANT_Fieldref:
+            case Constants.CONSTANT_Methodref:
+            case Constants.CONSTANT_InterfaceMethodref:
+            case Constants.CONSTANT_NameAndType:
+            case Constants.CONSTANT_InvokeDynamic:
+                return 5;
+            case Constants.CONSTANT_Long:
+            case Constants.CONSTANT_Double:
+                return 9;
+            default:
+                throw new ClassFormatException("Invalid byte tag in constant pool: " + tag);
+        }
+    }
+
+
     /**
      * @return Tag of constant, i.e., its type. No setTag() method to avoid
      * confusion.
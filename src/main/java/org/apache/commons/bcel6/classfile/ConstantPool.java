@@ -225,6 +225,20 @@ public class ConstantPool implements Cloneable, Node {
     }
 
 
+    /**
+     * @return number of bytes written by dump()
+     */
+    int getDumpSize() {
+        int size = 2;
+        for (int i = 1; i < constant_pool.length; i++) {
+            if (constant_pool[i] != null) {
+                size += constant_pool[i].getDumpSize();
+            }
+        }
+        return size;
+    }
+
+
     /**
      * Get constant from constant pool.
      *
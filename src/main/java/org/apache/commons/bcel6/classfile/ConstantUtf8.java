@@ -183,6 +183,27 @@ public final class ConstantUtf8 extends Constant {
     }
 
 
+    /**
+     * @return number of bytes written by dump(), i.e., the tag, the length
+     * and the string in modified UTF-8 encoding
+     */
+    @Override
+    final int getDumpSize() {
+        int utflen = 0;
+        for (int i = 0; i < bytes.length(); i++) {
+            char c = bytes.charAt(i);
+            if ((c >= 0x0001) && (c <= 0x007F)) {
+                utflen++;
+            } else if (c > 0x07FF) {
+                utflen += 3;
+            } else {
+                utflen += 2;
+            }
+        }
+        return 3 + utflen;
+    }
+
+
     /**
      * @return Data converted to string.
      */
@@ -70,6 +70,18 @@ public final class Field extends FieldOrMethod {
     }
 
 
+    /**
+     * Construct object from file stream, skipping attributes as selected by
+     * <em>options</em>.
+     * @param file Input stream
+     * @param options SKIP_* options of ClassParser
+     */
+    Field(DataInput file, ConstantPool constant_pool, int options) throws IOException,
+            ClassFormatException {
+        super(file, constant_pool, options);
+    }
+
+
     /**
      * @param access_flags Access rights of field
      * @param name_index Points to field name in constant pool
@@ -81,13 +81,22 @@ public abstract class FieldOrMethod extends AccessFlags implements Cloneable, No
      * @throws ClassFormatException
      */
     protected FieldOrMethod(DataInput file, ConstantPool constant_pool) throws IOException, ClassFormatException {
+        this(file, constant_pool, 0);
+    }
+
+
+    /**
+     * Construct object from file stream, skipping attributes as selected by
+     * <em>options</em>.
+     * @param file Input stream
+     * @param options SKIP_* options of ClassParser
+     * @throws IOException
+     * @throws ClassFormatException
+     */
+    FieldOrMethod(DataInput file, ConstantPool constant_pool, int options) throws IOException, ClassFormatException {
         this(file.readUnsignedShort(), file.readUnsignedShort(), file.readUnsignedShort(), null,
                 constant_pool);
-        int attributes_count = file.readUnsignedShort();
-        attributes = new Attribute[attributes_count];
-        for (int i = 0; i < attributes_count; i++) {
-            attributes[i] = Attribute.readAttribute(file, constant_pool);
-        }
+        attributes = Attribute.readAttributes(file, constant_pool, options);
     }
 
 
@@ -125,6 +134,18 @@ public abstract class FieldOrMethod extends AccessFlags implements Cloneable, No
     }
 
 
+    /**
+     * @return number of bytes written by dump()
+     */
+    final int getDumpSize() {
+        int size = 8;
+        for (Attribute attribute : attributes) {
+            size += attribute.getDumpSize();
+        }
+        return size;
+    }
+
+
     /**
      * @return Collection of object attributes.
      */
@@ -23,6 +23,10 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.io.UTFDataFormatException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
@@ -239,13 +243,13 @@ public class JavaClass extends AccessFlags implements Cloneable, Node, Comparabl
                 }
             }
         }
-        DataOutputStream dos = null;
+        FileOutputStream fos = null;
         try {
-            dos = new DataOutputStream(new FileOutputStream(file));
-            dump(dos);
+            fos = new FileOutputStream(file);
+            fos.write(getBytes());
         } finally {
-            if (dos != null) {
-                dos.close();
+            if (fos != null) {
+                fos.close();
             }
         }
     }
@@ -263,9 +267,61 @@ public class JavaClass extends AccessFlags implements Cloneable, Node, Comparabl
 
 
     /**
+     * Compute the size of the class in binary format from the constant pool
+     * entries and the lengths recorded in the attributes, without dumping it.
+     *
+     * @return number of bytes written by dump()
+     * @since 6.0
+     */
+    public int getSize() {
+        int size = 8; // magic, minor, major
+        size += constant_pool.getDumpSize();
+        size += 8 + 2 * interfaces.length; // access flags, class, superclass, interfaces
+        size += 2;
+        for (Field field : fields) {
+            size += field.getDumpSize();
+        }
+        size += 2;
+        for (Method method : methods) {
+            size += method.getDumpSize();
+        }
+        size += 2;
+        if (attributes != null) {
+            for (Attribute attribute : attributes) {
+                size += attribute.getDumpSize();
+            }
+        }
+        return size;
+    }
+
+
+    /**
+     * The result is allocated once with the size computed by getSize().
+     * Should an attribute report a length different from what it actually
+     * dumps, the class is serialized again through a growing buffer.
+     *
      * @return class in binary format
      */
     public byte[] getBytes() {
+        int size = getSize();
+        byte[] bytes = new byte[size];
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        try {
+            dump(buffer);
+        } catch (BufferOverflowException e) {
+            return getBytesUnsized();
+        }
+        if (buffer.position() != size) {
+            return getBytesUnsized();
+        }
+        return bytes;
+    }
+
+
+    /**
+     * Dump class through a growing buffer, used if the computed size is wrong.
+     */
+    private byte[] getBytesUnsized() {
         ByteArrayOutputStream s = new ByteArrayOutputStream();
         DataOutputStream ds = new DataOutputStream(s);
         try {
@@ -290,7 +346,44 @@ public class JavaClass extends AccessFlags implements Cloneable, Node, Comparabl
      * @exception IOException
      */
     public void dump( OutputStream file ) throws IOException {
-        dump(new DataOutputStream(file));
+        file.write(getBytes());
+        file.flush();
+    }
+
+
+    /**
+     * Dump Java class in binary format into the given buffer, starting at its
+     * current position. Heap and direct buffers are supported alike.
+     *
+     * @param buffer Target buffer, which must have at least getSize() bytes remaining
+     * @throws BufferOverflowException if the buffer is too small
+     * @throws ClassFormatException if a constant is too long for a class file
+     * @since 6.0
+     */
+    public void dump( ByteBuffer buffer ) {
+        try {
+            dump(ByteBufferOutputStream.newDataOutputStream(buffer));
+        } catch (UTFDataFormatException e) {
+            throw new ClassFormatException("Cannot dump class " + class_name + ": " + e.getMessage(), e);
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // never happens, the stream does not throw
+        }
+    }
+
+
+    /**
+     * Dump Java class in binary format to the given channel. The class is
+     * serialized into a single buffer of the exact size first.
+     *
+     * @param channel Output channel
+     * @exception IOException
+     * @since 6.0
+     */
+    public void dump( WritableByteChannel channel ) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(getBytes());
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
     }
 
 
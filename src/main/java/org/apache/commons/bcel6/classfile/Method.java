@@ -83,6 +83,18 @@ public final class Method extends FieldOrMethod {
     }
 
 
+    /**
+     * Construct object from file stream, skipping attributes as selected by
+     * <em>options</em>.
+     * @param file Input stream
+     * @param options SKIP_* options of ClassParser
+     */
+    Method(DataInput file, ConstantPool constant_pool, int options) throws IOException,
+            ClassFormatException {
+        super(file, constant_pool, options);
+    }
+
+
     /**
      * @param access_flags Access rights of method
      * @param name_index Points to field name in constant pool
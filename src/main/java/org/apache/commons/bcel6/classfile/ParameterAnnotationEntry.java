@@ -35,6 +35,14 @@ public class ParameterAnnotationEntry implements Node {
     private final AnnotationEntry[] annotation_table;
 
 
+    /**
+     * @param annotation_table the annotations of the parameter
+     */
+    public ParameterAnnotationEntry(AnnotationEntry[] annotation_table) {
+        this.annotation_table = annotation_table;
+    }
+
+
     /**
      * Construct object from input stream.
      * 
@@ -53,6 +53,7 @@ public class ClassGen extends AccessFlags implements Cloneable {
     private int major = Constants.MAJOR_1_1;
     private int minor = Constants.MINOR_1_1;
     private ConstantPoolGen cp; // Template for building up constant pool
+    private boolean compact_constant_pool; // Drop unused constants in getJavaClass()
     // ArrayLists instead of arrays to gather fields, methods, etc.
     private final List<Field> field_vec = new ArrayList<>();
     private final List<Method> method_vec = new ArrayList<>();
@@ -213,8 +214,34 @@ public class ClassGen extends AccessFlags implements Cloneable {
         }
         // Must be last since the above calls may still add something to it
         ConstantPool _cp = this.cp.getFinalConstantPool();
-        return new JavaClass(class_name_index, superclass_name_index, file_name, major, minor,
+        JavaClass clazz = new JavaClass(class_name_index, superclass_name_index, file_name, major, minor,
                 super.getAccessFlags(), _cp, interfaces, fields, methods, attributes);
+        if (compact_constant_pool) {
+            return ConstantPoolCompactor.compact(clazz);
+        }
+        return clazz;
+    }
+
+
+    /**
+     * Whether getJavaClass() removes the constants that are not referenced
+     * by the class any more; the constant pool of this ClassGen is not
+     * affected. Off by default.
+     *
+     * @see ConstantPoolCompactor
+     * @since 6.0
+     */
+    public void setCompactConstantPool( boolean compact_constant_pool ) {
+        this.compact_constant_pool = compact_constant_pool;
+    }
+
+
+    /**
+     * @return whether getJavaClass() removes unused constants
+     * @since 6.0
+     */
+    public boolean isCompactConstantPool() {
+        return compact_constant_pool;
     }
 
 
@@ -79,8 +79,10 @@ public final class CodeExceptionGen implements InstructionTargeter, Cloneable {
      * @param start_pc Start of handled region (inclusive)
      */
     public void setStartPC( InstructionHandle start_pc ) { // TODO could be package-protected?
-        BranchInstruction.notifyTarget(this.start_pc, start_pc, this);
+        InstructionHandle old_ih = this.start_pc;
+        BranchInstruction.notifyTarget(old_ih, start_pc, this);
         this.start_pc = start_pc;
+        stillTargeting(old_ih);
     }
 
 
@@ -88,8 +90,10 @@ public final class CodeExceptionGen implements InstructionTargeter, Cloneable {
      * @param end_pc End of handled region (inclusive)
      */
     public void setEndPC( InstructionHandle end_pc ) { // TODO could be package-protected?
-        BranchInstruction.notifyTarget(this.end_pc, end_pc, this);
+        InstructionHandle old_ih = this.end_pc;
+        BranchInstruction.notifyTarget(old_ih, end_pc, this);
         this.end_pc = end_pc;
+        stillTargeting(old_ih);
     }
 
 
@@ -97,8 +101,21 @@ public final class CodeExceptionGen implements InstructionTargeter, Cloneable {
      * @param handler_pc Start of handler
      */
     public void setHandlerPC( InstructionHandle handler_pc ) { // TODO could be package-protected?
-        BranchInstruction.notifyTarget(this.handler_pc, handler_pc, this);
+        InstructionHandle old_ih = this.handler_pc;
+        BranchInstruction.notifyTarget(old_ih, handler_pc, this);
         this.handler_pc = handler_pc;
+        stillTargeting(old_ih);
+    }
+
+
+    /**
+     * Re-registers this as targeter of a handle that is no longer
+     * referenced by one end of the range, but still by another.
+     */
+    private void stillTargeting( InstructionHandle ih ) {
+        if (ih != null && (ih == start_pc || ih == end_pc || ih == handler_pc)) {
+            ih.addTargeter(this);
+        }
     }
 
 
@@ -0,0 +1,446 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.commons.bcel6.generic;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import org.apache.commons.bcel6.Constants;
+import org.apache.commons.bcel6.classfile.AnnotationDefault;
+import org.apache.commons.bcel6.classfile.AnnotationElementValue;
+import org.apache.commons.bcel6.classfile.AnnotationEntry;
+import org.apache.commons.bcel6.classfile.Annotations;
+import org.apache.commons.bcel6.classfile.ArrayElementValue;
+import org.apache.commons.bcel6.classfile.Attribute;
+import org.apache.commons.bcel6.classfile.BootstrapMethod;
+import org.apache.commons.bcel6.classfile.BootstrapMethods;
+import org.apache.commons.bcel6.classfile.ClassElementValue;
+import org.apache.commons.bcel6.classfile.ClassFormatException;
+import org.apache.commons.bcel6.classfile.ClassParser;
+import org.apache.commons.bcel6.classfile.Code;
+import org.apache.commons.bcel6.classfile.CodeException;
+import org.apache.commons.bcel6.classfile.Constant;
+import org.apache.commons.bcel6.classfile.ConstantCP;
+import org.apache.commons.bcel6.classfile.ConstantClass;
+import org.apache.commons.bcel6.classfile.ConstantInvokeDynamic;
+import org.apache.commons.bcel6.classfile.ConstantMethodHandle;
+import org.apache.commons.bcel6.classfile.ConstantMethodType;
+import org.apache.commons.bcel6.classfile.ConstantNameAndType;
+import org.apache.commons.bcel6.classfile.ConstantPool;
+import org.apache.commons.bcel6.classfile.ConstantString;
+import org.apache.commons.bcel6.classfile.ConstantValue;
+import org.apache.commons.bcel6.classfile.Deprecated;
+import org.apache.commons.bcel6.classfile.ElementValue;
+import org.apache.commons.bcel6.classfile.ElementValuePair;
+import org.apache.commons.bcel6.classfile.EnclosingMethod;
+import org.apache.commons.bcel6.classfile.EnumElementValue;
+import org.apache.commons.bcel6.classfile.ExceptionTable;
+import org.apache.commons.bcel6.classfile.FieldOrMethod;
+import org.apache.commons.bcel6.classfile.InnerClass;
+import org.apache.commons.bcel6.classfile.InnerClasses;
+import org.apache.commons.bcel6.classfile.JavaClass;
+import org.apache.commons.bcel6.classfile.LineNumberTable;
+import org.apache.commons.bcel6.classfile.LocalVariable;
+import org.apache.commons.bcel6.classfile.LocalVariableTable;
+import org.apache.commons.bcel6.classfile.LocalVariableTypeTable;
+import org.apache.commons.bcel6.classfile.MethodParameter;
+import org.apache.commons.bcel6.classfile.MethodParameters;
+import org.apache.commons.bcel6.classfile.PMGClass;
+import org.apache.commons.bcel6.classfile.ParameterAnnotationEntry;
+import org.apache.commons.bcel6.classfile.ParameterAnnotations;
+import org.apache.commons.bcel6.classfile.Signature;
+import org.apache.commons.bcel6.classfile.SimpleElementValue;
+import org.apache.commons.bcel6.classfile.SourceFile;
+import org.apache.commons.bcel6.classfile.StackMap;
+import org.apache.commons.bcel6.classfile.StackMapEntry;
+import org.apache.commons.bcel6.classfile.StackMapType;
+import org.apache.commons.bcel6.classfile.Synthetic;
+
+/**
+ * Removes the constants of a class that are not referenced any more, such
+ * as the names and references left behind by transformations, since
+ * {@link ConstantPoolGen} never removes an entry once added.
+ * <p>
+ * The live constants are those referenced from the class header, the
+ * fields, methods and attributes, the instructions of the code and, in
+ * turn, from live constants. They keep their relative order, so that the
+ * operand of an LDC still fits in one byte and the code does not change
+ * in size; every index is then remapped to the new pool.
+ * <p>
+ * A class is left unchanged if it has an attribute whose content is not
+ * known, e.g. an {@link org.apache.commons.bcel6.classfile.Unknown}
+ * attribute, as it may refer to any constant.
+ *
+ * @see ClassGen#setCompactConstantPool(boolean)
+ * @version $Id$
+ * @since 6.0
+ */
+public final class ConstantPoolCompactor {
+
+    /** Thrown internally for attributes that cannot be remapped */
+    private static final class UnknownAttributeException extends Exception {
+
+        private static final long serialVersionUID = 1L;
+    }
+
+    private final ConstantPool cp;
+    private final boolean[] live;
+    private final int[] worklist;
+    private int worklist_size;
+    private int[] map; // null while marking
+
+
+    private ConstantPoolCompactor( ConstantPool cp ) {
+        this.cp = cp;
+        live = new boolean[cp.getLength()];
+        worklist = new int[cp.getLength()];
+    }
+
+
+    /**
+     * Compacts the constant pool of a class. The given class is not
+     * modified.
+     *
+     * @return a copy of the class with only the live constants, or the
+     * class itself if all constants are live or the pool cannot be compacted
+     */
+    public static JavaClass compact( JavaClass clazz ) {
+        JavaClass copy;
+        try {
+            copy = new ClassParser(new ByteArrayInputStream(clazz.getBytes()), clazz.getFileName()).parse();
+        } catch (IOException e) {
+            return clazz;
+        } catch (ClassFormatException e) {
+            return clazz;
+        }
+        copy.setRepository(clazz.getRepository());
+        ConstantPoolCompactor compactor = new ConstantPoolCompactor(copy.getConstantPool());
+        try {
+            compactor.visitClass(copy);
+            compactor.markReferencedConstants();
+            if (!compactor.createMap()) {
+                return clazz;
+            }
+            compactor.visitClass(copy);
+            compactor.rebuildPool();
+        } catch (UnknownAttributeException e) {
+            return clazz;
+        }
+        return copy;
+    }
+
+
+    /**
+     * While marking, marks a constant as live and returns its index,
+     * afterwards returns its new index. 0 stands for no constant.
+     */
+    private int ref( int index ) {
+        if (index <= 0) {
+            return index;
+        }
+        if (map != null) {
+            return map[index];
+        }
+        if (!live[index]) {
+            live[index] = true;
+            worklist[worklist_size++] = index;
+        }
+        return index;
+    }
+
+
+    private void markReferencedConstants() {
+        while (worklist_size > 0) {
+            visitConstant(cp.getConstant(worklist[--worklist_size]));
+        }
+    }
+
+
+    /**
+     * @return false if all constants are live
+     */
+    private boolean createMap() {
+        int n = cp.getLength();
+        map = new int[n];
+        int next = 1;
+        for (int i = 1; i < n; i++) {
+            Constant c = cp.getConstant(i);
+            if (c == null || !live[i]) {
+                continue;
+            }
+            map[i] = next;
+            next += isWide(c) ? 2 : 1;
+        }
+        return next < n;
+    }
+
+
+    private void rebuildPool() {
+        int n = cp.getLength();
+        int length = 1;
+        for (int i = 1; i < n; i++) {
+            if (live[i]) {
+                length = map[i] + (isWide(cp.getConstant(i)) ? 2 : 1);
+            }
+        }
+        Constant[] constants = new Constant[length];
+        for (int i = 1; i < n; i++) {
+            if (live[i]) {
+                Constant c = cp.getConstant(i);
+                visitConstant(c);
+                constants[map[i]] = c;
+            }
+        }
+        cp.setConstantPool(constants);
+    }
+
+
+    private static boolean isWide( Constant c ) {
+        return c.getTag() == Constants.CONSTANT_Long || c.getTag() == Constants.CONSTANT_Double;
+    }
+
+
+    private void visitConstant( Constant c ) {
+        if (c instanceof ConstantClass) {
+            ConstantClass cc = (ConstantClass) c;
+            cc.setNameIndex(ref(cc.getNameIndex()));
+        } else if (c instanceof ConstantString) {
+            ConstantString cs = (ConstantString) c;
+            cs.setStringIndex(ref(cs.getStringIndex()));
+        } else if (c instanceof ConstantNameAndType) {
+            ConstantNameAndType nat = (ConstantNameAndType) c;
+            nat.setNameIndex(ref(nat.getNameIndex()));
+            nat.setSignatureIndex(ref(nat.getSignatureIndex()));
+        } else if (c instanceof ConstantInvokeDynamic) {
+            // The first index refers to the BootstrapMethods attribute
+            ConstantCP cp_ref = (ConstantCP) c;
+            cp_ref.setNameAndTypeIndex(ref(cp_ref.getNameAndTypeIndex()));
+        } else if (c instanceof ConstantCP) {
+            ConstantCP cp_ref = (ConstantCP) c;
+            cp_ref.setClassIndex(ref(cp_ref.getClassIndex()));
+            cp_ref.setNameAndTypeIndex(ref(cp_ref.getNameAndTypeIndex()));
+        } else if (c instanceof ConstantMethodHandle) {
+            ConstantMethodHandle mh = (ConstantMethodHandle) c;
+            mh.setReferenceIndex(ref(mh.getReferenceIndex()));
+        } else if (c instanceof ConstantMethodType) {
+            ConstantMethodType mt = (ConstantMethodType) c;
+            mt.setDescriptorIndex(ref(mt.getDescriptorIndex()));
+        }
+    }
+
+
+    private void visitClass( JavaClass clazz ) throws UnknownAttributeException {
+        clazz.setClassNameIndex(ref(clazz.getClassNameIndex()));
+        clazz.setSuperclassNameIndex(ref(clazz.getSuperclassNameIndex()));
+        int[] interfaces = clazz.getInterfaceIndices();
+        for (int i = 0; i < interfaces.length; i++) {
+            interfaces[i] = ref(interfaces[i]);
+        }
+        clazz.setInterfaces(interfaces);
+        for (FieldOrMethod f : clazz.getFields()) {
+            visitMember(f);
+        }
+        for (FieldOrMethod m : clazz.getMethods()) {
+            visitMember(m);
+        }
+        visitAttributes(clazz.getAttributes());
+    }
+
+
+    private void visitMember( FieldOrMethod member ) throws UnknownAttributeException {
+        member.setNameIndex(ref(member.getNameIndex()));
+        member.setSignatureIndex(ref(member.getSignatureIndex()));
+        visitAttributes(member.getAttributes());
+    }
+
+
+    private void visitAttributes( Attribute[] attributes ) throws UnknownAttributeException {
+        for (Attribute a : attributes) {
+            a.setNameIndex(ref(a.getNameIndex()));
+            if (a instanceof Code) {
+                visitCode((Code) a);
+            } else if (a instanceof ConstantValue) {
+                ConstantValue cv = (ConstantValue) a;
+                cv.setConstantValueIndex(ref(cv.getConstantValueIndex()));
+            } else if (a instanceof SourceFile) {
+                SourceFile sf = (SourceFile) a;
+                sf.setSourceFileIndex(ref(sf.getSourceFileIndex()));
+            } else if (a instanceof Signature) {
+                Signature s = (Signature) a;
+                s.setSignatureIndex(ref(s.getSignatureIndex()));
+            } else if (a instanceof ExceptionTable) {
+                ExceptionTable et = (ExceptionTable) a;
+                int[] exceptions = et.getExceptionIndexTable();
+                for (int i = 0; i < exceptions.length; i++) {
+                    exceptions[i] = ref(exceptions[i]);
+                }
+                et.setExceptionIndexTable(exceptions);
+            } else if (a instanceof InnerClasses) {
+                for (InnerClass ic : ((InnerClasses) a).getInnerClasses()) {
+                    ic.setInnerClassIndex(ref(ic.getInnerClassIndex()));
+                    ic.setOuterClassIndex(ref(ic.getOuterClassIndex()));
+                    ic.setInnerNameIndex(ref(ic.getInnerNameIndex()));
+                }
+            } else if (a instanceof EnclosingMethod) {
+                EnclosingMethod em = (EnclosingMethod) a;
+                em.setEnclosingClassIndex(ref(em.getEnclosingClassIndex()));
+                em.setEnclosingMethodIndex(ref(em.getEnclosingMethodIndex()));
+            } else if (a instanceof LocalVariableTable) {
+                visitLocalVariables(((LocalVariableTable) a).getLocalVariableTable());
+            } else if (a instanceof LocalVariableTypeTable) {
+                visitLocalVariables(((LocalVariableTypeTable) a).getLocalVariableTypeTable());
+            } else if (a instanceof StackMap) {
+                for (StackMapEntry e : ((StackMap) a).getStackMap()) {
+                    visitStackMapTypes(e.getTypesOfLocals());
+                    visitStackMapTypes(e.getTypesOfStackItems());
+                }
+            } else if (a instanceof BootstrapMethods) {
+                for (BootstrapMethod bm : ((BootstrapMethods) a).getBootstrapMethods()) {
+                    bm.setBootstrapMethodRef(ref(bm.getBootstrapMethodRef()));
+                    int[] arguments = bm.getBootstrapArguments();
+                    for (int i = 0; i < arguments.length; i++) {
+                        arguments[i] = ref(arguments[i]);
+                    }
+                    bm.setBootstrapArguments(arguments);
+                }
+            } else if (a instanceof MethodParameters) {
+                for (MethodParameter p : ((MethodParameters) a).getParameters()) {
+                    p.setNameIndex(ref(p.getNameIndex()));
+                }
+            } else if (a instanceof PMGClass) {
+                PMGClass pmg = (PMGClass) a;
+                pmg.setPMGClassIndex(ref(pmg.getPMGClassIndex()));
+                pmg.setPMGIndex(ref(pmg.getPMGIndex()));
+            } else if (a instanceof Annotations) {
+                Annotations annotations = (Annotations) a;
+                annotations.setAnnotationTable(visitAnnotations(annotations.getAnnotationEntries()));
+            } else if (a instanceof ParameterAnnotations) {
+                ParameterAnnotations annotations = (ParameterAnnotations) a;
+                ParameterAnnotationEntry[] entries = annotations.getParameterAnnotationTable();
+                for (int i = 0; i < entries.length; i++) {
+                    entries[i] = new ParameterAnnotationEntry(visitAnnotations(entries[i].getAnnotationEntries()));
+                }
+                annotations.setParameterAnnotationTable(entries);
+            } else if (a instanceof AnnotationDefault) {
+                AnnotationDefault ad = (AnnotationDefault) a;
+                ad.setDefaultValue(visitElementValue(ad.getDefaultValue()));
+            } else if (!(a instanceof LineNumberTable || a instanceof Deprecated || a instanceof Synthetic)) {
+                throw new UnknownAttributeException();
+            }
+        }
+    }
+
+
+    /**
+     * Remaps the operands of the instructions in place; as the constants
+     * keep their order, an LDC operand cannot grow beyond one byte.
+     */
+    private void visitCode( Code code ) throws UnknownAttributeException {
+        byte[] bytes = code.getCode();
+        InstructionList il = new InstructionList(bytes);
+        for (InstructionHandle ih = il.getStart(); ih != null; ih = ih.getNext()) {
+            Instruction inst = ih.getInstruction();
+            if (inst instanceof CPInstruction) {
+                int index = ref(((CPInstruction) inst).getIndex());
+                int pos = ih.getPosition() + 1;
+                if (inst.getOpcode() == Constants.LDC) {
+                    bytes[pos] = (byte) index;
+                } else {
+                    bytes[pos] = (byte) (index >> 8);
+                    bytes[pos + 1] = (byte) index;
+                }
+            }
+        }
+        il.dispose();
+        code.setCode(bytes);
+        for (CodeException e : code.getExceptionTable()) {
+            e.setCatchType(ref(e.getCatchType()));
+        }
+        visitAttributes(code.getAttributes());
+    }
+
+
+    private void visitLocalVariables( LocalVariable[] variables ) {
+        for (LocalVariable l : variables) {
+            l.setNameIndex(ref(l.getNameIndex()));
+            l.setSignatureIndex(ref(l.getSignatureIndex()));
+        }
+    }
+
+
+    private void visitStackMapTypes( StackMapType[] types ) {
+        if (types == null) {
+            return;
+        }
+        for (StackMapType t : types) {
+            if (t.getType() == Constants.ITEM_Object) {
+                t.setIndex(ref(t.getIndex()));
+            }
+        }
+    }
+
+
+    private AnnotationEntry[] visitAnnotations( AnnotationEntry[] entries ) {
+        AnnotationEntry[] result = new AnnotationEntry[entries.length];
+        for (int i = 0; i < entries.length; i++) {
+            result[i] = visitAnnotation(entries[i]);
+        }
+        return result;
+    }
+
+
+    /**
+     * @return a copy of the annotation with remapped indices, as annotations
+     * are immutable
+     */
+    private AnnotationEntry visitAnnotation( AnnotationEntry entry ) {
+        AnnotationEntry result = new AnnotationEntry(ref(entry.getAnnotationTypeIndex()), cp,
+                entry.isRuntimeVisible());
+        for (ElementValuePair pair : entry.getElementValuePairs()) {
+            result.addElementNameValuePair(new ElementValuePair(ref(pair.getNameIndex()),
+                    visitElementValue(pair.getValue()), cp));
+        }
+        return result;
+    }
+
+
+    private ElementValue visitElementValue( ElementValue value ) {
+        int type = value.getElementValueType();
+        if (value instanceof SimpleElementValue) {
+            SimpleElementValue simple = (SimpleElementValue) value;
+            simple.setIndex(ref(simple.getIndex()));
+            return simple;
+        } else if (value instanceof EnumElementValue) {
+            EnumElementValue e = (EnumElementValue) value;
+            return new EnumElementValue(type, ref(e.getTypeIndex()), ref(e.getValueIndex()), cp);
+        } else if (value instanceof ClassElementValue) {
+            return new ClassElementValue(type, ref(((ClassElementValue) value).getIndex()), cp);
+        } else if (value instanceof AnnotationElementValue) {
+            return new AnnotationElementValue(type,
+                    visitAnnotation(((AnnotationElementValue) value).getAnnotationEntry()), cp);
+        } else if (value instanceof ArrayElementValue) {
+            ElementValue[] values = ((ArrayElementValue) value).getElementValuesArray();
+            ElementValue[] result = new ElementValue[values.length];
+            for (int i = 0; i < values.length; i++) {
+                result[i] = visitElementValue(values[i]);
+            }
+            return new ArrayElementValue(type, result, cp);
+        }
+        return value;
+    }
+}
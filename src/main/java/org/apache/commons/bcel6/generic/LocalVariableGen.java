@@ -37,6 +37,9 @@ public class LocalVariableGen implements InstructionTargeter, NamedAndTyped, Clo
     private Type type;
     private InstructionHandle start;
     private InstructionHandle end;
+    /** Slot and start of the variable in the parsed class file, -1 if created otherwise. */
+    private int orig_index = -1;
+    private int orig_start_pc = -1;
 
 
     /**
@@ -98,6 +101,24 @@ public class LocalVariableGen implements InstructionTargeter, NamedAndTyped, Clo
     }
 
 
+    /**
+     * Records where the variable was found in the parsed class file, so a
+     * LocalVariableTypeTable entry can follow it.
+     */
+    void setOrigin( int index, int start_pc ) {
+        orig_index = index;
+        orig_start_pc = start_pc;
+    }
+
+
+    /**
+     * @return whether the variable was read from the class file with the given slot and start
+     */
+    boolean hasOrigin( int index, int start_pc ) {
+        return orig_index == index && orig_start_pc == start_pc;
+    }
+
+
     public int getIndex() {
         return index;
     }
@@ -138,14 +159,22 @@ public class LocalVariableGen implements InstructionTargeter, NamedAndTyped, Clo
 
 
     public void setStart( InstructionHandle start ) { // TODO could be package-protected?
-        BranchInstruction.notifyTarget(this.start, start, this);
+        InstructionHandle old_ih = this.start;
+        BranchInstruction.notifyTarget(old_ih, start, this);
         this.start = start;
+        if (old_ih != null && (old_ih == this.start || old_ih == this.end)) {
+            old_ih.addTargeter(this); // still targeted by the other end
+        }
     }
 
 
     public void setEnd( InstructionHandle end ) { // TODO could be package-protected?
-        BranchInstruction.notifyTarget(this.end, end, this);
+        InstructionHandle old_ih = this.end;
+        BranchInstruction.notifyTarget(old_ih, end, this);
         this.end = end;
+        if (old_ih != null && (old_ih == this.start || old_ih == this.end)) {
+            old_ih.addTargeter(this); // still targeted by the other end
+        }
     }
 
 
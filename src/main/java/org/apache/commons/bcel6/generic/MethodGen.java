@@ -35,12 +35,15 @@ import org.apache.commons.bcel6.classfile.LineNumber;
 import org.apache.commons.bcel6.classfile.LineNumberTable;
 import org.apache.commons.bcel6.classfile.LocalVariable;
 import org.apache.commons.bcel6.classfile.LocalVariableTable;
+import org.apache.commons.bcel6.classfile.LocalVariableTypeTable;
 import org.apache.commons.bcel6.classfile.Method;
 import org.apache.commons.bcel6.classfile.ParameterAnnotationEntry;
 import org.apache.commons.bcel6.classfile.ParameterAnnotations;
 import org.apache.commons.bcel6.classfile.RuntimeVisibleParameterAnnotations;
 import org.apache.commons.bcel6.classfile.Utility;
 import org.apache.commons.bcel6.util.BCELComparator;
+import org.apache.commons.bcel6.util.Metric;
+import org.apache.commons.bcel6.util.Metrics;
 
 /** 
  * Template class for building up a method. This is done by defining exception
@@ -235,7 +238,7 @@ public class MethodGen extends FieldGenOrMethodGen {
                                 end = il.getEnd();
                             }
                             addLocalVariable(l.getName(), Type.getType(l.getSignature()), l
-                                    .getIndex(), start, end);
+                                    .getIndex(), start, end).setOrigin(l.getIndex(), l.getStartPC());
                         }
                     } else {
                         addCodeAttribute(a);
@@ -614,6 +617,7 @@ public class MethodGen extends FieldGenOrMethodGen {
      * @return method object
      */
     public Method getMethod() {
+        long start = Metrics.start();
         String signature = getSignature();
         final ConstantPoolGen _cp = super.getConstantPool();
         int name_index = _cp.addUtf8(super.getName());
@@ -634,6 +638,18 @@ public class MethodGen extends FieldGenOrMethodGen {
         if ((line_number_vec.size() > 0) && !strip_attributes) {
             addCodeAttribute(lnt = getLineNumberTable(_cp));
         }
+        /* A LocalVariableTypeTable read from the class file has to follow the local variables
+         */
+        int lvtt_pos = -1;
+        LocalVariableTypeTable lvtt = null;
+        for (int i = 0; i < code_attrs_vec.size(); i++) {
+            if (code_attrs_vec.get(i) instanceof LocalVariableTypeTable) {
+                lvtt_pos = i;
+                lvtt = (LocalVariableTypeTable) code_attrs_vec.get(i);
+                code_attrs_vec.set(i, getLocalVariableTypeTable(lvt, lvtt));
+                break;
+            }
+        }
         Attribute[] code_attrs = getCodeAttributes();
         /* Each attribute causes 6 additional header bytes
          */
@@ -668,6 +684,9 @@ public class MethodGen extends FieldGenOrMethodGen {
         Method m = new Method(super.getAccessFlags(), name_index, signature_index, getAttributes(), _cp
                 .getConstantPool());
         // Undo effects of adding attributes
+        if (lvtt != null) {
+            code_attrs_vec.set(lvtt_pos, lvtt);
+        }
         if (lvt != null) {
             removeCodeAttribute(lvt);
         }
@@ -680,10 +699,40 @@ public class MethodGen extends FieldGenOrMethodGen {
         if (et != null) {
             removeAttribute(et);
         }
+        Metrics.time(Metric.GENERATE_METHOD, class_name, (byte_code != null) ? byte_code.length : 0, start);
         return m;
     }
 
 
+    /**
+     * @return the entries of the LocalVariableTypeTable read from the class
+     * file, moved along with the local variables they belong to; entries of
+     * removed variables are dropped
+     */
+    private LocalVariableTypeTable getLocalVariableTypeTable( LocalVariableTable lvt,
+            LocalVariableTypeTable lvtt ) {
+        List<LocalVariable> entries = new ArrayList<>();
+        if (lvt != null) {
+            LocalVariableGen[] lg = getLocalVariables();
+            LocalVariable[] lv = lvt.getLocalVariableTable(); // in the same order
+            for (LocalVariable entry : lvtt.getLocalVariableTypeTable()) {
+                for (int i = 0; i < lg.length; i++) {
+                    if (lg[i].hasOrigin(entry.getIndex(), entry.getStartPC())) {
+                        LocalVariable moved = entry.copy();
+                        moved.setIndex(lv[i].getIndex());
+                        moved.setStartPC(lv[i].getStartPC());
+                        moved.setLength(lv[i].getLength());
+                        entries.add(moved);
+                        break;
+                    }
+                }
+            }
+        }
+        return new LocalVariableTypeTable(lvtt.getNameIndex(), 2 + 10 * entries.size(),
+                entries.toArray(new LocalVariable[entries.size()]), lvtt.getConstantPool());
+    }
+
+
     /**
      * Remove all NOPs from the instruction list (if possible) and update every
      * object referring to them, i.e., branch instructions, local variables and
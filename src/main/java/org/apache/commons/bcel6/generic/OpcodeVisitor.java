@@ -0,0 +1,727 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.commons.bcel6.generic;
+
+import java.io.IOException;
+
+import org.apache.commons.bcel6.Constants;
+import org.apache.commons.bcel6.util.ByteSequence;
+
+/**
+ * Table driven alternative to the double dispatch of {@link Visitor}.
+ * Handlers are registered per opcode or per instruction category (i.e.,
+ * a class or interface such as LoadInstruction or StackProducer) and an
+ * instruction is dispatched with a single array lookup on its opcode.
+ * Only the handler registered for the opcode is called, whereas
+ * Instruction.accept(Visitor) calls the visitXXX() methods of every
+ * category the instruction belongs to.
+ * <p>
+ * Registrations are resolved to opcodes immediately; for an opcode that
+ * matches several registrations the last one wins, so register general
+ * categories first and specific ones later. Opcodes without a handler
+ * are passed to the default handler, if any.
+ * <p>
+ * Existing Visitor implementations can be used with {@link #accept(Visitor)}
+ * (the full double dispatch, e.g. as a default handler) or
+ * {@link #visitLeaf(Instruction, Visitor)}, which only calls the
+ * visitXXX() method of the concrete instruction class.
+ *
+ * @version $Id$
+ * @see Visitor
+ * @since 6.0
+ */
+public class OpcodeVisitor {
+
+    /**
+     * Handles instructions of type T, which is an Instruction subclass or one
+     * of the interfaces instructions implement, such as StackProducer.
+     */
+    public interface Handler<T> {
+
+        void visit( T obj );
+    }
+
+    /** Instruction class for each valid opcode, null for the others. */
+    private static final Class<?>[] CLASSES = new Class<?>[256];
+
+    static {
+        byte[] code = new byte[32]; // long enough for any instruction with zero operands
+        for (int opcode = 0; opcode < CLASSES.length; opcode++) {
+            if (opcode == Constants.WIDE) {
+                continue; // prefix only, never an instruction of its own
+            }
+            code[0] = (byte) opcode;
+            try {
+                CLASSES[opcode] = Instruction.readInstruction(new ByteSequence(code)).getClass();
+            } catch (ClassGenException e) {
+                // undefined opcode
+            } catch (IOException e) {
+                throw new IllegalStateException(e); // never happens, reading from memory
+            }
+        }
+    }
+
+    private final Handler<Instruction>[] handlers;
+    private Handler<Instruction> defaultHandler;
+
+
+    @SuppressWarnings("unchecked")
+    public OpcodeVisitor() {
+        handlers = (Handler<Instruction>[]) new Handler<?>[CLASSES.length];
+    }
+
+
+    /**
+     * Register handler for the given opcode.
+     *
+     * @param opcode opcode as defined in Constants, e.g. Constants.ALOAD_0
+     * @param handler the handler, or null to remove the registration
+     * @return this object, for chaining
+     */
+    public OpcodeVisitor register( int opcode, Handler<Instruction> handler ) {
+        if (opcode < 0 || opcode >= CLASSES.length || CLASSES[opcode] == null) {
+            throw new IllegalArgumentException("Invalid opcode: " + opcode);
+        }
+        handlers[opcode] = handler;
+        return this;
+    }
+
+
+    /**
+     * Register handler for all opcodes whose instructions are instances of
+     * the given class or interface, e.g. LoadInstruction.class.
+     *
+     * @param category instruction class or interface
+     * @param handler the handler, or null to remove the registrations
+     * @return this object, for chaining
+     */
+    @SuppressWarnings("unchecked")
+    public <T> OpcodeVisitor register( Class<T> category, Handler<? super T> handler ) {
+        boolean found = false;
+        for (int opcode = 0; opcode < CLASSES.length; opcode++) {
+            if (CLASSES[opcode] != null && category.isAssignableFrom(CLASSES[opcode])) {
+                handlers[opcode] = (Handler<Instruction>) handler;
+                found = true;
+            }
+        }
+        if (!found) {
+            throw new IllegalArgumentException("No instruction is a " + category.getName());
+        }
+        return this;
+    }
+
+
+    /**
+     * @param handler called for opcodes without a handler of their own, may be null
+     * @return this object, for chaining
+     */
+    public OpcodeVisitor setDefaultHandler( Handler<Instruction> handler ) {
+        defaultHandler = handler;
+        return this;
+    }
+
+
+    /**
+     * @return handler registered for opcode, or null
+     */
+    public Handler<Instruction> getHandler( int opcode ) {
+        return handlers[opcode];
+    }
+
+
+    /**
+     * Dispatch a single instruction to its handler.
+     */
+    public void visit( Instruction obj ) {
+        Handler<Instruction> handler = handlers[obj.getOpcode()];
+        if (handler == null) {
+            handler = defaultHandler;
+            if (handler == null) {
+                return;
+            }
+        }
+        handler.visit(obj);
+    }
+
+
+    /**
+     * Dispatch all instructions of the list in order.
+     */
+    public void visit( InstructionList il ) {
+        for (InstructionHandle ih = il.getStart(); ih != null; ih = ih.getNext()) {
+            visit(ih.getInstruction());
+        }
+    }
+
+
+    /**
+     * @return handler passing each instruction to obj.accept(v), i.e.,
+     * through the full double dispatch of the visitor
+     */
+    public static Handler<Instruction> accept( final Visitor v ) {
+        return new Handler<Instruction>() {
+
+            @Override
+            public void visit( Instruction obj ) {
+                obj.accept(v);
+            }
+        };
+    }
+
+
+    /**
+     * @return handler passing each instruction to visitLeaf(obj, v)
+     */
+    public static Handler<Instruction> leaf( final Visitor v ) {
+        return new Handler<Instruction>() {
+
+            @Override
+            public void visit( Instruction obj ) {
+                visitLeaf(obj, v);
+            }
+        };
+    }
+
+
+    /**
+     * Call only the visitXXX() method of the concrete instruction class,
+     * e.g. visitALOAD() for ALOAD_0, skipping the methods for the categories
+     * the instruction belongs to (visitLoadInstruction(), visitStackProducer()
+     * etc.). Equivalent to obj.accept(v) for visitors that only implement the
+     * methods of concrete instructions, such as the verifier's ExecutionVisitor.
+     *
+     * @param obj instruction to visit
+     * @param v visitor
+     */
+    public static void visitLeaf( Instruction obj, Visitor v ) {
+        switch (obj.getOpcode()) {
+            case Constants.NOP:
+                v.visitNOP((NOP) obj);
+                break;
+            case Constants.ACONST_NULL:
+                v.visitACONST_NULL((ACONST_NULL) obj);
+                break;
+            case Constants.ICONST_M1:
+            case Constants.ICONST_0:
+            case Constants.ICONST_1:
+            case Constants.ICONST_2:
+            case Constants.ICONST_3:
+            case Constants.ICONST_4:
+            case Constants.ICONST_5:
+                v.visitICONST((ICONST) obj);
+                break;
+            case Constants.LCONST_0:
+            case Constants.LCONST_1:
+                v.visitLCONST((LCONST) obj);
+                break;
+            case Constants.FCONST_0:
+            case Constants.FCONST_1:
+            case Constants.FCONST_2:
+                v.visitFCONST((FCONST) obj);
+                break;
+            case Constants.DCONST_0:
+            case Constants.DCONST_1:
+                v.visitDCONST((DCONST) obj);
+                break;
+            case Constants.BIPUSH:
+                v.visitBIPUSH((BIPUSH) obj);
+                break;
+            case Constants.SIPUSH:
+                v.visitSIPUSH((SIPUSH) obj);
+                break;
+            case Constants.LDC:
+            case Constants.LDC_W:
+                v.visitLDC((LDC) obj);
+                break;
+            case Constants.LDC2_W:
+                v.visitLDC2_W((LDC2_W) obj);
+                break;
+            case Constants.ILOAD:
+            case Constants.ILOAD_0:
+            case Constants.ILOAD_1:
+            case Constants.ILOAD_2:
+            case Constants.ILOAD_3:
+                v.visitILOAD((ILOAD) obj);
+                break;
+            case Constants.LLOAD:
+            case Constants.LLOAD_0:
+            case Constants.LLOAD_1:
+            case Constants.LLOAD_2:
+            case Constants.LLOAD_3:
+                v.visitLLOAD((LLOAD) obj);
+                break;
+            case Constants.FLOAD:
+            case Constants.FLOAD_0:
+            case Constants.FLOAD_1:
+            case Constants.FLOAD_2:
+            case Constants.FLOAD_3:
+                v.visitFLOAD((FLOAD) obj);
+                break;
+            case Constants.DLOAD:
+            case Constants.DLOAD_0:
+            case Constants.DLOAD_1:
+            case Constants.DLOAD_2:
+            case Constants.DLOAD_3:
+                v.visitDLOAD((DLOAD) obj);
+                break;
+            case Constants.ALOAD:
+            case Constants.ALOAD_0:
+            case Constants.ALOAD_1:
+            case Constants.ALOAD_2:
+            case Constants.ALOAD_3:
+                v.visitALOAD((ALOAD) obj);
+                break;
+            case Constants.IALOAD:
+                v.visitIALOAD((IALOAD) obj);
+                break;
+            case Constants.LALOAD:
+                v.visitLALOAD((LALOAD) obj);
+                break;
+            case Constants.FALOAD:
+                v.visitFALOAD((FALOAD) obj);
+                break;
+            case Constants.DALOAD:
+                v.visitDALOAD((DALOAD) obj);
+                break;
+            case Constants.AALOAD:
+                v.visitAALOAD((AALOAD) obj);
+                break;
+            case Constants.BALOAD:
+                v.visitBALOAD((BALOAD) obj);
+                break;
+            case Constants.CALOAD:
+                v.visitCALOAD((CALOAD) obj);
+                break;
+            case Constants.SALOAD:
+                v.visitSALOAD((SALOAD) obj);
+                break;
+            case Constants.ISTORE:
+            case Constants.ISTORE_0:
+            case Constants.ISTORE_1:
+            case Constants.ISTORE_2:
+            case Constants.ISTORE_3:
+                v.visitISTORE((ISTORE) obj);
+                break;
+            case Constants.LSTORE:
+            case Constants.LSTORE_0:
+            case Constants.LSTORE_1:
+            case Constants.LSTORE_2:
+            case Constants.LSTORE_3:
+                v.visitLSTORE((LSTORE) obj);
+                break;
+            case Constants.FSTORE:
+            case Constants.FSTORE_0:
+            case Constants.FSTORE_1:
+            case Constants.FSTORE_2:
+            case Constants.FSTORE_3:
+                v.visitFSTORE((FSTORE) obj);
+                break;
+            case Constants.DSTORE:
+            case Constants.DSTORE_0:
+            case Constants.DSTORE_1:
+            case Constants.DSTORE_2:
+            case Constants.DSTORE_3:
+                v.visitDSTORE((DSTORE) obj);
+                break;
+            case Constants.ASTORE:
+            case Constants.ASTORE_0:
+            case Constants.ASTORE_1:
+            case Constants.ASTORE_2:
+            case Constants.ASTORE_3:
+                v.visitASTORE((ASTORE) obj);
+                break;
+            case Constants.IASTORE:
+                v.visitIASTORE((IASTORE) obj);
+                break;
+            case Constants.LASTORE:
+                v.visitLASTORE((LASTORE) obj);
+                break;
+            case Constants.FASTORE:
+                v.visitFASTORE((FASTORE) obj);
+                break;
+            case Constants.DASTORE:
+                v.visitDASTORE((DASTORE) obj);
+                break;
+            case Constants.AASTORE:
+                v.visitAASTORE((AASTORE) obj);
+                break;
+            case Constants.BASTORE:
+                v.visitBASTORE((BASTORE) obj);
+                break;
+            case Constants.CASTORE:
+                v.visitCASTORE((CASTORE) obj);
+                break;
+            case Constants.SASTORE:
+                v.visitSASTORE((SASTORE) obj);
+                break;
+            case Constants.POP:
+                v.visitPOP((POP) obj);
+                break;
+            case Constants.POP2:
+                v.visitPOP2((POP2) obj);
+                break;
+            case Constants.DUP:
+                v.visitDUP((DUP) obj);
+                break;
+            case Constants.DUP_X1:
+                v.visitDUP_X1((DUP_X1) obj);
+                break;
+            case Constants.DUP_X2:
+                v.visitDUP_X2((DUP_X2) obj);
+                break;
+            case Constants.DUP2:
+                v.visitDUP2((DUP2) obj);
+                break;
+            case Constants.DUP2_X1:
+                v.visitDUP2_X1((DUP2_X1) obj);
+                break;
+            case Constants.DUP2_X2:
+                v.visitDUP2_X2((DUP2_X2) obj);
+                break;
+            case Constants.SWAP:
+                v.visitSWAP((SWAP) obj);
+                break;
+            case Constants.IADD:
+                v.visitIADD((IADD) obj);
+                break;
+            case Constants.LADD:
+                v.visitLADD((LADD) obj);
+                break;
+            case Constants.FADD:
+                v.visitFADD((FADD) obj);
+                break;
+            case Constants.DADD:
+                v.visitDADD((DADD) obj);
+                break;
+            case Constants.ISUB:
+                v.visitISUB((ISUB) obj);
+                break;
+            case Constants.LSUB:
+                v.visitLSUB((LSUB) obj);
+                break;
+            case Constants.FSUB:
+                v.visitFSUB((FSUB) obj);
+                break;
+            case Constants.DSUB:
+                v.visitDSUB((DSUB) obj);
+                break;
+            case Constants.IMUL:
+                v.visitIMUL((IMUL) obj);
+                break;
+            case Constants.LMUL:
+                v.visitLMUL((LMUL) obj);
+                break;
+            case Constants.FMUL:
+                v.visitFMUL((FMUL) obj);
+                break;
+            case Constants.DMUL:
+                v.visitDMUL((DMUL) obj);
+                break;
+            case Constants.IDIV:
+                v.visitIDIV((IDIV) obj);
+                break;
+            case Constants.LDIV:
+                v.visitLDIV((LDIV) obj);
+                break;
+            case Constants.FDIV:
+                v.visitFDIV((FDIV) obj);
+                break;
+            case Constants.DDIV:
+                v.visitDDIV((DDIV) obj);
+                break;
+            case Constants.IREM:
+                v.visitIREM((IREM) obj);
+                break;
+            case Constants.LREM:
+                v.visitLREM((LREM) obj);
+                break;
+            case Constants.FREM:
+                v.visitFREM((FREM) obj);
+                break;
+            case Constants.DREM:
+                v.visitDREM((DREM) obj);
+                break;
+            case Constants.INEG:
+                v.visitINEG((INEG) obj);
+                break;
+            case Constants.LNEG:
+                v.visitLNEG((LNEG) obj);
+                break;
+            case Constants.FNEG:
+                v.visitFNEG((FNEG) obj);
+                break;
+            case Constants.DNEG:
+                v.visitDNEG((DNEG) obj);
+                break;
+            case Constants.ISHL:
+                v.visitISHL((ISHL) obj);
+                break;
+            case Constants.LSHL:
+                v.visitLSHL((LSHL) obj);
+                break;
+            case Constants.ISHR:
+                v.visitISHR((ISHR) obj);
+                break;
+            case Constants.LSHR:
+                v.visitLSHR((LSHR) obj);
+                break;
+            case Constants.IUSHR:
+                v.visitIUSHR((IUSHR) obj);
+                break;
+            case Constants.LUSHR:
+                v.visitLUSHR((LUSHR) obj);
+                break;
+            case Constants.IAND:
+                v.visitIAND((IAND) obj);
+                break;
+            case Constants.LAND:
+                v.visitLAND((LAND) obj);
+                break;
+            case Constants.IOR:
+                v.visitIOR((IOR) obj);
+                break;
+            case Constants.LOR:
+                v.visitLOR((LOR) obj);
+                break;
+            case Constants.IXOR:
+                v.visitIXOR((IXOR) obj);
+                break;
+            case Constants.LXOR:
+                v.visitLXOR((LXOR) obj);
+                break;
+            case Constants.IINC:
+                v.visitIINC((IINC) obj);
+                break;
+            case Constants.I2L:
+                v.visitI2L((I2L) obj);
+                break;
+            case Constants.I2F:
+                v.visitI2F((I2F) obj);
+                break;
+            case Constants.I2D:
+                v.visitI2D((I2D) obj);
+                break;
+            case Constants.L2I:
+                v.visitL2I((L2I) obj);
+                break;
+            case Constants.L2F:
+                v.visitL2F((L2F) obj);
+                break;
+            case Constants.L2D:
+                v.visitL2D((L2D) obj);
+                break;
+            case Constants.F2I:
+                v.visitF2I((F2I) obj);
+                break;
+            case Constants.F2L:
+                v.visitF2L((F2L) obj);
+                break;
+            case Constants.F2D:
+                v.visitF2D((F2D) obj);
+                break;
+            case Constants.D2I:
+                v.visitD2I((D2I) obj);
+                break;
+            case Constants.D2L:
+                v.visitD2L((D2L) obj);
+                break;
+            case Constants.D2F:
+                v.visitD2F((D2F) obj);
+                break;
+            case Constants.I2B:
+                v.visitI2B((I2B) obj);
+                break;
+            case Constants.I2C:
+                v.visitI2C((I2C) obj);
+                break;
+            case Constants.I2S:
+                v.visitI2S((I2S) obj);
+                break;
+            case Constants.LCMP:
+                v.visitLCMP((LCMP) obj);
+                break;
+            case Constants.FCMPL:
+                v.visitFCMPL((FCMPL) obj);
+                break;
+            case Constants.FCMPG:
+                v.visitFCMPG((FCMPG) obj);
+                break;
+            case Constants.DCMPL:
+                v.visitDCMPL((DCMPL) obj);
+                break;
+            case Constants.DCMPG:
+                v.visitDCMPG((DCMPG) obj);
+                break;
+            case Constants.IFEQ:
+                v.visitIFEQ((IFEQ) obj);
+                break;
+            case Constants.IFNE:
+                v.visitIFNE((IFNE) obj);
+                break;
+            case Constants.IFLT:
+                v.visitIFLT((IFLT) obj);
+                break;
+            case Constants.IFGE:
+                v.visitIFGE((IFGE) obj);
+                break;
+            case Constants.IFGT:
+                v.visitIFGT((IFGT) obj);
+                break;
+            case Constants.IFLE:
+                v.visitIFLE((IFLE) obj);
+                break;
+            case Constants.IF_ICMPEQ:
+                v.visitIF_ICMPEQ((IF_ICMPEQ) obj);
+                break;
+            case Constants.IF_ICMPNE:
+                v.visitIF_ICMPNE((IF_ICMPNE) obj);
+                break;
+            case Constants.IF_ICMPLT:
+                v.visitIF_ICMPLT((IF_ICMPLT) obj);
+                break;
+            case Constants.IF_ICMPGE:
+                v.visitIF_ICMPGE((IF_ICMPGE) obj);
+                break;
+            case Constants.IF_ICMPGT:
+                v.visitIF_ICMPGT((IF_ICMPGT) obj);
+                break;
+            case Constants.IF_ICMPLE:
+                v.visitIF_ICMPLE((IF_ICMPLE) obj);
+                break;
+            case Constants.IF_ACMPEQ:
+                v.visitIF_ACMPEQ((IF_ACMPEQ) obj);
+                break;
+            case Constants.IF_ACMPNE:
+                v.visitIF_ACMPNE((IF_ACMPNE) obj);
+                break;
+            case Constants.GOTO:
+                v.visitGOTO((GOTO) obj);
+                break;
+            case Constants.JSR:
+                v.visitJSR((JSR) obj);
+                break;
+            case Constants.RET:
+                v.visitRET((RET) obj);
+                break;
+            case Constants.TABLESWITCH:
+                v.visitTABLESWITCH((TABLESWITCH) obj);
+                break;
+            case Constants.LOOKUPSWITCH:
+                v.visitLOOKUPSWITCH((LOOKUPSWITCH) obj);
+                break;
+            case Constants.IRETURN:
+                v.visitIRETURN((IRETURN) obj);
+                break;
+            case Constants.LRETURN:
+                v.visitLRETURN((LRETURN) obj);
+                break;
+            case Constants.FRETURN:
+                v.visitFRETURN((FRETURN) obj);
+                break;
+            case Constants.DRETURN:
+                v.visitDRETURN((DRETURN) obj);
+                break;
+            case Constants.ARETURN:
+                v.visitARETURN((ARETURN) obj);
+                break;
+            case Constants.RETURN:
+                v.visitRETURN((RETURN) obj);
+                break;
+            case Constants.GETSTATIC:
+                v.visitGETSTATIC((GETSTATIC) obj);
+                break;
+            case Constants.PUTSTATIC:
+                v.visitPUTSTATIC((PUTSTATIC) obj);
+                break;
+            case Constants.GETFIELD:
+                v.visitGETFIELD((GETFIELD) obj);
+                break;
+            case Constants.PUTFIELD:
+                v.visitPUTFIELD((PUTFIELD) obj);
+                break;
+            case Constants.INVOKEVIRTUAL:
+                v.visitINVOKEVIRTUAL((INVOKEVIRTUAL) obj);
+                break;
+            case Constants.INVOKESPECIAL:
+                v.visitINVOKESPECIAL((INVOKESPECIAL) obj);
+                break;
+            case Constants.INVOKESTATIC:
+                v.visitINVOKESTATIC((INVOKESTATIC) obj);
+                break;
+            case Constants.INVOKEINTERFACE:
+                v.visitINVOKEINTERFACE((INVOKEINTERFACE) obj);
+                break;
+            case Constants.INVOKEDYNAMIC:
+                v.visitINVOKEDYNAMIC((INVOKEDYNAMIC) obj);
+                break;
+            case Constants.NEW:
+                v.visitNEW((NEW) obj);
+                break;
+            case Constants.NEWARRAY:
+                v.visitNEWARRAY((NEWARRAY) obj);
+                break;
+            case Constants.ANEWARRAY:
+                v.visitANEWARRAY((ANEWARRAY) obj);
+                break;
+            case Constants.ARRAYLENGTH:
+                v.visitARRAYLENGTH((ARRAYLENGTH) obj);
+                break;
+            case Constants.ATHROW:
+                v.visitATHROW((ATHROW) obj);
+                break;
+            case Constants.CHECKCAST:
+                v.visitCHECKCAST((CHECKCAST) obj);
+                break;
+            case Constants.INSTANCEOF:
+                v.visitINSTANCEOF((INSTANCEOF) obj);
+                break;
+            case Constants.MONITORENTER:
+                v.visitMONITORENTER((MONITORENTER) obj);
+                break;
+            case Constants.MONITOREXIT:
+                v.visitMONITOREXIT((MONITOREXIT) obj);
+                break;
+            case Constants.MULTIANEWARRAY:
+                v.visitMULTIANEWARRAY((MULTIANEWARRAY) obj);
+                break;
+            case Constants.IFNULL:
+                v.visitIFNULL((IFNULL) obj);
+                break;
+            case Constants.IFNONNULL:
+                v.visitIFNONNULL((IFNONNULL) obj);
+                break;
+            case Constants.GOTO_W:
+                v.visitGOTO_W((GOTO_W) obj);
+                break;
+            case Constants.JSR_W:
+                v.visitJSR_W((JSR_W) obj);
+                break;
+            case Constants.BREAKPOINT:
+                v.visitBREAKPOINT((BREAKPOINT) obj);
+                break;
+            case Constants.IMPDEP1:
+                v.visitIMPDEP1((IMPDEP1) obj);
+                break;
+            case Constants.IMPDEP2:
+                v.visitIMPDEP2((IMPDEP2) obj);
+                break;
+            default:
+                throw new ClassGenException("Illegal opcode detected: " + obj.getOpcode());
+        }
+    }
+}
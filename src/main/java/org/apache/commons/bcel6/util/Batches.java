@@ -0,0 +1,123 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.commons.bcel6.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Runs work on the items of a list in batches on an executor, and collects
+ * the results. Shared by the tools that parse or analyze many classes in
+ * parallel; not meant to be used by applications.
+ *
+ * @version $Id$
+ * @since 6.0
+ */
+public final class Batches {
+
+    /**
+     * The work done on one batch of items.
+     *
+     * @param <T> the type of the items
+     * @param <R> the type of the result of a batch
+     */
+    public interface Task<T, R> {
+
+        /**
+         * @param batch the items to work on, not to be modified
+         * @return the result of the batch
+         * @throws Exception if the work fails, rethrown by {@link Batches#get(Future, Class)}
+         */
+        R run( List<T> batch ) throws Exception;
+    }
+
+
+    private Batches() {
+    }
+
+
+    /**
+     * Submits the task for consecutive batches of the items.
+     *
+     * @param executor executor to run the tasks
+     * @param items the items, not to be modified until the tasks are done
+     * @param batch_size maximum number of items of a batch
+     * @param task the work done on each batch
+     * @return the futures of the batches, in the order of the items
+     */
+    public static <T, R> List<Future<R>> submit( ExecutorService executor, List<T> items, int batch_size,
+            Task<T, R> task ) {
+        List<Future<R>> futures = new ArrayList<>();
+        for (int i = 0; i < items.size(); i += batch_size) {
+            futures.add(submit(executor, items.subList(i, Math.min(i + batch_size, items.size())), task));
+        }
+        return futures;
+    }
+
+
+    /**
+     * Submits the task for one batch of items.
+     *
+     * @param executor executor to run the task
+     * @param batch the items, not to be modified until the task is done
+     * @param task the work done on the batch
+     * @return the future of the batch
+     */
+    public static <T, R> Future<R> submit( ExecutorService executor, final List<T> batch, final Task<T, R> task ) {
+        return executor.submit(new Callable<R>() {
+
+            @Override
+            public R call() throws Exception {
+                return task.run(batch);
+            }
+        });
+    }
+
+
+    /**
+     * Waits for the result of a batch. If the task has failed, the exception
+     * it threw is rethrown if it is an instance of the given class or a
+     * RuntimeException; any other one is wrapped in an IllegalStateException.
+     *
+     * @param future the future of the batch
+     * @param exception the class of the checked exceptions thrown by the task,
+     * RuntimeException.class if there are none
+     * @return the result of the batch
+     * @throws E if the task has thrown it
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public static <R, E extends Exception> R get( Future<R> future, Class<E> exception ) throws E,
+            InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (exception.isInstance(cause)) {
+                throw exception.cast(cause);
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+}
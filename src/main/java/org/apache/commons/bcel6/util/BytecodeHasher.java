@@ -0,0 +1,451 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.commons.bcel6.util;
+
+import java.util.Arrays;
+
+import org.apache.commons.bcel6.Constants;
+import org.apache.commons.bcel6.classfile.Attribute;
+import org.apache.commons.bcel6.classfile.BootstrapMethod;
+import org.apache.commons.bcel6.classfile.BootstrapMethods;
+import org.apache.commons.bcel6.classfile.ClassFormatException;
+import org.apache.commons.bcel6.classfile.Code;
+import org.apache.commons.bcel6.classfile.CodeException;
+import org.apache.commons.bcel6.classfile.Constant;
+import org.apache.commons.bcel6.classfile.ConstantCP;
+import org.apache.commons.bcel6.classfile.ConstantClass;
+import org.apache.commons.bcel6.classfile.ConstantDouble;
+import org.apache.commons.bcel6.classfile.ConstantFloat;
+import org.apache.commons.bcel6.classfile.ConstantInteger;
+import org.apache.commons.bcel6.classfile.ConstantLong;
+import org.apache.commons.bcel6.classfile.ConstantMethodHandle;
+import org.apache.commons.bcel6.classfile.ConstantMethodType;
+import org.apache.commons.bcel6.classfile.ConstantNameAndType;
+import org.apache.commons.bcel6.classfile.ConstantPool;
+import org.apache.commons.bcel6.classfile.ConstantString;
+import org.apache.commons.bcel6.classfile.ConstantUtf8;
+import org.apache.commons.bcel6.classfile.JavaClass;
+
+/**
+ * Hashes the instructions of a Code attribute in a canonical form, read
+ * directly from its byte array: constant pool references are hashed by the
+ * values they refer to, branch offsets as distances in instructions, LDC
+ * like LDC_W, and the short forms of loads and stores like the long ones.
+ * Optionally, local variable slots above the parameters are numbered in
+ * the order of their first use, so that methods differing only in their
+ * slot allocation hash the same.
+ *
+ * @version $Id$
+ * @see ClassDigest
+ * @see MethodFingerprint
+ * @since 6.0
+ */
+final class BytecodeHasher {
+
+    /**
+     * A 64-bit FNV-1a hash.
+     */
+    static final class Hash {
+
+        private long h = 0xcbf29ce484222325L;
+
+
+        void add( int b ) {
+            h ^= b & 0xff;
+            h *= 0x100000001b3L;
+        }
+
+
+        void addInt( int i ) {
+            add(i >>> 24);
+            add(i >>> 16);
+            add(i >>> 8);
+            add(i);
+        }
+
+
+        void addLong( long l ) {
+            addInt((int) (l >>> 32));
+            addInt((int) l);
+        }
+
+
+        void add( String s ) {
+            if (s == null) {
+                addInt(-1);
+                return;
+            }
+            addInt(s.length());
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                add(c >>> 8);
+                add(c);
+            }
+        }
+
+
+        long get() {
+            return h;
+        }
+    }
+
+    private final Code code;
+    private final ConstantPool cp;
+    private final BootstrapMethod[] bootstrap_methods;
+    private final int fixed_locals;
+    private final byte[] b;
+    private final int[] ordinals; // by offset, -1 inside instructions
+    private final long[] hashes; // by ordinal
+    private int[] renumbered; // by slot, -1 if not used yet
+    private int next_local;
+
+
+    /**
+     * @param clazz the class the code belongs to
+     * @param code the code to hash
+     * @param fixed_locals number of local variable slots to keep, i.e. the
+     * size of the parameters; the others are renumbered. Integer.MAX_VALUE
+     * to keep all slots.
+     * @throws ClassFormatException if the code is malformed
+     */
+    BytecodeHasher(JavaClass clazz, Code code, int fixed_locals) {
+        this.code = code;
+        this.cp = clazz.getConstantPool();
+        this.bootstrap_methods = getBootstrapMethods(clazz);
+        this.fixed_locals = fixed_locals;
+        this.b = code.getCode();
+        this.ordinals = getOrdinals(b);
+        int n = 0;
+        for (int o : ordinals) {
+            if (o >= 0) {
+                n++;
+            }
+        }
+        this.hashes = new long[n];
+        if (fixed_locals < code.getMaxLocals()) {
+            renumbered = new int[code.getMaxLocals()];
+            Arrays.fill(renumbered, -1);
+            next_local = fixed_locals;
+        }
+        try {
+            for (int pc = 0; pc < b.length;) {
+                Hash h = new Hash();
+                int next = hashInstruction(h, pc);
+                hashes[ordinals[pc]] = h.get();
+                pc = next;
+            }
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new ClassFormatException("Invalid code: " + e);
+        }
+    }
+
+
+    /** @return the hashes of the instructions, in code order */
+    long[] getInstructionHashes() {
+        return hashes;
+    }
+
+
+    /**
+     * @return the hash of the whole code: the stack and local sizes, the
+     * instructions and the exception handlers; with renumbering, the number
+     * of locals used instead of max_locals
+     */
+    long getCodeHash() {
+        Hash h = new Hash();
+        h.addInt(code.getMaxStack());
+        h.addInt(renumbered == null ? code.getMaxLocals() : next_local);
+        for (long l : hashes) {
+            h.addLong(l);
+        }
+        for (CodeException e : code.getExceptionTable()) {
+            h.addInt(ordinals[e.getStartPC()]);
+            h.addInt(e.getEndPC() < b.length ? ordinals[e.getEndPC()] : -1);
+            h.addInt(ordinals[e.getHandlerPC()]);
+            h.add(e.getCatchType() == 0 ? null : cp.getConstantString(e.getCatchType(), Constants.CONSTANT_Class));
+        }
+        return h.get();
+    }
+
+
+    static BootstrapMethod[] getBootstrapMethods( JavaClass clazz ) {
+        for (Attribute a : clazz.getAttributes()) {
+            if (a instanceof BootstrapMethods) {
+                return ((BootstrapMethods) a).getBootstrapMethods();
+            }
+        }
+        return new BootstrapMethod[0];
+    }
+
+
+    /**
+     * Hashes the instruction at the offset.
+     *
+     * @return the offset of the next instruction
+     */
+    private int hashInstruction( Hash h, int pc ) {
+        int opcode = b[pc] & 0xff;
+        int ordinal = ordinals[pc];
+        switch (opcode) {
+            case Constants.LDC:
+                h.add(Constants.LDC_W); // whichever fits the constant pool
+                addConstant(h, b[pc + 1] & 0xff);
+                return pc + 2;
+            case Constants.LDC_W:
+            case Constants.LDC2_W:
+            case Constants.GETSTATIC:
+            case Constants.PUTSTATIC:
+            case Constants.GETFIELD:
+            case Constants.PUTFIELD:
+            case Constants.INVOKEVIRTUAL:
+            case Constants.INVOKESPECIAL:
+            case Constants.INVOKESTATIC:
+            case Constants.INVOKEINTERFACE:
+            case Constants.INVOKEDYNAMIC:
+            case Constants.NEW:
+            case Constants.ANEWARRAY:
+            case Constants.CHECKCAST:
+            case Constants.INSTANCEOF:
+            case Constants.MULTIANEWARRAY: {
+                h.add(opcode);
+                addConstant(h, u2(b, pc + 1));
+                int end = pc + 1 + Constants.getNoOfOperands(opcode);
+                for (pc += 3; pc < end; pc++) {
+                    h.add(b[pc]); // count and dimensions
+                }
+                return end;
+            }
+            case Constants.GOTO_W:
+            case Constants.JSR_W:
+                h.add(opcode - (Constants.GOTO_W - Constants.GOTO));
+                h.addInt(ordinals[pc + s4(b, pc + 1)] - ordinal);
+                return pc + 5;
+            case Constants.TABLESWITCH:
+            case Constants.LOOKUPSWITCH: {
+                h.add(opcode);
+                int start = pc;
+                pc = (pc + 4) & ~3; // skip the padding
+                h.addInt(ordinals[start + s4(b, pc)] - ordinal);
+                if (opcode == Constants.TABLESWITCH) {
+                    int low = s4(b, pc + 4);
+                    int high = s4(b, pc + 8);
+                    h.addInt(low);
+                    h.addInt(high);
+                    pc += 12;
+                    for (int i = low; i <= high; i++, pc += 4) {
+                        h.addInt(ordinals[start + s4(b, pc)] - ordinal);
+                    }
+                } else {
+                    int npairs = s4(b, pc + 4);
+                    pc += 8;
+                    for (int i = 0; i < npairs; i++, pc += 8) {
+                        h.addInt(s4(b, pc));
+                        h.addInt(ordinals[start + s4(b, pc + 4)] - ordinal);
+                    }
+                }
+                return pc;
+            }
+            case Constants.WIDE: {
+                int wide_opcode = b[pc + 1] & 0xff;
+                h.add(wide_opcode);
+                h.addInt(local(u2(b, pc + 2)));
+                if (wide_opcode == Constants.IINC) {
+                    h.addInt((short) u2(b, pc + 4));
+                    return pc + 6;
+                }
+                return pc + 4;
+            }
+            case Constants.ILOAD:
+            case Constants.LLOAD:
+            case Constants.FLOAD:
+            case Constants.DLOAD:
+            case Constants.ALOAD:
+            case Constants.ISTORE:
+            case Constants.LSTORE:
+            case Constants.FSTORE:
+            case Constants.DSTORE:
+            case Constants.ASTORE:
+            case Constants.RET:
+                h.add(opcode);
+                h.addInt(local(b[pc + 1] & 0xff));
+                return pc + 2;
+            case Constants.IINC:
+                h.add(opcode);
+                h.addInt(local(b[pc + 1] & 0xff));
+                h.addInt(b[pc + 2]);
+                return pc + 3;
+            default:
+                if (opcode >= Constants.ILOAD_0 && opcode <= Constants.ALOAD_3) {
+                    int index = opcode - Constants.ILOAD_0;
+                    h.add(Constants.ILOAD + index / 4);
+                    h.addInt(local(index % 4));
+                    return pc + 1;
+                }
+                if (opcode >= Constants.ISTORE_0 && opcode <= Constants.ASTORE_3) {
+                    int index = opcode - Constants.ISTORE_0;
+                    h.add(Constants.ISTORE + index / 4);
+                    h.addInt(local(index % 4));
+                    return pc + 1;
+                }
+                h.add(opcode);
+                if (isBranch(opcode)) {
+                    h.addInt(ordinals[pc + (short) u2(b, pc + 1)] - ordinal);
+                    return pc + 3;
+                }
+                int length = Constants.getNoOfOperands(opcode);
+                for (int i = 1; i <= length; i++) {
+                    h.add(b[pc + i]);
+                }
+                return pc + 1 + length;
+        }
+    }
+
+
+    /**
+     * @return the number of the local variable slot in the hash
+     */
+    private int local( int slot ) {
+        if (slot < fixed_locals || renumbered == null || slot >= renumbered.length) {
+            return slot;
+        }
+        if (renumbered[slot] < 0) {
+            renumbered[slot] = next_local++;
+        }
+        return renumbered[slot];
+    }
+
+
+    private static boolean isBranch( int opcode ) {
+        return opcode >= Constants.IFEQ && opcode <= Constants.JSR || opcode == Constants.IFNULL
+                || opcode == Constants.IFNONNULL;
+    }
+
+
+    /**
+     * @return the ordinal of the instruction starting at each offset of the
+     * code; -1 for offsets inside instructions
+     */
+    private static int[] getOrdinals( byte[] b ) {
+        int[] ordinals = new int[b.length];
+        Arrays.fill(ordinals, -1);
+        int n = 0;
+        int pc = 0;
+        try {
+            while (pc < b.length) {
+                ordinals[pc] = n++;
+                int opcode = b[pc] & 0xff;
+                switch (opcode) {
+                    case Constants.TABLESWITCH: {
+                        int p = (pc + 4) & ~3;
+                        pc = p + 12 + 4 * (s4(b, p + 8) - s4(b, p + 4) + 1);
+                        break;
+                    }
+                    case Constants.LOOKUPSWITCH: {
+                        int p = (pc + 4) & ~3;
+                        pc = p + 8 + 8 * s4(b, p + 4);
+                        break;
+                    }
+                    case Constants.WIDE:
+                        pc += (b[pc + 1] & 0xff) == Constants.IINC ? 6 : 4;
+                        break;
+                    default:
+                        if (Constants.getNoOfOperands(opcode) < 0) {
+                            throw new ClassFormatException("Invalid opcode " + opcode + " at " + pc);
+                        }
+                        pc += 1 + Constants.getNoOfOperands(opcode);
+                        break;
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new ClassFormatException("Truncated instruction at " + pc);
+        }
+        return ordinals;
+    }
+
+
+    private static int u2( byte[] b, int i ) {
+        return ((b[i] & 0xff) << 8) | (b[i + 1] & 0xff);
+    }
+
+
+    private static int s4( byte[] b, int i ) {
+        return (b[i] << 24) | ((b[i + 1] & 0xff) << 16) | ((b[i + 2] & 0xff) << 8) | (b[i + 3] & 0xff);
+    }
+
+
+    /**
+     * Hashes the value of a constant, following its references.
+     */
+    private void addConstant( Hash h, int index ) {
+        Constant c = cp.getConstant(index);
+        h.add(c.getTag());
+        switch (c.getTag()) {
+            case Constants.CONSTANT_Utf8:
+                h.add(((ConstantUtf8) c).getBytes());
+                break;
+            case Constants.CONSTANT_Integer:
+                h.addInt(((ConstantInteger) c).getBytes());
+                break;
+            case Constants.CONSTANT_Float:
+                h.addInt(Float.floatToRawIntBits(((ConstantFloat) c).getBytes()));
+                break;
+            case Constants.CONSTANT_Long:
+                h.addLong(((ConstantLong) c).getBytes());
+                break;
+            case Constants.CONSTANT_Double:
+                h.addLong(Double.doubleToRawLongBits(((ConstantDouble) c).getBytes()));
+                break;
+            case Constants.CONSTANT_Class:
+                addConstant(h, ((ConstantClass) c).getNameIndex());
+                break;
+            case Constants.CONSTANT_String:
+                addConstant(h, ((ConstantString) c).getStringIndex());
+                break;
+            case Constants.CONSTANT_MethodType:
+                addConstant(h, ((ConstantMethodType) c).getDescriptorIndex());
+                break;
+            case Constants.CONSTANT_NameAndType:
+                addConstant(h, ((ConstantNameAndType) c).getNameIndex());
+                addConstant(h, ((ConstantNameAndType) c).getSignatureIndex());
+                break;
+            case Constants.CONSTANT_Fieldref:
+            case Constants.CONSTANT_Methodref:
+            case Constants.CONSTANT_InterfaceMethodref:
+                addConstant(h, ((ConstantCP) c).getClassIndex());
+                addConstant(h, ((ConstantCP) c).getNameAndTypeIndex());
+                break;
+            case Constants.CONSTANT_MethodHandle:
+                h.add(((ConstantMethodHandle) c).getReferenceKind());
+                addConstant(h, ((ConstantMethodHandle) c).getReferenceIndex());
+                break;
+            case Constants.CONSTANT_InvokeDynamic: {
+                ConstantCP indy = (ConstantCP) c;
+                BootstrapMethod bsm = bootstrap_methods[indy.getBootstrapMethodAttrIndex()];
+                addConstant(h, bsm.getBootstrapMethodRef());
+                for (int arg : bsm.getBootstrapArguments()) {
+                    addConstant(h, arg);
+                }
+                addConstant(h, indy.getNameAndTypeIndex());
+                break;
+            }
+            default:
+                h.add(cp.constantToString(c));
+                break;
+        }
+    }
+}
@@ -0,0 +1,295 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.commons.bcel6.util;
+
+import java.io.InputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Storage for class files in a few large buffers, by default allocated
+ * outside of the Java heap, so that a repository holding hundreds of
+ * thousands of classes keeps a handful of objects per class on the heap
+ * instead of the byte arrays, strings and constants of parsed classes.
+ * <p>
+ * Class files are appended to chunks of a fixed size; a class file larger
+ * than a chunk gets a chunk of its own. Space is not reused: removing a
+ * class file only drops it from the index, and release() drops all class
+ * files and chunks together, e.g. when a repository layer is discarded.
+ * The memory of the chunks is freed by the garbage collector once they are
+ * unreachable; that of direct buffers only when the collector has run
+ * their cleaners, which may be well after release(). Streams and views
+ * handed out before remain readable, as they keep their chunks reachable.
+ * <p>
+ * The code of a method can be read in place through a {@link CodeView},
+ * see {@link #getCode(String, String, String)}.
+ * <p>
+ * The arena is thread safe.
+ *
+ * @version $Id$
+ * @see TieredRepository
+ * @since 6.0
+ */
+public final class ClassArena {
+
+    /** Default size of the buffers class files are stored in */
+    public static final int DEFAULT_CHUNK_SIZE = 256 * 1024;
+
+    private final boolean direct;
+    private final int chunkSize;
+    private final Map<String, ByteBuffer> entries = new ConcurrentHashMap<>(); // CLASSNAME X SLICE
+    private ByteBuffer current;
+    private long used;
+    private long allocated;
+
+
+    /**
+     * Create an arena of direct buffers of DEFAULT_CHUNK_SIZE bytes.
+     */
+    public ClassArena() {
+        this(true, DEFAULT_CHUNK_SIZE);
+    }
+
+
+    /**
+     * @param direct whether to allocate the buffers outside of the Java heap
+     * @param chunkSize size of the buffers class files are stored in
+     */
+    public ClassArena(boolean direct, int chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Invalid chunk size " + chunkSize);
+        }
+        this.direct = direct;
+        this.chunkSize = chunkSize;
+    }
+
+
+    /** @return whether the buffers are allocated outside of the Java heap */
+    public boolean isDirect() {
+        return direct;
+    }
+
+
+    /**
+     * Store a class file, replacing any class file stored under the same name.
+     *
+     * @param className fully qualified name of the class
+     * @param bytes the class file, possibly compressed
+     */
+    public synchronized void put( String className, byte[] bytes ) {
+        ByteBuffer chunk;
+        if (bytes.length > chunkSize) {
+            chunk = allocate(bytes.length);
+        } else {
+            if (current == null || current.remaining() < bytes.length) {
+                current = allocate(chunkSize);
+            }
+            chunk = current;
+        }
+        ByteBuffer slice = chunk.slice();
+        ((Buffer) slice).limit(bytes.length); // Buffer methods, not the covariant ones of Java 9
+        slice = slice.slice().asReadOnlyBuffer();
+        chunk.put(bytes);
+        used += bytes.length;
+        ByteBuffer previous = entries.put(className, slice);
+        if (previous != null) {
+            used -= previous.capacity();
+        }
+    }
+
+
+    /**
+     * Store a class file unless one is already stored under the same name.
+     *
+     * @param className fully qualified name of the class
+     * @param bytes the class file, possibly compressed
+     * @return whether the class file was stored
+     */
+    public synchronized boolean putIfAbsent( String className, byte[] bytes ) {
+        if (entries.containsKey(className)) {
+            return false;
+        }
+        put(className, bytes);
+        return true;
+    }
+
+
+    /**
+     * Drop a class file from the index. Its space is only given back by
+     * release().
+     *
+     * @return whether the class file was stored
+     */
+    public synchronized boolean remove( String className ) {
+        ByteBuffer previous = entries.remove(className);
+        if (previous == null) {
+            return false;
+        }
+        used -= previous.capacity();
+        return true;
+    }
+
+
+    /**
+     * @return whether a class file is stored under the name
+     */
+    public boolean contains( String className ) {
+        return entries.containsKey(className);
+    }
+
+
+    /**
+     * @return a stream reading the class file, or null if none is stored
+     * under the name
+     */
+    public InputStream getInputStream( String className ) {
+        ByteBuffer slice = entries.get(className);
+        if (slice == null) {
+            return null;
+        }
+        return new BufferInputStream(slice.duplicate());
+    }
+
+
+    /**
+     * @return a copy of the class file on the heap, or null if none is
+     * stored under the name
+     */
+    public byte[] getBytes( String className ) {
+        ByteBuffer slice = entries.get(className);
+        if (slice == null) {
+            return null;
+        }
+        byte[] bytes = new byte[slice.capacity()];
+        slice.duplicate().get(bytes);
+        return bytes;
+    }
+
+
+    /**
+     * Find the code of a method without parsing the class file into a
+     * JavaClass or copying its byte code to the heap. Only works for class
+     * files stored uncompressed.
+     *
+     * @param className fully qualified name of the class
+     * @param methodName name of the method
+     * @param signature signature of the method
+     * @return a view of the code of the method, or null if no class file is
+     * stored under the name, it has no such method, or the method has no code
+     * @throws org.apache.commons.bcel6.classfile.ClassFormatException if
+     * the stored bytes are no valid class file, e.g. compressed ones
+     */
+    public CodeView getCode( String className, String methodName, String signature ) {
+        ByteBuffer slice = entries.get(className);
+        if (slice == null) {
+            return null;
+        }
+        return CodeView.find(slice, methodName, signature);
+    }
+
+
+    /** @return the number of class files stored */
+    public int size() {
+        return entries.size();
+    }
+
+
+    /** @return the number of bytes of the class files stored */
+    public synchronized long getUsed() {
+        return used;
+    }
+
+
+    /**
+     * @return the number of bytes of the buffers allocated, including
+     * space of removed class files and unused space at the end of chunks
+     */
+    public synchronized long getAllocated() {
+        return allocated;
+    }
+
+
+    /**
+     * Drop all class files and buffers, so that the garbage collector can
+     * reclaim their memory together; direct buffers are freed when their
+     * cleaners have run. The arena can be used again afterwards.
+     */
+    public synchronized void release() {
+        entries.clear();
+        current = null;
+        used = 0;
+        allocated = 0;
+    }
+
+
+    private ByteBuffer allocate( int size ) {
+        ByteBuffer chunk = direct ? ByteBuffer.allocateDirect(size) : ByteBuffer.allocate(size);
+        allocated += size;
+        return chunk;
+    }
+
+
+    /**
+     * Stream reading the remaining bytes of a buffer.
+     */
+    private static final class BufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+
+
+        BufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+
+        @Override
+        public int read( byte[] b, int off, int len ) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            len = Math.min(len, buffer.remaining());
+            buffer.get(b, off, len);
+            return len;
+        }
+
+
+        @Override
+        public long skip( long n ) {
+            int k = (int) Math.max(0, Math.min(n, buffer.remaining()));
+            ((Buffer) buffer).position(buffer.position() + k);
+            return k;
+        }
+
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
@@ -0,0 +1,265 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.commons.bcel6.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * The structural difference between two versions of a class, based on
+ * their {@link ClassDigest}s: whether its API changed, and which method
+ * bodies did. A build can skip recompiling the dependents of a class whose
+ * API did not change, and re-verifying the methods whose bodies did not.
+ * <p>
+ * Two jar files are compared by digesting their classes in parallel,
+ * see {@link #compare(ExecutorService, File, File)}.
+ *
+ * @version $Id$
+ * @since 6.0
+ */
+public final class ClassDiff {
+
+    /** Number of classes digested per task. */
+    private static final int BATCH_SIZE = 32;
+
+    /** Digests a batch of class files. */
+    private static final Batches.Task<byte[], List<ClassDigest>> DIGEST = new Batches.Task<byte[], List<ClassDigest>>() {
+
+        @Override
+        public List<ClassDigest> run( List<byte[]> batch ) throws IOException {
+            List<ClassDigest> digests = new ArrayList<>(batch.size());
+            for (byte[] bytes : batch) {
+                digests.add(ClassDigest.read(bytes));
+            }
+            return digests;
+        }
+    };
+
+    private final ClassDigest before;
+    private final ClassDigest after;
+
+
+    /**
+     * @param before the old version of the class, null if it is new
+     * @param after the new version of the class, null if it was removed
+     */
+    public ClassDiff(ClassDigest before, ClassDigest after) {
+        if (before == null && after == null) {
+            throw new IllegalArgumentException("No version of the class given");
+        }
+        if (before != null && after != null && !before.getClassName().equals(after.getClassName())) {
+            throw new IllegalArgumentException("Different classes " + before.getClassName() + " and "
+                    + after.getClassName());
+        }
+        this.before = before;
+        this.after = after;
+    }
+
+
+    /** @return the fully qualified name of the class */
+    public String getClassName() {
+        return before != null ? before.getClassName() : after.getClassName();
+    }
+
+
+    /** @return the old version of the class, null if it is new */
+    public ClassDigest getBefore() {
+        return before;
+    }
+
+
+    /** @return the new version of the class, null if it was removed */
+    public ClassDigest getAfter() {
+        return after;
+    }
+
+
+    /** @return whether the class was added, removed or changed in any way */
+    public boolean isChanged() {
+        return before == null || after == null || before.getHash() != after.getHash()
+                || before.getApiHash() != after.getApiHash();
+    }
+
+
+    /** @return whether the class was added or removed or its API changed */
+    public boolean isApiChanged() {
+        return before == null || after == null || before.getApiHash() != after.getApiHash();
+    }
+
+
+    /** @return the methods, as name followed by signature, only in the new version */
+    public Set<String> getAddedMethods() {
+        Set<String> result = new TreeSet<>(getMethods(after));
+        result.removeAll(getMethods(before));
+        return result;
+    }
+
+
+    /** @return the methods, as name followed by signature, only in the old version */
+    public Set<String> getRemovedMethods() {
+        Set<String> result = new TreeSet<>(getMethods(before));
+        result.removeAll(getMethods(after));
+        return result;
+    }
+
+
+    /**
+     * @return the methods, as name followed by signature, in both versions
+     * whose bodies differ
+     */
+    public Set<String> getChangedMethods() {
+        Set<String> result = new TreeSet<>();
+        for (String m : getMethods(before)) {
+            if (getMethods(after).contains(m) && before.getBodyHash(m) != after.getBodyHash(m)) {
+                result.add(m);
+            }
+        }
+        return result;
+    }
+
+
+    @Override
+    public String toString() {
+        if (before == null) {
+            return getClassName() + ": added";
+        }
+        if (after == null) {
+            return getClassName() + ": removed";
+        }
+        if (!isChanged()) {
+            return getClassName() + ": unchanged";
+        }
+        return getClassName() + ": " + (isApiChanged() ? "API changed" : "API unchanged") + ", added "
+                + getAddedMethods() + ", removed " + getRemovedMethods() + ", changed " + getChangedMethods();
+    }
+
+
+    private static Set<String> getMethods( ClassDigest digest ) {
+        return digest == null ? Collections.<String> emptySet() : digest.getMethods();
+    }
+
+
+    /**
+     * Compares the classes of two jar files, using one thread per available
+     * processor.
+     *
+     * @see #compare(ExecutorService, File, File)
+     */
+    public static SortedMap<String, ClassDiff> compare( File before, File after ) throws IOException,
+            InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        try {
+            return compare(executor, before, after);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+
+    /**
+     * Compares the classes of two jar files. Classes under META-INF, such as
+     * the versioned classes of multi-release jars, module-info and
+     * package-info are ignored.
+     *
+     * @param executor executor to run the digesting tasks
+     * @param before the old jar file
+     * @param after the new jar file
+     * @return the differences of the classes that were added, removed or
+     * changed, by class name
+     * @throws IOException if a jar file cannot be read
+     * @throws org.apache.commons.bcel6.classfile.ClassFormatException if
+     * a jar file contains an invalid class file
+     * @throws InterruptedException if interrupted while waiting for the worker threads
+     */
+    public static SortedMap<String, ClassDiff> compare( ExecutorService executor, File before, File after )
+            throws IOException, InterruptedException {
+        List<Future<List<ClassDigest>>> old_futures = digest(executor, before);
+        List<Future<List<ClassDigest>>> new_futures = digest(executor, after);
+        Map<String, ClassDigest> old_digests = collect(old_futures);
+        Map<String, ClassDigest> new_digests = collect(new_futures);
+        Set<String> names = new HashSet<>(old_digests.keySet());
+        names.addAll(new_digests.keySet());
+        SortedMap<String, ClassDiff> result = new TreeMap<>();
+        for (String name : names) {
+            ClassDiff diff = new ClassDiff(old_digests.get(name), new_digests.get(name));
+            if (diff.isChanged()) {
+                result.put(name, diff);
+            }
+        }
+        return result;
+    }
+
+
+    /**
+     * Reads the class files of the jar and submits them to be digested in
+     * batches.
+     */
+    private static List<Future<List<ClassDigest>>> digest( ExecutorService executor, File jar )
+            throws IOException {
+        List<Future<List<ClassDigest>>> futures = new ArrayList<>();
+        List<byte[]> batch = new ArrayList<>();
+        try (ZipFile zip = new ZipFile(jar)) {
+            for (Enumeration<? extends ZipEntry> e = zip.entries(); e.hasMoreElements();) {
+                ZipEntry entry = e.nextElement();
+                if (TreeShaker.getClassName(entry) == null) {
+                    continue;
+                }
+                try (InputStream in = zip.getInputStream(entry)) {
+                    batch.add(Streams.readFully(in));
+                }
+                if (batch.size() == BATCH_SIZE) {
+                    futures.add(Batches.submit(executor, batch, DIGEST));
+                    batch = new ArrayList<>();
+                }
+            }
+        }
+        if (!batch.isEmpty()) {
+            futures.add(Batches.submit(executor, batch, DIGEST));
+        }
+        return futures;
+    }
+
+
+    private static Map<String, ClassDigest> collect( List<Future<List<ClassDigest>>> futures )
+            throws IOException, InterruptedException {
+        Map<String, ClassDigest> result = new HashMap<>();
+        for (Future<List<ClassDigest>> future : futures) {
+            for (ClassDigest digest : Batches.get(future, IOException.class)) {
+                result.put(digest.getClassName(), digest);
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,275 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.commons.bcel6.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.bcel6.Constants;
+import org.apache.commons.bcel6.classfile.AnnotationDefault;
+import org.apache.commons.bcel6.classfile.AnnotationEntry;
+import org.apache.commons.bcel6.classfile.Attribute;
+import org.apache.commons.bcel6.classfile.ClassFormatException;
+import org.apache.commons.bcel6.classfile.ClassParser;
+import org.apache.commons.bcel6.classfile.Code;
+import org.apache.commons.bcel6.classfile.ConstantValue;
+import org.apache.commons.bcel6.classfile.ElementValuePair;
+import org.apache.commons.bcel6.classfile.ExceptionTable;
+import org.apache.commons.bcel6.classfile.Field;
+import org.apache.commons.bcel6.classfile.FieldOrMethod;
+import org.apache.commons.bcel6.classfile.JavaClass;
+import org.apache.commons.bcel6.classfile.Method;
+import org.apache.commons.bcel6.classfile.ParameterAnnotationEntry;
+import org.apache.commons.bcel6.classfile.ParameterAnnotations;
+import org.apache.commons.bcel6.classfile.Signature;
+import org.apache.commons.bcel6.util.BytecodeHasher.Hash;
+
+/**
+ * Structural hashes of a class, telling apart changes of its API from
+ * changes of its method bodies.
+ * <p>
+ * The API hash covers what other classes can be compiled and linked
+ * against: the class's flags, name, supertypes, generic signature and
+ * annotations, and the flags, names, descriptors, generic signatures,
+ * constant values, thrown exceptions and annotations of its non-private
+ * fields and methods. The body hash of a method covers its code, its
+ * exception handlers and its stack and local sizes. Debugging information,
+ * i.e. source file, line numbers and local variable names, is not hashed.
+ * <p>
+ * All constant pool references are hashed by the values they refer to,
+ * and branch offsets as distances in instructions, so recompiling a class
+ * with its constant pool in a different order does not change its hashes.
+ * Members are hashed in the order of their names and descriptors. The
+ * code is read directly from the byte array of its Code attribute.
+ * <p>
+ * The hashes are 64-bit FNV-1a hashes; they are meant to detect changes,
+ * not to resist deliberate collisions.
+ *
+ * @version $Id$
+ * @see ClassDiff
+ * @since 6.0
+ */
+public final class ClassDigest {
+
+    /* Method flags that do not affect callers */
+    private static final int METHOD_IMPLEMENTATION_FLAGS = Constants.ACC_SYNCHRONIZED | Constants.ACC_NATIVE
+            | Constants.ACC_STRICT;
+
+    private final String class_name;
+    private final long api_hash;
+    private final long hash;
+    private final Map<String, Long> body_hashes = new LinkedHashMap<>(); // name + signature
+
+
+    /**
+     * Computes the hashes of a class.
+     */
+    public ClassDigest(JavaClass clazz) {
+        class_name = clazz.getClassName();
+        Hash api = new Hash();
+        api.addInt(clazz.getMajor());
+        api.addInt(clazz.getAccessFlags() & ~Constants.ACC_SUPER);
+        api.add(class_name);
+        api.add(clazz.getSuperclassName());
+        String[] interfaces = clazz.getInterfaceNames().clone();
+        Arrays.sort(interfaces);
+        for (String i : interfaces) {
+            api.add(i);
+        }
+        addAttributes(api, clazz.getAttributes());
+
+        Hash all = new Hash();
+        for (FieldOrMethod member : sort(clazz.getFields(), clazz.getMethods())) {
+            boolean is_method = member instanceof Method;
+            int flags = member.getAccessFlags();
+            if (is_method) {
+                flags &= ~METHOD_IMPLEMENTATION_FLAGS;
+            }
+            Hash h = member.isPrivate() ? all : api;
+            h.add(is_method ? 'M' : 'F');
+            h.addInt(flags);
+            h.add(member.getName());
+            h.add(member.getSignature());
+            addAttributes(h, member.getAttributes());
+        }
+        for (Method m : clazz.getMethods()) {
+            long body = 0;
+            Code code = m.getCode();
+            if (code != null) {
+                body = new BytecodeHasher(clazz, code, Integer.MAX_VALUE).getCodeHash();
+            }
+            body_hashes.put(m.getName() + m.getSignature(), Long.valueOf(body));
+        }
+        api_hash = api.get();
+        all.addLong(api_hash);
+        for (FieldOrMethod member : sort(new Field[0], clazz.getMethods())) {
+            all.addLong(body_hashes.get(member.getName() + member.getSignature()).longValue());
+        }
+        hash = all.get();
+    }
+
+
+    /**
+     * Computes the hashes of a class file.
+     *
+     * @throws IOException if the class file cannot be read
+     * @throws ClassFormatException if the data is not a valid class file
+     */
+    public static ClassDigest read( byte[] bytes ) throws IOException {
+        return new ClassDigest(new ClassParser(new ByteArrayInputStream(bytes), "<digest>").parse());
+    }
+
+
+    /** @return the fully qualified name of the class */
+    public String getClassName() {
+        return class_name;
+    }
+
+
+    /** @return the hash of the API of the class */
+    public long getApiHash() {
+        return api_hash;
+    }
+
+
+    /**
+     * @return the hash of the API, the private members and all method
+     * bodies of the class
+     */
+    public long getHash() {
+        return hash;
+    }
+
+
+    /**
+     * @return the methods of the class, as name followed by signature, in
+     * the order of the class file
+     */
+    public Set<String> getMethods() {
+        return Collections.unmodifiableSet(body_hashes.keySet());
+    }
+
+
+    /**
+     * @param method name followed by signature, e.g. "run()V"
+     * @return the hash of the body of the method, 0 for abstract and
+     * native methods
+     * @throws IllegalArgumentException if the class has no such method
+     */
+    public long getBodyHash( String method ) {
+        Long h = body_hashes.get(method);
+        if (h == null) {
+            throw new IllegalArgumentException(class_name + " has no method " + method);
+        }
+        return h.longValue();
+    }
+
+
+    @Override
+    public boolean equals( Object o ) {
+        if (!(o instanceof ClassDigest)) {
+            return false;
+        }
+        ClassDigest d = (ClassDigest) o;
+        return hash == d.hash && api_hash == d.api_hash && class_name.equals(d.class_name);
+    }
+
+
+    @Override
+    public int hashCode() {
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+
+    @Override
+    public String toString() {
+        return class_name + " api=" + Long.toHexString(api_hash) + " hash=" + Long.toHexString(hash);
+    }
+
+
+    private static List<FieldOrMethod> sort( Field[] fields, Method[] methods ) {
+        List<FieldOrMethod> members = new ArrayList<>();
+        members.addAll(Arrays.asList(fields));
+        members.addAll(Arrays.asList(methods));
+        Collections.sort(members, new Comparator<FieldOrMethod>() {
+
+            @Override
+            public int compare( FieldOrMethod a, FieldOrMethod b ) {
+                int c = (a instanceof Method ? 1 : 0) - (b instanceof Method ? 1 : 0);
+                if (c == 0) {
+                    c = a.getName().compareTo(b.getName());
+                }
+                return c != 0 ? c : a.getSignature().compareTo(b.getSignature());
+            }
+        });
+        return members;
+    }
+
+
+    /**
+     * Adds the attributes that are part of the API.
+     */
+    private static void addAttributes( Hash h, Attribute[] attributes ) {
+        List<String> values = new ArrayList<>();
+        for (Attribute a : attributes) {
+            if (a instanceof Signature) {
+                values.add("Signature " + ((Signature) a).getSignature());
+            } else if (a instanceof ConstantValue) {
+                values.add("ConstantValue " + a.toString());
+            } else if (a instanceof ExceptionTable) {
+                String[] names = ((ExceptionTable) a).getExceptionNames().clone();
+                Arrays.sort(names);
+                values.add("Exceptions " + Arrays.toString(names));
+            } else if (a instanceof AnnotationDefault) {
+                values.add("AnnotationDefault " + ((AnnotationDefault) a).getDefaultValue().stringifyValue());
+            } else if (a instanceof ParameterAnnotations) {
+                ParameterAnnotationEntry[] entries = ((ParameterAnnotations) a).getParameterAnnotationEntries();
+                for (int p = 0; p < entries.length; p++) {
+                    for (AnnotationEntry e : entries[p].getAnnotationEntries()) {
+                        values.add("Parameter " + p + " " + toString(e));
+                    }
+                }
+            }
+        }
+        for (AnnotationEntry e : AnnotationEntry.createAnnotationEntries(attributes)) {
+            values.add(toString(e));
+        }
+        Collections.sort(values);
+        for (String v : values) {
+            h.add(v);
+        }
+    }
+
+
+    private static String toString( AnnotationEntry e ) {
+        StringBuilder buf = new StringBuilder();
+        buf.append(e.isRuntimeVisible() ? "@" : "@@").append(e.getAnnotationType());
+        for (ElementValuePair pair : e.getElementValuePairs()) {
+            buf.append(' ').append(pair.getNameString()).append('=').append(pair.getValue().stringifyValue());
+        }
+        return buf.toString();
+    }
+}
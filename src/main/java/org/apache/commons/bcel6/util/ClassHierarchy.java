@@ -0,0 +1,305 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.commons.bcel6.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.bcel6.classfile.ClassFormatException;
+import org.apache.commons.bcel6.classfile.ClassHeader;
+import org.apache.commons.bcel6.classfile.ClassParser;
+import org.apache.commons.bcel6.classfile.JavaClass;
+
+/**
+ * Index of the class hierarchy of a class path, built from class headers
+ * only (see ClassParser.parseHeader()), i.e., without reading fields,
+ * methods or attributes. Headers are parsed on demand when a query needs
+ * them, or for the whole class path in parallel with load().
+ * <p>
+ * Instances are thread safe.
+ *
+ * @version $Id$
+ * @see ClassHeader
+ * @see SyntheticRepository#getClassHierarchy()
+ * @since 6.0
+ */
+public class ClassHierarchy {
+
+    /** Number of classes parsed per task by load(). */
+    private static final int BATCH_SIZE = 256;
+
+    private final ClassPath path;
+    private final ConcurrentMap<String, ClassHeader> headers = new ConcurrentHashMap<>();
+
+
+    /**
+     * @param path class path to resolve classes from
+     */
+    public ClassHierarchy(ClassPath path) {
+        this.path = path;
+    }
+
+
+    /**
+     * Parse the headers of all classes on the class path, using one thread
+     * per available processor. Classes that are not valid class files are
+     * left out; querying them later raises a ClassNotFoundException.
+     *
+     * @throws IOException if a class file can't be read
+     * @throws InterruptedException if interrupted while waiting for the parser threads
+     */
+    public void load() throws IOException, InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        try {
+            load(executor);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+
+    /**
+     * Parse the headers of all classes on the class path with the given
+     * executor. Classes that are not valid class files are left out; querying
+     * them later raises a ClassNotFoundException.
+     *
+     * @param executor executor to run the parser tasks
+     * @throws IOException if a class file can't be read
+     * @throws InterruptedException if interrupted while waiting for the parser threads
+     */
+    public void load( ExecutorService executor ) throws IOException, InterruptedException {
+        List<String> names = path.getClassNames();
+        List<Future<Void>> futures = Batches.submit(executor, names, BATCH_SIZE, new Batches.Task<String, Void>() {
+
+            @Override
+            public Void run( List<String> batch ) throws IOException {
+                for (String name : batch) {
+                    if (!headers.containsKey(name)) {
+                        try {
+                            add(parseHeader(name));
+                        } catch (ClassFormatException e) {
+                            // not a class we can index
+                        }
+                    }
+                }
+                return null;
+            }
+        });
+        for (Future<Void> future : futures) {
+            Batches.get(future, IOException.class);
+        }
+    }
+
+
+    private ClassHeader parseHeader( String name ) throws IOException {
+        InputStream is = path.getInputStream(name);
+        try {
+            return new ClassParser(is, name).parseHeader();
+        } finally {
+            is.close();
+        }
+    }
+
+
+    /**
+     * Add or replace the header of a class, e.g. of one generated in memory.
+     */
+    public void add( ClassHeader header ) {
+        headers.put(header.getClassName(), header);
+    }
+
+
+    /**
+     * Add or replace the header of a class, e.g. of one generated in memory.
+     */
+    public void add( JavaClass clazz ) {
+        add(new ClassHeader(clazz));
+    }
+
+
+    /**
+     * @return the header of the given class, parsing it if necessary
+     * @throws ClassNotFoundException if the class can't be found or parsed
+     */
+    public ClassHeader getHeader( String className ) throws ClassNotFoundException {
+        ClassHeader header = headers.get(className);
+        if (header != null) {
+            return header;
+        }
+        try {
+            header = parseHeader(className);
+        } catch (IOException e) {
+            throw new ClassNotFoundException("Exception while looking for class " + className
+                    + ": " + e, e);
+        } catch (ClassFormatException e) {
+            throw new ClassNotFoundException("Exception while looking for class " + className
+                    + ": " + e, e);
+        }
+        ClassHeader previous = headers.putIfAbsent(className, header);
+        return previous != null ? previous : header;
+    }
+
+
+    /**
+     * @return number of class headers currently in the index
+     */
+    public int size() {
+        return headers.size();
+    }
+
+
+    /**
+     * @return names of the super classes of the given class in ascending
+     * order, i.e., java.lang.Object is always the last element
+     * @throws ClassNotFoundException if any of the superclasses can't be found
+     * @throws ClassCircularityError if the class is its own superclass
+     */
+    public String[] getSuperClassNames( String className ) throws ClassNotFoundException {
+        List<ClassHeader> headers = getSuperClassHeaders(className);
+        String[] result = new String[headers.size() - 1];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = headers.get(i + 1).getClassName();
+        }
+        return result;
+    }
+
+
+    /**
+     * @return the headers of the given class and its super classes in
+     * ascending order, ending with java.lang.Object
+     */
+    private List<ClassHeader> getSuperClassHeaders( String className ) throws ClassNotFoundException {
+        List<ClassHeader> result = new ArrayList<>();
+        Set<String> visited = new HashSet<>();
+        for (ClassHeader header = getHeader(className); ; header = getHeader(header.getSuperclassName())) {
+            if (!visited.add(header.getClassName())) {
+                throw new ClassCircularityError(className);
+            }
+            result.add(header);
+            if (header.isRoot()) {
+                return result;
+            }
+        }
+    }
+
+
+    /**
+     * @return names of all interfaces implemented by the given class and its
+     * super classes and the interfaces that those interfaces extend, and so on
+     * @throws ClassNotFoundException if any of the superclasses or
+     * superinterfaces can't be found
+     * @throws ClassCircularityError if the class is its own superclass
+     */
+    public String[] getAllInterfaceNames( String className ) throws ClassNotFoundException {
+        Set<String> result = new LinkedHashSet<>();
+        for (ClassHeader header : getSuperClassHeaders(className)) {
+            addInterfaces(header, result);
+        }
+        return result.toArray(new String[result.size()]);
+    }
+
+
+    private void addInterfaces( ClassHeader header, Set<String> result ) throws ClassNotFoundException {
+        for (String name : header.getInterfaceNames()) {
+            if (result.add(name)) {
+                addInterfaces(getHeader(name), result);
+            }
+        }
+    }
+
+
+    /**
+     * Equivalent to the runtime "instanceof" operator.
+     *
+     * @return true if className is superName, or a subclass or
+     * implementation of it
+     * @throws ClassNotFoundException if superclasses or superinterfaces
+     * of className can't be found
+     */
+    public boolean instanceOf( String className, String superName ) throws ClassNotFoundException {
+        if (className.equals(superName)) {
+            return true;
+        }
+        for (String name : getSuperClassNames(className)) {
+            if (name.equals(superName)) {
+                return true;
+            }
+        }
+        if (getHeader(superName).isInterface()) {
+            return implementationOf(className, superName);
+        }
+        return false;
+    }
+
+
+    /**
+     * @return true if className is an implementation of the interface interfaceName
+     * @throws ClassNotFoundException if superclasses or superinterfaces
+     * of className can't be found
+     */
+    public boolean implementationOf( String className, String interfaceName ) throws ClassNotFoundException {
+        if (!getHeader(interfaceName).isInterface()) {
+            throw new IllegalArgumentException(interfaceName + " is no interface");
+        }
+        if (className.equals(interfaceName)) {
+            return true;
+        }
+        for (String name : getAllInterfaceNames(className)) {
+            if (name.equals(interfaceName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+    /**
+     * Find the classes in the index deriving from the given class or
+     * implementing the given interface. Only classes whose headers are
+     * in the index are considered, so call load() first to search the
+     * whole class path.
+     *
+     * @return names of all classes in the index that are instances of superName,
+     * excluding superName itself
+     */
+    public List<String> getSubtypeNames( String superName ) {
+        List<String> result = new ArrayList<>();
+        for (String name : headers.keySet()) {
+            try {
+                if (!name.equals(superName) && instanceOf(name, superName)) {
+                    result.add(name);
+                }
+            } catch (ClassNotFoundException e) {
+                // incomplete hierarchy, can't be a subtype as far as we know
+            } catch (ClassCircularityError e) {
+                // invalid hierarchy, the JVM would not load the class
+            }
+        }
+        return result;
+    }
+}
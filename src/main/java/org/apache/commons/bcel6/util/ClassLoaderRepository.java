@@ -83,17 +83,21 @@ public class ClassLoaderRepository implements Repository {
         String classFile = className.replace('.', '/');
         JavaClass RC = findClass(className);
         if (RC != null) {
+            Metrics.count(Metric.REPOSITORY_HIT, className);
             return RC;
         }
+        Metrics.count(Metric.REPOSITORY_MISS, className);
         try {
             InputStream is = loader.getResourceAsStream(classFile + ".class");
             if (is == null) {
                 throw new ClassNotFoundException(className + " not found.");
             }
             try {
+                long start = Metrics.start();
                 ClassParser parser = new ClassParser(is, className);
                 RC = parser.parse();
                 storeClass(RC);
+                Metrics.time(Metric.REPOSITORY_LOAD, className, 0, start);
                 return RC;
             } finally {
                 is.close();
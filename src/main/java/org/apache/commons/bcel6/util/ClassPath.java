@@ -26,9 +26,12 @@ import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Enumeration;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Set;
 import java.util.StringTokenizer;
 import java.util.Vector;
 import java.util.zip.ZipEntry;
@@ -188,6 +191,7 @@ public class ClassPath {
      * @return input stream for file on class path
      */
     public InputStream getInputStream( String name, String suffix ) throws IOException {
+        long start = Metrics.start();
         InputStream is = null;
         try {
             is = getClass().getClassLoader().getResourceAsStream(name + suffix); // may return null
@@ -195,6 +199,7 @@ public class ClassPath {
             // ignored
         }
         if (is != null) {
+            Metrics.time(Metric.CLASSPATH_LOOKUP, name, 0, start);
             return is;
         }
         return getClassFile(name, suffix).getInputStream();
@@ -253,6 +258,7 @@ public class ClassPath {
      * @return class file for the java class
      */
     public ClassFile getClassFile( String name, String suffix ) throws IOException {
+        long start = Metrics.start();
         ClassFile cf = null;
 
         if (parent != null) {
@@ -264,9 +270,13 @@ public class ClassPath {
         }
 
         if (cf != null) {
+            if (Metrics.isEnabled()) { // getSize() may stat the file
+                Metrics.time(Metric.CLASSPATH_LOOKUP, name, cf.getSize(), start);
+            }
             return cf;
         }
 
+        Metrics.time(Metric.CLASSPATH_LOOKUP, name, 0, start);
         throw new IOException("Couldn't find: " + name + suffix);
     }
 
@@ -349,11 +359,44 @@ public class ClassPath {
         return getClassFile(name, suffix).getPath();
     }
 
+
+    /**
+     * List the classes in the directories and archives of this class path
+     * and its parent. Classes only reachable through the class loader of
+     * BCEL (see getInputStream()) are not included, nor are the class files
+     * under META-INF, e.g. the versions of a multi-release jar, and those
+     * whose name is no class name, like module-info and package-info.
+     *
+     * @return fully qualified names of all classes, e.g. java.lang.String,
+     * without duplicates and in class path order
+     * @since 6.0
+     */
+    public List<String> getClassNames() {
+        Set<String> names = new LinkedHashSet<>();
+        if (parent != null) {
+            names.addAll(parent.getClassNames());
+        }
+        for (PathEntry path : paths) {
+            path.addClassNames(names);
+        }
+        return new ArrayList<>(names);
+    }
+
+    /**
+     * @param name name of a class file without its suffix, with dots as
+     * separators
+     * @return whether getClassNames() lists the class file
+     */
+    private static boolean isClassName( String name ) {
+        return !name.startsWith("META-INF.") && name.indexOf('-') < 0;
+    }
+
     private abstract static class PathEntry {
 
         abstract ClassFile getClassFile( String name, String suffix ) throws IOException;
         abstract URL getResource(String name);
         abstract InputStream getResourceAsStream(String name);
+        abstract void addClassNames(Set<String> names);
     }
 
     /** Contains information about file/ZIP entry of the Java class.
@@ -459,6 +502,34 @@ public class ClassPath {
         }
 
 
+        @Override
+        void addClassNames(Set<String> names) {
+            addClassNames(new File(dir), "", names);
+        }
+
+
+        private static void addClassNames(File directory, String prefix, Set<String> names) {
+            String[] files = directory.list();
+            if (files == null) {
+                return;
+            }
+            Arrays.sort(files);
+            for (String name : files) {
+                if (name.endsWith(".class")) {
+                    String className = prefix + name.substring(0, name.length() - 6);
+                    if (isClassName(className)) {
+                        names.add(className);
+                    }
+                } else {
+                    File sub = new File(directory, name);
+                    if (sub.isDirectory()) {
+                        addClassNames(sub, prefix + name + ".", names);
+                    }
+                }
+            }
+        }
+
+
         @Override
         public String toString() {
             return dir;
@@ -494,6 +565,20 @@ public class ClassPath {
             }
         }
 
+        @Override
+        void addClassNames(Set<String> names) {
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                String name = entries.nextElement().getName();
+                if (name.endsWith(".class")) {
+                    String className = name.substring(0, name.length() - 6).replace('/', '.');
+                    if (isClassName(className)) {
+                        names.add(className);
+                    }
+                }
+            }
+        }
+
         @Override
         ClassFile getClassFile( String name, String suffix ) throws IOException {
             final ZipEntry entry = zip.getEntry(name.replace('.', '/') + suffix);
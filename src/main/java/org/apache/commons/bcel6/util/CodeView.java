@@ -0,0 +1,219 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.commons.bcel6.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+
+import org.apache.commons.bcel6.Constants;
+import org.apache.commons.bcel6.classfile.ClassFormatException;
+
+/**
+ * Flyweight view of the Code attribute of a method in a class file held by
+ * a {@link ClassArena}. Unlike {@link org.apache.commons.bcel6.classfile.Code},
+ * which copies the byte code into an array on the heap, the view reads it
+ * from the arena's buffer, so looking at the code of many methods creates
+ * no more than a buffer slice per method.
+ * <p>
+ * The view is found by scanning the class file for the method, without
+ * creating the constants of the class. It keeps the arena's buffer
+ * reachable; after the arena has been released it still shows the code it
+ * was created for. Views are immutable and thread safe.
+ *
+ * @version $Id$
+ * @see ClassArena#getCode(String, String, String)
+ * @since 6.0
+ */
+public final class CodeView {
+
+    private static final byte[] CODE = encode("Code");
+
+    private final ByteBuffer code; // read-only, the byte code only
+    private final int maxStack;
+    private final int maxLocals;
+
+
+    private CodeView(ByteBuffer code, int maxStack, int maxLocals) {
+        this.code = code;
+        this.maxStack = maxStack;
+        this.maxLocals = maxLocals;
+    }
+
+
+    /** @return maximum size of the operand stack of the method */
+    public int getMaxStack() {
+        return maxStack;
+    }
+
+
+    /** @return number of local variable slots of the method */
+    public int getMaxLocals() {
+        return maxLocals;
+    }
+
+
+    /** @return number of bytes of the byte code */
+    public int getLength() {
+        return code.capacity();
+    }
+
+
+    /**
+     * @param index offset in the byte code
+     * @return the unsigned byte at the offset
+     * @throws IndexOutOfBoundsException if the offset is not in the code
+     */
+    public int getByte( int index ) {
+        return code.get(index) & 0xff;
+    }
+
+
+    /**
+     * @return a read-only buffer of the byte code, positioned at its start
+     */
+    public ByteBuffer getCode() {
+        return code.duplicate();
+    }
+
+
+    /**
+     * @return a copy of the byte code on the heap
+     */
+    public byte[] toByteArray() {
+        byte[] bytes = new byte[code.capacity()];
+        code.duplicate().get(bytes);
+        return bytes;
+    }
+
+
+    @Override
+    public String toString() {
+        return "CodeView(max_stack = " + maxStack + ", max_locals = " + maxLocals + ", code_length = "
+                + code.capacity() + ")";
+    }
+
+
+    /**
+     * Scans a class file for the Code attribute of a method.
+     *
+     * @param clazz the class file, from position 0 to its capacity
+     * @param name name of the method
+     * @param signature signature of the method
+     * @return the view of the code, or null if the class has no such
+     * method or the method has no code
+     * @throws ClassFormatException if the bytes are no valid class file
+     */
+    static CodeView find( ByteBuffer clazz, String name, String signature ) {
+        byte[] wanted_name = encode(name);
+        byte[] wanted_signature = encode(signature);
+        try {
+            if (clazz.getInt(0) != Constants.JVM_CLASSFILE_MAGIC) {
+                throw new ClassFormatException("Not a class file, or a compressed one");
+            }
+            int count = u2(clazz, 8);
+            int[] utf8 = new int[count]; // offsets of the Utf8 constants, 0 for others
+            int pos = 10;
+            for (int i = 1; i < count; i++) {
+                byte tag = clazz.get(pos);
+                if (tag == Constants.CONSTANT_Utf8) {
+                    utf8[i] = pos;
+                    pos += u2(clazz, pos + 1);
+                }
+                pos += ConstantPoolSkipper.getLength(tag, i);
+                if (ConstantPoolSkipper.isWide(tag)) {
+                    i++; // takes two slots
+                }
+            }
+            pos += 6; // access flags, this and super class
+            pos += 2 + 2 * u2(clazz, pos); // interfaces
+            int fields = u2(clazz, pos);
+            pos += 2;
+            for (int f = 0; f < fields; f++) {
+                int attributes = u2(clazz, pos + 6);
+                pos += 8;
+                for (int a = 0; a < attributes; a++) {
+                    pos += 6 + clazz.getInt(pos + 2);
+                }
+            }
+            int methods = u2(clazz, pos);
+            pos += 2;
+            for (int m = 0; m < methods; m++) {
+                boolean found = matches(clazz, utf8[u2(clazz, pos + 2)], wanted_name)
+                        && matches(clazz, utf8[u2(clazz, pos + 4)], wanted_signature);
+                int attributes = u2(clazz, pos + 6);
+                pos += 8;
+                for (int a = 0; a < attributes; a++) {
+                    if (found && matches(clazz, utf8[u2(clazz, pos)], CODE)) {
+                        int length = clazz.getInt(pos + 10);
+                        ByteBuffer code = clazz.duplicate();
+                        // Buffer methods, not the covariant ones of Java 9
+                        ((Buffer) code).limit(pos + 14 + length);
+                        ((Buffer) code).position(pos + 14);
+                        return new CodeView(code.slice().asReadOnlyBuffer(), u2(clazz, pos + 6), u2(clazz, pos + 8));
+                    }
+                    pos += 6 + clazz.getInt(pos + 2);
+                }
+                if (found) {
+                    return null; // abstract or native
+                }
+            }
+            return null;
+        } catch (IndexOutOfBoundsException | IllegalArgumentException e) {
+            throw new ClassFormatException("Truncated class file", e);
+        }
+    }
+
+
+    private static int u2( ByteBuffer buffer, int pos ) {
+        return buffer.getShort(pos) & 0xffff;
+    }
+
+
+    /**
+     * @return whether the Utf8 constant at the offset holds the encoded string
+     */
+    private static boolean matches( ByteBuffer clazz, int offset, byte[] encoded ) {
+        if (offset == 0) {
+            return false;
+        }
+        for (int i = 0; i < encoded.length; i++) {
+            if (clazz.get(offset + 1 + i) != encoded[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    /**
+     * @return the string as stored in a Utf8 constant after the tag: its
+     * length and its modified UTF-8 bytes
+     */
+    private static byte[] encode( String s ) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeUTF(s);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Cannot encode " + s, e);
+        }
+        return bytes.toByteArray();
+    }
+}
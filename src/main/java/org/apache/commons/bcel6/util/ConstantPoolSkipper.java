@@ -0,0 +1,86 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.commons.bcel6.util;
+
+import org.apache.commons.bcel6.Constants;
+import org.apache.commons.bcel6.classfile.ClassFormatException;
+
+/**
+ * Constant pool layout for the classes scanning class file bytes without
+ * parsing them, which need to step over the constants they don't decode.
+ *
+ * @version $Id$
+ * @see DependencyExtractor
+ * @see CodeView
+ * @since 6.0
+ */
+final class ConstantPoolSkipper {
+
+    /* Constants of class files of newer versions than Constants knows */
+    static final byte CONSTANT_Dynamic = 17;
+    static final byte CONSTANT_Module = 19;
+    static final byte CONSTANT_Package = 20;
+
+
+    private ConstantPoolSkipper() {
+    }
+
+
+    /**
+     * @param tag tag of the constant
+     * @param index index of the constant, for the error message
+     * @return the length of the constant in bytes, including its tag; for a
+     * Utf8 constant the length of its tag and length field only
+     * @throws ClassFormatException if the tag is unknown
+     */
+    static int getLength( byte tag, int index ) {
+        switch (tag) {
+            case Constants.CONSTANT_Utf8:
+            case Constants.CONSTANT_Class:
+            case Constants.CONSTANT_String:
+            case Constants.CONSTANT_MethodType:
+            case CONSTANT_Module:
+            case CONSTANT_Package:
+                return 3;
+            case Constants.CONSTANT_MethodHandle:
+                return 4;
+            case Constants.CONSTANT_Integer:
+            case Constants.CONSTANT_Float:
+            case Constants.CONSTANT_Fieldref:
+            case Constants.CONSTANT_Methodref:
+            case Constants.CONSTANT_InterfaceMethodref:
+            case Constants.CONSTANT_NameAndType:
+            case CONSTANT_Dynamic:
+            case Constants.CONSTANT_InvokeDynamic:
+                return 5;
+            case Constants.CONSTANT_Long:
+            case Constants.CONSTANT_Double:
+                return 9;
+            default:
+                throw new ClassFormatException("Invalid constant pool tag " + tag + " at index " + index);
+        }
+    }
+
+
+    /**
+     * @return whether the constant takes two slots of the constant pool
+     */
+    static boolean isWide( byte tag ) {
+        return tag == Constants.CONSTANT_Long || tag == Constants.CONSTANT_Double;
+    }
+}
@@ -0,0 +1,303 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.commons.bcel6.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
+
+import org.apache.commons.bcel6.classfile.ClassFormatException;
+import org.apache.commons.bcel6.classfile.Constant;
+import org.apache.commons.bcel6.classfile.ConstantClass;
+import org.apache.commons.bcel6.classfile.ConstantMethodType;
+import org.apache.commons.bcel6.classfile.ConstantNameAndType;
+import org.apache.commons.bcel6.classfile.ConstantPool;
+import org.apache.commons.bcel6.classfile.ConstantUtf8;
+import org.apache.commons.bcel6.classfile.FieldOrMethod;
+import org.apache.commons.bcel6.classfile.JavaClass;
+
+/**
+ * Computes the transitive closure of the classes referenced by a set of
+ * root classes, i.e., the classes they use, the classes those use, and so
+ * on. The references of a class are taken from its constant pool: the
+ * class constants, the classes of field and method references and the
+ * class types in the descriptors of name and type constants, and from the
+ * descriptors of its own fields and methods. Classes only used through
+ * reflection are not found.
+ * <p>
+ * The frontier of the search is expanded in parallel, each class being
+ * read once and scanned by {@link DependencyExtractor} rather than
+ * parsed. Include and exclude patterns, regular expressions on the class
+ * names, limit which classes are followed: a class is part of the
+ * result if it matches an include pattern, or there are none, and no
+ * exclude pattern; root classes are always part of it.
+ * <p>
+ * This replaces the class by class traversals of
+ * org.apache.commons.bcel6.verifier.TransitiveHull and the TransitiveHull
+ * example for large class sets.
+ *
+ * @version $Id$
+ * @see DependencyGraph
+ * @since 6.0
+ */
+public class DependencyClosure {
+
+    /** Number of classes read per task. */
+    private static final int BATCH_SIZE = 32;
+
+    /** Packages of the Java platform, to be used with addExclude() */
+    public static final String[] PLATFORM_PACKAGES = { "java[.].*", "javax[.].*", "jdk[.].*", "sun[.].*",
+            "sunw[.].*", "com[.]sun[.].*", "org[.]omg[.].*", "org[.]w3c[.].*", "org[.]xml[.].*" };
+
+    private final ClassPath path;
+    private final List<Pattern> includes = new ArrayList<>();
+    private final List<Pattern> excludes = new ArrayList<>();
+
+
+    /**
+     * @param path class path to read the classes from
+     */
+    public DependencyClosure(ClassPath path) {
+        this.path = path;
+    }
+
+
+    /**
+     * Follow only classes whose names match one of the include patterns.
+     */
+    public void addInclude( String regex ) {
+        includes.add(Pattern.compile(regex));
+    }
+
+
+    /**
+     * Do not follow classes whose names match the pattern.
+     */
+    public void addExclude( String regex ) {
+        excludes.add(Pattern.compile(regex));
+    }
+
+
+    /**
+     * Do not follow classes whose names match any of the patterns, e.g.
+     * PLATFORM_PACKAGES.
+     */
+    public void addExcludes( String[] regexes ) {
+        for (String regex : regexes) {
+            addExclude(regex);
+        }
+    }
+
+
+    /**
+     * @return whether the class passes the include and exclude patterns
+     */
+    public boolean accept( String className ) {
+        boolean included = includes.isEmpty();
+        for (Pattern p : includes) {
+            if (p.matcher(className).matches()) {
+                included = true;
+                break;
+            }
+        }
+        if (!included) {
+            return false;
+        }
+        for (Pattern p : excludes) {
+            if (p.matcher(className).matches()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    /**
+     * Compute the closure of the root classes, using one thread per
+     * available processor.
+     *
+     * @param roots fully qualified names of the root classes
+     * @return the graph of the classes found and their dependencies
+     * @throws InterruptedException if interrupted while waiting for the worker threads
+     */
+    public DependencyGraph compute( String... roots ) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        try {
+            return compute(executor, roots);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+
+    /**
+     * Compute the closure of the root classes with the given executor.
+     * Referenced classes that cannot be found or parsed become part of the
+     * graph as missing classes.
+     *
+     * @param executor executor to run the tasks reading the classes
+     * @param roots fully qualified names of the root classes
+     * @return the graph of the classes found and their dependencies
+     * @throws InterruptedException if interrupted while waiting for the worker threads
+     */
+    public DependencyGraph compute( ExecutorService executor, String... roots ) throws InterruptedException {
+        final Set<String> visited = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+        final ConcurrentMap<String, Collection<String>> graph = new ConcurrentHashMap<>();
+        final Set<String> missing = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+        List<String> frontier = new ArrayList<>();
+        for (String root : roots) {
+            if (visited.add(root)) {
+                frontier.add(root);
+            }
+        }
+        while (!frontier.isEmpty()) {
+            List<Future<List<String>>> futures = Batches.submit(executor, frontier, BATCH_SIZE,
+                    new Batches.Task<String, List<String>>() {
+
+                        @Override
+                        public List<String> run( List<String> batch ) {
+                            List<String> next = new ArrayList<>();
+                            for (String name : batch) {
+                                Set<String> references = getReferencedClassNames(name);
+                                if (references == null) {
+                                    missing.add(name);
+                                    continue;
+                                }
+                                List<String> dependencies = new ArrayList<>();
+                                for (String reference : references) {
+                                    if (reference.equals(name) || !accept(reference)) {
+                                        continue;
+                                    }
+                                    dependencies.add(reference);
+                                    if (visited.add(reference)) {
+                                        next.add(reference);
+                                    }
+                                }
+                                graph.put(name, dependencies);
+                            }
+                            return next;
+                        }
+                    });
+            List<String> next = new ArrayList<>();
+            for (Future<List<String>> future : futures) {
+                next.addAll(Batches.get(future, RuntimeException.class));
+            }
+            frontier = next;
+        }
+        Map<String, Collection<String>> result = new HashMap<>(graph);
+        for (String name : missing) {
+            result.put(name, null);
+        }
+        return new DependencyGraph(result);
+    }
+
+
+    /**
+     * @return the classes referenced by the class, null if it cannot be
+     * found or parsed
+     */
+    private Set<String> getReferencedClassNames( String name ) {
+        try {
+            InputStream is = path.getInputStream(name);
+            try {
+                return DependencyExtractor.getReferencedClassNames(is);
+            } finally {
+                is.close();
+            }
+        } catch (IOException e) {
+            return null;
+        } catch (ClassFormatException e) {
+            return null;
+        }
+    }
+
+
+    /**
+     * @return the fully qualified names of the classes referenced by the
+     * constant pool and the field and method descriptors of the class,
+     * including the class itself
+     */
+    public static Set<String> getReferencedClassNames( JavaClass clazz ) {
+        Set<String> result = new LinkedHashSet<>();
+        ConstantPool cp = clazz.getConstantPool();
+        // The class of a field or method reference is a class constant of its
+        // own, and its descriptor is in a name and type constant
+        for (int i = 1; i < cp.getLength(); i++) {
+            Constant c = cp.getConstant(i);
+            if (c instanceof ConstantClass) {
+                addClassName(((ConstantUtf8) cp.getConstant(((ConstantClass) c).getNameIndex())).getBytes(),
+                        result);
+            } else if (c instanceof ConstantNameAndType) {
+                addDescriptorClassNames(((ConstantNameAndType) c).getSignature(cp), result);
+            } else if (c instanceof ConstantMethodType) {
+                addDescriptorClassNames(
+                        ((ConstantUtf8) cp.getConstant(((ConstantMethodType) c).getDescriptorIndex())).getBytes(),
+                        result);
+            }
+        }
+        for (FieldOrMethod f : clazz.getFields()) {
+            addDescriptorClassNames(f.getSignature(), result);
+        }
+        for (FieldOrMethod m : clazz.getMethods()) {
+            addDescriptorClassNames(m.getSignature(), result);
+        }
+        return result;
+    }
+
+
+    /**
+     * Adds the class named by a class constant, i.e., an internal name like
+     * java/lang/String or an array descriptor like [Ljava/lang/String;
+     */
+    static void addClassName( String name, Collection<String> result ) {
+        if (name.startsWith("[")) {
+            addDescriptorClassNames(name, result);
+        } else {
+            result.add(name.replace('/', '.').intern());
+        }
+    }
+
+
+    /**
+     * Adds the classes of the object types in a field or method descriptor.
+     */
+    static void addDescriptorClassNames( String descriptor, Collection<String> result ) {
+        int start = descriptor.indexOf('L');
+        while (start >= 0) {
+            int end = descriptor.indexOf(';', start);
+            if (end < 0) {
+                return; // malformed
+            }
+            result.add(descriptor.substring(start + 1, end).replace('/', '.').intern());
+            start = descriptor.indexOf('L', end);
+        }
+    }
+}
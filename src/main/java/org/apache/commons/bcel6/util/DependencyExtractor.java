@@ -0,0 +1,237 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.commons.bcel6.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.apache.commons.bcel6.Constants;
+import org.apache.commons.bcel6.classfile.ClassFormatException;
+
+/**
+ * Extracts the names of the classes a class references from its class file
+ * bytes, without parsing it into a JavaClass. The bytes are scanned once:
+ * only class, name and type and method type constants and the UTF-8
+ * constants they refer to are decoded, the descriptors of the fields and
+ * methods are read, and everything else, in particular the code and all
+ * other attributes, is skipped by its length.
+ * <p>
+ * The result is the same as that of
+ * {@link DependencyClosure#getReferencedClassNames(org.apache.commons.bcel6.classfile.JavaClass)},
+ * with the names interned, as the same names occur in many classes.
+ *
+ * @version $Id$
+ * @since 6.0
+ */
+public final class DependencyExtractor {
+
+    /* How a UTF-8 constant is used */
+    private static final byte CLASS_NAME = 1;
+    private static final byte DESCRIPTOR = 2;
+
+
+    private DependencyExtractor() {
+    }
+
+
+    /**
+     * @param is stream to read the class file from; it is not closed
+     * @return the fully qualified names of the classes referenced by the
+     * class, including the class itself
+     * @throws IOException if the stream can't be read
+     * @throws ClassFormatException if the data is not a valid class file
+     */
+    public static Set<String> getReferencedClassNames( InputStream is ) throws IOException {
+        return getReferencedClassNames(Streams.readFully(is));
+    }
+
+
+    /**
+     * @param bytes the class file
+     * @return the fully qualified names of the classes referenced by the
+     * class, including the class itself
+     * @throws ClassFormatException if the data is not a valid class file
+     */
+    public static Set<String> getReferencedClassNames( byte[] bytes ) {
+        try {
+            return scan(bytes);
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new ClassFormatException("Truncated class file");
+        }
+    }
+
+
+    private static Set<String> scan( byte[] b ) {
+        if (readInt(b, 0) != Constants.JVM_CLASSFILE_MAGIC) {
+            throw new ClassFormatException("Not a class file, wrong magic number");
+        }
+        int count = readShort(b, 8);
+        int[] offset = new int[count]; // of the UTF-8 constants
+        byte[] kind = new byte[count];
+        int pos = 10;
+        for (int i = 1; i < count; i++) {
+            byte tag = b[pos];
+            switch (tag) {
+                case Constants.CONSTANT_Utf8:
+                    offset[i] = pos + 1;
+                    pos += 3 + readShort(b, pos + 1);
+                    break;
+                case Constants.CONSTANT_Class:
+                    mark(kind, readShort(b, pos + 1), CLASS_NAME);
+                    pos += 3;
+                    break;
+                case Constants.CONSTANT_NameAndType:
+                    mark(kind, readShort(b, pos + 3), DESCRIPTOR);
+                    pos += 5;
+                    break;
+                case Constants.CONSTANT_MethodType:
+                    mark(kind, readShort(b, pos + 1), DESCRIPTOR);
+                    pos += 3;
+                    break;
+                default:
+                    pos += ConstantPoolSkipper.getLength(tag, i);
+                    if (ConstantPoolSkipper.isWide(tag)) {
+                        i++;
+                    }
+            }
+        }
+        pos += 6; // access flags, this and super class
+        pos += 2 + 2 * readShort(b, pos); // interfaces
+        for (int members = 0; members < 2; members++) { // fields and methods
+            int member_count = readShort(b, pos);
+            pos += 2;
+            for (int m = 0; m < member_count; m++) {
+                mark(kind, readShort(b, pos + 4), DESCRIPTOR);
+                int attributes = readShort(b, pos + 6);
+                pos += 8;
+                for (int a = 0; a < attributes; a++) {
+                    pos += 6 + readInt(b, pos + 2);
+                }
+            }
+        }
+        Set<String> result = new LinkedHashSet<>();
+        for (int i = 1; i < count; i++) {
+            if (kind[i] == 0) {
+                continue;
+            }
+            if (offset[i] == 0) {
+                throw new ClassFormatException("Constant " + i + " is not a UTF-8 constant");
+            }
+            int start = offset[i] + 2;
+            int end = start + readShort(b, offset[i]);
+            if (!isAscii(b, start, end)) {
+                String value = decode(b, offset[i]);
+                if ((kind[i] & CLASS_NAME) != 0) {
+                    if (value.startsWith("[")) {
+                        DependencyClosure.addDescriptorClassNames(value, result);
+                    } else {
+                        result.add(value.replace('/', '.').intern());
+                    }
+                }
+                if ((kind[i] & DESCRIPTOR) != 0) {
+                    DependencyClosure.addDescriptorClassNames(value, result);
+                }
+                continue;
+            }
+            if ((kind[i] & CLASS_NAME) != 0) {
+                if (start < end && b[start] == '[') {
+                    addDescriptorClassNames(b, start, end, result);
+                } else {
+                    result.add(toName(b, start, end));
+                }
+            }
+            if ((kind[i] & DESCRIPTOR) != 0) {
+                addDescriptorClassNames(b, start, end, result);
+            }
+        }
+        return result;
+    }
+
+    private static void mark( byte[] kind, int index, byte how ) {
+        kind[index] |= how;
+    }
+
+
+    /**
+     * Adds the object types of a descriptor consisting of ASCII characters.
+     */
+    private static void addDescriptorClassNames( byte[] b, int start, int end, Collection<String> result ) {
+        for (int i = start; i < end; i++) {
+            if (b[i] == 'L') {
+                int semicolon = i + 1;
+                while (semicolon < end && b[semicolon] != ';') {
+                    semicolon++;
+                }
+                result.add(toName(b, i + 1, semicolon));
+                i = semicolon;
+            }
+        }
+    }
+
+
+    /**
+     * @return the interned class name for an internal name consisting of ASCII characters
+     */
+    private static String toName( byte[] b, int start, int end ) {
+        char[] chars = new char[end - start];
+        for (int i = start; i < end; i++) {
+            char c = (char) b[i];
+            chars[i - start] = c == '/' ? '.' : c;
+        }
+        return new String(chars).intern();
+    }
+
+
+    private static boolean isAscii( byte[] b, int start, int end ) {
+        for (int i = start; i < end; i++) {
+            if (b[i] < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    /**
+     * @return the value of the UTF-8 constant whose length is at the given offset
+     */
+    private static String decode( byte[] b, int offset ) {
+        int length = readShort(b, offset) + 2;
+        try {
+            return new DataInputStream(new ByteArrayInputStream(b, offset, length)).readUTF();
+        } catch (IOException e) {
+            throw new ClassFormatException("Invalid UTF-8 constant: " + e);
+        }
+    }
+
+
+    private static int readShort( byte[] b, int pos ) {
+        return ((b[pos] & 0xff) << 8) | (b[pos + 1] & 0xff);
+    }
+
+
+    private static int readInt( byte[] b, int pos ) {
+        return ((b[pos] & 0xff) << 24) | ((b[pos + 1] & 0xff) << 16) | ((b[pos + 2] & 0xff) << 8)
+                | (b[pos + 3] & 0xff);
+    }
+}
@@ -0,0 +1,303 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.commons.bcel6.util;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The class dependency graph computed by {@link DependencyClosure}. Classes
+ * are numbered from 0 in the order of their names, and the dependencies of
+ * each class are kept in a sorted int array, so the graph takes little
+ * more memory than the class names themselves.
+ * <p>
+ * Instances are immutable and thread safe.
+ *
+ * @version $Id$
+ * @since 6.0
+ */
+public final class DependencyGraph {
+
+    private static final int[] NONE = new int[0];
+
+    private final String[] names;
+    private final Map<String, Integer> index;
+    private final int[][] dependencies;
+    private final boolean[] missing;
+    private int[][] dependents; // computed on demand
+
+
+    /**
+     * @param graph the dependencies of every class, null for classes that
+     * could not be read; all dependencies have to be keys of the map
+     */
+    DependencyGraph( Map<String, Collection<String>> graph ) {
+        names = graph.keySet().toArray(new String[graph.size()]);
+        Arrays.sort(names);
+        index = new HashMap<>(names.length * 2);
+        for (int i = 0; i < names.length; i++) {
+            index.put(names[i], Integer.valueOf(i));
+        }
+        dependencies = new int[names.length][];
+        missing = new boolean[names.length];
+        for (int i = 0; i < names.length; i++) {
+            Collection<String> deps = graph.get(names[i]);
+            if (deps == null) {
+                missing[i] = true;
+                dependencies[i] = NONE;
+                continue;
+            }
+            int[] d = new int[deps.size()];
+            int count = 0;
+            for (String dep : deps) {
+                d[count++] = index.get(dep).intValue();
+            }
+            Arrays.sort(d);
+            dependencies[i] = d;
+        }
+    }
+
+
+    /** @return the number of classes */
+    public int size() {
+        return names.length;
+    }
+
+
+    /** @return the names of the classes, sorted */
+    public String[] getClassNames() {
+        return names.clone();
+    }
+
+
+    /** @return the name of the class with the given number */
+    public String getClassName( int i ) {
+        return names[i];
+    }
+
+
+    /** @return the number of the class, -1 if it is not part of the graph */
+    public int indexOf( String className ) {
+        Integer i = index.get(className);
+        return i == null ? -1 : i.intValue();
+    }
+
+
+    /** @return whether the graph contains the class */
+    public boolean contains( String className ) {
+        return index.containsKey(className);
+    }
+
+
+    /**
+     * @return whether the class is referenced, but could not be found or
+     * parsed, so that its dependencies are unknown
+     */
+    public boolean isMissing( int i ) {
+        return missing[i];
+    }
+
+
+    /** @return the classes referenced, but not found or not parsable */
+    public String[] getMissingClassNames() {
+        int count = 0;
+        for (boolean m : missing) {
+            if (m) {
+                count++;
+            }
+        }
+        String[] result = new String[count];
+        count = 0;
+        for (int i = 0; i < names.length; i++) {
+            if (missing[i]) {
+                result[count++] = names[i];
+            }
+        }
+        return result;
+    }
+
+
+    /**
+     * @return the numbers of the classes the given class depends on,
+     * sorted; the array must not be modified
+     */
+    public int[] getDependencies( int i ) {
+        return dependencies[i];
+    }
+
+
+    /**
+     * @return the names of the classes the given class depends on
+     * @throws IllegalArgumentException if the class is not part of the graph
+     */
+    public String[] getDependencies( String className ) {
+        return toNames(dependencies[checkedIndexOf(className)]);
+    }
+
+
+    /**
+     * @return the numbers of the classes depending on the given class,
+     * sorted; the array must not be modified
+     */
+    public int[] getDependents( int i ) {
+        return getDependents()[i];
+    }
+
+
+    /**
+     * @return the names of the classes depending on the given class
+     * @throws IllegalArgumentException if the class is not part of the graph
+     */
+    public String[] getDependents( String className ) {
+        return toNames(getDependents()[checkedIndexOf(className)]);
+    }
+
+
+    private synchronized int[][] getDependents() {
+        if (dependents == null) {
+            int n = names.length;
+            int[] count = new int[n];
+            for (int[] d : dependencies) {
+                for (int t : d) {
+                    count[t]++;
+                }
+            }
+            int[][] result = new int[n][];
+            for (int i = 0; i < n; i++) {
+                result[i] = count[i] == 0 ? NONE : new int[count[i]];
+                count[i] = 0;
+            }
+            for (int i = 0; i < n; i++) {
+                for (int t : dependencies[i]) {
+                    result[t][count[t]++] = i;
+                }
+            }
+            dependents = result;
+        }
+        return dependents;
+    }
+
+
+    /** @return the number of dependencies between classes */
+    public int getEdgeCount() {
+        int count = 0;
+        for (int[] d : dependencies) {
+            count += d.length;
+        }
+        return count;
+    }
+
+
+    /**
+     * @return whether the class depends on the other one, directly or
+     * through other classes
+     */
+    public boolean dependsOn( String className, String otherName ) {
+        int from = checkedIndexOf(className);
+        int to = checkedIndexOf(otherName);
+        boolean[] visited = new boolean[names.length];
+        int[] stack = new int[names.length];
+        int sp = 0;
+        stack[sp++] = from;
+        visited[from] = true;
+        while (sp > 0) {
+            for (int d : dependencies[stack[--sp]]) {
+                if (d == to) {
+                    return true;
+                }
+                if (!visited[d]) {
+                    visited[d] = true;
+                    stack[sp++] = d;
+                }
+            }
+        }
+        return false;
+    }
+
+
+    /**
+     * Writes the dependencies, one per line as the name of the class and
+     * the name of the class it depends on separated by a tab. Missing
+     * classes are written as a line of their own.
+     */
+    public void write( Writer out ) throws IOException {
+        for (int i = 0; i < names.length; i++) {
+            if (missing[i]) {
+                out.write(names[i]);
+                out.write('\n');
+            }
+            for (int d : dependencies[i]) {
+                out.write(names[i]);
+                out.write('\t');
+                out.write(names[d]);
+                out.write('\n');
+            }
+        }
+        out.flush();
+    }
+
+
+    /**
+     * Writes the graph in the dot format of Graphviz, missing classes
+     * drawn dashed.
+     */
+    public void writeDot( Writer out ) throws IOException {
+        out.write("digraph dependencies {\n");
+        for (int i = 0; i < names.length; i++) {
+            if (missing[i]) {
+                out.write("  \"" + names[i] + "\" [style=dashed];\n");
+            }
+            for (int d : dependencies[i]) {
+                out.write("  \"" + names[i] + "\" -> \"" + names[d] + "\";\n");
+            }
+        }
+        out.write("}\n");
+        out.flush();
+    }
+
+
+    private int checkedIndexOf( String className ) {
+        Integer i = index.get(className);
+        if (i == null) {
+            throw new IllegalArgumentException(className + " is not part of the graph");
+        }
+        return i.intValue();
+    }
+
+
+    private String[] toNames( int[] classes ) {
+        String[] result = new String[classes.length];
+        for (int i = 0; i < classes.length; i++) {
+            result[i] = names[classes[i]];
+        }
+        return result;
+    }
+
+
+    /**
+     * @return the number of classes and dependencies
+     */
+    @Override
+    public String toString() {
+        return "DependencyGraph(" + names.length + " classes, " + getEdgeCount() + " dependencies)";
+    }
+}
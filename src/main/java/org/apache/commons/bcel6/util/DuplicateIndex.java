@@ -0,0 +1,292 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.commons.bcel6.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.apache.commons.bcel6.classfile.ClassParser;
+
+/**
+ * An in-memory index of {@link MethodFingerprint}s that finds identical and
+ * similar methods.
+ * <p>
+ * Identical methods are found by their hashes. Similar methods are found
+ * by locality sensitive hashing: the MinHash sketch of a method is cut
+ * into {@value #BANDS} bands, and methods agreeing on all values of a
+ * band are candidates, whose estimated similarity is then checked. Pairs
+ * with a similarity of 0.7 are found with a probability of about 0.9,
+ * while pairs with a similarity of 0.3 become candidates with a
+ * probability of about 0.06.
+ * <p>
+ * Methods shorter than a minimum number of instructions, like getters and
+ * setters, can be left out of the index. The index is not thread safe;
+ * {@link #build(ExecutorService, int, File...)} computes the fingerprints
+ * of the classes in jar files in parallel.
+ *
+ * @version $Id$
+ * @since 6.0
+ */
+public class DuplicateIndex {
+
+    /** Number of bands the sketches are cut into. */
+    public static final int BANDS = 8;
+
+    private static final int ROWS = MethodFingerprint.SKETCH_SIZE / BANDS;
+
+    /** Number of classes fingerprinted per task. */
+    private static final int BATCH_SIZE = 32;
+
+    /** Fingerprints the methods of a batch of class files. */
+    private static final Batches.Task<byte[], List<MethodFingerprint>> FINGERPRINT =
+            new Batches.Task<byte[], List<MethodFingerprint>>() {
+
+        @Override
+        public List<MethodFingerprint> run( List<byte[]> batch ) throws IOException {
+            List<MethodFingerprint> result = new ArrayList<>();
+            for (byte[] bytes : batch) {
+                result.addAll(MethodFingerprint.compute(new ClassParser(new ByteArrayInputStream(bytes),
+                        "<fingerprint>").parse()));
+            }
+            return result;
+        }
+    };
+
+    private final int min_length;
+    private final List<MethodFingerprint> methods = new ArrayList<>();
+    private final Map<Long, List<MethodFingerprint>> by_hash = new HashMap<>();
+    private final List<Map<Long, List<MethodFingerprint>>> by_band = new ArrayList<>();
+
+
+    /**
+     * Creates an index of all methods.
+     */
+    public DuplicateIndex() {
+        this(1);
+    }
+
+
+    /**
+     * @param min_length minimum number of instructions of the methods to index
+     */
+    public DuplicateIndex(int min_length) {
+        this.min_length = min_length;
+        for (int b = 0; b < BANDS; b++) {
+            by_band.add(new HashMap<Long, List<MethodFingerprint>>());
+        }
+    }
+
+
+    /**
+     * Adds a method to the index, unless it is too short.
+     *
+     * @return whether the method was added
+     */
+    public boolean add( MethodFingerprint method ) {
+        if (method.getLength() < min_length) {
+            return false;
+        }
+        methods.add(method);
+        put(by_hash, method.getHash(), method);
+        for (int b = 0; b < BANDS; b++) {
+            put(by_band.get(b), getBandKey(method, b), method);
+        }
+        return true;
+    }
+
+
+    public void addAll( Collection<MethodFingerprint> methods ) {
+        for (MethodFingerprint m : methods) {
+            add(m);
+        }
+    }
+
+
+    /** @return the number of methods in the index */
+    public int size() {
+        return methods.size();
+    }
+
+
+    /** @return the methods in the index, in the order they were added */
+    public List<MethodFingerprint> getMethods() {
+        return Collections.unmodifiableList(methods);
+    }
+
+
+    /**
+     * @return the other methods of the index with the same hash as the method
+     */
+    public List<MethodFingerprint> findIdentical( MethodFingerprint method ) {
+        List<MethodFingerprint> result = new ArrayList<>();
+        List<MethodFingerprint> same = by_hash.get(Long.valueOf(method.getHash()));
+        if (same != null) {
+            for (MethodFingerprint m : same) {
+                if (m != method) {
+                    result.add(m);
+                }
+            }
+        }
+        return result;
+    }
+
+
+    /**
+     * @param method the method to find similar methods to; it need not be
+     * in the index
+     * @param min_similarity minimum estimated similarity, from 0 to 1
+     * @return the other methods of the index similar to the method, the
+     * most similar first; identical methods included
+     */
+    public List<MethodFingerprint> findSimilar( MethodFingerprint method, double min_similarity ) {
+        final Map<MethodFingerprint, Double> candidates = new IdentityHashMap<>();
+        for (int b = 0; b < BANDS; b++) {
+            List<MethodFingerprint> bucket = by_band.get(b).get(Long.valueOf(getBandKey(method, b)));
+            if (bucket == null) {
+                continue;
+            }
+            for (MethodFingerprint m : bucket) {
+                if (m != method && !candidates.containsKey(m)) {
+                    candidates.put(m, Double.valueOf(method.similarity(m)));
+                }
+            }
+        }
+        List<MethodFingerprint> result = new ArrayList<>();
+        for (Map.Entry<MethodFingerprint, Double> e : candidates.entrySet()) {
+            if (e.getValue().doubleValue() >= min_similarity) {
+                result.add(e.getKey());
+            }
+        }
+        Collections.sort(result, new Comparator<MethodFingerprint>() {
+
+            @Override
+            public int compare( MethodFingerprint a, MethodFingerprint b ) {
+                int c = candidates.get(b).compareTo(candidates.get(a));
+                return c != 0 ? c : a.toString().compareTo(b.toString());
+            }
+        });
+        return result;
+    }
+
+
+    /**
+     * @return the groups of identical methods with more than one member,
+     * those saving the most instructions when merged first
+     */
+    public List<List<MethodFingerprint>> getDuplicateGroups() {
+        List<List<MethodFingerprint>> result = new ArrayList<>();
+        for (List<MethodFingerprint> same : by_hash.values()) {
+            if (same.size() > 1) {
+                result.add(Collections.unmodifiableList(same));
+            }
+        }
+        Collections.sort(result, new Comparator<List<MethodFingerprint>>() {
+
+            @Override
+            public int compare( List<MethodFingerprint> a, List<MethodFingerprint> b ) {
+                long saved_a = (long) (a.size() - 1) * a.get(0).getLength();
+                long saved_b = (long) (b.size() - 1) * b.get(0).getLength();
+                if (saved_a != saved_b) {
+                    return saved_a > saved_b ? -1 : 1;
+                }
+                return a.get(0).toString().compareTo(b.get(0).toString());
+            }
+        });
+        return result;
+    }
+
+
+    private static void put( Map<Long, List<MethodFingerprint>> map, long key, MethodFingerprint method ) {
+        Long k = Long.valueOf(key);
+        List<MethodFingerprint> list = map.get(k);
+        if (list == null) {
+            list = new ArrayList<>(1);
+            map.put(k, list);
+        }
+        list.add(method);
+    }
+
+
+    private static long getBandKey( MethodFingerprint method, int band ) {
+        long key = band;
+        for (int r = band * ROWS; r < (band + 1) * ROWS; r++) {
+            key = key * 0x100000001b3L + method.getSketch(r);
+        }
+        return key;
+    }
+
+
+    /**
+     * Builds an index of the methods of the classes in jar files, computing
+     * their fingerprints in parallel. Classes under META-INF, module-info
+     * and package-info are left out.
+     *
+     * @param executor executor to run the fingerprinting tasks
+     * @param min_length minimum number of instructions of the methods to index
+     * @param jars the jar files
+     * @throws IOException if a jar file cannot be read
+     * @throws org.apache.commons.bcel6.classfile.ClassFormatException if
+     * a jar file contains an invalid class file
+     * @throws InterruptedException if interrupted while waiting for the worker threads
+     */
+    public static DuplicateIndex build( ExecutorService executor, int min_length, File... jars )
+            throws IOException, InterruptedException {
+        List<Future<List<MethodFingerprint>>> futures = new ArrayList<>();
+        for (File jar : jars) {
+            List<byte[]> batch = new ArrayList<>();
+            try (ZipFile zip = new ZipFile(jar)) {
+                for (Enumeration<? extends ZipEntry> e = zip.entries(); e.hasMoreElements();) {
+                    ZipEntry entry = e.nextElement();
+                    if (TreeShaker.getClassName(entry) == null) {
+                        continue;
+                    }
+                    try (InputStream in = zip.getInputStream(entry)) {
+                        batch.add(Streams.readFully(in));
+                    }
+                    if (batch.size() == BATCH_SIZE) {
+                        futures.add(Batches.submit(executor, batch, FINGERPRINT));
+                        batch = new ArrayList<>();
+                    }
+                }
+            }
+            if (!batch.isEmpty()) {
+                futures.add(Batches.submit(executor, batch, FINGERPRINT));
+            }
+        }
+        DuplicateIndex index = new DuplicateIndex(min_length);
+        for (Future<List<MethodFingerprint>> future : futures) {
+            index.addAll(Batches.get(future, IOException.class));
+        }
+        return index;
+    }
+}
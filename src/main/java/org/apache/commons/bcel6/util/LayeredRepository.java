@@ -0,0 +1,172 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.commons.bcel6.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.bcel6.classfile.ClassParser;
+import org.apache.commons.bcel6.classfile.JavaClass;
+
+/**
+ * A repository layered on top of a parent repository, typically a
+ * {@link SharedRepository} holding the Java platform and common libraries,
+ * so that many layers share the parent's classes instead of each loading
+ * its own copies.
+ * <p>
+ * Classes are looked up parent-first: a class is taken from the parent if
+ * the parent has or can load it, and only otherwise read from this layer's
+ * class path and kept in this layer. Classes stored with storeClass() are
+ * kept in this layer and take precedence over the parent's. removeClass()
+ * and clear() only affect this layer, and the classes of the parent are
+ * returned as they are, not copied.
+ *
+ * @version $Id$
+ * @see SharedRepository
+ * @since 6.0
+ */
+public class LayeredRepository implements Repository {
+
+    private final Repository parent;
+    private final ClassPath path;
+    private final Map<String, JavaClass> classes = new ConcurrentHashMap<>(); // CLASSNAME X JAVACLASS
+
+
+    /**
+     * @param parent the repository to look classes up in first
+     * @param path class path to read the classes of this layer from
+     */
+    public LayeredRepository(Repository parent, ClassPath path) {
+        this.parent = parent;
+        this.path = path;
+    }
+
+
+    /** @return the repository classes are looked up in first */
+    public Repository getParent() {
+        return parent;
+    }
+
+
+    /**
+     * @return whether the class is held by this layer rather than the parent
+     */
+    public boolean isLocal( String className ) {
+        return classes.containsKey(className);
+    }
+
+
+    /**
+     * Store a JavaClass instance in this layer.
+     */
+    @Override
+    public void storeClass( JavaClass clazz ) {
+        classes.put(clazz.getClassName(), clazz);
+        clazz.setRepository(this);
+    }
+
+
+    /**
+     * Remove a class from this layer.
+     */
+    @Override
+    public void removeClass( JavaClass clazz ) {
+        classes.remove(clazz.getClassName());
+    }
+
+
+    /**
+     * Find an already loaded JavaClass object by name, in this layer or
+     * the parent.
+     */
+    @Override
+    public JavaClass findClass( String className ) {
+        JavaClass clazz = classes.get(className);
+        if (clazz == null) {
+            clazz = parent.findClass(className);
+        }
+        return clazz;
+    }
+
+
+    /**
+     * Find a JavaClass object by name: in this layer, in the parent, or
+     * on this layer's class path, in that order.
+     *
+     * @throws ClassNotFoundException if the class is found nowhere
+     */
+    @Override
+    public JavaClass loadClass( String className ) throws ClassNotFoundException {
+        if (className == null || className.equals("")) {
+            throw new IllegalArgumentException("Invalid class name " + className);
+        }
+        className = className.replace('/', '.'); // Just in case, canonical form
+        JavaClass clazz = classes.get(className);
+        if (clazz != null) {
+            Metrics.count(Metric.REPOSITORY_HIT, className);
+            return clazz;
+        }
+        try {
+            return parent.loadClass(className);
+        } catch (ClassNotFoundException e) {
+            // not in the parent
+        }
+        Metrics.count(Metric.REPOSITORY_MISS, className);
+        long start = Metrics.start();
+        try (InputStream is = path.getInputStream(className)) {
+            clazz = new ClassParser(is, className).parse();
+        } catch (IOException e) {
+            throw new ClassNotFoundException("Exception while looking for class " + className
+                    + ": " + e, e);
+        }
+        storeClass(clazz);
+        Metrics.time(Metric.REPOSITORY_LOAD, className, 0, start);
+        return clazz;
+    }
+
+
+    /**
+     * Find the JavaClass object for a runtime class object.
+     *
+     * @see #loadClass(String)
+     */
+    @Override
+    public JavaClass loadClass( Class<?> clazz ) throws ClassNotFoundException {
+        return loadClass(clazz.getName());
+    }
+
+
+    /**
+     * Clear all classes of this layer.
+     */
+    @Override
+    public void clear() {
+        classes.clear();
+    }
+
+
+    /**
+     * @return the class path of this layer
+     */
+    @Override
+    public ClassPath getClassPath() {
+        return path;
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.commons.bcel6.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.bcel6.Constants;
+import org.apache.commons.bcel6.classfile.Code;
+import org.apache.commons.bcel6.classfile.JavaClass;
+import org.apache.commons.bcel6.classfile.Method;
+import org.apache.commons.bcel6.generic.Type;
+
+/**
+ * A canonical fingerprint of the code of a method, for finding identical
+ * and similar methods, e.g. with a {@link DuplicateIndex}.
+ * <p>
+ * The code is hashed in a form that does not depend on the constant pool
+ * of its class or on the numbering of its local variables: constants are
+ * hashed by value, branches by their distance in instructions, and the
+ * slots of local variables other than the parameters are numbered in the
+ * order of their first use. Two methods with the same hash have the same
+ * code, up to hash collisions; the name and the class of the method are
+ * not part of the fingerprint, its signature is.
+ * <p>
+ * For near duplicates, the fingerprint holds a MinHash sketch of the
+ * overlapping runs of {@value #SHINGLE_SIZE} instructions of the code.
+ * The share of equal sketch values estimates the Jaccard similarity of
+ * two methods' sets of runs.
+ *
+ * @version $Id$
+ * @since 6.0
+ */
+public final class MethodFingerprint {
+
+    /** Number of consecutive instructions forming a run. */
+    public static final int SHINGLE_SIZE = 4;
+
+    /** Number of values of the MinHash sketch. */
+    public static final int SKETCH_SIZE = 32;
+
+    private final String class_name;
+    private final String method_name;
+    private final String signature;
+    private final long hash;
+    private final int length;
+    private final long[] sketch;
+
+
+    /**
+     * Computes the fingerprint of a method with code.
+     *
+     * @param clazz the class declaring the method
+     * @param method the method
+     * @throws IllegalArgumentException if the method has no code
+     */
+    public MethodFingerprint(JavaClass clazz, Method method) {
+        Code code = method.getCode();
+        if (code == null) {
+            throw new IllegalArgumentException("Method " + method.getName() + " has no code");
+        }
+        class_name = clazz.getClassName();
+        method_name = method.getName();
+        signature = method.getSignature();
+        int parameters = method.isStatic() ? 0 : 1;
+        for (Type t : Type.getArgumentTypes(signature)) {
+            parameters += t.getSize();
+        }
+        BytecodeHasher hasher = new BytecodeHasher(clazz, code, parameters);
+        long[] instructions = hasher.getInstructionHashes();
+        BytecodeHasher.Hash h = new BytecodeHasher.Hash();
+        h.add(signature);
+        h.addInt(method.getAccessFlags() & Constants.ACC_STATIC);
+        h.addLong(hasher.getCodeHash());
+        hash = h.get();
+        length = instructions.length;
+        sketch = sketch(instructions);
+    }
+
+
+    /**
+     * @return the fingerprints of the methods of the class that have code
+     */
+    public static List<MethodFingerprint> compute( JavaClass clazz ) {
+        List<MethodFingerprint> result = new ArrayList<>();
+        for (Method m : clazz.getMethods()) {
+            if (m.getCode() != null) {
+                result.add(new MethodFingerprint(clazz, m));
+            }
+        }
+        return result;
+    }
+
+
+    /** @return the fully qualified name of the class declaring the method */
+    public String getClassName() {
+        return class_name;
+    }
+
+
+    /** @return the name of the method */
+    public String getMethodName() {
+        return method_name;
+    }
+
+
+    /** @return the signature of the method */
+    public String getSignature() {
+        return signature;
+    }
+
+
+    /**
+     * @return the hash of the canonical code of the method, its signature
+     * and whether it is static
+     */
+    public long getHash() {
+        return hash;
+    }
+
+
+    /** @return the number of instructions of the method */
+    public int getLength() {
+        return length;
+    }
+
+
+    /** @return the value of the MinHash sketch at the index */
+    public long getSketch( int i ) {
+        return sketch[i];
+    }
+
+
+    /**
+     * @return the estimated similarity of the code of the methods, from 0
+     * to 1; 1 if their hashes are equal
+     */
+    public double similarity( MethodFingerprint other ) {
+        if (hash == other.hash) {
+            return 1.0;
+        }
+        int equal = 0;
+        for (int i = 0; i < SKETCH_SIZE; i++) {
+            if (sketch[i] == other.sketch[i]) {
+                equal++;
+            }
+        }
+        return (double) equal / SKETCH_SIZE;
+    }
+
+
+    /**
+     * @return the method as class.name followed by the signature
+     */
+    @Override
+    public String toString() {
+        return class_name + "." + method_name + signature;
+    }
+
+
+    /**
+     * @return the MinHash sketch of the runs of instructions
+     */
+    private static long[] sketch( long[] instructions ) {
+        long[] result = new long[SKETCH_SIZE];
+        Arrays.fill(result, Long.MAX_VALUE);
+        int runs = Math.max(1, instructions.length - SHINGLE_SIZE + 1);
+        for (int r = 0; r < runs; r++) {
+            long run = 0;
+            for (int i = r; i < Math.min(r + SHINGLE_SIZE, instructions.length); i++) {
+                run = mix(run * 31 + instructions[i]);
+            }
+            for (int k = 0; k < SKETCH_SIZE; k++) {
+                long v = mix(run ^ (0x9e3779b97f4a7c15L * (k + 1)));
+                if (v < result[k]) {
+                    result[k] = v;
+                }
+            }
+        }
+        return result;
+    }
+
+
+    /**
+     * The finalizer of SplitMix64, spreading every input bit over the output.
+     */
+    private static long mix( long z ) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.commons.bcel6.util;
+
+/**
+ * The operations BCEL reports to a MetricsListener. Each metric is reported
+ * either as a count or as a timing, see the individual constants.
+ *
+ * @version $Id$
+ * @see MetricsListener
+ * @see Metrics
+ * @since 6.0
+ */
+public enum Metric {
+
+    /** Timing of a complete ClassParser.parse(), with the number of bytes read. */
+    PARSE,
+    /** Timing of reading the constant pool in ClassParser.parse(). */
+    PARSE_CONSTANT_POOL,
+    /** Timing of reading the fields in ClassParser.parse(). */
+    PARSE_FIELDS,
+    /** Timing of reading the methods in ClassParser.parse(). */
+    PARSE_METHODS,
+    /** Timing of reading the class attributes in ClassParser.parse(). */
+    PARSE_ATTRIBUTES,
+    /** Count of repository lookups answered from the repository cache. */
+    REPOSITORY_HIT,
+    /** Count of repository lookups not found in the repository cache. */
+    REPOSITORY_MISS,
+    /** Timing of loading a class into a repository after a miss. */
+    REPOSITORY_LOAD,
+    /**
+     * Timing of a ClassPath lookup, with the size of the class file found
+     * (0 if it was found through the class loader of BCEL).
+     */
+    CLASSPATH_LOOKUP,
+    /** Timing of MethodGen.getMethod(), with the size of the generated byte code. */
+    GENERATE_METHOD,
+    /** Timing of verification pass 1. */
+    VERIFY_PASS1,
+    /** Timing of verification pass 2, including pass 1 if it had not run yet. */
+    VERIFY_PASS2,
+    /** Timing of verification pass 3a of one method, including earlier passes if they had not run yet. */
+    VERIFY_PASS3A,
+    /** Timing of verification pass 3b of one method, including earlier passes if they had not run yet. */
+    VERIFY_PASS3B
+}
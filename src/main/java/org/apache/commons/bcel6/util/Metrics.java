@@ -0,0 +1,107 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.commons.bcel6.util;
+
+/**
+ * Static registry of the MetricsListener that BCEL reports to. No listener
+ * is registered by default, in which case each instrumented call site costs
+ * a single field read; System.nanoTime() is not even called.
+ * <p>
+ * Instrumented code uses the idiom
+ * <pre>
+ * long start = Metrics.start();
+ * ... operation ...
+ * Metrics.time(Metric.PARSE, name, bytes, start);
+ * </pre>
+ *
+ * @version $Id$
+ * @see MetricsListener
+ * @since 6.0
+ */
+public final class Metrics {
+
+    private static volatile MetricsListener listener = null;
+
+
+    private Metrics() {
+    }
+
+
+    /**
+     * @param l the listener to report to, or null to disable reporting
+     */
+    public static void setListener( MetricsListener l ) {
+        listener = l;
+    }
+
+
+    /**
+     * @return the registered listener, or null if none is registered
+     */
+    public static MetricsListener getListener() {
+        return listener;
+    }
+
+
+    /**
+     * @return true if a listener is registered
+     */
+    public static boolean isEnabled() {
+        return listener != null;
+    }
+
+
+    /**
+     * @return the current value of System.nanoTime() if a listener is
+     * registered, 0 otherwise
+     */
+    public static long start() {
+        return listener != null ? System.nanoTime() : 0;
+    }
+
+
+    /**
+     * Report a timed operation that began at start. Nothing is reported if
+     * start is 0, i.e., if no listener was registered when it began.
+     *
+     * @param metric the operation
+     * @param name the class (or file) the operation refers to
+     * @param bytes number of bytes read or produced, 0 if not applicable
+     * @param start value obtained from start()
+     */
+    public static void time( Metric metric, String name, long bytes, long start ) {
+        MetricsListener l = listener;
+        if (l != null && start != 0) {
+            l.time(metric, name, bytes, System.nanoTime() - start);
+        }
+    }
+
+
+    /**
+     * Report a single occurrence of a counted event.
+     *
+     * @param metric the event
+     * @param name the class (or file) the event refers to
+     */
+    public static void count( Metric metric, String name ) {
+        MetricsListener l = listener;
+        if (l != null) {
+            l.count(metric, name, 1);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.commons.bcel6.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Thread safe MetricsListener that sums up the counts, byte counts and
+ * nanoseconds reported per Metric, ignoring the names. Useful as is or
+ * as a source to poll from when bridging to a monitoring system.
+ *
+ * @version $Id$
+ * @see Metrics
+ * @since 6.0
+ */
+public class MetricsCollector implements MetricsListener {
+
+    private static final int SIZE = Metric.values().length;
+
+    private final AtomicLongArray counts = new AtomicLongArray(SIZE);
+    private final AtomicLongArray bytes = new AtomicLongArray(SIZE);
+    private final AtomicLongArray nanos = new AtomicLongArray(SIZE);
+
+
+    @Override
+    public void count( Metric metric, String name, long count ) {
+        counts.addAndGet(metric.ordinal(), count);
+    }
+
+
+    @Override
+    public void time( Metric metric, String name, long _bytes, long _nanos ) {
+        int i = metric.ordinal();
+        counts.incrementAndGet(i);
+        bytes.addAndGet(i, _bytes);
+        nanos.addAndGet(i, _nanos);
+    }
+
+
+    /**
+     * @return number of events, or of timed operations, reported for metric
+     */
+    public long getCount( Metric metric ) {
+        return counts.get(metric.ordinal());
+    }
+
+
+    /**
+     * @return total number of bytes reported for metric
+     */
+    public long getBytes( Metric metric ) {
+        return bytes.get(metric.ordinal());
+    }
+
+
+    /**
+     * @return total number of nanoseconds reported for metric
+     */
+    public long getNanos( Metric metric ) {
+        return nanos.get(metric.ordinal());
+    }
+
+
+    /**
+     * Set all sums back to zero.
+     */
+    public void reset() {
+        for (int i = 0; i < SIZE; i++) {
+            counts.set(i, 0);
+            bytes.set(i, 0);
+            nanos.set(i, 0);
+        }
+    }
+
+
+    /**
+     * @return one line per metric with a non-zero count
+     */
+    @Override
+    public String toString() {
+        StringBuilder buf = new StringBuilder();
+        for (Metric metric : Metric.values()) {
+            long count = getCount(metric);
+            if (count != 0) {
+                buf.append(metric).append(": count = ").append(count).append(", bytes = ")
+                        .append(getBytes(metric)).append(", nanos = ").append(getNanos(metric))
+                        .append('\n');
+            }
+        }
+        return buf.toString();
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.commons.bcel6.util;
+
+/**
+ * Receives counters and timings from the parser, the repositories, the
+ * class path, the generic package and the verifier. Implementations are
+ * registered with Metrics.setListener() and may be called concurrently
+ * from several threads, so they must be thread safe. They should return
+ * quickly, as they are called on the instrumented code path.
+ *
+ * @version $Id$
+ * @see Metrics
+ * @see MetricsCollector
+ * @since 6.0
+ */
+public interface MetricsListener {
+
+    /**
+     * Called when a counted event occurs.
+     *
+     * @param metric the event
+     * @param name the class (or file) the event refers to
+     * @param count number of occurrences, usually 1
+     */
+    void count( Metric metric, String name, long count );
+
+
+    /**
+     * Called when a timed operation has finished.
+     *
+     * @param metric the operation
+     * @param name the class (or file) the operation refers to
+     * @param bytes number of bytes read or produced, 0 if not applicable
+     * @param nanos elapsed time in nanoseconds
+     */
+    void time( Metric metric, String name, long bytes, long nanos );
+}
@@ -0,0 +1,357 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.commons.bcel6.util;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.bcel6.classfile.Method;
+import org.apache.commons.bcel6.generic.ClassGen;
+import org.apache.commons.bcel6.generic.CodeExceptionGen;
+import org.apache.commons.bcel6.generic.InstructionHandle;
+import org.apache.commons.bcel6.generic.InstructionList;
+import org.apache.commons.bcel6.generic.InstructionTargeter;
+import org.apache.commons.bcel6.generic.LineNumberGen;
+import org.apache.commons.bcel6.generic.LocalVariableGen;
+import org.apache.commons.bcel6.generic.MethodGen;
+import org.apache.commons.bcel6.generic.TargetLostException;
+
+/**
+ * Applies a set of {@link PeepholeRule}s to the code of methods until none
+ * of them matches any more. Each round reads the instruction list into one
+ * {@link InstructionFinder} and computes which exception handlers cover
+ * which instructions, collects the matches of all rules, and rewrites them
+ * in a single traversal in code order; of the matches starting at the same
+ * instruction, the one of the earliest rule wins. A rewrite mostly exposes
+ * new matches right next to it, which the following round picks up, so
+ * methods settle after a few rounds; the number of rounds is capped in case
+ * rules keep undoing each other.
+ * <p>
+ * The optimizer takes care of the instructions targeting the rewritten
+ * code: branches, exception handlers, local variables and line numbers
+ * pointing to the first matched instruction are redirected to the first
+ * instruction of the replacement, or to the instruction after the match if
+ * the replacement is empty. Local variables ending in the match end with
+ * the replacement; those starting inside it, after a store, start with the
+ * instruction after the match. A match is skipped if
+ * <ul>
+ * <li>a branch or exception handler targets any instruction of it but the
+ * first,</li>
+ * <li>it is only partly covered by an exception handler, or ends an
+ * exception handler's range, or</li>
+ * <li>it ends the method and is to be deleted.</li>
+ * </ul>
+ * The number of matches rewritten is counted per rule.
+ *
+ * @version $Id$
+ * @since 6.0
+ * @see PeepholeRules
+ */
+public class PeepholeOptimizer {
+
+    /** Guards against rules that keep rewriting each other's results. */
+    private static final int MAX_ROUNDS = 100;
+
+    private final PeepholeRule[] rules;
+    private final int[] hits;
+
+
+    /**
+     * Creates an optimizer applying the standard rules.
+     */
+    public PeepholeOptimizer() {
+        this(PeepholeRules.getRules());
+    }
+
+
+    /**
+     * @param rules the rules to apply, in this order in each round
+     */
+    public PeepholeOptimizer(PeepholeRule... rules) {
+        this.rules = rules.clone();
+        hits = new int[rules.length];
+    }
+
+
+    /**
+     * Optimizes all methods of a class.
+     *
+     * @return the number of methods changed
+     */
+    public int optimize( ClassGen cg ) {
+        int changed = 0;
+        for (Method m : cg.getMethods()) {
+            MethodGen mg = new MethodGen(m, cg.getClassName(), cg.getConstantPool());
+            if (optimize(mg)) {
+                cg.replaceMethod(m, mg.getMethod());
+                changed++;
+            }
+        }
+        return changed;
+    }
+
+
+    /**
+     * Optimizes the code of a method, recomputing its max_stack if changed.
+     *
+     * @return true if the code was changed
+     */
+    public boolean optimize( MethodGen mg ) {
+        InstructionList il = mg.getInstructionList();
+        if (il == null || il.isEmpty()) {
+            return false;
+        }
+        boolean changed = false;
+        for (int round = 0; round < MAX_ROUNDS && rewrite(mg, il) > 0; round++) {
+            changed = true;
+        }
+        if (changed) {
+            mg.setMaxStack();
+        }
+        return changed;
+    }
+
+
+    /**
+     * A match of a rule found at the start of a round.
+     */
+    private static final class Match {
+
+        final int rule;
+        final InstructionHandle[] handles;
+
+
+        Match(int rule, InstructionHandle[] handles) {
+            this.rule = rule;
+            this.handles = handles;
+        }
+    }
+
+
+    /**
+     * One round: rewrites the matches of all rules in a single traversal of
+     * the code, updating the hit counts.
+     *
+     * @return the number of matches rewritten
+     */
+    private int rewrite( MethodGen mg, InstructionList il ) {
+        InstructionFinder finder = new InstructionFinder(il);
+        Map<InstructionHandle, List<Match>> matches = new HashMap<>();
+        for (int r = 0; r < rules.length; r++) {
+            for (Iterator<InstructionHandle[]> i = finder.search(rules[r].getPattern(), rules[r]); i.hasNext();) {
+                InstructionHandle[] match = i.next();
+                List<Match> at = matches.get(match[0]);
+                if (at == null) {
+                    at = new ArrayList<>(1);
+                    matches.put(match[0], at);
+                }
+                at.add(new Match(r, match));
+            }
+        }
+        if (matches.isEmpty()) {
+            return 0;
+        }
+        Map<InstructionHandle, BitSet> coverage = getCoverage(il, mg.getExceptionHandlers());
+        Set<InstructionHandle> removed = new HashSet<>();
+        int count = 0;
+        for (InstructionHandle ih : il.getInstructionHandles()) {
+            List<Match> at = matches.get(ih);
+            if (at == null || removed.contains(ih)) {
+                continue;
+            }
+            for (Match match : at) {
+                if (replace(rules[match.rule], match.handles, mg, il, removed, coverage)) {
+                    hits[match.rule]++;
+                    count++;
+                    break;
+                }
+            }
+        }
+        return count;
+    }
+
+
+    /**
+     * Rewrites a match unless an earlier rewrite of the round has removed or
+     * invalidated it.
+     *
+     * @return whether the match has been rewritten
+     */
+    private static boolean replace( PeepholeRule rule, InstructionHandle[] match, MethodGen mg,
+            InstructionList il, Set<InstructionHandle> removed, Map<InstructionHandle, BitSet> coverage ) {
+        // Earlier rewrites may have redirected the branches the rule checked
+        if (!isRewritable(match, removed, coverage) || !rule.checkCode(match)) {
+            return false;
+        }
+        InstructionList replacement = rule.replace(match, mg.getConstantPool());
+        if (replacement == null) {
+            return false;
+        }
+        InstructionHandle first = match[0];
+        InstructionHandle last = match[match.length - 1];
+        InstructionHandle new_first;
+        InstructionHandle new_last;
+        if (replacement.isEmpty()) {
+            new_first = last.getNext();
+            new_last = first.getPrev();
+            if (new_first == null) {
+                return false;
+            }
+        } else {
+            new_last = replacement.getEnd();
+            new_first = il.insert(first, replacement);
+        }
+        InstructionHandle after = last.getNext() != null ? last.getNext() : new_last;
+        for (InstructionHandle ih : match) {
+            for (InstructionTargeter t : ih.getTargeters()) {
+                if (t instanceof LocalVariableGen) {
+                    LocalVariableGen lv = (LocalVariableGen) t;
+                    boolean starts = lv.getStart() == ih;
+                    if (starts) {
+                        lv.setStart(ih == first ? new_first : after);
+                    }
+                    if (lv.getEnd() == ih) {
+                        lv.setEnd(starts ? lv.getStart() : new_last != null ? new_last : new_first);
+                    }
+                } else {
+                    t.updateTarget(ih, new_first);
+                }
+            }
+        }
+        try {
+            il.delete(first, last);
+        } catch (TargetLostException e) {
+            // All targeters have been redirected
+            throw new IllegalStateException(e);
+        }
+        for (InstructionHandle ih : match) {
+            removed.add(ih);
+        }
+        return true;
+    }
+
+
+    /**
+     * @return whether the matched code can be replaced without changing the
+     * control flow into it or the exception handlers covering it
+     */
+    private static boolean isRewritable( InstructionHandle[] match, Set<InstructionHandle> removed,
+            Map<InstructionHandle, BitSet> coverage ) {
+        BitSet covered = coverage.get(match[0]);
+        for (int i = 0; i < match.length; i++) {
+            InstructionHandle ih = match[i];
+            if (removed.contains(ih) || !covered.equals(coverage.get(ih))) {
+                return false;
+            }
+            for (InstructionTargeter t : ih.getTargeters()) {
+                if (t instanceof CodeExceptionGen) {
+                    CodeExceptionGen h = (CodeExceptionGen) t;
+                    if (i > 0 || h.getEndPC() == ih) {
+                        return false;
+                    }
+                } else if (i > 0 && !(t instanceof LocalVariableGen || t instanceof LineNumberGen)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+
+    /**
+     * @return for each instruction, the exception handlers covering it
+     */
+    private static Map<InstructionHandle, BitSet> getCoverage( InstructionList il, CodeExceptionGen[] handlers ) {
+        Map<InstructionHandle, BitSet> coverage = new HashMap<>();
+        for (InstructionHandle ih = il.getStart(); ih != null; ih = ih.getNext()) {
+            coverage.put(ih, new BitSet());
+        }
+        for (int h = 0; h < handlers.length; h++) {
+            InstructionHandle end = handlers[h].getEndPC();
+            for (InstructionHandle ih = handlers[h].getStartPC(); ih != null; ih = ih.getNext()) {
+                coverage.get(ih).set(h);
+                if (ih == end) {
+                    break;
+                }
+            }
+        }
+        return coverage;
+    }
+
+
+    /** @return the rules applied, in order */
+    public PeepholeRule[] getRules() {
+        return rules.clone();
+    }
+
+
+    /**
+     * @return how many matches of the rule have been rewritten, -1 if the
+     * rule is not applied by this optimizer
+     */
+    public int getHits( PeepholeRule rule ) {
+        for (int r = 0; r < rules.length; r++) {
+            if (rules[r] == rule) {
+                return hits[r];
+            }
+        }
+        return -1;
+    }
+
+
+    /** @return how many matches have been rewritten by all rules */
+    public int getTotalHits() {
+        int total = 0;
+        for (int h : hits) {
+            total += h;
+        }
+        return total;
+    }
+
+
+    /**
+     * Resets the hit counts.
+     */
+    public void resetStatistics() {
+        for (int r = 0; r < rules.length; r++) {
+            hits[r] = 0;
+        }
+    }
+
+
+    /**
+     * @return the hit counts of the rules
+     */
+    @Override
+    public String toString() {
+        StringBuilder buf = new StringBuilder("PeepholeOptimizer(");
+        for (int r = 0; r < rules.length; r++) {
+            if (r > 0) {
+                buf.append(", ");
+            }
+            buf.append(rules[r].getName()).append('=').append(hits[r]);
+        }
+        return buf.append(')').toString();
+    }
+}
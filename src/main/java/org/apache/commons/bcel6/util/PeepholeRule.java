@@ -0,0 +1,92 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.commons.bcel6.util;
+
+import org.apache.commons.bcel6.generic.ConstantPoolGen;
+import org.apache.commons.bcel6.generic.InstructionHandle;
+import org.apache.commons.bcel6.generic.InstructionList;
+
+/**
+ * A rewrite rule of the {@link PeepholeOptimizer}: an instruction pattern
+ * in the syntax of {@link InstructionFinder}, a constraint on the matched
+ * code, and the code that replaces a match.
+ * <p>
+ * Rules only describe the replacement; the optimizer splices it into the
+ * instruction list and redirects branches, exception handlers, local
+ * variables and line numbers. A rule must not modify the instruction list
+ * itself. Rules are stateless and may be shared between optimizers.
+ *
+ * @version $Id$
+ * @since 6.0
+ * @see PeepholeRules
+ */
+public abstract class PeepholeRule implements InstructionFinder.CodeConstraint {
+
+    private final String name;
+    private final String pattern;
+
+
+    /**
+     * @param name the name of the rule, used in the statistics
+     * @param pattern the InstructionFinder pattern to search for
+     */
+    protected PeepholeRule(String name, String pattern) {
+        this.name = name;
+        this.pattern = pattern;
+    }
+
+
+    /** @return the name of the rule */
+    public String getName() {
+        return name;
+    }
+
+
+    /** @return the InstructionFinder pattern to search for */
+    public String getPattern() {
+        return pattern;
+    }
+
+
+    /**
+     * Checks a match before it is rewritten. The default accepts all matches.
+     */
+    @Override
+    public boolean checkCode( InstructionHandle[] match ) {
+        return true;
+    }
+
+
+    /**
+     * Computes the replacement of a match. The replacement must leave the
+     * operand stack as the matched code does. Branches in it may target
+     * any instruction outside of the match.
+     *
+     * @param match the matched instructions
+     * @param cp the constant pool of the method
+     * @return the code to replace the match with, an empty list to delete
+     * the match, or null to keep it
+     */
+    public abstract InstructionList replace( InstructionHandle[] match, ConstantPoolGen cp );
+
+
+    @Override
+    public String toString() {
+        return name + " (" + pattern + ")";
+    }
+}
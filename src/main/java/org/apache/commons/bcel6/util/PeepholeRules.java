@@ -0,0 +1,236 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.commons.bcel6.util;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.commons.bcel6.Constants;
+import org.apache.commons.bcel6.generic.BranchInstruction;
+import org.apache.commons.bcel6.generic.ConstantPoolGen;
+import org.apache.commons.bcel6.generic.ConstantPushInstruction;
+import org.apache.commons.bcel6.generic.GOTO;
+import org.apache.commons.bcel6.generic.GotoInstruction;
+import org.apache.commons.bcel6.generic.IfInstruction;
+import org.apache.commons.bcel6.generic.InstructionConstants;
+import org.apache.commons.bcel6.generic.InstructionHandle;
+import org.apache.commons.bcel6.generic.InstructionList;
+import org.apache.commons.bcel6.generic.LocalVariableInstruction;
+import org.apache.commons.bcel6.generic.StoreInstruction;
+
+/**
+ * The standard rules of the {@link PeepholeOptimizer}.
+ *
+ * @version $Id$
+ * @since 6.0
+ */
+public final class PeepholeRules {
+
+    private PeepholeRules() {
+    }
+
+
+    /**
+     * xLOAD n; xSTORE n: stores a local into itself. Deleted.
+     */
+    public static final PeepholeRule LOAD_STORE = new PeepholeRule("load-store", "LoadInstruction StoreInstruction") {
+
+        @Override
+        public boolean checkCode( InstructionHandle[] match ) {
+            LocalVariableInstruction load = (LocalVariableInstruction) match[0].getInstruction();
+            LocalVariableInstruction store = (LocalVariableInstruction) match[1].getInstruction();
+            return load.getIndex() == store.getIndex() && load.getType(null).equals(store.getType(null));
+        }
+
+
+        @Override
+        public InstructionList replace( InstructionHandle[] match, ConstantPoolGen cp ) {
+            return new InstructionList();
+        }
+    };
+
+    /**
+     * xSTORE n; xLOAD n: replaced by DUP; xSTORE n (DUP2 for long and double),
+     * which saves reading the local again.
+     */
+    public static final PeepholeRule STORE_LOAD = new PeepholeRule("store-load", "StoreInstruction LoadInstruction") {
+
+        @Override
+        public boolean checkCode( InstructionHandle[] match ) {
+            LocalVariableInstruction store = (LocalVariableInstruction) match[0].getInstruction();
+            LocalVariableInstruction load = (LocalVariableInstruction) match[1].getInstruction();
+            return load.getIndex() == store.getIndex() && load.getType(null).equals(store.getType(null));
+        }
+
+
+        @Override
+        public InstructionList replace( InstructionHandle[] match, ConstantPoolGen cp ) {
+            StoreInstruction store = (StoreInstruction) match[0].getInstruction();
+            InstructionList il = new InstructionList();
+            il.append(store.getType(null).getSize() == 2 ? InstructionConstants.DUP2 : InstructionConstants.DUP);
+            il.append(store.copy());
+            return il;
+        }
+    };
+
+    /**
+     * A GOTO to the next instruction. Deleted.
+     */
+    public static final PeepholeRule GOTO_NEXT = new PeepholeRule("goto-next", "GotoInstruction") {
+
+        @Override
+        public boolean checkCode( InstructionHandle[] match ) {
+            return ((BranchInstruction) match[0].getInstruction()).getTarget() == match[0].getNext();
+        }
+
+
+        @Override
+        public InstructionList replace( InstructionHandle[] match, ConstantPoolGen cp ) {
+            return new InstructionList();
+        }
+    };
+
+    /**
+     * A GOTO or conditional branch to a GOTO: the branch is retargeted to the
+     * end of the chain of GOTOs.
+     */
+    public static final PeepholeRule JUMP_THREADING = new PeepholeRule("jump-threading", "(GotoInstruction|IfInstruction)") {
+
+        @Override
+        public boolean checkCode( InstructionHandle[] match ) {
+            return getFinalTarget((BranchInstruction) match[0].getInstruction()) != null;
+        }
+
+
+        @Override
+        public InstructionList replace( InstructionHandle[] match, ConstantPoolGen cp ) {
+            BranchInstruction branch = (BranchInstruction) match[0].getInstruction();
+            InstructionHandle target = getFinalTarget(branch);
+            BranchInstruction copy = (BranchInstruction) branch.copy();
+            copy.setTarget(target);
+            return new InstructionList(copy);
+        }
+
+
+        /**
+         * @return the end of the chain of GOTOs starting at the target, null
+         * if the target is not a GOTO or the chain is a cycle
+         */
+        private InstructionHandle getFinalTarget( BranchInstruction branch ) {
+            InstructionHandle target = branch.getTarget();
+            Set<InstructionHandle> seen = new HashSet<>();
+            while (target.getInstruction() instanceof GotoInstruction) {
+                if (!seen.add(target)) {
+                    return null; // endless loop
+                }
+                target = ((GotoInstruction) target.getInstruction()).getTarget();
+            }
+            return seen.isEmpty() ? null : target;
+        }
+    };
+
+    /**
+     * A conditional branch on int constants or null: replaced by a GOTO if the
+     * branch is taken, deleted otherwise.
+     */
+    public static final PeepholeRule CONSTANT_BRANCH = new PeepholeRule("constant-branch",
+            "(ConstantPushInstruction ConstantPushInstruction IF_ICMP)|(ConstantPushInstruction IF)|(ACONST_NULL (IFNULL|IFNONNULL))") {
+
+        @Override
+        public boolean checkCode( InstructionHandle[] match ) {
+            for (int i = 0; i < match.length - 1; i++) {
+                if (match[i].getInstruction() instanceof ConstantPushInstruction
+                        && !(((ConstantPushInstruction) match[i].getInstruction()).getValue() instanceof Integer)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+
+        @Override
+        public InstructionList replace( InstructionHandle[] match, ConstantPoolGen cp ) {
+            IfInstruction branch = (IfInstruction) match[match.length - 1].getInstruction();
+            boolean taken;
+            if (match.length == 3) {
+                taken = compare(branch.getOpcode() - Constants.IF_ICMPEQ, value(match[0]) - (long) value(match[1]));
+            } else if (branch.getOpcode() == Constants.IFNULL) {
+                taken = true;
+            } else if (branch.getOpcode() == Constants.IFNONNULL) {
+                taken = false;
+            } else {
+                taken = compare(branch.getOpcode() - Constants.IFEQ, value(match[0]));
+            }
+            InstructionList il = new InstructionList();
+            if (taken) {
+                il.append(new GOTO(branch.getTarget()));
+            }
+            return il;
+        }
+
+
+        private int value( InstructionHandle ih ) {
+            return ((ConstantPushInstruction) ih.getInstruction()).getValue().intValue();
+        }
+
+
+        /**
+         * @param condition 0 to 5 for eq, ne, lt, ge, gt, le
+         * @param difference the sign of the comparison
+         */
+        private boolean compare( int condition, long difference ) {
+            switch (condition) {
+                case 0:
+                    return difference == 0;
+                case 1:
+                    return difference != 0;
+                case 2:
+                    return difference < 0;
+                case 3:
+                    return difference >= 0;
+                case 4:
+                    return difference > 0;
+                default:
+                    return difference <= 0;
+            }
+        }
+    };
+
+    /**
+     * A value pushed without side effects and popped right away, or DUP
+     * followed by POP. Deleted.
+     */
+    public static final PeepholeRule PUSH_POP = new PeepholeRule("push-pop",
+            "((DUP|ILOAD|FLOAD|ALOAD|ICONST|FCONST|BIPUSH|SIPUSH|ACONST_NULL) POP)|((DUP2|LLOAD|DLOAD|LCONST|DCONST) POP2)") {
+
+        @Override
+        public InstructionList replace( InstructionHandle[] match, ConstantPoolGen cp ) {
+            return new InstructionList();
+        }
+    };
+
+
+    /**
+     * @return the standard rules
+     */
+    public static PeepholeRule[] getRules() {
+        return new PeepholeRule[] {
+                LOAD_STORE, STORE_LOAD, PUSH_POP, CONSTANT_BRANCH, JUMP_THREADING, GOTO_NEXT
+        };
+    }
+}
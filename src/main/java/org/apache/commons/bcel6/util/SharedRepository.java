@@ -0,0 +1,185 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.commons.bcel6.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Pattern;
+
+import org.apache.commons.bcel6.classfile.ClassParser;
+import org.apache.commons.bcel6.classfile.JavaClass;
+
+/**
+ * A repository meant to be shared by many {@link LayeredRepository}s, e.g.
+ * of the tenants of an analysis server, holding the classes of the Java
+ * platform and of common libraries once for all of them.
+ * <p>
+ * The repository is limited to the classes whose names match one of its
+ * patterns, e.g. {@link DependencyClosure#PLATFORM_PACKAGES}; other classes
+ * are never found, so that they are left to the child layers. Classes are
+ * read from the class path on first request and kept for the lifetime of
+ * the repository; classes that cannot be found are remembered as well.
+ * Each class is parsed at most once, or at least only one JavaClass per
+ * name is ever handed out, so all users see the same instances.
+ * <p>
+ * The contents cannot be changed from outside: storeClass(), removeClass()
+ * and clear() throw UnsupportedOperationException. The JavaClass objects
+ * handed out must not be modified either. The repository is thread safe.
+ *
+ * @version $Id$
+ * @see LayeredRepository
+ * @since 6.0
+ */
+public final class SharedRepository implements Repository {
+
+    private final ClassPath path;
+    private final List<Pattern> patterns = new ArrayList<>();
+    private final ConcurrentMap<String, JavaClass> classes = new ConcurrentHashMap<>();
+    private final Set<String> missing = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+
+    /**
+     * @param path class path to read the classes from
+     * @param regexes regular expressions on the fully qualified names of
+     * the classes the repository is limited to
+     */
+    public SharedRepository(ClassPath path, String... regexes) {
+        this.path = path;
+        for (String regex : regexes) {
+            patterns.add(Pattern.compile(regex));
+        }
+    }
+
+
+    /**
+     * @return whether the class is one of those the repository is limited to
+     */
+    public boolean accept( String className ) {
+        for (Pattern p : patterns) {
+            if (p.matcher(className).matches()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+    /** @return the number of classes loaded so far */
+    public int size() {
+        return classes.size();
+    }
+
+
+    /**
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public void storeClass( JavaClass clazz ) {
+        throw new UnsupportedOperationException("SharedRepository is immutable");
+    }
+
+
+    /**
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public void removeClass( JavaClass clazz ) {
+        throw new UnsupportedOperationException("SharedRepository is immutable");
+    }
+
+
+    /**
+     * Find an already loaded JavaClass object by name.
+     */
+    @Override
+    public JavaClass findClass( String className ) {
+        return classes.get(className);
+    }
+
+
+    /**
+     * Find a JavaClass object by name, reading it from the class path if it
+     * has not been loaded yet.
+     *
+     * @throws ClassNotFoundException if the class does not match the
+     * patterns of the repository or is not on the class path
+     */
+    @Override
+    public JavaClass loadClass( String className ) throws ClassNotFoundException {
+        if (className == null || className.equals("")) {
+            throw new IllegalArgumentException("Invalid class name " + className);
+        }
+        className = className.replace('/', '.'); // Just in case, canonical form
+        JavaClass clazz = classes.get(className);
+        if (clazz != null) {
+            Metrics.count(Metric.REPOSITORY_HIT, className);
+            return clazz;
+        }
+        if (missing.contains(className) || !accept(className)) {
+            throw new ClassNotFoundException("SharedRepository does not contain " + className);
+        }
+        Metrics.count(Metric.REPOSITORY_MISS, className);
+        long start = Metrics.start();
+        try (InputStream is = path.getInputStream(className)) {
+            clazz = new ClassParser(is, className).parse();
+        } catch (IOException e) {
+            missing.add(className);
+            throw new ClassNotFoundException("Exception while looking for class " + className
+                    + ": " + e, e);
+        }
+        clazz.setRepository(this);
+        JavaClass previous = classes.putIfAbsent(className, clazz);
+        if (previous != null) {
+            return previous; // parsed concurrently
+        }
+        Metrics.time(Metric.REPOSITORY_LOAD, className, 0, start);
+        return clazz;
+    }
+
+
+    /**
+     * Find the JavaClass object for a runtime class object.
+     *
+     * @see #loadClass(String)
+     */
+    @Override
+    public JavaClass loadClass( Class<?> clazz ) throws ClassNotFoundException {
+        return loadClass(clazz.getName());
+    }
+
+
+    /**
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public void clear() {
+        throw new UnsupportedOperationException("SharedRepository is immutable");
+    }
+
+
+    @Override
+    public ClassPath getClassPath() {
+        return path;
+    }
+}
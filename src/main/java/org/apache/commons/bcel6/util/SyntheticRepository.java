@@ -22,6 +22,7 @@ import java.io.InputStream;
 import java.lang.ref.SoftReference;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.bcel6.classfile.ClassParser;
 import org.apache.commons.bcel6.classfile.JavaClass;
@@ -45,7 +46,8 @@ public class SyntheticRepository implements Repository {
     //private static final String DEFAULT_PATH = ClassPath.getClassPath();
     private static final Map<ClassPath, SyntheticRepository> _instances = new HashMap<>(); // CLASSPATH X REPOSITORY
     private ClassPath _path = null;
-    private final Map<String, SoftReference<JavaClass>> _loadedClasses = new HashMap<>(); // CLASSNAME X JAVACLASS
+    private final Map<String, SoftReference<JavaClass>> _loadedClasses = new ConcurrentHashMap<>(); // CLASSNAME X JAVACLASS
+    private volatile ClassHierarchy _hierarchy = null;
 
 
     private SyntheticRepository(ClassPath path) {
@@ -58,7 +60,7 @@ public class SyntheticRepository implements Repository {
     }
 
 
-    public static SyntheticRepository getInstance( ClassPath classPath ) {
+    public static synchronized SyntheticRepository getInstance( ClassPath classPath ) {
         SyntheticRepository rep = _instances.get(classPath);
         if (rep == null) {
             rep = new SyntheticRepository(classPath);
@@ -75,6 +77,9 @@ public class SyntheticRepository implements Repository {
     public void storeClass( JavaClass clazz ) {
         _loadedClasses.put(clazz.getClassName(), new SoftReference<>(clazz));
         clazz.setRepository(this);
+        if (_hierarchy != null) {
+            _hierarchy.add(clazz);
+        }
     }
 
 
@@ -119,8 +124,10 @@ public class SyntheticRepository implements Repository {
         className = className.replace('/', '.'); // Just in case, canonical form
         JavaClass clazz = findClass(className);
         if (clazz != null) {
+            Metrics.count(Metric.REPOSITORY_HIT, className);
             return clazz;
         }
+        Metrics.count(Metric.REPOSITORY_MISS, className);
         try {
             return loadClass(_path.getInputStream(className), className);
         } catch (IOException e) {
@@ -150,8 +157,10 @@ public class SyntheticRepository implements Repository {
             String className = clazz.getName();
             JavaClass repositoryClass = findClass(className);
             if (repositoryClass != null) {
+                Metrics.count(Metric.REPOSITORY_HIT, className);
                 return repositoryClass;
             }
+            Metrics.count(Metric.REPOSITORY_MISS, className);
             String name = className;
             int i = name.lastIndexOf('.');
             if (i > 0) {
@@ -174,9 +183,11 @@ public class SyntheticRepository implements Repository {
     private JavaClass loadClass( InputStream is, String className ) throws ClassNotFoundException {
         try {
             if (is != null) {
+                long start = Metrics.start();
                 ClassParser parser = new ClassParser(is, className);
                 JavaClass clazz = parser.parse();
                 storeClass(clazz);
+                Metrics.time(Metric.REPOSITORY_LOAD, className, 0, start);
                 return clazz;
             }
         } catch (IOException e) {
@@ -195,6 +206,24 @@ public class SyntheticRepository implements Repository {
     }
 
 
+    /**
+     * Class hierarchy index of this repository's class path, which answers
+     * instanceOf and implementationOf queries from class headers only. It
+     * is created empty on the first call; classes stored in the repository
+     * from then on are added to it, others are parsed on demand, or for the
+     * whole class path with ClassHierarchy.load().
+     *
+     * @return the class hierarchy index
+     * @since 6.0
+     */
+    public synchronized ClassHierarchy getClassHierarchy() {
+        if (_hierarchy == null) {
+            _hierarchy = new ClassHierarchy(_path);
+        }
+        return _hierarchy;
+    }
+
+
     /** ClassPath associated with the Repository.
      */
     @Override
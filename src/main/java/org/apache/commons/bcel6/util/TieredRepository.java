@@ -0,0 +1,348 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.commons.bcel6.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.apache.commons.bcel6.classfile.ClassParser;
+import org.apache.commons.bcel6.classfile.JavaClass;
+
+/**
+ * A repository with predictable memory use, for analyses over many more
+ * classes than fit on the heap as JavaClass objects.
+ * <p>
+ * The repository keeps the class file bytes of every class it has loaded
+ * or been given (the cold tier), optionally compressed, and a limited
+ * number of parsed JavaClass objects, the most recently used ones (the hot
+ * tier). A class that has been evicted from the hot tier is parsed again
+ * from its bytes when it is asked for, without going back to the class
+ * path. Unlike SyntheticRepository, whose soft references drop classes
+ * entirely, classes are therefore never lost and never read twice.
+ * <p>
+ * The class files are kept in a {@link ClassArena}, by default one of
+ * direct buffers, so that the cold tier is held outside of the Java heap
+ * and adds only a few objects per class to the work of the garbage
+ * collector. clear() drops the whole arena; its memory is freed when the
+ * collector has run the cleaners of the buffers. The code of a method can
+ * be read from an uncompressed cold tier without parsing its class, see
+ * {@link ClassArena#getCode(String, String, String)}. Each repository
+ * needs an arena of its own.
+ * <p>
+ * storeClass() takes a snapshot of the class file of the JavaClass given;
+ * changes made to a JavaClass after it was stored are lost once it is
+ * evicted, unless it is stored again. The repository is thread safe.
+ *
+ * @version $Id$
+ * @see SyntheticRepository
+ * @since 6.0
+ */
+public class TieredRepository implements Repository {
+
+    /** Default number of JavaClass objects kept in the hot tier */
+    public static final int DEFAULT_CAPACITY = 256;
+
+    private final ClassPath path;
+    private final boolean compressed;
+    private final ClassArena cold;
+    private final Map<String, JavaClass> hot; // CLASSNAME X JAVACLASS, in access order
+
+
+    /**
+     * Create a repository with DEFAULT_CAPACITY classes in the hot tier and
+     * uncompressed class files.
+     *
+     * @param path class path to read the classes from
+     */
+    public TieredRepository(ClassPath path) {
+        this(path, DEFAULT_CAPACITY, false);
+    }
+
+
+    /**
+     * Create a repository keeping its cold tier in an arena of direct
+     * buffers.
+     *
+     * @param path class path to read the classes from
+     * @param capacity maximum number of JavaClass objects kept in the hot tier
+     * @param compressed whether to deflate the class files of the cold tier
+     */
+    public TieredRepository(ClassPath path, int capacity, boolean compressed) {
+        this(path, capacity, compressed, new ClassArena());
+    }
+
+
+    /**
+     * @param path class path to read the classes from
+     * @param capacity maximum number of JavaClass objects kept in the hot tier
+     * @param compressed whether to deflate the class files of the cold tier
+     * @param arena storage of the class files of the cold tier, not shared
+     * with other repositories
+     */
+    public TieredRepository(ClassPath path, final int capacity, boolean compressed, ClassArena arena) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Invalid capacity " + capacity);
+        }
+        this.path = path;
+        this.compressed = compressed;
+        this.cold = arena;
+        hot = new LinkedHashMap<String, JavaClass>(16, 0.75f, true) {
+
+            private static final long serialVersionUID = 1L;
+
+
+            @Override
+            protected boolean removeEldestEntry( Map.Entry<String, JavaClass> eldest ) {
+                return size() > capacity;
+            }
+        };
+    }
+
+
+    /** @return whether the class files of the cold tier are compressed */
+    public boolean isCompressed() {
+        return compressed;
+    }
+
+
+    /** @return the storage of the class files of the cold tier */
+    public ClassArena getArena() {
+        return cold;
+    }
+
+
+    /** @return the number of classes in the repository */
+    public int size() {
+        return cold.size();
+    }
+
+
+    /** @return the number of parsed classes currently held in the hot tier */
+    public int getHotSize() {
+        synchronized (hot) {
+            return hot.size();
+        }
+    }
+
+
+    /**
+     * @return the number of bytes of class files held in the cold tier,
+     * after compression if enabled
+     */
+    public long getColdBytes() {
+        return cold.getUsed();
+    }
+
+
+    /**
+     * Store a new JavaClass instance into this Repository: its class file
+     * is stored in the cold tier, the instance itself in the hot tier.
+     */
+    @Override
+    public void storeClass( JavaClass clazz ) {
+        String className = clazz.getClassName();
+        putBytes(className, clazz.getBytes(), true);
+        clazz.setRepository(this);
+        synchronized (hot) {
+            hot.put(className, clazz);
+        }
+    }
+
+
+    /**
+     * Remove class from both tiers.
+     */
+    @Override
+    public void removeClass( JavaClass clazz ) {
+        String className = clazz.getClassName();
+        synchronized (hot) {
+            hot.remove(className);
+        }
+        cold.remove(className);
+    }
+
+
+    /**
+     * Find a class of the repository by name, parsing it again from its
+     * class file if it has been evicted from the hot tier.
+     *
+     * @return the JavaClass object, or null if the class has not been
+     * loaded or stored
+     */
+    @Override
+    public JavaClass findClass( String className ) {
+        JavaClass clazz;
+        synchronized (hot) {
+            clazz = hot.get(className);
+        }
+        if (clazz != null) {
+            return clazz;
+        }
+        InputStream is = getInputStream(className);
+        if (is == null) {
+            return null;
+        }
+        try {
+            return materialize(className, is);
+        } catch (IOException e) {
+            throw new IllegalStateException("Corrupt class file of " + className, e);
+        }
+    }
+
+
+    /**
+     * Find a JavaClass object by name: from the hot tier, from the cold
+     * tier, or from the class path, in that order.
+     *
+     * @throws ClassNotFoundException if the class is not in the
+     *   Repository, and could not be found on the classpath
+     */
+    @Override
+    public JavaClass loadClass( String className ) throws ClassNotFoundException {
+        if (className == null || className.equals("")) {
+            throw new IllegalArgumentException("Invalid class name " + className);
+        }
+        className = className.replace('/', '.'); // Just in case, canonical form
+        JavaClass clazz;
+        synchronized (hot) {
+            clazz = hot.get(className);
+        }
+        if (clazz != null) {
+            Metrics.count(Metric.REPOSITORY_HIT, className);
+            return clazz;
+        }
+        Metrics.count(Metric.REPOSITORY_MISS, className);
+        long start = Metrics.start();
+        try {
+            InputStream cached = getInputStream(className);
+            if (cached != null) {
+                clazz = materialize(className, cached);
+            } else {
+                byte[] bytes;
+                try (InputStream is = path.getInputStream(className)) {
+                    if (is == null) {
+                        throw new ClassNotFoundException("TieredRepository could not load " + className);
+                    }
+                    bytes = Streams.readFully(is);
+                }
+                putBytes(className, bytes, false);
+                clazz = materialize(className, new ByteArrayInputStream(bytes));
+            }
+        } catch (IOException e) {
+            throw new ClassNotFoundException("Exception while looking for class " + className
+                    + ": " + e, e);
+        }
+        Metrics.time(Metric.REPOSITORY_LOAD, className, 0, start);
+        return clazz;
+    }
+
+
+    /**
+     * Find the JavaClass object for a runtime class object.
+     *
+     * @see #loadClass(String)
+     */
+    @Override
+    public JavaClass loadClass( Class<?> clazz ) throws ClassNotFoundException {
+        return loadClass(clazz.getName());
+    }
+
+
+    /**
+     * Clear both tiers, releasing the arena.
+     */
+    @Override
+    public void clear() {
+        synchronized (hot) {
+            hot.clear();
+        }
+        cold.release();
+    }
+
+
+    /** ClassPath associated with the Repository.
+     */
+    @Override
+    public ClassPath getClassPath() {
+        return path;
+    }
+
+
+    /**
+     * Parse a class and put it into the hot tier, unless another thread
+     * has already done so. The stream is closed, which also frees the
+     * native memory of its inflater if the cold tier is compressed.
+     */
+    private JavaClass materialize( String className, InputStream is ) throws IOException {
+        JavaClass clazz;
+        try (InputStream in = is) {
+            clazz = new ClassParser(in, className).parse();
+        }
+        clazz.setRepository(this);
+        synchronized (hot) {
+            JavaClass previous = hot.get(className);
+            if (previous != null) {
+                return previous;
+            }
+            hot.put(className, clazz);
+        }
+        return clazz;
+    }
+
+
+    /**
+     * Put a class file into the cold tier. Threads missing the same class
+     * at the same time both read it from the class path, but unless
+     * <em>replace</em> is set only the first one stores it.
+     */
+    private void putBytes( String className, byte[] bytes, boolean replace ) {
+        if (compressed) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 2);
+            Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+            try (DeflaterOutputStream dos = new DeflaterOutputStream(out, deflater)) {
+                dos.write(bytes);
+            } catch (IOException e) {
+                throw new IllegalStateException(e); // cannot happen in memory
+            } finally {
+                deflater.end();
+            }
+            bytes = out.toByteArray();
+        }
+        if (replace) {
+            cold.put(className, bytes);
+        } else {
+            cold.putIfAbsent(className, bytes);
+        }
+    }
+
+
+    private InputStream getInputStream( String className ) {
+        InputStream is = cold.getInputStream(className);
+        if (is == null) {
+            return null;
+        }
+        return compressed ? new InflaterInputStream(is) : is;
+    }
+}
@@ -0,0 +1,709 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.commons.bcel6.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.bcel6.Constants;
+import org.apache.commons.bcel6.classfile.Attribute;
+import org.apache.commons.bcel6.classfile.BootstrapMethod;
+import org.apache.commons.bcel6.classfile.BootstrapMethods;
+import org.apache.commons.bcel6.classfile.ClassParser;
+import org.apache.commons.bcel6.classfile.Code;
+import org.apache.commons.bcel6.classfile.CodeException;
+import org.apache.commons.bcel6.classfile.Constant;
+import org.apache.commons.bcel6.classfile.ConstantCP;
+import org.apache.commons.bcel6.classfile.ConstantClass;
+import org.apache.commons.bcel6.classfile.ConstantInvokeDynamic;
+import org.apache.commons.bcel6.classfile.ConstantMethodHandle;
+import org.apache.commons.bcel6.classfile.ConstantNameAndType;
+import org.apache.commons.bcel6.classfile.ConstantPool;
+import org.apache.commons.bcel6.classfile.ExceptionTable;
+import org.apache.commons.bcel6.classfile.Field;
+import org.apache.commons.bcel6.classfile.JavaClass;
+import org.apache.commons.bcel6.classfile.Method;
+import org.apache.commons.bcel6.generic.ClassGen;
+import org.apache.commons.bcel6.generic.CPInstruction;
+import org.apache.commons.bcel6.generic.FieldInstruction;
+import org.apache.commons.bcel6.generic.INVOKEDYNAMIC;
+import org.apache.commons.bcel6.generic.INVOKESPECIAL;
+import org.apache.commons.bcel6.generic.INVOKESTATIC;
+import org.apache.commons.bcel6.generic.Instruction;
+import org.apache.commons.bcel6.generic.InstructionHandle;
+import org.apache.commons.bcel6.generic.InstructionList;
+import org.apache.commons.bcel6.generic.InvokeInstruction;
+import org.apache.commons.bcel6.generic.NEW;
+
+/**
+ * Removes the classes, methods and fields of a program that cannot be
+ * used, starting from its entry points.
+ * <p>
+ * A method is reachable if it is an entry point, or is invoked by a
+ * reachable method. The targets of virtual and interface calls are the
+ * implementations in the classes instantiated by reachable methods (Rapid
+ * Type Analysis), and the methods of instantiated classes that override
+ * methods of classes outside the program, which may be called back by
+ * the library (e.g., run() or toString()). Methods referenced by method
+ * handles, as in lambda expressions, count as invoked. A field is
+ * reachable if a reachable method accesses it. A class is reachable if it
+ * is used in any way by a reachable method, as a supertype of a reachable
+ * class, or in the descriptor of a reachable member; its static
+ * initializer is kept, and so are values() and valueOf() of enums.
+ * <p>
+ * Classes and members only used through reflection, serialization or
+ * native code are not found and have to be kept explicitly with
+ * {@link #addKeepRule(String, String)}. INVOKEDYNAMIC call sites other
+ * than through method handle arguments are not followed.
+ * <p>
+ * The shrunk classes are rewritten with ClassGen, removing the
+ * unreachable methods and fields and the constants only they used.
+ *
+ * @version $Id$
+ * @see DependencyClosure
+ * @since 6.0
+ */
+public class TreeShaker {
+
+    private static final String CLASS_SUFFIX = ".class";
+
+    private final Repository repository;
+    private final List<String[]> entry_points = new ArrayList<>(); // class, name, signature or null
+    private final List<Pattern[]> keep_rules = new ArrayList<>(); // class, member or null
+
+    /* The program and the state of the analysis */
+    private final Set<String> program = new HashSet<>();
+    private final Map<String, JavaClass> classes = new HashMap<>(); // null if missing
+    private final Set<String> reachable_classes = new HashSet<>();
+    private final Set<String> instantiated = new LinkedHashSet<>();
+    private final Set<String> reachable_methods = new HashSet<>(); // class.name + signature
+    private final Set<String> reachable_fields = new HashSet<>(); // class.name:signature
+    private final Map<String, Set<String>> virtual_calls = new HashMap<>(); // class -> name + signature
+    private final List<String> queue = new ArrayList<>();
+
+
+    /**
+     * @param repository repository to read the classes of the program and
+     * the library classes they use from
+     */
+    public TreeShaker(Repository repository) {
+        this.repository = repository;
+    }
+
+
+    /**
+     * Adds an entry point of the program, e.g. a main() method.
+     *
+     * @param className fully qualified name of the class
+     * @param methodName name of the method
+     * @param signature signature of the method, or null for all methods of
+     * that name
+     */
+    public void addEntryPoint( String className, String methodName, String signature ) {
+        entry_points.add(new String[] { className, methodName, signature });
+    }
+
+
+    /**
+     * Keeps the classes whose names match the class pattern with all their
+     * fields and methods.
+     */
+    public void addKeepRule( String classRegex ) {
+        addKeepRule(classRegex, null);
+    }
+
+
+    /**
+     * Keeps the classes whose names match the class pattern, and those of
+     * their fields and methods whose names match the member pattern. The
+     * classes count as instantiated if one of their constructors, named
+     * &lt;init&gt;, is kept.
+     *
+     * @param classRegex regular expression on fully qualified class names
+     * @param memberRegex regular expression on field and method names, or
+     * null for all members
+     */
+    public void addKeepRule( String classRegex, String memberRegex ) {
+        keep_rules.add(new Pattern[] { Pattern.compile(classRegex),
+                memberRegex == null ? null : Pattern.compile(memberRegex) });
+    }
+
+
+    /**
+     * Computes the reachable classes, methods and fields of the program.
+     *
+     * @param classNames fully qualified names of the classes of the program
+     * @throws ClassNotFoundException if a class of the program is not in the repository
+     */
+    public void analyze( Collection<String> classNames ) throws ClassNotFoundException {
+        program.clear();
+        classes.clear();
+        reachable_classes.clear();
+        instantiated.clear();
+        reachable_methods.clear();
+        reachable_fields.clear();
+        virtual_calls.clear();
+        queue.clear();
+        program.addAll(classNames);
+        for (String name : classNames) {
+            classes.put(name, repository.loadClass(name));
+        }
+        for (String[] entry : entry_points) {
+            JavaClass clazz = getClass(entry[0]);
+            if (clazz == null) {
+                continue;
+            }
+            for (Method m : clazz.getMethods()) {
+                if (m.getName().equals(entry[1]) && (entry[2] == null || m.getSignature().equals(entry[2]))) {
+                    markMethod(entry[0], m.getName() + m.getSignature());
+                }
+            }
+        }
+        for (Pattern[] rule : keep_rules) {
+            for (String name : classNames) {
+                if (rule[0].matcher(name).matches()) {
+                    keep(classes.get(name), rule[1]);
+                }
+            }
+        }
+        while (!queue.isEmpty()) {
+            String method = queue.remove(queue.size() - 1);
+            int dot = method.lastIndexOf('.', method.indexOf('('));
+            scan(method.substring(0, dot), method.substring(dot + 1));
+        }
+    }
+
+
+    /**
+     * @return whether the class of the program is reachable
+     */
+    public boolean isReachable( String className ) {
+        return program.contains(className) && reachable_classes.contains(className);
+    }
+
+
+    /**
+     * @return whether the method of the program is reachable
+     */
+    public boolean isReachable( String className, String methodName, String signature ) {
+        return reachable_methods.contains(className + "." + methodName + signature);
+    }
+
+
+    /**
+     * @return whether the field of the program is reachable
+     */
+    public boolean isFieldReachable( String className, String fieldName, String signature ) {
+        return reachable_fields.contains(className + "." + fieldName + ":" + signature);
+    }
+
+
+    /**
+     * @return the reachable classes of the program, sorted by name
+     */
+    public String[] getReachableClassNames() {
+        Set<String> result = new TreeSet<>();
+        for (String name : reachable_classes) {
+            if (program.contains(name)) {
+                result.add(name);
+            }
+        }
+        return result.toArray(new String[result.size()]);
+    }
+
+
+    /**
+     * Removes the unreachable methods and fields of a class of the program,
+     * and the constants only they used.
+     *
+     * @return the shrunk class, the class itself if nothing was removed, or
+     * null if the class is unreachable
+     */
+    public JavaClass shake( JavaClass clazz ) {
+        String name = clazz.getClassName();
+        if (!isReachable(name)) {
+            return null;
+        }
+        ClassGen cg = new ClassGen(clazz);
+        boolean changed = false;
+        for (Method m : cg.getMethods()) {
+            if (!isReachable(name, m.getName(), m.getSignature())) {
+                cg.removeMethod(m);
+                changed = true;
+            }
+        }
+        for (Field f : cg.getFields()) {
+            if (!isFieldReachable(name, f.getName(), f.getSignature())) {
+                cg.removeField(f);
+                changed = true;
+            }
+        }
+        if (!changed) {
+            return clazz;
+        }
+        cg.setCompactConstantPool(true);
+        return cg.getJavaClass();
+    }
+
+
+    /**
+     * Copies a jar file, shaking its classes. Classes of the program that
+     * are unreachable are left out; other entries are copied unchanged.
+     *
+     * @param in jar file to read
+     * @param out jar file to write
+     * @throws IOException if reading or writing fails
+     */
+    public void shake( File in, File out ) throws IOException {
+        try (ZipInputStream zin = new ZipInputStream(new FileInputStream(in));
+                ZipOutputStream zout = new ZipOutputStream(new FileOutputStream(out))) {
+            ZipEntry entry;
+            while ((entry = zin.getNextEntry()) != null) {
+                byte[] bytes = Streams.readFully(zin);
+                String name = getClassName(entry);
+                if (name != null && program.contains(name)) {
+                    JavaClass clazz = new ClassParser(new ByteArrayInputStream(bytes), entry.getName()).parse();
+                    JavaClass shaken = shake(clazz);
+                    if (shaken == null) {
+                        continue;
+                    }
+                    if (shaken != clazz) {
+                        bytes = shaken.getBytes();
+                    }
+                }
+                ZipEntry copy = new ZipEntry(entry.getName());
+                copy.setTime(entry.getTime());
+                zout.putNextEntry(copy);
+                zout.write(bytes);
+                zout.closeEntry();
+            }
+        }
+    }
+
+
+    /**
+     * @return the names of the classes in a jar file, leaving out
+     * module-info, package-info and the classes under META-INF
+     * @throws IOException if the jar file cannot be read
+     */
+    public static List<String> getClassNames( File jar ) throws IOException {
+        List<String> result = new ArrayList<>();
+        try (ZipFile zip = new ZipFile(jar)) {
+            for (Enumeration<? extends ZipEntry> e = zip.entries(); e.hasMoreElements();) {
+                String name = getClassName(e.nextElement());
+                if (name != null) {
+                    result.add(name);
+                }
+            }
+        }
+        return result;
+    }
+
+
+    /**
+     * @return the name of the class stored in a jar entry, null if the entry
+     * is no class file or one of those left out by getClassNames()
+     */
+    static String getClassName( ZipEntry entry ) {
+        String name = entry.getName();
+        if (entry.isDirectory() || !name.endsWith(CLASS_SUFFIX) || name.startsWith("META-INF/")
+                || name.indexOf('-') >= 0) {
+            return null;
+        }
+        return name.substring(0, name.length() - CLASS_SUFFIX.length()).replace('/', '.');
+    }
+
+
+    private void keep( JavaClass clazz, Pattern members ) {
+        String name = clazz.getClassName();
+        markClass(name);
+        for (Method m : clazz.getMethods()) {
+            if (members == null || members.matcher(m.getName()).matches()) {
+                markMethod(name, m.getName() + m.getSignature());
+                if (m.getName().equals("<init>") && !clazz.isAbstract() && !clazz.isInterface()) {
+                    instantiate(name);
+                }
+            }
+        }
+        for (Field f : clazz.getFields()) {
+            if (members == null || members.matcher(f.getName()).matches()) {
+                markField(name, f.getName(), f.getSignature());
+            }
+        }
+    }
+
+
+    private JavaClass getClass( String name ) {
+        if (classes.containsKey(name)) {
+            return classes.get(name);
+        }
+        JavaClass clazz;
+        try {
+            clazz = repository.loadClass(name);
+        } catch (ClassNotFoundException e) {
+            clazz = null;
+        }
+        classes.put(name, clazz);
+        return clazz;
+    }
+
+
+    /**
+     * @return the class, its superclasses and all interfaces they
+     * implement, directly or indirectly, as far as they are found
+     */
+    private Set<String> getSupertypes( String name ) {
+        Set<String> result = new LinkedHashSet<>();
+        List<String> pending = new ArrayList<>();
+        pending.add(name);
+        for (int i = 0; i < pending.size(); i++) {
+            String c = pending.get(i);
+            if (!result.add(c)) {
+                continue;
+            }
+            JavaClass clazz = getClass(c);
+            if (clazz != null) {
+                if (!c.equals("java.lang.Object")) {
+                    pending.add(clazz.getSuperclassName());
+                }
+                for (String i_name : clazz.getInterfaceNames()) {
+                    pending.add(i_name);
+                }
+            }
+        }
+        return result;
+    }
+
+
+    private static Method findMethod( JavaClass clazz, String method ) {
+        if (clazz != null) {
+            for (Method m : clazz.getMethods()) {
+                if (method.equals(m.getName() + m.getSignature())) {
+                    return m;
+                }
+            }
+        }
+        return null;
+    }
+
+
+    /**
+     * @return the class declaring the method as resolved from the given
+     * class, or the class itself if none is found
+     */
+    private String findDeclaration( String name, String method ) {
+        for (String c : getSupertypes(name)) {
+            if (findMethod(getClass(c), method) != null) {
+                return c;
+            }
+        }
+        return name;
+    }
+
+
+    /**
+     * @return the class whose implementation of the method is invoked for
+     * instances of the given class, or null if there is none
+     */
+    private String findImplementation( String name, String method ) {
+        String default_method = null;
+        for (String c : getSupertypes(name)) {
+            JavaClass clazz = getClass(c);
+            Method m = findMethod(clazz, method);
+            if (m == null || m.isStatic()) {
+                continue;
+            }
+            if (!clazz.isInterface()) {
+                return m.isAbstract() ? null : c;
+            }
+            if (default_method == null && !m.isAbstract()) {
+                default_method = c;
+            }
+        }
+        return default_method;
+    }
+
+
+    private String findField( String name, String field, String signature ) {
+        for (String c : getSupertypes(name)) {
+            JavaClass clazz = getClass(c);
+            if (clazz != null) {
+                for (Field f : clazz.getFields()) {
+                    if (f.getName().equals(field) && f.getSignature().equals(signature)) {
+                        return c;
+                    }
+                }
+            }
+        }
+        return name;
+    }
+
+
+    private void markClass( String name ) {
+        if (!reachable_classes.add(name) || !program.contains(name)) {
+            return;
+        }
+        JavaClass clazz = getClass(name);
+        if (!name.equals("java.lang.Object")) {
+            markClass(clazz.getSuperclassName());
+        }
+        for (String i_name : clazz.getInterfaceNames()) {
+            markClass(i_name);
+        }
+        for (Method m : clazz.getMethods()) {
+            String method = m.getName() + m.getSignature();
+            if (method.equals("<clinit>()V") || clazz.isEnum() && m.isStatic()
+                    && (m.getName().equals("values") || m.getName().equals("valueOf"))) {
+                markMethod(name, method);
+            }
+        }
+    }
+
+
+    private void markMethod( String name, String method ) {
+        markClass(name);
+        if (program.contains(name) && findMethod(getClass(name), method) != null
+                && reachable_methods.add(name + "." + method)) {
+            queue.add(name + "." + method);
+        }
+    }
+
+
+    private void markField( String name, String field, String signature ) {
+        String owner = findField(name, field, signature);
+        markClass(owner);
+        if (program.contains(owner)) {
+            reachable_fields.add(owner + "." + field + ":" + signature);
+            markDescriptor(signature);
+        }
+    }
+
+
+    private void markDescriptor( String descriptor ) {
+        List<String> names = new ArrayList<>();
+        DependencyClosure.addDescriptorClassNames(descriptor, names);
+        for (String name : names) {
+            markClass(name);
+        }
+    }
+
+
+    private void markVirtualCall( String name, String method ) {
+        markMethod(findDeclaration(name, method), method);
+        Set<String> methods = virtual_calls.get(name);
+        if (methods == null) {
+            methods = new HashSet<>();
+            virtual_calls.put(name, methods);
+        }
+        if (!methods.add(method)) {
+            return;
+        }
+        for (String receiver : new ArrayList<>(instantiated)) {
+            if (getSupertypes(receiver).contains(name)) {
+                markImplementation(receiver, method);
+            }
+        }
+    }
+
+
+    private void markImplementation( String receiver, String method ) {
+        String implementation = findImplementation(receiver, method);
+        if (implementation != null) {
+            markMethod(implementation, method);
+        }
+    }
+
+
+    private void instantiate( String name ) {
+        markClass(name);
+        if (!program.contains(name) || !instantiated.add(name)) {
+            return;
+        }
+        for (String supertype : getSupertypes(name)) {
+            Set<String> methods = virtual_calls.get(supertype);
+            if (methods != null) {
+                for (String method : new ArrayList<>(methods)) {
+                    markImplementation(name, method);
+                }
+            }
+            JavaClass clazz = getClass(supertype);
+            if (clazz != null && !program.contains(supertype)) {
+                // Methods the library may call back
+                for (Method m : clazz.getMethods()) {
+                    if (!m.isStatic() && !m.isPrivate() && !m.getName().startsWith("<")) {
+                        markImplementation(name, m.getName() + m.getSignature());
+                    }
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Marks what a reachable method uses.
+     */
+    private void scan( String name, String method ) {
+        JavaClass clazz = getClass(name);
+        Method m = findMethod(clazz, method);
+        markDescriptor(m.getSignature());
+        ExceptionTable exceptions = m.getExceptionTable();
+        if (exceptions != null) {
+            for (String e : exceptions.getExceptionNames()) {
+                markClass(e);
+            }
+        }
+        Code code = m.getCode();
+        if (code == null) {
+            return;
+        }
+        ConstantPool cp = clazz.getConstantPool();
+        for (CodeException handler : code.getExceptionTable()) {
+            if (handler.getCatchType() != 0) {
+                markConstant(cp, handler.getCatchType());
+            }
+        }
+        InstructionList il = new InstructionList(code.getCode());
+        for (InstructionHandle ih = il.getStart(); ih != null; ih = ih.getNext()) {
+            Instruction inst = ih.getInstruction();
+            if (!(inst instanceof CPInstruction)) {
+                continue;
+            }
+            int index = ((CPInstruction) inst).getIndex();
+            if (inst instanceof INVOKEDYNAMIC) {
+                markInvokeDynamic(clazz, (ConstantInvokeDynamic) cp.getConstant(index));
+            } else if (inst instanceof InvokeInstruction) {
+                ConstantCP ref = (ConstantCP) cp.getConstant(index);
+                String target = getOwner(cp, ref);
+                String target_method = getNameAndType(cp, ref);
+                markClass(target);
+                markDescriptor(target_method.substring(target_method.indexOf('(')));
+                if (inst instanceof INVOKESTATIC || inst instanceof INVOKESPECIAL) {
+                    markMethod(findDeclaration(target, target_method), target_method);
+                } else {
+                    markVirtualCall(target, target_method);
+                }
+            } else if (inst instanceof FieldInstruction) {
+                markConstant(cp, index);
+            } else if (inst instanceof NEW) {
+                ConstantClass c = (ConstantClass) cp.getConstant(index);
+                instantiate(c.getBytes(cp).replace('/', '.'));
+            } else {
+                markConstant(cp, index);
+            }
+        }
+    }
+
+
+    /**
+     * @return the class of a member reference, java.lang.Object for the
+     * methods of arrays
+     */
+    private static String getOwner( ConstantPool cp, ConstantCP ref ) {
+        String name = ref.getClass(cp);
+        return name.startsWith("[") ? "java.lang.Object" : name;
+    }
+
+
+    private static String getNameAndType( ConstantPool cp, ConstantCP ref ) {
+        ConstantNameAndType nat = (ConstantNameAndType) cp.getConstant(ref.getNameAndTypeIndex());
+        return nat.getName(cp) + nat.getSignature(cp);
+    }
+
+
+    /**
+     * Marks the class, field, or method handle referenced by a constant.
+     */
+    private void markConstant( ConstantPool cp, int index ) {
+        Constant c = cp.getConstant(index);
+        switch (c.getTag()) {
+            case Constants.CONSTANT_Class:
+                String name = ((ConstantClass) c).getBytes(cp);
+                if (name.startsWith("[")) {
+                    markDescriptor(name);
+                } else {
+                    markClass(name.replace('/', '.'));
+                }
+                break;
+            case Constants.CONSTANT_Fieldref: {
+                ConstantCP ref = (ConstantCP) c;
+                ConstantNameAndType nat = (ConstantNameAndType) cp.getConstant(ref.getNameAndTypeIndex());
+                markField(getOwner(cp, ref), nat.getName(cp), nat.getSignature(cp));
+                break;
+            }
+            case Constants.CONSTANT_MethodHandle: {
+                ConstantMethodHandle handle = (ConstantMethodHandle) c;
+                int kind = handle.getReferenceKind();
+                if (kind <= Constants.REF_putStatic) {
+                    markConstant(cp, handle.getReferenceIndex());
+                    break;
+                }
+                ConstantCP ref = (ConstantCP) cp.getConstant(handle.getReferenceIndex());
+                String target = getOwner(cp, ref);
+                String method = getNameAndType(cp, ref);
+                markClass(target);
+                markDescriptor(method.substring(method.indexOf('(')));
+                if (kind == Constants.REF_newInvokeSpecial) {
+                    instantiate(target);
+                }
+                if (kind == Constants.REF_invokeVirtual || kind == Constants.REF_invokeInterface) {
+                    markVirtualCall(target, method);
+                } else {
+                    markMethod(findDeclaration(target, method), method);
+                }
+                break;
+            }
+            default:
+                break;
+        }
+    }
+
+
+    private void markInvokeDynamic( JavaClass clazz, ConstantInvokeDynamic indy ) {
+        ConstantPool cp = clazz.getConstantPool();
+        for (Attribute a : clazz.getAttributes()) {
+            if (a instanceof BootstrapMethods) {
+                BootstrapMethod bsm = ((BootstrapMethods) a).getBootstrapMethods()[indy
+                        .getBootstrapMethodAttrIndex()];
+                markConstant(cp, bsm.getBootstrapMethodRef());
+                for (int arg : bsm.getBootstrapArguments()) {
+                    markConstant(cp, arg);
+                }
+            }
+        }
+        ConstantNameAndType nat = (ConstantNameAndType) cp.getConstant(indy.getNameAndTypeIndex());
+        markDescriptor(nat.getSignature(cp));
+    }
+}
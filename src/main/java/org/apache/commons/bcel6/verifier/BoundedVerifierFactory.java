@@ -0,0 +1,313 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.commons.bcel6.verifier;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.bcel6.Repository;
+import org.apache.commons.bcel6.classfile.Code;
+import org.apache.commons.bcel6.classfile.JavaClass;
+import org.apache.commons.bcel6.classfile.Method;
+import org.apache.commons.bcel6.generic.Instruction;
+import org.apache.commons.bcel6.util.ByteSequence;
+
+/**
+ * A factory of Verifier instances that, unlike the static VerifierFactory,
+ * keeps only a bounded number of them. Like the VerifierFactory it hands
+ * out one Verifier per class name, so the results of its passes are
+ * reused, but only as long as the Verifier stays in the factory.
+ * <p>
+ * Each Verifier is weighed by the number of methods and instructions of
+ * its class, which is what its pass verifiers hold on to. When the total
+ * weight exceeds the maximum, Verifier instances that have not been used
+ * recently are dropped: each time the least recently used of a small
+ * sample, taken round robin, so that neither lookups nor insertions scan
+ * the whole factory. The Verifier instances obtained from a factory use it
+ * to verify the classes they refer to as well.
+ * <p>
+ * This class is thread-safe, and so are the Verifier instances it creates.
+ *
+ * @version $Id$
+ * @since 6.0
+ * @see VerifierFactory
+ */
+public class BoundedVerifierFactory implements Closeable {
+
+    /** A cached Verifier, its weight and the time it was last used. */
+    private static final class Node {
+
+        final Verifier verifier;
+        final long weight;
+        volatile long used;
+
+
+        Node(Verifier verifier, long weight, long used) {
+            this.verifier = verifier;
+            this.weight = weight;
+            this.used = used;
+        }
+    }
+
+    /** Number of cached verifiers compared to pick the one to drop. */
+    private static final int EVICTION_SAMPLE = 8;
+
+    private final long maxWeight;
+    private final ConcurrentMap<String, Node> verifiers = new ConcurrentHashMap<>();
+    /** Logical clock ordering the uses of the cached verifiers. */
+    private final AtomicLong clock = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    /** The sum of the weights of the cached verifiers, guarded by this. */
+    private long weight;
+    /** Where sampling for eviction goes on, guarded by this. */
+    private Iterator<Node> cursor;
+    private volatile boolean closed;
+    private volatile VerificationCache cache;
+    private volatile VerificationBudget budget;
+
+
+    /**
+     * @param maxWeight the maximum total weight of the cached Verifier
+     * instances, each weighing one plus the number of methods and
+     * instructions of its class
+     */
+    public BoundedVerifierFactory( long maxWeight ) {
+        if (maxWeight <= 0) {
+            throw new IllegalArgumentException("Maximum weight must be positive: " + maxWeight);
+        }
+        this.maxWeight = maxWeight;
+    }
+
+
+    /**
+     * Returns the verifier responsible for the class with the given name,
+     * creating it if it is not in this factory (anymore).
+     *
+     * @throws IllegalStateException if the factory has been closed
+     */
+    public Verifier getVerifier( String fully_qualified_classname ) {
+        if (closed) {
+            throw new IllegalStateException("VerifierFactory has been closed");
+        }
+        Node node = verifiers.get(fully_qualified_classname);
+        if (node != null) {
+            node.used = clock.incrementAndGet();
+            hits.incrementAndGet();
+            return node.verifier;
+        }
+        Node created = new Node(new Verifier(fully_qualified_classname, this),
+                weigh(fully_qualified_classname), clock.incrementAndGet());
+        synchronized (this) {
+            node = verifiers.putIfAbsent(fully_qualified_classname, created);
+            if (node != null) {
+                hits.incrementAndGet();
+                return node.verifier;
+            }
+            misses.incrementAndGet();
+            weight += created.weight;
+            evict(created);
+        }
+        return created.verifier;
+    }
+
+
+    /**
+     * Drops verifiers until the weight is within bounds, each the least
+     * recently used of the next EVICTION_SAMPLE ones, but never the one
+     * just added.
+     */
+    private void evict( Node added ) {
+        while (weight > maxWeight && verifiers.size() > 1) {
+            Node eldest = null;
+            for (int i = 0; i < EVICTION_SAMPLE; i++) {
+                if (cursor == null || !cursor.hasNext()) {
+                    cursor = verifiers.values().iterator();
+                }
+                Node node = cursor.next();
+                if (node != added && (eldest == null || node.used < eldest.used)) {
+                    eldest = node;
+                }
+            }
+            if (eldest != null && verifiers.remove(eldest.verifier.getClassName(), eldest)) {
+                weight -= eldest.weight;
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+
+    /**
+     * Returns one plus the number of methods and instructions of the class.
+     */
+    private static long weigh( String class_name ) {
+        JavaClass jc;
+        try {
+            jc = Repository.lookupClass(class_name);
+        } catch (ClassNotFoundException e) {
+            return 1; // Pass 1 will reject it and keep nothing
+        }
+        Method[] methods = jc.getMethods();
+        long w = 1 + methods.length;
+        for (Method method : methods) {
+            Code code = method.getCode();
+            if (code != null) {
+                w += countInstructions(code.getCode());
+            }
+        }
+        return w;
+    }
+
+
+    private static int countInstructions( byte[] code ) {
+        int n = 0;
+        try (ByteSequence bytes = new ByteSequence(code)) {
+            while (bytes.available() > 0) {
+                Instruction.readInstruction(bytes);
+                n++;
+            }
+        } catch (IOException | RuntimeException e) {
+            return code.length; // malformed code, left to Pass 3a to report
+        }
+        return n;
+    }
+
+
+    /**
+     * Returns the Verifier instances currently held by this factory.
+     */
+    public Verifier[] getVerifiers() {
+        List<Verifier> vs = new ArrayList<>(verifiers.size());
+        for (Node node : verifiers.values()) {
+            vs.add(node.verifier);
+        }
+        return vs.toArray(new Verifier[vs.size()]);
+    }
+
+
+    /**
+     * Drops all Verifier instances and thereby all results they hold.
+     * The factory may still be used afterwards.
+     */
+    public synchronized void flush() {
+        verifiers.clear();
+        weight = 0;
+        cursor = null;
+    }
+
+
+    /**
+     * Flushes the factory and rejects any further use.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        flush();
+    }
+
+
+    /**
+     * Sets the cache the Verifier instances of this factory consult before
+     * running a pass and record their results in.
+     *
+     * @param verificationCache the cache to use, or null to always verify
+     */
+    public void setVerificationCache( VerificationCache verificationCache ) {
+        cache = verificationCache;
+    }
+
+
+    /**
+     * @return the cache of VerificationResults in use, or null if there is none
+     */
+    public VerificationCache getVerificationCache() {
+        return cache;
+    }
+
+
+    /**
+     * Sets the limits on the work of the Verifier instances. A Verifier
+     * picks up the budget at its first pass after creation or flush().
+     *
+     * @param verificationBudget the budget, or null to verify without limits
+     */
+    public void setVerificationBudget( VerificationBudget verificationBudget ) {
+        budget = verificationBudget;
+    }
+
+
+    /**
+     * @return the limits on the work of the Verifier instances, or null if there are none
+     */
+    public VerificationBudget getVerificationBudget() {
+        return budget;
+    }
+
+
+    /** @return the maximum total weight of the cached verifiers */
+    public long getMaxWeight() {
+        return maxWeight;
+    }
+
+
+    /** @return the current total weight of the cached verifiers */
+    public synchronized long getWeight() {
+        return weight;
+    }
+
+
+    /** @return the number of cached verifiers */
+    public int size() {
+        return verifiers.size();
+    }
+
+
+    /** @return the number of requests served by a cached Verifier */
+    public long getHits() {
+        return hits.get();
+    }
+
+
+    /** @return the number of requests that created a new Verifier */
+    public long getMisses() {
+        return misses.get();
+    }
+
+
+    /** @return the number of Verifier instances dropped to stay within the maximum weight */
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+
+    /**
+     * @return a summary of the statistics of this factory
+     */
+    @Override
+    public String toString() {
+        return "BoundedVerifierFactory(size=" + size() + ", weight=" + getWeight() + "/" + maxWeight
+                + ", hits=" + getHits() + ", misses=" + getMisses() + ", evictions=" + getEvictions() + ")";
+    }
+}
@@ -20,6 +20,8 @@ package org.apache.commons.bcel6.verifier;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.apache.commons.bcel6.verifier.exc.BudgetExceededException;
+
 /**
  * A PassVerifier actually verifies a class file; it is instantiated
  * by a Verifier.
@@ -40,6 +42,7 @@ import java.util.List;
  * PassVerifier instances perform caching.
  * That means, if you really want a new verification run of a certain
  * pass you must use a new instance of a given PassVerifier.
+ * A pass is run at most once even if several threads ask for its result.
  *
  * @version $Id$
  * @see Verifier
@@ -66,14 +69,28 @@ public abstract class PassVerifier {
      * @see #getMessages()
      * @see #addMessage(String)
      */
-    public VerificationResult verify() {
+    public synchronized VerificationResult verify() {
         if (verificationResult == null) {
-            verificationResult = do_verify();
+            try {
+                VerificationBudget.checkpoint();
+                verificationResult = do_verify();
+            } catch (BudgetExceededException e) {
+                verificationResult = new VerificationResult(VerificationResult.VERIFIED_REJECTED,
+                        e.getMessage(), e.getLimit());
+            }
         }
         return verificationResult;
     }
 
 
+    /**
+     * @return true if verify() has already determined the cached result
+     */
+    synchronized boolean isVerified() {
+        return verificationResult != null;
+    }
+
+
     /** Does the real verification work, uncached. */
     public abstract VerificationResult do_verify();
 
@@ -86,7 +103,7 @@ public abstract class PassVerifier {
      *
      * @see #getMessages()
      */
-    public void addMessage( String message ) {
+    public synchronized void addMessage( String message ) {
         messages.add(message);
     }
 
@@ -98,7 +115,7 @@ public abstract class PassVerifier {
      * @see #addMessage(String)
      * @see #do_verify()
      */
-    public String[] getMessages() {
+    public synchronized String[] getMessages() {
         verify(); // create messages if not already done (cached!)
         return messages.toArray(new String[messages.size()]);
     }
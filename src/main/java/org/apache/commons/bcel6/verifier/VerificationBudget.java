@@ -0,0 +1,351 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.commons.bcel6.verifier;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.apache.commons.bcel6.verifier.exc.BudgetExceededException;
+
+/**
+ * Limits on the work a Verifier may do, for classes from untrusted sources.
+ * Every limit can be set per method, covering pass 3a and pass 3b of that
+ * method, and per class, covering all passes of the class. A pass that
+ * exceeds a limit is rejected with a VerificationResult naming the limit
+ * that was hit, see {@link VerificationResult#getExceededLimit()}.
+ * <p>
+ * In fail-fast mode a Verifier stops verifying further methods once a pass
+ * of its class has been rejected; they yield VERIFIED_NOTYET instead.
+ * <p>
+ * A budget is installed with
+ * {@link VerifierFactory#setVerificationBudget(VerificationBudget)} or
+ * {@link BoundedVerifierFactory#setVerificationBudget(VerificationBudget)}.
+ * Results of passes cut off by a budget are not recorded in a
+ * VerificationCache.
+ * <p>
+ * The TIME limit counts the time during which passes run under a meter,
+ * not the time since the Verifier was created, so a Verifier that is kept
+ * around, e.g. by a VerifierFactory, is not charged for the time between
+ * its passes. It is checked whenever other work is counted, and at the
+ * checkpoints the passes pass through with {@link #checkpoint()}, e.g. for
+ * each class of a hierarchy they walk.
+ *
+ * @version $Id$
+ * @since 6.0
+ */
+public class VerificationBudget {
+
+    /**
+     * The kinds of work that can be limited.
+     */
+    public enum Limit {
+        /** Symbolic executions of an instruction in pass 3b. */
+        INSTRUCTIONS("instruction executions"),
+        /** Merges of an incoming frame into an instruction's frame in pass 3b. */
+        MERGES("frame merges"),
+        /** Referenced classes resolved through the Verifier, each of which may load a class. */
+        LOADS("class loads"),
+        /** Milliseconds during which passes of the method or class run. */
+        TIME("milliseconds");
+
+        private final String description;
+
+
+        Limit(String description) {
+            this.description = description;
+        }
+
+
+        /** @return what the limit counts */
+        public String getDescription() {
+            return description;
+        }
+    }
+
+    private static final int LIMITS = Limit.values().length;
+
+    private final long[] method_limits = new long[LIMITS];
+    private final long[] class_limits = new long[LIMITS];
+    private boolean fail_fast;
+
+
+    /**
+     * Creates an unlimited budget; set the limits needed.
+     */
+    public VerificationBudget() {
+        Arrays.fill(method_limits, Long.MAX_VALUE);
+        Arrays.fill(class_limits, Long.MAX_VALUE);
+    }
+
+
+    /**
+     * @param limit what to limit
+     * @param max the maximum per method, Long.MAX_VALUE for no limit
+     */
+    public void setMethodLimit( Limit limit, long max ) {
+        method_limits[limit.ordinal()] = checkLimit(max);
+    }
+
+
+    /** @return the maximum per method */
+    public long getMethodLimit( Limit limit ) {
+        return method_limits[limit.ordinal()];
+    }
+
+
+    /**
+     * @param limit what to limit
+     * @param max the maximum per class, Long.MAX_VALUE for no limit
+     */
+    public void setClassLimit( Limit limit, long max ) {
+        class_limits[limit.ordinal()] = checkLimit(max);
+    }
+
+
+    /** @return the maximum per class */
+    public long getClassLimit( Limit limit ) {
+        return class_limits[limit.ordinal()];
+    }
+
+
+    /**
+     * @param fail_fast whether to stop verifying the methods of a class
+     * after the first rejection
+     */
+    public void setFailFast( boolean fail_fast ) {
+        this.fail_fast = fail_fast;
+    }
+
+
+    /** @return whether verification stops at the first rejection */
+    public boolean isFailFast() {
+        return fail_fast;
+    }
+
+
+    private static long checkLimit( long max ) {
+        if (max < 0) {
+            throw new IllegalArgumentException("Limit must not be negative: " + max);
+        }
+        return max;
+    }
+
+
+    /**
+     * Stops the pass running on the current thread with a
+     * BudgetExceededException if it has used up its TIME limit. Passes call
+     * this where they make progress that no other limit counts.
+     */
+    public static void checkpoint() {
+        Meter meter = Meter.current();
+        if (meter != null) {
+            meter.checkpoint();
+        }
+    }
+
+
+    /** @return a meter for a class */
+    Meter newClassMeter() {
+        return new Meter(class_limits, "class", null);
+    }
+
+
+    /** @return a meter for a method of the class metered by <em>parent</em> */
+    Meter newMethodMeter( Meter parent ) {
+        return new Meter(method_limits, "method", parent);
+    }
+
+
+    /**
+     * Counts the work done for a class or a method and throws a
+     * BudgetExceededException once a limit is exceeded. The passes find
+     * the meter of the pass running on the current thread with
+     * {@link #current()}.
+     */
+    public static final class Meter {
+
+        private static final ThreadLocal<Meter> CURRENT = new ThreadLocal<>();
+
+        /** Check the clock only every that many instructions. */
+        private static final int TIME_CHECK_INTERVAL = 0xff;
+
+        private final long[] limits;
+        private final String scope;
+        private final Meter parent;
+        private final AtomicLongArray counts = new AtomicLongArray(LIMITS);
+        private final long max_nanos;
+        /** Number of passes running under this meter, guarded by this. */
+        private int active;
+        /** When the passes running now started, guarded by this. */
+        private long since;
+        /** Nanoseconds of the earlier periods in which passes ran, guarded by this. */
+        private long elapsed;
+        private volatile boolean tainted;
+
+
+        Meter(long[] limits, String scope, Meter parent) {
+            this.limits = limits.clone();
+            this.scope = scope;
+            this.parent = parent;
+            long millis = this.limits[Limit.TIME.ordinal()];
+            max_nanos = millis >= Long.MAX_VALUE / 1000000 ? Long.MAX_VALUE : millis * 1000000;
+        }
+
+
+        /**
+         * @return the meter of the pass running on the current thread, null if
+         * there is none or no budget is in effect
+         */
+        public static Meter current() {
+            return CURRENT.get();
+        }
+
+
+        /**
+         * Makes the given meter the current one.
+         * @return the previous one, to be restored with exit()
+         */
+        static Meter enter( Meter meter ) {
+            Meter previous = CURRENT.get();
+            CURRENT.set(meter);
+            return previous;
+        }
+
+
+        static void exit( Meter previous ) {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        }
+
+
+        /**
+         * Starts the clock of this meter and its parents for a pass. Passes
+         * running at the same time, on other threads or nested in one
+         * another, are timed together.
+         */
+        void start() {
+            synchronized (this) {
+                if (active++ == 0) {
+                    since = System.nanoTime();
+                }
+            }
+            if (parent != null) {
+                parent.start();
+            }
+        }
+
+
+        /** Stops the clock started by start(). */
+        void stop() {
+            synchronized (this) {
+                if (--active == 0) {
+                    elapsed += System.nanoTime() - since;
+                }
+            }
+            if (parent != null) {
+                parent.stop();
+            }
+        }
+
+
+        /** @return the nanoseconds during which passes ran under this meter */
+        private synchronized long getElapsed() {
+            return active > 0 ? elapsed + System.nanoTime() - since : elapsed;
+        }
+
+
+        /** Counts the symbolic execution of an instruction. */
+        public void instruction() {
+            add(Limit.INSTRUCTIONS);
+        }
+
+
+        /** Counts a frame merge. */
+        public void merge() {
+            add(Limit.MERGES);
+        }
+
+
+        /** Counts the resolution of a referenced class. */
+        public void load() {
+            add(Limit.LOADS);
+        }
+
+
+        /** Checks the TIME limit of this meter and its parents. */
+        public void checkpoint() {
+            checkTime();
+            if (parent != null) {
+                parent.checkpoint();
+            }
+        }
+
+
+        /**
+         * @return whether a pass run under this meter used a result that was
+         * cut off by a budget, so that its own result depends on the budget
+         */
+        boolean isTainted() {
+            return tainted;
+        }
+
+
+        void taint() {
+            tainted = true;
+        }
+
+
+        /** @return the amount of work of the given kind counted so far */
+        public long getCount( Limit limit ) {
+            if (limit == Limit.TIME) {
+                return getElapsed() / 1000000;
+            }
+            return counts.get(limit.ordinal());
+        }
+
+
+        private void add( Limit limit ) {
+            long n = counts.incrementAndGet(limit.ordinal());
+            if (n > limits[limit.ordinal()]) {
+                throw exceeded(limit);
+            }
+            if (limit != Limit.INSTRUCTIONS || (n & TIME_CHECK_INTERVAL) == 0) {
+                checkTime();
+            }
+            if (parent != null) {
+                parent.add(limit);
+            }
+        }
+
+
+        private void checkTime() {
+            if (max_nanos != Long.MAX_VALUE && getElapsed() > max_nanos) {
+                throw exceeded(Limit.TIME);
+            }
+        }
+
+
+        private BudgetExceededException exceeded( Limit limit ) {
+            return new BudgetExceededException(limit, "Verification budget exceeded: more than "
+                    + limits[limit.ordinal()] + " " + limit.getDescription() + " per " + scope + ".");
+        }
+    }
+}
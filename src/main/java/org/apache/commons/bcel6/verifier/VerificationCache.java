@@ -0,0 +1,578 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.commons.bcel6.verifier;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.ref.WeakReference;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.apache.commons.bcel6.Repository;
+import org.apache.commons.bcel6.classfile.Constant;
+import org.apache.commons.bcel6.classfile.ConstantClass;
+import org.apache.commons.bcel6.classfile.ConstantNameAndType;
+import org.apache.commons.bcel6.classfile.ConstantPool;
+import org.apache.commons.bcel6.classfile.FieldOrMethod;
+import org.apache.commons.bcel6.classfile.JavaClass;
+
+/**
+ * A cache of VerificationResults that survives the Verifier instances and,
+ * if a directory is given, the JVM. Entries are keyed by a digest of the
+ * class file bytes and are only valid as long as the classes the
+ * verification depends on are unchanged. These dependencies are the
+ * supertypes of the class itself and of all classes and descriptor types
+ * it refers to, because pass 2 and pass 3 resolve members and check
+ * assignability against them. Each dependency is recorded with the digest
+ * of its class file (or as missing), and an entry whose dependencies no
+ * longer match the Repository is discarded.
+ * <p>
+ * The results and warning messages of each pass are stored, for the passes
+ * 3a and 3b separately for every method. Verifiers use the cache installed
+ * with {@link VerifierFactory#setVerificationCache(VerificationCache)}.
+ * <p>
+ * At most a given number of entries, and of class digests, are held in
+ * memory; the least recently used ones are dropped beyond that, entries of
+ * a persistent cache being written to the directory first. The digests
+ * refer to their classes weakly, so the cache does not keep classes alive.
+ * <p>
+ * The cache is thread safe. Only the accesses to the maps of entries and
+ * digests are serialized; classes are digested, dependencies validated and
+ * entries read and written without holding the lock, so that classes can be
+ * verified in parallel. Threads looking up the same class at the same time
+ * may both compute its entry; the first one stored is used.
+ *
+ * @version $Id$
+ * @since 6.0
+ * @see Verifier
+ */
+public class VerificationCache {
+
+    /** Marks a dependency that could not be found in the Repository. */
+    private static final String MISSING = "-";
+
+    private static final String SUFFIX = ".properties";
+
+    /** Default number of entries and of digests held in memory. */
+    public static final int DEFAULT_MAX_ENTRIES = 10000;
+
+    /** The directory the entries are persisted in, null if in memory only. */
+    private final File directory;
+
+    /** The entries loaded or created recently, in access order. Key: the digest of the class. */
+    private final Map<String, Entry> entries;
+
+    /** Digests of the classes seen recently, to avoid serializing them again. Key: the class name. */
+    private final Map<String, Digested> digests;
+
+    /** Entries dropped from memory that still have to be written, guarded by this. */
+    private final List<Entry> evicted = new ArrayList<>();
+
+    private long hits;
+    private long misses;
+    private long invalidations;
+
+
+    /**
+     * Creates a cache that is kept in memory only.
+     */
+    public VerificationCache() {
+        this(null);
+    }
+
+
+    /**
+     * Creates a cache that is persisted in the given directory. Entries
+     * already in there are read on demand, new ones are written by
+     * {@link #flush()}.
+     *
+     * @param directory where to store the entries, created if necessary
+     */
+    public VerificationCache( File directory ) {
+        this(directory, DEFAULT_MAX_ENTRIES);
+    }
+
+
+    /**
+     * Creates a cache that is persisted in the given directory, if any,
+     * holding at most the given number of entries in memory.
+     *
+     * @param directory where to store the entries, null to keep them in memory only
+     * @param max_entries maximum number of entries, and of class digests, held in memory
+     */
+    public VerificationCache( File directory, final int max_entries ) {
+        if (max_entries < 1) {
+            throw new IllegalArgumentException("Invalid maximum " + max_entries);
+        }
+        this.directory = directory;
+        entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+
+            private static final long serialVersionUID = 1L;
+
+
+            @Override
+            protected boolean removeEldestEntry( Map.Entry<String, Entry> eldest ) {
+                if (size() <= max_entries) {
+                    return false;
+                }
+                if (VerificationCache.this.directory != null) {
+                    evicted.add(eldest.getValue());
+                }
+                return true;
+            }
+        };
+        digests = new LinkedHashMap<String, Digested>(16, 0.75f, true) {
+
+            private static final long serialVersionUID = 1L;
+
+
+            @Override
+            protected boolean removeEldestEntry( Map.Entry<String, Digested> eldest ) {
+                return size() > max_entries;
+            }
+        };
+    }
+
+
+    /**
+     * Returns the valid entry for the class with the given name, creating an
+     * empty one if there is none or the existing one is out of date.
+     *
+     * @return the entry, or null if the class cannot be found
+     */
+    Entry lookup( String class_name ) {
+        JavaClass jc;
+        try {
+            jc = Repository.lookupClass(class_name);
+        } catch (ClassNotFoundException e) {
+            return null;
+        }
+        String digest = digest(jc);
+        Entry cached;
+        synchronized (this) {
+            cached = entries.get(digest);
+        }
+        Entry entry = cached != null ? cached : load(digest);
+        if (entry != null && !isValid(entry)) {
+            synchronized (this) {
+                invalidations++;
+            }
+            entry = null;
+        }
+        if (entry == null) {
+            entry = new Entry(digest, class_name, getDependencies(jc));
+        }
+        synchronized (this) {
+            Entry current = entries.get(digest);
+            if (current != null && current != cached) {
+                return current; // computed by another thread meanwhile
+            }
+            entries.put(digest, entry);
+        }
+        storeEvicted();
+        return entry;
+    }
+
+
+    /**
+     * Writes all new or changed entries to the directory, if any.
+     *
+     * @throws IOException if an entry cannot be written
+     */
+    public void flush() throws IOException {
+        if (directory == null) {
+            return;
+        }
+        List<Entry> pending;
+        synchronized (this) {
+            pending = new ArrayList<>(entries.values());
+            pending.addAll(evicted);
+            evicted.clear();
+        }
+        for (Entry entry : pending) {
+            store(entry);
+        }
+    }
+
+
+    /**
+     * Forgets the entries and digests held in memory. Entries persisted by
+     * {@link #flush()} remain in the directory.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        digests.clear();
+        evicted.clear();
+    }
+
+
+    /** @return the number of VerificationResults served from this cache */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+
+    /** @return the number of VerificationResults that had to be computed */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+
+    /** @return the number of entries discarded because a dependency changed */
+    public synchronized long getInvalidations() {
+        return invalidations;
+    }
+
+
+    /**
+     * Records the result of a pass in the entry, making it the most recently
+     * used one again if it had been dropped meanwhile.
+     */
+    void put( Entry entry, String pass, VerificationResult vr, String[] warnings ) {
+        entry.put(pass, vr, warnings);
+        synchronized (this) {
+            entries.put(entry.digest, entry);
+        }
+        storeEvicted();
+    }
+
+
+    synchronized void hit() {
+        hits++;
+    }
+
+
+    synchronized void miss() {
+        misses++;
+    }
+
+
+    /**
+     * Writes the entries dropped from memory, if they are new or changed.
+     * An entry is only lost if that fails, and then merely computed again.
+     */
+    private void storeEvicted() {
+        List<Entry> pending;
+        synchronized (this) {
+            if (evicted.isEmpty()) {
+                return;
+            }
+            pending = new ArrayList<>(evicted);
+            evicted.clear();
+        }
+        for (Entry entry : pending) {
+            try {
+                store(entry);
+            } catch (IOException e) {
+                // a cache, the results are computed again when needed
+            }
+        }
+    }
+
+
+    private boolean isValid( Entry entry ) {
+        for (Map.Entry<String, String> dependency : entry.dependencies.entrySet()) {
+            if (!dependency.getValue().equals(digest(dependency.getKey()))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    /**
+     * Collects the digests of the supertypes of the given class and of all
+     * types it refers to, including their supertypes.
+     */
+    private Map<String, String> getDependencies( JavaClass jc ) {
+        Set<String> referenced = new TreeSet<>();
+        ConstantPool cp = jc.getConstantPool();
+        for (Constant c : cp.getConstantPool()) {
+            if (c instanceof ConstantClass) {
+                addTypes(referenced, ((ConstantClass) c).getBytes(cp), true);
+            } else if (c instanceof ConstantNameAndType) {
+                addTypes(referenced, ((ConstantNameAndType) c).getSignature(cp), false);
+            }
+        }
+        for (FieldOrMethod member : jc.getFields()) {
+            addTypes(referenced, member.getSignature(), false);
+        }
+        for (FieldOrMethod member : jc.getMethods()) {
+            addTypes(referenced, member.getSignature(), false);
+        }
+        referenced.add(jc.getClassName());
+        Map<String, String> dependencies = new TreeMap<>();
+        Deque<String> queue = new ArrayDeque<>(referenced);
+        while (!queue.isEmpty()) {
+            String name = queue.removeFirst();
+            if (dependencies.containsKey(name)) {
+                continue;
+            }
+            JavaClass dependency = null;
+            try {
+                dependency = Repository.lookupClass(name);
+            } catch (ClassNotFoundException e) {
+                // recorded as missing below
+            }
+            if (dependency == null) {
+                dependencies.put(name, MISSING);
+                continue;
+            }
+            dependencies.put(name, digest(dependency));
+            if (!dependency.getClassName().equals(dependency.getSuperclassName())) {
+                queue.add(dependency.getSuperclassName());
+            }
+            for (String interface_name : dependency.getInterfaceNames()) {
+                queue.add(interface_name);
+            }
+        }
+        // The class itself is the key, not a dependency
+        dependencies.remove(jc.getClassName());
+        return dependencies;
+    }
+
+
+    /**
+     * Adds the class names mentioned in a descriptor, or an internal class
+     * name if <em>is_class</em> is set, to the given set.
+     */
+    private static void addTypes( Set<String> names, String descriptor, boolean is_class ) {
+        if (is_class && !descriptor.startsWith("[")) {
+            names.add(descriptor.replace('/', '.'));
+            return;
+        }
+        int i = 0;
+        while (i < descriptor.length()) {
+            if (descriptor.charAt(i) == 'L') {
+                int end = descriptor.indexOf(';', i);
+                if (end < 0) {
+                    return;
+                }
+                names.add(descriptor.substring(i + 1, end).replace('/', '.'));
+                i = end + 1;
+            } else {
+                i++;
+            }
+        }
+    }
+
+
+    private String digest( String class_name ) {
+        try {
+            return digest(Repository.lookupClass(class_name));
+        } catch (ClassNotFoundException e) {
+            return MISSING;
+        }
+    }
+
+
+    private String digest( JavaClass jc ) {
+        Digested d;
+        synchronized (this) {
+            d = digests.get(jc.getClassName());
+        }
+        if (d == null || d.clazz.get() != jc) {
+            d = new Digested(jc);
+            synchronized (this) {
+                digests.put(jc.getClassName(), d);
+            }
+        }
+        return d.digest;
+    }
+
+
+    private Entry load( String digest ) {
+        if (directory == null) {
+            return null;
+        }
+        File file = new File(directory, digest + SUFFIX);
+        if (!file.isFile()) {
+            return null;
+        }
+        Properties properties = new Properties();
+        try (InputStream in = new FileInputStream(file)) {
+            properties.load(in);
+        } catch (IOException e) {
+            return null; // treat unreadable entries as absent
+        }
+        Map<String, String> dependencies = new TreeMap<>();
+        for (String key : properties.stringPropertyNames()) {
+            if (key.startsWith("dependency.")) {
+                dependencies.put(key.substring("dependency.".length()), properties.getProperty(key));
+            }
+        }
+        Entry entry = new Entry(digest, properties.getProperty("class"), dependencies);
+        for (String key : properties.stringPropertyNames()) {
+            if (key.startsWith("status.")) {
+                String pass = key.substring("status.".length());
+                int status = Integer.parseInt(properties.getProperty(key));
+                String message = properties.getProperty("message." + pass, "");
+                VerificationResult vr;
+                if (status == VerificationResult.VERIFIED_OK
+                        && message.equals(VerificationResult.VR_OK.getMessage())) {
+                    vr = VerificationResult.VR_OK;
+                } else if (status == VerificationResult.VERIFIED_NOTYET
+                        && message.equals(VerificationResult.VR_NOTYET.getMessage())) {
+                    vr = VerificationResult.VR_NOTYET;
+                } else {
+                    vr = new VerificationResult(status, message);
+                }
+                int count = Integer.parseInt(properties.getProperty("warnings." + pass, "0"));
+                String[] warnings = new String[count];
+                for (int i = 0; i < count; i++) {
+                    warnings[i] = properties.getProperty("warning." + pass + "." + i, "");
+                }
+                entry.results.put(pass, vr);
+                entry.messages.put(pass, warnings);
+            }
+        }
+        return entry;
+    }
+
+
+    /**
+     * Writes an entry if it is new or changed since it was last written.
+     */
+    private void store( Entry entry ) throws IOException {
+        Properties properties = new Properties();
+        synchronized (entry) {
+            if (!entry.dirty) {
+                return;
+            }
+            properties.setProperty("class", entry.class_name);
+            for (Map.Entry<String, String> dependency : entry.dependencies.entrySet()) {
+                properties.setProperty("dependency." + dependency.getKey(), dependency.getValue());
+            }
+            for (Map.Entry<String, VerificationResult> result : entry.results.entrySet()) {
+                String pass = result.getKey();
+                properties.setProperty("status." + pass, Integer.toString(result.getValue().getStatus()));
+                properties.setProperty("message." + pass, result.getValue().getMessage());
+                String[] warnings = entry.messages.get(pass);
+                properties.setProperty("warnings." + pass, Integer.toString(warnings.length));
+                for (int i = 0; i < warnings.length; i++) {
+                    properties.setProperty("warning." + pass + "." + i, warnings[i]);
+                }
+            }
+            entry.dirty = false;
+        }
+        try {
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException("Cannot create " + directory);
+            }
+            // Write to a temporary file first, so readers never see half an entry
+            File tmp = File.createTempFile(entry.digest, ".tmp", directory);
+            try (OutputStream out = new FileOutputStream(tmp)) {
+                properties.store(out, entry.class_name);
+            }
+            Files.move(tmp.toPath(), new File(directory, entry.digest + SUFFIX).toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            synchronized (entry) {
+                entry.dirty = true;
+            }
+            throw e;
+        }
+    }
+
+
+    /**
+     * The cached results for one version of a class file.
+     * Pass keys are "1", "2", "3a.&lt;method_no&gt;" and "3b.&lt;method_no&gt;".
+     */
+    static final class Entry {
+
+        private final String digest;
+        private final String class_name;
+        private final Map<String, String> dependencies;
+        private final Map<String, VerificationResult> results = new LinkedHashMap<>();
+        private final Map<String, String[]> messages = new HashMap<>();
+        /** Whether there are results not written yet, guarded by this. */
+        private boolean dirty;
+
+
+        Entry(String digest, String class_name, Map<String, String> dependencies) {
+            this.digest = digest;
+            this.class_name = class_name;
+            this.dependencies = dependencies;
+        }
+
+
+        synchronized VerificationResult getResult( String pass ) {
+            return results.get(pass);
+        }
+
+
+        synchronized String[] getMessages( String pass ) {
+            return messages.get(pass);
+        }
+
+
+        synchronized void put( String pass, VerificationResult vr, String[] warnings ) {
+            results.put(pass, vr);
+            messages.put(pass, warnings);
+            dirty = true;
+        }
+    }
+
+
+    /**
+     * The digest of a class file, remembered along with the JavaClass it was
+     * computed for. Repositories hand out the same JavaClass instance as long
+     * as the class is unchanged.
+     */
+    private static final class Digested {
+
+        final WeakReference<JavaClass> clazz;
+        final String digest;
+
+
+        Digested(JavaClass clazz) {
+            this.clazz = new WeakReference<>(clazz);
+            MessageDigest md;
+            try {
+                md = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e); // required on every platform
+            }
+            byte[] hash = md.digest(clazz.getBytes());
+            StringBuilder buf = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                buf.append(Character.forDigit((b >> 4) & 0xf, 16));
+                buf.append(Character.forDigit(b & 0xf, 16));
+            }
+            this.digest = buf.toString();
+        }
+    }
+}
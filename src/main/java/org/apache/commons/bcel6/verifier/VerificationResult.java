@@ -61,11 +61,26 @@ public class VerificationResult {
     /** The detailed message. */
     private final String detailMessage;
 
+    /** The limit of the VerificationBudget that was exceeded, if any. */
+    private final VerificationBudget.Limit exceededLimit;
+
 
     /** The usual constructor. */
     public VerificationResult(int status, String message) {
+        this(status, message, null);
+    }
+
+
+    /**
+     * Constructs a result for a pass that was cut short by a VerificationBudget.
+     *
+     * @param exceededLimit the limit that was exceeded, null if none
+     * @since 6.0
+     */
+    public VerificationResult(int status, String message, VerificationBudget.Limit exceededLimit) {
         numeric = status;
         detailMessage = message;
+        this.exceededLimit = exceededLimit;
     }
 
 
@@ -84,6 +99,17 @@ public class VerificationResult {
     }
 
 
+    /**
+     * Returns the limit of the VerificationBudget that made the pass fail,
+     * or null if it ran to completion.
+     *
+     * @since 6.0
+     */
+    public VerificationBudget.Limit getExceededLimit() {
+        return exceededLimit;
+    }
+
+
     /**
      * @return a hash code value for the object.
      */
@@ -102,7 +128,8 @@ public class VerificationResult {
             return false;
         }
         VerificationResult other = (VerificationResult) o;
-        return (other.numeric == this.numeric) && other.detailMessage.equals(this.detailMessage);
+        return (other.numeric == this.numeric) && other.detailMessage.equals(this.detailMessage)
+                && other.exceededLimit == this.exceededLimit;
     }
 
 
@@ -19,10 +19,17 @@ package org.apache.commons.bcel6.verifier;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import org.apache.commons.bcel6.classfile.JavaClass;
+import org.apache.commons.bcel6.util.Metric;
+import org.apache.commons.bcel6.util.Metrics;
 import org.apache.commons.bcel6.verifier.statics.Pass1Verifier;
 import org.apache.commons.bcel6.verifier.statics.Pass2Verifier;
 import org.apache.commons.bcel6.verifier.statics.Pass3aVerifier;
@@ -38,10 +45,15 @@ import org.apache.commons.bcel6.verifier.structurals.Pass3bVerifier;
  *
  * A Verifier creates PassVerifier instances to perform the actual verification.
  * Verifier instances are usually generated by the VerifierFactory.
+ * If the VerifierFactory has a VerificationCache, results of earlier
+ * runs on the same class file are taken from there.
+ * The passes of a Verifier may be run from several threads; each pass
+ * is run only once, and the methods may be verified concurrently.
  *
  * @version $Id$
  * @see VerifierFactory
  * @see PassVerifier
+ * @see VerificationCache
  */
 public class Verifier {
 
@@ -49,6 +61,8 @@ public class Verifier {
      * The name of the class this verifier operates on.
      */
     private final String classname;
+    /** The factory this Verifier was created by, null for the static VerifierFactory. */
+    private final BoundedVerifierFactory factory;
     /** A Pass1Verifier for this Verifier instance. */
     private Pass1Verifier p1v;
     /** A Pass2Verifier for this Verifier instance. */
@@ -57,23 +71,57 @@ public class Verifier {
     private final Map<String, Pass3aVerifier> p3avs = new HashMap<>();
     /** The Pass3bVerifiers for this Verifier instance. Key: Interned string specifying the method number. */
     private final Map<String, Pass3bVerifier> p3bvs = new HashMap<>();
+    /** The VerificationCache consulted, null if there is none. */
+    private VerificationCache cache;
+    /** The cache entry for the class, null if there is none. */
+    private VerificationCache.Entry cacheEntry;
+    /** Whether cache and cacheEntry have been looked up since the last flush(). */
+    private boolean cacheChecked;
+    /** The messages of the passes served from the cache. Key: the pass as used by the cache. */
+    private final Map<String, String[]> cachedMessages = new LinkedHashMap<>();
+    /** Whether the budget has been looked up since the last flush(). */
+    private boolean budgetChecked;
+    /** The budget in effect, null if there is none. */
+    private VerificationBudget budget;
+    /** Meters the work on the class, null if there is no budget. */
+    private VerificationBudget.Meter classMeter;
+    /** Meters the work on the methods. Key: the method number. */
+    private final Map<String, VerificationBudget.Meter> methodMeters = new HashMap<>();
+    /** Whether some pass has rejected the class since the last flush(). */
+    private volatile boolean rejected;
 
 
     /** Returns the VerificationResult for the given pass. */
     public VerificationResult doPass1() {
-        if (p1v == null) {
-            p1v = new Pass1Verifier(this);
+        Pass1Verifier pv;
+        synchronized (this) {
+            if (p1v == null) {
+                VerificationResult vr = getCachedResult("1");
+                if (vr != null) {
+                    return vr;
+                }
+                p1v = new Pass1Verifier(this);
+            }
+            pv = p1v;
         }
-        return p1v.verify();
+        return verify(pv, Metric.VERIFY_PASS1, "1", getMeter(null));
     }
 
 
     /** Returns the VerificationResult for the given pass. */
     public VerificationResult doPass2() {
-        if (p2v == null) {
-            p2v = new Pass2Verifier(this);
+        Pass2Verifier pv;
+        synchronized (this) {
+            if (p2v == null) {
+                VerificationResult vr = getCachedResult("2");
+                if (vr != null) {
+                    return vr;
+                }
+                p2v = new Pass2Verifier(this);
+            }
+            pv = p2v;
         }
-        return p2v.verify();
+        return verify(pv, Metric.VERIFY_PASS2, "2", getMeter(null));
     }
 
 
@@ -81,12 +129,21 @@ public class Verifier {
     public VerificationResult doPass3a( int method_no ) {
         String key = Integer.toString(method_no);
         Pass3aVerifier p3av;
-        p3av = p3avs.get(key);
-        if (p3avs.get(key) == null) {
-            p3av = new Pass3aVerifier(this, method_no);
-            p3avs.put(key, p3av);
+        synchronized (this) {
+            p3av = p3avs.get(key);
+            if (p3av == null) {
+                VerificationResult vr = getCachedResult("3a." + key);
+                if (vr != null) {
+                    return vr;
+                }
+                if (rejected && budget != null && budget.isFailFast()) {
+                    return VerificationResult.VR_NOTYET;
+                }
+                p3av = new Pass3aVerifier(this, method_no);
+                p3avs.put(key, p3av);
+            }
         }
-        return p3av.verify();
+        return verify(p3av, Metric.VERIFY_PASS3A, "3a." + key, getMeter(key));
     }
 
 
@@ -94,12 +151,178 @@ public class Verifier {
     public VerificationResult doPass3b( int method_no ) {
         String key = Integer.toString(method_no);
         Pass3bVerifier p3bv;
-        p3bv = p3bvs.get(key);
-        if (p3bvs.get(key) == null) {
-            p3bv = new Pass3bVerifier(this, method_no);
-            p3bvs.put(key, p3bv);
+        synchronized (this) {
+            p3bv = p3bvs.get(key);
+            if (p3bv == null) {
+                VerificationResult vr = getCachedResult("3b." + key);
+                if (vr != null) {
+                    return vr;
+                }
+                if (rejected && budget != null && budget.isFailFast()) {
+                    return VerificationResult.VR_NOTYET;
+                }
+                p3bv = new Pass3bVerifier(this, method_no);
+                p3bvs.put(key, p3bv);
+            }
+        }
+        return verify(p3bv, Metric.VERIFY_PASS3B, "3b." + key, getMeter(key));
+    }
+
+
+    /**
+     * Runs pass 3a and pass 3b for all methods of the class, distributing
+     * the methods over the given executor. Pass 2 is run up front, as all
+     * methods share its result. The result for a method is that of pass 3a
+     * if it rejected the method, and that of pass 3b otherwise.
+     *
+     * @param executor runs the verification of the methods
+     * @return the results in the order of the methods of the class, an
+     * empty array if the class cannot be loaded
+     * @throws InterruptedException if interrupted while waiting for the results
+     * @since 6.0
+     */
+    public VerificationResult[] doPass3( ExecutorService executor ) throws InterruptedException {
+        int methods;
+        try {
+            methods = org.apache.commons.bcel6.Repository.lookupClass(classname).getMethods().length;
+        } catch (ClassNotFoundException e) {
+            return new VerificationResult[0];
+        }
+        doPass2();
+        List<Future<VerificationResult>> futures = new ArrayList<>(methods);
+        for (int i = 0; i < methods; i++) {
+            final int method_no = i;
+            futures.add(executor.submit(new Callable<VerificationResult>() {
+
+                @Override
+                public VerificationResult call() {
+                    VerificationResult vr = doPass3a(method_no);
+                    if (vr.getStatus() != VerificationResult.VERIFIED_OK) {
+                        return vr;
+                    }
+                    return doPass3b(method_no);
+                }
+            }));
+        }
+        VerificationResult[] results = new VerificationResult[methods];
+        try {
+            for (int i = 0; i < methods; i++) {
+                results[i] = futures.get(i).get();
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        } finally {
+            for (Future<VerificationResult> future : futures) {
+                future.cancel(true);
+            }
+        }
+        return results;
+    }
+
+
+    /**
+     * Runs the given pass under the given meter, reporting its timing to the
+     * metrics listener and recording it in the VerificationCache unless the
+     * result was already cached.
+     */
+    private VerificationResult verify( PassVerifier pv, Metric metric, String pass,
+            VerificationBudget.Meter meter ) {
+        synchronized (pv) {
+            if (pv.isVerified()) {
+                return pv.verify();
+            }
+            long start = Metrics.start();
+            VerificationBudget.Meter previous = VerificationBudget.Meter.enter(meter);
+            if (meter != null) {
+                meter.start();
+            }
+            VerificationResult vr;
+            try {
+                vr = pv.verify();
+            } finally {
+                if (meter != null) {
+                    meter.stop();
+                }
+                VerificationBudget.Meter.exit(previous);
+            }
+            Metrics.time(metric, classname, 0, start);
+            if (vr.getStatus() == VerificationResult.VERIFIED_REJECTED) {
+                rejected = true;
+            }
+            // A result cut off by a budget, or built on one that was, depends on the budget
+            boolean complete = vr.getExceededLimit() == null && (meter == null || !meter.isTainted());
+            if (!complete && previous != null) {
+                previous.taint();
+            }
+            VerificationCache.Entry entry = getCacheEntry();
+            if (entry != null) {
+                cache.miss();
+                if (complete) {
+                    cache.put(entry, pass, vr, pv.getMessages());
+                }
+            }
+            return vr;
         }
-        return p3bv.verify();
+    }
+
+
+    /**
+     * Returns the result of the given pass from the VerificationCache, or
+     * null if it has to be computed.
+     */
+    private synchronized VerificationResult getCachedResult( String pass ) {
+        if (getCacheEntry() == null) {
+            return null;
+        }
+        VerificationResult vr = cacheEntry.getResult(pass);
+        if (vr != null && !cachedMessages.containsKey(pass)) {
+            cache.hit();
+            cachedMessages.put(pass, cacheEntry.getMessages(pass));
+        }
+        return vr;
+    }
+
+
+    /**
+     * Returns the meter for the given method, or for the class if the
+     * method number is null; null if there is no budget.
+     */
+    private synchronized VerificationBudget.Meter getMeter( String method_no ) {
+        if (!budgetChecked) {
+            budgetChecked = true;
+            budget = factory != null ? factory.getVerificationBudget() : VerifierFactory.getVerificationBudget();
+            if (budget != null) {
+                classMeter = budget.newClassMeter();
+            }
+        }
+        if (classMeter == null || method_no == null) {
+            return classMeter;
+        }
+        VerificationBudget.Meter meter = methodMeters.get(method_no);
+        if (meter == null) {
+            meter = budget.newMethodMeter(classMeter);
+            methodMeters.put(method_no, meter);
+        }
+        return meter;
+    }
+
+
+    private synchronized VerificationCache.Entry getCacheEntry() {
+        if (!cacheChecked) {
+            cacheChecked = true;
+            cache = factory != null ? factory.getVerificationCache() : VerifierFactory.getVerificationCache();
+            if (cache != null) {
+                cacheEntry = cache.lookup(classname);
+            }
+        }
+        return cacheEntry;
     }
 
 
@@ -109,11 +332,41 @@ public class Verifier {
      * @see VerifierFactory
      */
     Verifier(String fully_qualified_classname) {
+        this(fully_qualified_classname, null);
+    }
+
+
+    /**
+     * Instantiation is done by the VerifierFactory or a BoundedVerifierFactory.
+     *
+     * @see BoundedVerifierFactory
+     */
+    Verifier(String fully_qualified_classname, BoundedVerifierFactory factory) {
         classname = fully_qualified_classname;
+        this.factory = factory;
         flush();
     }
 
 
+    /**
+     * Returns the Verifier for another class, created by the same factory as
+     * this one. The passes use this to verify the classes they refer to;
+     * each call counts against the LOADS limit of a VerificationBudget.
+     *
+     * @since 6.0
+     */
+    public Verifier getVerifier( String fully_qualified_classname ) {
+        VerificationBudget.Meter meter = VerificationBudget.Meter.current();
+        if (meter != null) {
+            meter.load();
+        }
+        if (factory != null) {
+            return factory.getVerifier(fully_qualified_classname);
+        }
+        return VerifierFactory.getVerifier(fully_qualified_classname);
+    }
+
+
     /**
      * Returns the name of the class this verifier operates on.
      * This is particularly interesting when this verifier was created
@@ -132,11 +385,20 @@ public class Verifier {
      * BCEL's repository.
      *
      */
-    public void flush() {
+    public synchronized void flush() {
         p1v = null;
         p2v = null;
         p3avs.clear();
         p3bvs.clear();
+        cache = null;
+        cacheEntry = null;
+        cacheChecked = false;
+        cachedMessages.clear();
+        budgetChecked = false;
+        budget = null;
+        classMeter = null;
+        methodMeters.clear();
+        rejected = false;
     }
 
 
@@ -146,19 +408,32 @@ public class Verifier {
      */
     public String[] getMessages() throws ClassNotFoundException {
         List<String> messages = new ArrayList<>();
-        if (p1v != null) {
-            String[] p1m = p1v.getMessages();
+        // Take a snapshot, the passes may be running concurrently
+        Pass1Verifier pass1;
+        Pass2Verifier pass2;
+        List<Pass3aVerifier> pass3as;
+        List<Pass3bVerifier> pass3bs;
+        Map<String, String[]> cached_messages;
+        synchronized (this) {
+            pass1 = p1v;
+            pass2 = p2v;
+            pass3as = new ArrayList<>(p3avs.values());
+            pass3bs = new ArrayList<>(p3bvs.values());
+            cached_messages = new LinkedHashMap<>(cachedMessages);
+        }
+        if (pass1 != null) {
+            String[] p1m = pass1.getMessages();
             for (String element : p1m) {
                 messages.add("Pass 1: " + element);
             }
         }
-        if (p2v != null) {
-            String[] p2m = p2v.getMessages();
+        if (pass2 != null) {
+            String[] p2m = pass2.getMessages();
             for (String element : p2m) {
                 messages.add("Pass 2: " + element);
             }
         }
-        for (Pass3aVerifier pv : p3avs.values()) {
+        for (Pass3aVerifier pv : pass3as) {
             String[] p3am = pv.getMessages();
             int meth = pv.getMethodNo();
             for (String element : p3am) {
@@ -167,7 +442,7 @@ public class Verifier {
                         + "'): " + element);
             }
         }
-        for (Pass3bVerifier pv : p3bvs.values()) {
+        for (Pass3bVerifier pv : pass3bs) {
             String[] p3bm = pv.getMessages();
             int meth = pv.getMethodNo();
             for (String element : p3bm) {
@@ -176,7 +451,22 @@ public class Verifier {
                         + "'): " + element);
             }
         }
-        
+        for (Map.Entry<String, String[]> cached : cached_messages.entrySet()) {
+            String pass = cached.getKey();
+            String prefix;
+            if (pass.startsWith("3")) {
+                int meth = Integer.parseInt(pass.substring(3));
+                prefix = "Pass " + pass.substring(0, 2) + ", method " + meth + " ('"
+                        + org.apache.commons.bcel6.Repository.lookupClass(classname).getMethods()[meth]
+                        + "'): ";
+            } else {
+                prefix = "Pass " + pass + ": ";
+            }
+            for (String element : cached.getValue()) {
+                messages.add(prefix + element);
+            }
+        }
+
         return messages.toArray(new String[messages.size()]);
     }
 
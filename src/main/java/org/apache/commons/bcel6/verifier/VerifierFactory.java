@@ -27,9 +27,12 @@ import java.util.Vector;
  * sure that they are singleton instances with respect to the class name they
  * operate on. That means, for every class (represented by a unique fully qualified
  * class name) there is exactly one Verifier.
+ * The Verifier instances are kept for the life of the JVM; use a
+ * BoundedVerifierFactory to limit the memory they take up.
  *
  * @version $Id$
  * @see Verifier
+ * @see BoundedVerifierFactory
  */
 public class VerifierFactory {
 
@@ -41,6 +44,14 @@ public class VerifierFactory {
      * The VerifierFactoryObserver instances that observe the VerifierFactory.
      */
     private static final List<VerifierFactoryObserver> observers = new Vector<>();
+    /**
+     * The cache of VerificationResults consulted by the Verifier instances, if any.
+     */
+    private static volatile VerificationCache cache;
+    /**
+     * The limits on the work of the Verifier instances, if any.
+     */
+    private static volatile VerificationBudget budget;
 
 
     /**
@@ -55,7 +66,7 @@ public class VerifierFactory {
      * Possibly a new Verifier object is transparently created.
      * @return the (only) verifier responsible for the class with the given name.
      */
-    public static Verifier getVerifier( String fully_qualified_classname ) {
+    public static synchronized Verifier getVerifier( String fully_qualified_classname ) {
         Verifier v = hashMap.get(fully_qualified_classname);
         if (v == null) {
             v = new Verifier(fully_qualified_classname);
@@ -84,12 +95,54 @@ public class VerifierFactory {
      * and if you want to verify the transitive hull of
      * referenced class files.
      */
-    public static Verifier[] getVerifiers() {
+    public static synchronized Verifier[] getVerifiers() {
         Verifier[] vs = new Verifier[hashMap.values().size()];
         return hashMap.values().toArray(vs); // Because vs is big enough, vs is used to store the values into and returned!
     }
 
 
+    /**
+     * Sets the cache the Verifier instances consult before running a pass
+     * and record their results in.
+     *
+     * @param verificationCache the cache to use, or null to always verify
+     * @since 6.0
+     */
+    public static void setVerificationCache( VerificationCache verificationCache ) {
+        cache = verificationCache;
+    }
+
+
+    /**
+     * @return the cache of VerificationResults in use, or null if there is none
+     * @since 6.0
+     */
+    public static VerificationCache getVerificationCache() {
+        return cache;
+    }
+
+
+    /**
+     * Sets the limits on the work of the Verifier instances. A Verifier
+     * picks up the budget at its first pass after creation or flush().
+     *
+     * @param verificationBudget the budget, or null to verify without limits
+     * @since 6.0
+     */
+    public static void setVerificationBudget( VerificationBudget verificationBudget ) {
+        budget = verificationBudget;
+    }
+
+
+    /**
+     * @return the limits on the work of the Verifier instances, or null if there are none
+     * @since 6.0
+     */
+    public static VerificationBudget getVerificationBudget() {
+        return budget;
+    }
+
+
     /**
      * Adds the VerifierFactoryObserver o to the list of observers.
      */
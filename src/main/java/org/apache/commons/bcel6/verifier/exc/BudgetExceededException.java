@@ -0,0 +1,53 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.commons.bcel6.verifier.exc;
+
+import org.apache.commons.bcel6.verifier.VerificationBudget;
+
+/**
+ * Thrown when a pass exceeds a limit of the VerificationBudget in effect.
+ * This is not a VerifierConstraintViolatedException, as it says nothing
+ * about the validity of the class file; the pass is rejected nevertheless.
+ *
+ * @version $Id$
+ * @since 6.0
+ * @see VerificationBudget
+ */
+public class BudgetExceededException extends RuntimeException {
+
+    private static final long serialVersionUID = -3452390367271735419L;
+
+    private final VerificationBudget.Limit limit;
+
+
+    /**
+     * Constructs a new BudgetExceededException for the given limit.
+     */
+    public BudgetExceededException(VerificationBudget.Limit limit, String message){
+        super(message);
+        this.limit = limit;
+    }
+
+
+    /**
+     * @return the limit that was exceeded
+     */
+    public VerificationBudget.Limit getLimit(){
+        return limit;
+    }
+}
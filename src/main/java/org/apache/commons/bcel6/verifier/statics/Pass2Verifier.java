@@ -66,9 +66,9 @@ import org.apache.commons.bcel6.generic.ArrayType;
 import org.apache.commons.bcel6.generic.ObjectType;
 import org.apache.commons.bcel6.generic.Type;
 import org.apache.commons.bcel6.verifier.PassVerifier;
+import org.apache.commons.bcel6.verifier.VerificationBudget;
 import org.apache.commons.bcel6.verifier.VerificationResult;
 import org.apache.commons.bcel6.verifier.Verifier;
-import org.apache.commons.bcel6.verifier.VerifierFactory;
 import org.apache.commons.bcel6.verifier.exc.AssertionViolatedException;
 import org.apache.commons.bcel6.verifier.exc.ClassConstraintException;
 import org.apache.commons.bcel6.verifier.exc.LocalVariableInfoInconsistentException;
@@ -209,7 +209,7 @@ public final class Pass2Verifier extends PassVerifier {
                 if (! hs.add(supername)){    // If supername already is in the list
                     throw new ClassConstraintException("Circular superclass hierarchy detected.");
                 }
-                Verifier v = VerifierFactory.getVerifier(supername);
+                Verifier v = myOwner.getVerifier(supername);
                 VerificationResult vr = v.doPass1();
 
                 if (vr != VerificationResult.VR_OK){
@@ -250,6 +250,7 @@ public final class Pass2Verifier extends PassVerifier {
         while (supidx != 0){
             supidx = jc.getSuperclassNameIndex();
 
+            VerificationBudget.checkpoint();
             Method[] methods = jc.getMethods();
             for (Method method : methods) {
                 String nameAndSig = method.getName() + method.getSignature();
@@ -362,6 +363,7 @@ public final class Pass2Verifier extends PassVerifier {
         }
 
         private void checkIndex(Node referrer, int index, Class<?> shouldbe){
+            VerificationBudget.checkpoint();
             if ((index < 0) || (index >= cplen)){
                 throw new ClassConstraintException("Invalid index '"+index+"' used by '"+tostring(referrer)+"'.");
             }
@@ -648,7 +650,7 @@ public final class Pass2Verifier extends PassVerifier {
                 act = ((ArrayType) act).getBasicType();
             }
             if (act instanceof ObjectType){
-                Verifier v = VerifierFactory.getVerifier( ((ObjectType) act).getClassName() );
+                Verifier v = myOwner.getVerifier( ((ObjectType) act).getClassName() );
                 VerificationResult vr = v.doPass1();
                 if (vr != VerificationResult.VR_OK) {
                     throw new ClassConstraintException(
@@ -662,7 +664,7 @@ public final class Pass2Verifier extends PassVerifier {
                     act = ((ArrayType) act).getBasicType();
                 }
                 if (act instanceof ObjectType){
-                    Verifier v = VerifierFactory.getVerifier( ((ObjectType) act).getClassName() );
+                    Verifier v = myOwner.getVerifier( ((ObjectType) act).getClassName() );
                     VerificationResult vr = v.doPass1();
                     if (vr != VerificationResult.VR_OK) {
                         throw new ClassConstraintException(
@@ -995,7 +997,7 @@ public final class Pass2Verifier extends PassVerifier {
                     checkIndex(cc, cc.getNameIndex(), CONST_Utf8);
                     String cname = ((ConstantUtf8) cp.getConstant(cc.getNameIndex())).getBytes().replace('/','.');
 
-                    Verifier v = VerifierFactory.getVerifier(cname);
+                    Verifier v = myOwner.getVerifier(cname);
                     VerificationResult vr = v.doPass1();
 
                     if (vr != VerificationResult.VR_OK){
@@ -1009,11 +1011,12 @@ public final class Pass2Verifier extends PassVerifier {
                     JavaClass t = Repository.lookupClass(Type.THROWABLE.getClassName());
                     JavaClass o = Repository.lookupClass(Type.OBJECT.getClassName());
                     while (e != o){
+                        VerificationBudget.checkpoint();
                         if (e == t) {
                             break; // It's a subclass of Throwable, OKAY, leave.
                         }
 
-                        v = VerifierFactory.getVerifier(e.getSuperclassName());
+                        v = myOwner.getVerifier(e.getSuperclassName());
                         vr = v.doPass1();
                         if (vr != VerificationResult.VR_OK){
                             throw new ClassConstraintException("Code attribute '"+tostring(obj)+"' (method '"+m+
@@ -1159,7 +1162,7 @@ public final class Pass2Verifier extends PassVerifier {
                 //convert internal notation on-the-fly to external notation:
                 String cname = ((ConstantUtf8) cp.getConstant(cc.getNameIndex())).getBytes().replace('/','.');
 
-                Verifier v = VerifierFactory.getVerifier(cname);
+                Verifier v = myOwner.getVerifier(cname);
                 VerificationResult vr = v.doPass1();
 
                 if (vr != VerificationResult.VR_OK){
@@ -1172,11 +1175,12 @@ public final class Pass2Verifier extends PassVerifier {
                 JavaClass t = Repository.lookupClass(Type.THROWABLE.getClassName());
                 JavaClass o = Repository.lookupClass(Type.OBJECT.getClassName());
                 while (e != o){
+                    VerificationBudget.checkpoint();
                     if (e == t) {
                         break; // It's a subclass of Throwable, OKAY, leave.
                     }
 
-                    v = VerifierFactory.getVerifier(e.getSuperclassName());
+                    v = myOwner.getVerifier(e.getSuperclassName());
                     vr = v.doPass1();
                     if (vr != VerificationResult.VR_OK){
                         throw new ClassConstraintException("Exceptions attribute '"+tostring(obj)+"' references '"+cname+
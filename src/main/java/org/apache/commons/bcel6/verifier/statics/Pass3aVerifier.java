@@ -90,9 +90,9 @@ import org.apache.commons.bcel6.generic.ReturnInstruction;
 import org.apache.commons.bcel6.generic.TABLESWITCH;
 import org.apache.commons.bcel6.generic.Type;
 import org.apache.commons.bcel6.verifier.PassVerifier;
+import org.apache.commons.bcel6.verifier.VerificationBudget;
 import org.apache.commons.bcel6.verifier.VerificationResult;
 import org.apache.commons.bcel6.verifier.Verifier;
-import org.apache.commons.bcel6.verifier.VerifierFactory;
 import org.apache.commons.bcel6.verifier.exc.AssertionViolatedException;
 import org.apache.commons.bcel6.verifier.exc.ClassConstraintException;
 import org.apache.commons.bcel6.verifier.exc.InvalidMethodException;
@@ -362,6 +362,7 @@ public final class Pass3aVerifier extends PassVerifier{
         //       We currently go the safe way here.
         InstructionHandle ih = instructionList.getStart();
         while (ih != null){
+            VerificationBudget.checkpoint();
             Instruction i = ih.getInstruction();
             if (i instanceof IMPDEP1){
                 throw new StaticCodeInstructionConstraintException(
@@ -422,6 +423,7 @@ public final class Pass3aVerifier extends PassVerifier{
         // Checks for the things BCEL does _not_ handle itself.
         InstructionHandle ih = instructionList.getStart();
         while (ih != null){
+            VerificationBudget.checkpoint();
             Instruction i = ih.getInstruction();
 
             // An "own" constraint, due to JustIce's new definition of what "subroutine" means.
@@ -520,7 +522,7 @@ public final class Pass3aVerifier extends PassVerifier{
         public void visitLoadClass(LoadClass o){
             ObjectType t = o.getLoadClassType(cpg);
             if (t != null){// null means "no class is loaded"
-                Verifier v = VerifierFactory.getVerifier(t.getClassName());
+                Verifier v = myOwner.getVerifier(t.getClassName());
                 VerificationResult vr = v.doPass1();
                 if (vr.getStatus() != VerificationResult.VERIFIED_OK){
                     constraintViolated((Instruction) o,
@@ -711,7 +713,7 @@ public final class Pass3aVerifier extends PassVerifier{
                 t = ((ArrayType) t).getBasicType();
             }
             if (t instanceof ObjectType){
-                Verifier v = VerifierFactory.getVerifier(((ObjectType) t).getClassName());
+                Verifier v = myOwner.getVerifier(((ObjectType) t).getClassName());
                 VerificationResult vr = v.doPass2();
                 if (vr.getStatus() != VerificationResult.VERIFIED_OK){
                     constraintViolated(o, "Return type class/interface could not be verified successfully: '"+vr.getMessage()+"'.");
@@ -725,7 +727,7 @@ public final class Pass3aVerifier extends PassVerifier{
                     t = ((ArrayType) t).getBasicType();
                 }
                 if (t instanceof ObjectType){
-                    Verifier v = VerifierFactory.getVerifier(((ObjectType) t).getClassName());
+                    Verifier v = myOwner.getVerifier(((ObjectType) t).getClassName());
                     VerificationResult vr = v.doPass2();
                     if (vr.getStatus() != VerificationResult.VERIFIED_OK){
                         constraintViolated(o,
@@ -30,9 +30,11 @@ import org.apache.commons.bcel6.generic.Instruction;
 import org.apache.commons.bcel6.generic.InstructionHandle;
 import org.apache.commons.bcel6.generic.JsrInstruction;
 import org.apache.commons.bcel6.generic.MethodGen;
+import org.apache.commons.bcel6.generic.OpcodeVisitor;
 import org.apache.commons.bcel6.generic.RET;
 import org.apache.commons.bcel6.generic.ReturnInstruction;
 import org.apache.commons.bcel6.generic.Select;
+import org.apache.commons.bcel6.verifier.VerificationBudget;
 import org.apache.commons.bcel6.verifier.exc.AssertionViolatedException;
 import org.apache.commons.bcel6.verifier.exc.StructuralCodeConstraintException;
 
@@ -192,6 +194,9 @@ public class ControlFlowGraph{
             }
 
             // Now we're sure the inFrame has changed!
+            if (meter != null){
+                meter.instruction();
+            }
 
             // new inFrame is already merged in, see above.        
             Frame workingFrame = inF.getClone();
@@ -214,7 +219,8 @@ public class ControlFlowGraph{
             // Therefore the workingFrame object is modified.
 //ExecutionVisitor ev = ExecutionVisitor.getInstance(VerifierFactory.getVerifier(method_gen.getClassName()));
             ev.setFrame(workingFrame);
-            getInstruction().accept(ev);
+            // ExecutionVisitor only implements the visitXXX() methods of concrete instructions
+            OpcodeVisitor.visitLeaf(getInstruction().getInstruction(), ev);
             //getInstruction().accept(ExecutionVisitor.withFrame(workingFrame));
             outFrames.put(lastExecutionJSR(), workingFrame);
 
@@ -240,6 +246,9 @@ public class ControlFlowGraph{
          */
         private boolean mergeInFrames(Frame inFrame) {
             // TODO: Can be performance-improved.
+            if (meter != null){
+                meter.merge();
+            }
             Frame inF = inFrames.get(lastExecutionJSR());
             OperandStack oldstack = inF.getStack().getClone();
             LocalVariables oldlocals = inF.getLocals().getClone();
@@ -408,6 +417,9 @@ public class ControlFlowGraph{
     /** All InstructionContext instances of this ControlFlowGraph. */
     private final Map<InstructionHandle, InstructionContext> instructionContexts = new HashMap<>();
 
+    /** Meters the instructions executed and frames merged, null if there is no budget. */
+    private final VerificationBudget.Meter meter = VerificationBudget.Meter.current();
+
     /** 
      * A Control Flow Graph; with additional JustIce checks
      * @param  method_gen the method generator instance
@@ -33,11 +33,9 @@ public class Frame{
      * which instance it is that is not initialized yet. It will be
      * initialized invoking another constructor later.
      * NULL means the instance already *is* initialized.
-     * @deprecated Use the getter/setter to access the field as it may
-     * be made private in a later release
+     * Kept per thread, so that several methods can be verified concurrently.
      */
-    @Deprecated
-    protected static UninitializedObjectType _this;
+    private static final ThreadLocal<UninitializedObjectType> _this = new ThreadLocal<>();
 
     /**
      *
@@ -129,7 +127,7 @@ public class Frame{
      * @since 6.0
      */
     public static UninitializedObjectType getThis() {
-        return _this;
+        return _this.get();
     }
 
     /**
@@ -137,6 +135,6 @@ public class Frame{
      * @since 6.0
      */
     public static void setThis(UninitializedObjectType _this) {
-        Frame._this = _this;
+        Frame._this.set(_this);
     }
 }
@@ -83,6 +83,13 @@ public class InstConstraintVisitor extends EmptyVisitor{
      */
     private MethodGen mg = null;
 
+    /**
+     * The Verifier we're working for, if any.
+     *
+     * @see #setVerifier(Verifier v)
+     */
+    private Verifier verifier = null;
+
     /**
      * The OperandStack we're working on.
      *
@@ -144,6 +151,23 @@ public class InstConstraintVisitor extends EmptyVisitor{
         this.mg = mg;
     }
 
+    /**
+     * Sets the Verifier on whose behalf constraints are checked. Referenced
+     * classes are then verified by Verifier instances of the same factory.
+     *
+     * @since 6.0
+     */
+    public void setVerifier(Verifier v){
+        this.verifier = v;
+    }
+
+    /**
+     * Returns the Verifier for the class with the given name.
+     */
+    private Verifier getVerifier(String name){
+        return verifier != null ? verifier.getVerifier(name) : VerifierFactory.getVerifier(name);
+    }
+
     /**
      * Assures index is of type INT.
      * @throws StructuralCodeConstraintException if the above constraint is not satisfied.
@@ -231,7 +255,7 @@ public class InstConstraintVisitor extends EmptyVisitor{
     public void visitLoadClass(LoadClass o){
         ObjectType t = o.getLoadClassType(cpg);
         if (t != null){// null means "no class is loaded"
-            Verifier v = VerifierFactory.getVerifier(t.getClassName());
+            Verifier v = getVerifier(t.getClassName());
             VerificationResult vr = v.doPass2();
             if (vr.getStatus() != VerificationResult.VERIFIED_OK){
                 constraintViolated((Instruction) o, "Class '"+o.getLoadClassType(cpg).getClassName()+
@@ -292,7 +316,7 @@ public class InstConstraintVisitor extends EmptyVisitor{
             Type t = o.getType(cpg);
             if (t instanceof ObjectType){
                 String name = ((ObjectType)t).getClassName();
-                Verifier v = VerifierFactory.getVerifier( name );
+                Verifier v = getVerifier( name );
                 VerificationResult vr = v.doPass2();
                 if (vr.getStatus() != VerificationResult.VERIFIED_OK){
                     constraintViolated(o, "Class '"+name+"' is referenced, but cannot be loaded and resolved: '"+vr+"'.");
@@ -1826,7 +1850,7 @@ public class InstConstraintVisitor extends EmptyVisitor{
         Type t = o.getType(cpg);
         if (t instanceof ObjectType){
             String name = ((ObjectType)t).getClassName();
-            Verifier v = VerifierFactory.getVerifier( name );
+            Verifier v = getVerifier( name );
             VerificationResult vr = v.doPass2();
             if (vr.getStatus() != VerificationResult.VERIFIED_OK){
                 constraintViolated(o, "Class '"+name+"' is referenced, but cannot be loaded and resolved: '"+vr+"'.");
@@ -1918,7 +1942,7 @@ public class InstConstraintVisitor extends EmptyVisitor{
         Type t = o.getType(cpg);
         if (t instanceof ObjectType){
             String name = ((ObjectType)t).getClassName();
-            Verifier v = VerifierFactory.getVerifier( name );
+            Verifier v = getVerifier( name );
             VerificationResult vr = v.doPass2();
             if (vr.getStatus() != VerificationResult.VERIFIED_OK){
                 constraintViolated(o, "Class '"+name+"' is referenced, but cannot be loaded and resolved: '"+vr+"'.");
@@ -2008,7 +2032,7 @@ public class InstConstraintVisitor extends EmptyVisitor{
         Type t = o.getType(cpg);
         if (t instanceof ObjectType){
             String name = ((ObjectType)t).getClassName();
-            Verifier v = VerifierFactory.getVerifier( name );
+            Verifier v = getVerifier( name );
             VerificationResult vr = v.doPass2();
             if (vr.getStatus() != VerificationResult.VERIFIED_OK){
                 constraintViolated(o, "Class '"+name+"' is referenced, but cannot be loaded and resolved: '"+vr+"'.");
@@ -2061,7 +2085,7 @@ public class InstConstraintVisitor extends EmptyVisitor{
         Type t = o.getType(cpg);
         if (t instanceof ObjectType){
             String name = ((ObjectType)t).getClassName();
-            Verifier v = VerifierFactory.getVerifier( name );
+            Verifier v = getVerifier( name );
             VerificationResult vr = v.doPass2();
             if (vr.getStatus() != VerificationResult.VERIFIED_OK){
                 constraintViolated(o, "Class '"+name+"' is referenced, but cannot be loaded and resolved: '"+vr+"'.");
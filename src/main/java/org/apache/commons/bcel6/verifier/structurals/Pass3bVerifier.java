@@ -43,6 +43,7 @@ import org.apache.commons.bcel6.verifier.PassVerifier;
 import org.apache.commons.bcel6.verifier.VerificationResult;
 import org.apache.commons.bcel6.verifier.Verifier;
 import org.apache.commons.bcel6.verifier.exc.AssertionViolatedException;
+import org.apache.commons.bcel6.verifier.exc.BudgetExceededException;
 import org.apache.commons.bcel6.verifier.exc.StructuralCodeConstraintException;
 import org.apache.commons.bcel6.verifier.exc.VerifierConstraintViolatedException;
 
@@ -329,6 +330,7 @@ public final class Pass3bVerifier extends PassVerifier{
         // Init Visitors
         InstConstraintVisitor icv = new InstConstraintVisitor();
         icv.setConstantPoolGen(constantPoolGen);
+        icv.setVerifier(myOwner);
 
         ExecutionVisitor ev = new ExecutionVisitor();
         ev.setConstantPoolGen(constantPoolGen);
@@ -378,6 +380,10 @@ public final class Pass3bVerifier extends PassVerifier{
             ce.extendMessage("Constraint violated in method '"+methods[method_no]+"':\n","");
             return new VerificationResult(VerificationResult.VERIFIED_REJECTED, ce.getMessage());
         }
+        catch (BudgetExceededException be){
+            // Not an internal error, reported by PassVerifier.verify()
+            throw be;
+        }
         catch (RuntimeException re){
             // These are internal errors
 
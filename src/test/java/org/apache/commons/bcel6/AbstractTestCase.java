@@ -27,9 +27,11 @@ import org.apache.commons.bcel6.classfile.Attribute;
 import org.apache.commons.bcel6.classfile.JavaClass;
 import org.apache.commons.bcel6.classfile.Method;
 import org.apache.commons.bcel6.generic.AnnotationEntryGen;
+import org.apache.commons.bcel6.generic.ClassGen;
 import org.apache.commons.bcel6.generic.ConstantPoolGen;
 import org.apache.commons.bcel6.generic.ElementValueGen;
 import org.apache.commons.bcel6.generic.ElementValuePairGen;
+import org.apache.commons.bcel6.generic.MethodGen;
 import org.apache.commons.bcel6.generic.ObjectType;
 import org.apache.commons.bcel6.generic.SimpleElementValueGen;
 import org.apache.commons.bcel6.util.ClassPath;
@@ -49,6 +51,76 @@ public abstract class AbstractTestCase extends TestCase
     // package base name in signature format, i.e. with '/' separators instead of '.'
     protected static final String PACKAGE_BASE_SIG = PACKAGE_BASE_NAME.replace('.', '/');
 
+    /**
+     * Loads classes generated by the tests, a new one for each class so
+     * that classes of the same name can be defined again.
+     */
+    private static final class Loader extends ClassLoader
+    {
+        Loader()
+        {
+            super(AbstractTestCase.class.getClassLoader());
+        }
+
+        Class<?> define(JavaClass clazz)
+        {
+            byte[] bytes = clazz.getBytes();
+            return defineClass(clazz.getClassName(), bytes, 0, bytes.length);
+        }
+    }
+
+    /**
+     * Defines a generated class in a class loader of its own. Call
+     * getDeclaredMethods() on the result to have the JVM link and verify it.
+     */
+    protected static Class<?> defineClass(JavaClass clazz)
+    {
+        return new Loader().define(clazz);
+    }
+
+    /**
+     * Adds a static method to the class, defines the class, which verifies
+     * the code, and invokes the method. The method is removed from the class
+     * again, so the class can be reused for the next method.
+     *
+     * @return the result of the method, boxed
+     */
+    protected static Object run(ClassGen cg, MethodGen mg, Object... args) throws Exception
+    {
+        cg.addMethod(mg.getMethod());
+        Class<?> c;
+        try {
+            c = defineClass(cg.getJavaClass());
+        } finally {
+            cg.removeMethod(cg.getMethods()[cg.getMethods().length - 1]);
+        }
+        for (java.lang.reflect.Method m : c.getDeclaredMethods()) {
+            if (m.getName().equals(mg.getName())) {
+                return m.invoke(null, args);
+            }
+        }
+        throw new NoSuchMethodException(mg.getName());
+    }
+
+    /**
+     * Runs a generated static method taking and returning an int.
+     *
+     * @see #run(ClassGen, MethodGen, Object...)
+     */
+    protected static int runInt(ClassGen cg, MethodGen mg, int p) throws Exception
+    {
+        return ((Integer) run(cg, mg, Integer.valueOf(p))).intValue();
+    }
+
+    /**
+     * Creates an empty public class for the methods generated by a test.
+     */
+    protected static ClassGen newClassGen(String name)
+    {
+        return new ClassGen(name, "java.lang.Object", name + ".java",
+                Constants.ACC_PUBLIC | Constants.ACC_SUPER, null);
+    }
+
     /**
      * @param name
      * @return Path to file under the TESTDATA directory
@@ -19,6 +19,8 @@ package org.apache.commons.bcel6;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
@@ -29,6 +31,7 @@ import org.apache.commons.bcel6.classfile.Method;
 import org.apache.commons.bcel6.generic.ClassGen;
 import org.apache.commons.bcel6.generic.InstructionList;
 import org.apache.commons.bcel6.generic.MethodGen;
+import org.apache.commons.bcel6.util.DependencyExtractor;
 import org.apache.commons.collections4.Predicate;
 import org.apache.commons.collections4.iterators.EnumerationIterator;
 import org.apache.commons.collections4.iterators.FilterIterator;
@@ -40,6 +43,9 @@ import org.openjdk.jmh.annotations.Fork;
 import org.openjdk.jmh.annotations.Measurement;
 import org.openjdk.jmh.annotations.Mode;
 import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
 import org.openjdk.jmh.annotations.Threads;
 import org.openjdk.jmh.annotations.Warmup;
 import org.openjdk.jmh.infra.Blackhole;
@@ -95,6 +101,23 @@ public class BCELBenchmark {
         jar.close();
     }
 
+    /**
+     * Referenced class names from the raw bytes, compared to parser() plus
+     * a walk over the constant pool.
+     */
+    @Benchmark
+    public void dependencies(Blackhole bh) throws IOException {
+        JarFile jar = getJarFile();
+
+        for (JarEntry entry : getClasses(jar)) {
+            byte[] bytes = IOUtils.toByteArray(jar.getInputStream(entry));
+
+            bh.consume(DependencyExtractor.getReferencedClassNames(bytes));
+        }
+
+        jar.close();
+    }
+
     @Benchmark
     public void generator(Blackhole bh) throws IOException {
         JarFile jar = getJarFile();
@@ -123,4 +146,38 @@ public class BCELBenchmark {
 
         jar.close();
     }
+
+    /**
+     * The classes of the jar parsed and wrapped in a ClassGen, shared by the
+     * iterations of a benchmark.
+     */
+    @State(Scope.Benchmark)
+    public static class ParsedClasses {
+
+        List<ClassGen> classes = new ArrayList<>();
+
+        @Setup
+        public void setup() throws IOException {
+            JarFile jar = new BCELBenchmark().getJarFile();
+
+            for (JarEntry entry : new BCELBenchmark().getClasses(jar)) {
+                byte[] bytes = IOUtils.toByteArray(jar.getInputStream(entry));
+
+                JavaClass clazz = new ClassParser(new ByteArrayInputStream(bytes), entry.getName()).parse();
+                classes.add(new ClassGen(clazz));
+            }
+
+            jar.close();
+        }
+    }
+
+    /**
+     * Serialization only, i.e., ClassGen.getJavaClass().getBytes() on previously parsed classes.
+     */
+    @Benchmark
+    public void serializer(ParsedClasses parsed, Blackhole bh) {
+        for (ClassGen cg : parsed.classes) {
+            bh.consume(cg.getJavaClass().getBytes());
+        }
+    }
 }
@@ -0,0 +1,124 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.apache.commons.bcel6;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.bcel6.analysis.ConstantPropagation;
+import org.apache.commons.bcel6.analysis.FlowGraph;
+import org.apache.commons.bcel6.analysis.Liveness;
+import org.apache.commons.bcel6.analysis.ReachingDefinitions;
+import org.apache.commons.bcel6.generic.BranchHandle;
+import org.apache.commons.bcel6.generic.GOTO;
+import org.apache.commons.bcel6.generic.IFGE;
+import org.apache.commons.bcel6.generic.IINC;
+import org.apache.commons.bcel6.generic.ILOAD;
+import org.apache.commons.bcel6.generic.ISTORE;
+import org.apache.commons.bcel6.generic.InstructionConstants;
+import org.apache.commons.bcel6.generic.InstructionHandle;
+import org.apache.commons.bcel6.generic.InstructionList;
+import org.apache.commons.bcel6.generic.SIPUSH;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Runs the dataflow analyses on generated methods of increasing size, with
+ * a fixed number of locals. The flow graph and liveness should grow
+ * linearly with the number of loops, and so should the number of block
+ * evaluations of every analysis. The sets of reaching definitions hold a
+ * bit per definition for every block, so their cost grows with the square
+ * of the method size.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@Fork(value = 1, jvmArgs = "-server")
+@Threads(1)
+@Warmup(iterations = 10)
+@Measurement(iterations = 20)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class DataflowBenchmark {
+
+    private static final int LOCALS = 32;
+
+    /** The number of loops in the method, each of 8 instructions. */
+    @Param({ "100", "1000", "5000" })
+    int loops;
+
+    InstructionList il;
+    FlowGraph graph;
+
+    /**
+     * A method made of consecutive loops, each counting a local down from a
+     * constant: x = k; while (x &gt;= 0) { y = x; x--; }
+     */
+    @Setup
+    public void setup() {
+        il = new InstructionList();
+        for (int i = 0; i < loops; i++) {
+            int x = i % LOCALS;
+            int y = (i + 1) % LOCALS;
+            il.append(new SIPUSH((short) i));
+            il.append(new ISTORE(x));
+            InstructionHandle head = il.append(new ILOAD(x));
+            BranchHandle exit = il.append(new IFGE(null));
+            il.append(new ILOAD(x));
+            il.append(new ISTORE(y));
+            il.append(new IINC(x, -1));
+            il.append(new GOTO(head));
+            exit.setTarget(il.append(InstructionConstants.NOP));
+        }
+        il.append(InstructionConstants.RETURN);
+        graph = new FlowGraph(il, null);
+    }
+
+    @Benchmark
+    public void flowGraph(Blackhole bh) {
+        bh.consume(new FlowGraph(il, null));
+    }
+
+    @Benchmark
+    public void liveness(Blackhole bh) {
+        bh.consume(new Liveness(graph, LOCALS));
+    }
+
+    @Benchmark
+    public void reachingDefinitions(Blackhole bh) {
+        bh.consume(new ReachingDefinitions(graph, LOCALS));
+    }
+
+    @Benchmark
+    public void constantPropagation(Blackhole bh) {
+        ConstantPropagation constants = new ConstantPropagation(new ReachingDefinitions(graph, LOCALS));
+        int count = graph.getInstructionHandles().length;
+        for (int i = 0; i < count; i++) {
+            bh.consume(constants.getValue(i));
+        }
+    }
+}
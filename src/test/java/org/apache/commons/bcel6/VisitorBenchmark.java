@@ -0,0 +1,145 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.commons.bcel6;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+import org.apache.commons.bcel6.classfile.ClassParser;
+import org.apache.commons.bcel6.classfile.Code;
+import org.apache.commons.bcel6.classfile.JavaClass;
+import org.apache.commons.bcel6.classfile.Method;
+import org.apache.commons.bcel6.generic.EmptyVisitor;
+import org.apache.commons.bcel6.generic.IINC;
+import org.apache.commons.bcel6.generic.Instruction;
+import org.apache.commons.bcel6.generic.InstructionList;
+import org.apache.commons.bcel6.generic.LoadInstruction;
+import org.apache.commons.bcel6.generic.OpcodeVisitor;
+import org.apache.commons.bcel6.generic.StoreInstruction;
+import org.apache.commons.io.IOUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares Instruction.accept(Visitor) with OpcodeVisitor on a walk over
+ * all instructions of rt.jar, counting local variable accesses.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@Fork(value = 1, jvmArgs = "-server")
+@Threads(1)
+@Warmup(iterations = 10)
+@Measurement(iterations = 20)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class VisitorBenchmark {
+
+    private final List<Instruction[]> methods = new ArrayList<>();
+
+    static class CountingVisitor extends EmptyVisitor {
+
+        int count;
+
+        @Override
+        public void visitLoadInstruction(LoadInstruction obj) {
+            count++;
+        }
+
+        @Override
+        public void visitStoreInstruction(StoreInstruction obj) {
+            count++;
+        }
+
+        @Override
+        public void visitIINC(IINC obj) {
+            count++;
+        }
+    }
+
+    static class CountingHandler implements OpcodeVisitor.Handler<Instruction> {
+
+        int count;
+
+        @Override
+        public void visit(Instruction obj) {
+            count++;
+        }
+    }
+
+    @Setup
+    public void setup() throws IOException {
+        JarFile jar = new JarFile(System.getProperty("java.home") + "/lib/rt.jar");
+
+        for (JarEntry entry : Collections.list(jar.entries())) {
+            if (!entry.getName().endsWith(".class")) {
+                continue;
+            }
+            byte[] bytes = IOUtils.toByteArray(jar.getInputStream(entry));
+            JavaClass clazz = new ClassParser(new ByteArrayInputStream(bytes), entry.getName()).parse();
+
+            for (Method m : clazz.getMethods()) {
+                Code code = m.getCode();
+                if (code != null) {
+                    methods.add(new InstructionList(code.getCode()).getInstructions());
+                }
+            }
+        }
+
+        jar.close();
+    }
+
+    @Benchmark
+    public int accept() {
+        CountingVisitor visitor = new CountingVisitor();
+        for (Instruction[] instructions : methods) {
+            for (Instruction i : instructions) {
+                i.accept(visitor);
+            }
+        }
+        return visitor.count;
+    }
+
+    @Benchmark
+    public int opcodeVisitor() {
+        CountingHandler handler = new CountingHandler();
+        OpcodeVisitor visitor = new OpcodeVisitor()
+            .register(LoadInstruction.class, handler)
+            .register(StoreInstruction.class, handler)
+            .register(IINC.class, handler);
+        for (Instruction[] instructions : methods) {
+            for (Instruction i : instructions) {
+                visitor.visit(i);
+            }
+        }
+        return handler.count;
+    }
+}
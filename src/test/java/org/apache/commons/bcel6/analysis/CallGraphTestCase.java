@@ -0,0 +1,201 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.commons.bcel6.analysis;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.bcel6.util.ClassPath;
+import org.apache.commons.bcel6.util.Repository;
+import org.apache.commons.bcel6.util.SyntheticRepository;
+
+public class CallGraphTestCase extends TestCase {
+
+    private static final String PREFIX = CallGraphTestCase.class.getName() + "$";
+
+    private final Repository repository = SyntheticRepository.getInstance(
+            new ClassPath("target" + File.separator + "test-classes"));
+
+    public static class A {
+
+        public void m() {
+        }
+    }
+
+    public static class B extends A {
+
+        @Override
+        public void m() {
+        }
+
+
+        @Override
+        public Object clone() {
+            return this;
+        }
+    }
+
+    public static class C extends A {
+    }
+
+    public interface I {
+
+        void f();
+    }
+
+    public static class D implements I {
+
+        @Override
+        public void f() {
+        }
+    }
+
+    public static class E implements I {
+
+        @Override
+        public void f() {
+        }
+    }
+
+    public static class Runner {
+
+        public static void run( A a, I i ) {
+            a.m();
+            i.f();
+        }
+
+
+        public static void main( String[] args ) {
+            run(new B(), new E());
+        }
+
+
+        public static int[] copy( int[] a ) {
+            return a.clone();
+        }
+    }
+
+
+    private CallGraph build( boolean rta ) throws Exception {
+        List<String> names = new ArrayList<>();
+        for (String name : new String[] { "A", "B", "C", "I", "D", "E", "Runner" }) {
+            names.add(PREFIX + name);
+        }
+        CallGraphBuilder builder = new CallGraphBuilder(repository);
+        builder.setRapidTypeAnalysis(rta);
+        return builder.build(names);
+    }
+
+
+    private String[] callees( CallGraph graph, int m ) {
+        int[] callees = graph.getCallees(m);
+        String[] result = new String[callees.length];
+        for (int i = 0; i < callees.length; i++) {
+            result[i] = graph.toString(callees[i]);
+        }
+        Arrays.sort(result);
+        return result;
+    }
+
+
+    private int run( CallGraph graph ) {
+        int run = graph.indexOf(PREFIX + "Runner", "run", "(L" + PREFIX.replace('.', '/') + "A;L"
+                + PREFIX.replace('.', '/') + "I;)V");
+        assertTrue(run >= 0);
+        assertTrue(graph.isDeclared(run));
+        return run;
+    }
+
+
+    public void testClassHierarchyAnalysis() throws Exception {
+        CallGraph graph = build(false);
+        assertEquals(Arrays.asList(PREFIX + "A.m()V", PREFIX + "B.m()V", PREFIX + "D.f()V", PREFIX + "E.f()V"),
+                Arrays.asList(callees(graph, run(graph))));
+    }
+
+
+    public void testArrayReceiver() throws Exception {
+        CallGraph graph = build(false);
+        int copy = graph.indexOf(PREFIX + "Runner", "copy", "([I)[I");
+        assertTrue(copy >= 0);
+        assertEquals(Arrays.asList("java.lang.Object.clone()Ljava/lang/Object;"),
+                Arrays.asList(callees(graph, copy)));
+    }
+
+
+    public void testRapidTypeAnalysis() throws Exception {
+        CallGraph graph = build(true);
+        assertEquals(Arrays.asList(PREFIX + "B.m()V", PREFIX + "E.f()V"),
+                Arrays.asList(callees(graph, run(graph))));
+    }
+
+
+    public void testCallers() throws Exception {
+        CallGraph graph = build(false);
+        int bm = graph.indexOf(PREFIX + "B", "m", "()V");
+        assertEquals(1, graph.getCallers(bm).length);
+        assertEquals(run(graph), graph.getCallers(bm)[0]);
+        int init = graph.indexOf("java.lang.Object", "<init>", "()V");
+        assertTrue(init >= 0);
+        assertFalse(graph.isDeclared(init));
+        assertEquals(0, graph.getCallees(init).length);
+        assertEquals(4, graph.getCallers(init).length); // A, D, E and Runner
+    }
+
+
+    public void testReachable() throws Exception {
+        CallGraph graph = build(true);
+        int main = graph.indexOf(PREFIX + "Runner", "main", "([Ljava/lang/String;)V");
+        boolean[] reachable = graph.getReachable(main);
+        assertTrue(reachable[graph.indexOf(PREFIX + "B", "m", "()V")]);
+        assertTrue(reachable[graph.indexOf(PREFIX + "E", "<init>", "()V")]);
+        assertFalse(reachable[graph.indexOf(PREFIX + "A", "m", "()V")]);
+        assertFalse(reachable[graph.indexOf(PREFIX + "D", "f", "()V")]);
+    }
+
+
+    public void testParallel() throws Exception {
+        SyntheticRepository classes = SyntheticRepository.getInstance(
+                new ClassPath("target" + File.separator + "classes"));
+        List<String> names = new ArrayList<>();
+        File dir = new File("target/classes/org/apache/commons/bcel6/generic");
+        for (String file : dir.list()) {
+            if (file.endsWith(".class")) {
+                names.add("org.apache.commons.bcel6.generic." + file.substring(0, file.length() - 6));
+            }
+        }
+        CallGraphBuilder builder = new CallGraphBuilder(classes);
+        CallGraph parallel = builder.build(names);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            CallGraph sequential = builder.build(executor, names);
+            assertEquals(sequential.getMethodCount(), parallel.getMethodCount());
+            assertEquals(sequential.getEdgeCount(), parallel.getEdgeCount());
+            assertEquals(sequential.toString(), parallel.toString());
+        } finally {
+            executor.shutdown();
+        }
+        assertTrue(parallel.getEdgeCount() > 1000);
+    }
+}
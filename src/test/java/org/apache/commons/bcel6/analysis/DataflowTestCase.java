@@ -0,0 +1,271 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.apache.commons.bcel6.analysis;
+
+import org.apache.commons.bcel6.AbstractTestCase;
+import org.apache.commons.bcel6.classfile.JavaClass;
+import org.apache.commons.bcel6.classfile.Method;
+import org.apache.commons.bcel6.Constants;
+import org.apache.commons.bcel6.generic.BIPUSH;
+import org.apache.commons.bcel6.generic.BranchHandle;
+import org.apache.commons.bcel6.generic.ASTORE;
+import org.apache.commons.bcel6.generic.CodeExceptionGen;
+import org.apache.commons.bcel6.generic.ConstantPoolGen;
+import org.apache.commons.bcel6.generic.GOTO;
+import org.apache.commons.bcel6.generic.IFEQ;
+import org.apache.commons.bcel6.generic.IINC;
+import org.apache.commons.bcel6.generic.ILOAD;
+import org.apache.commons.bcel6.generic.ISTORE;
+import org.apache.commons.bcel6.generic.InstructionConstants;
+import org.apache.commons.bcel6.generic.InstructionHandle;
+import org.apache.commons.bcel6.generic.InstructionList;
+import org.apache.commons.bcel6.generic.LLOAD;
+import org.apache.commons.bcel6.generic.LSTORE;
+import org.apache.commons.bcel6.generic.MethodGen;
+import org.apache.commons.bcel6.generic.ObjectType;
+import org.apache.commons.bcel6.generic.Type;
+
+/**
+ * Tests liveness, reaching definitions and constant propagation.
+ */
+public class DataflowTestCase extends AbstractTestCase {
+
+    private InstructionList il;
+    private InstructionHandle copy;
+    private InstructionHandle incremented;
+    private InstructionHandle merged;
+    private InstructionHandle wide;
+
+    /**
+     * int a = 1; int b = a; b += 5; use(b); if (p0 != 0) a = 2; use(a); long c = 1L; use(c);
+     */
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        il = new InstructionList();
+        il.append(InstructionConstants.ICONST_1);
+        il.append(new ISTORE(1));
+        copy = il.append(new ILOAD(1));
+        il.append(new ISTORE(2));
+        il.append(new IINC(2, 5));
+        incremented = il.append(new ILOAD(2));
+        il.append(InstructionConstants.POP);
+        il.append(new ILOAD(0));
+        BranchHandle branch = il.append(new IFEQ(null));
+        il.append(InstructionConstants.ICONST_2);
+        il.append(new ISTORE(1));
+        merged = il.append(new ILOAD(1));
+        branch.setTarget(merged);
+        il.append(InstructionConstants.POP);
+        il.append(InstructionConstants.LCONST_1);
+        il.append(new LSTORE(3));
+        wide = il.append(new LLOAD(3));
+        il.append(InstructionConstants.POP2);
+        il.append(InstructionConstants.RETURN);
+    }
+
+    private int indexOf(FlowGraph graph, InstructionHandle ih) {
+        return graph.getInstructionIndex(ih);
+    }
+
+    public void testLiveness() {
+        FlowGraph graph = new FlowGraph(il, null);
+        Liveness live = new Liveness(graph, 5);
+        assertEquals(5, live.getBitCount());
+        assertTrue(live.isLiveIn(0, 0));
+        assertFalse(live.isLiveIn(0, 1));
+        int i = indexOf(graph, merged);
+        assertTrue(DataflowAnalysis.isSet(live.getLiveBefore(i), 1));
+        assertFalse(DataflowAnalysis.isSet(live.getLiveAfter(i), 1));
+        int j = indexOf(graph, incremented);
+        assertTrue(DataflowAnalysis.isSet(live.getLiveBefore(j), 2));
+        assertFalse(DataflowAnalysis.isSet(live.getLiveAfter(j), 2));
+        // Both halves of the long
+        int k = indexOf(graph, wide);
+        assertTrue(DataflowAnalysis.isSet(live.getLiveBefore(k), 3));
+        assertTrue(DataflowAnalysis.isSet(live.getLiveBefore(k), 4));
+        // a is live on the path where it is not reassigned
+        int b = graph.getBlock(merged);
+        assertTrue(live.isLiveOut(graph.getBlock(merged.getPrev()), 1));
+        assertTrue(live.isLiveIn(b, 1));
+        assertFalse(live.isLiveIn(graph.getBlock(merged.getPrev()), 1));
+    }
+
+    public void testLivenessInLoop() {
+        // i = 0; while (true) { use(i); i++; }
+        InstructionList loop = new InstructionList();
+        loop.append(InstructionConstants.ICONST_0);
+        loop.append(new ISTORE(1));
+        InstructionHandle head = loop.append(new ILOAD(1));
+        loop.append(InstructionConstants.POP);
+        loop.append(new IINC(1, 1));
+        loop.append(new GOTO(head));
+        FlowGraph graph = new FlowGraph(loop, null);
+        Liveness live = new Liveness(graph, 2);
+        int b = graph.getBlock(head);
+        assertTrue(live.isLiveIn(b, 1));
+        assertTrue(live.isLiveOut(b, 1));
+        assertFalse(live.isLiveIn(0, 1));
+        ConstantPropagation constants = new ConstantPropagation(new ReachingDefinitions(graph, 2));
+        assertNull(constants.getValue(head));
+    }
+
+    public void testReachingDefinitions() {
+        FlowGraph graph = new FlowGraph(il, null);
+        ReachingDefinitions defs = new ReachingDefinitions(graph, 5);
+        assertEquals(5, defs.getSlotCount());
+        assertEquals(5 + 5, defs.getDefinitionCount());
+        assertTrue(defs.isEntryDefinition(0));
+        int[] reaching = defs.getReaching(indexOf(graph, merged), 1);
+        assertEquals(2, reaching.length);
+        for (int d : reaching) {
+            assertFalse(defs.isEntryDefinition(d));
+            assertEquals(1, defs.getDefinitionSlot(d));
+        }
+        reaching = defs.getReaching(indexOf(graph, copy), 0);
+        assertEquals(1, reaching.length);
+        assertEquals(0, reaching[0]);
+        // The long store kills the entry definition of the upper slot too
+        reaching = defs.getReaching(indexOf(graph, wide), 4);
+        assertEquals(1, reaching.length);
+        assertEquals(3, defs.getDefinitionSlot(reaching[0]));
+        assertEquals(indexOf(graph, wide) - 1, defs.getDefinitionInstruction(reaching[0]));
+    }
+
+    public void testConstants() {
+        FlowGraph graph = new FlowGraph(il, null);
+        ConstantPropagation constants = new ConstantPropagation(new ReachingDefinitions(graph, 5));
+        assertEquals(Integer.valueOf(1), constants.getValue(copy));
+        assertEquals(Integer.valueOf(6), constants.getValue(incremented));
+        assertNull(constants.getValue(merged));
+        assertEquals(Long.valueOf(1), constants.getValue(wide));
+        assertNull(constants.getValue(il.getStart().getNext())); // a store
+        assertEquals(Integer.valueOf(1), constants.getValue(il.getStart()));
+    }
+
+    public void testExceptionHandler() {
+        // try { a = 1; a = 2; } catch (Throwable t) { use(a); }
+        InstructionList code = new InstructionList();
+        code.append(InstructionConstants.ICONST_0);
+        code.append(new ISTORE(1));
+        InstructionHandle start = code.append(InstructionConstants.ICONST_1);
+        code.append(new ISTORE(1));
+        code.append(InstructionConstants.ICONST_2);
+        InstructionHandle end = code.append(new ISTORE(1));
+        code.append(InstructionConstants.RETURN);
+        InstructionHandle handler = code.append(InstructionConstants.POP);
+        InstructionHandle use = code.append(new ILOAD(1));
+        code.append(InstructionConstants.IRETURN);
+        MethodGen mg = new MethodGen(0, Type.INT, Type.NO_ARGS, null, "m", "C", code, new ConstantPoolGen());
+        mg.addExceptionHandler(start, end, handler, ObjectType.THROWABLE);
+        AnalysisCache cache = new AnalysisCache();
+        FlowGraph graph = cache.getFlowGraph(mg);
+
+        ReachingDefinitions defs = new ReachingDefinitions(mg, cache);
+        assertEquals(3, defs.getReaching(indexOf(graph, use), 1).length);
+        assertNull(new ConstantPropagation(defs).getValue(use));
+
+        Liveness live = new Liveness(mg, cache);
+        assertTrue(live.isLiveIn(graph.getBlock(start), 1));
+        assertTrue(DataflowAnalysis.isSet(live.getLiveBefore(indexOf(graph, end)), 1));
+        assertFalse(DataflowAnalysis.isSet(live.getLiveAfter(indexOf(graph, end)), 1));
+    }
+
+    /**
+     * static int f(int p) {
+     *     int x = 1;
+     *     while (true) {
+     *         p--;
+     *         try { use(10 / p); x = 1; use(10 / p); } catch (RuntimeException e) { return x; }
+     *         x = 2;
+     *     }
+     * }
+     */
+    static MethodGen createCatchInLoop(String class_name, ConstantPoolGen cp) {
+        InstructionList code = new InstructionList();
+        code.append(InstructionConstants.ICONST_1);
+        code.append(new ISTORE(1));
+        InstructionHandle head = code.append(new IINC(0, -1));
+        InstructionHandle start = code.append(new BIPUSH((byte) 10));
+        code.append(new ILOAD(0));
+        code.append(InstructionConstants.IDIV);
+        code.append(InstructionConstants.POP);
+        code.append(InstructionConstants.ICONST_1);
+        code.append(new ISTORE(1));
+        code.append(new BIPUSH((byte) 10));
+        code.append(new ILOAD(0));
+        code.append(InstructionConstants.IDIV);
+        InstructionHandle end = code.append(InstructionConstants.POP);
+        code.append(InstructionConstants.ICONST_2);
+        code.append(new ISTORE(1));
+        code.append(new GOTO(head));
+        InstructionHandle handler = code.append(new ASTORE(2));
+        code.append(new ILOAD(1));
+        code.append(InstructionConstants.IRETURN);
+        MethodGen mg = new MethodGen(Constants.ACC_PUBLIC | Constants.ACC_STATIC, Type.INT,
+                new Type[] { Type.INT }, new String[] { "p" }, "f", class_name, code, cp);
+        mg.addExceptionHandler(start, end, handler, new ObjectType("java.lang.RuntimeException"));
+        mg.setMaxStack();
+        mg.setMaxLocals();
+        return mg;
+    }
+
+    public void testExceptionHandlerInLoop() {
+        MethodGen mg = createCatchInLoop("C", new ConstantPoolGen());
+        CodeExceptionGen handler = mg.getExceptionHandlers()[0];
+        InstructionHandle use = handler.getHandlerPC().getNext();
+        AnalysisCache cache = new AnalysisCache();
+        FlowGraph graph = cache.getFlowGraph(mg);
+        ReachingDefinitions defs = new ReachingDefinitions(mg, cache);
+        // x = 1 before the loop, x = 1 in the try block, and x = 2 from the previous iteration
+        int[] reaching = defs.getReaching(indexOf(graph, use), 1);
+        assertEquals(3, reaching.length);
+        boolean after_catch = false;
+        for (int d : reaching) {
+            after_catch |= defs.getDefinitionInstruction(d) == indexOf(graph, handler.getEndPC().getNext().getNext());
+        }
+        assertTrue(after_catch);
+        assertNull(new ConstantPropagation(defs).getValue(use));
+    }
+
+    public void testRealMethods() throws Exception {
+        JavaClass clazz = getTestClass(PACKAGE_BASE_NAME + ".generic.MethodGen");
+        ConstantPoolGen cp = new ConstantPoolGen(clazz.getConstantPool());
+        AnalysisCache cache = new AnalysisCache();
+        for (Method m : clazz.getMethods()) {
+            MethodGen mg = new MethodGen(m, clazz.getClassName(), cp);
+            if (mg.getInstructionList() == null) {
+                continue;
+            }
+            Liveness live = new Liveness(mg, cache);
+            FlowGraph graph = cache.getFlowGraph(mg);
+            // Only parameters can be live on entry
+            int params = mg.isStatic() ? 0 : 1;
+            for (Type t : mg.getArgumentTypes()) {
+                params += t.getSize();
+            }
+            for (int slot = params; slot < live.getBitCount(); slot++) {
+                assertFalse(m.getName() + " slot " + slot, live.isLiveIn(graph.getEntry(), slot));
+            }
+            ReachingDefinitions defs = new ReachingDefinitions(mg, cache);
+            assertTrue(defs.getIterations() >= graph.getBlockCount());
+            new ConstantPropagation(defs).getValue(0);
+        }
+    }
+}
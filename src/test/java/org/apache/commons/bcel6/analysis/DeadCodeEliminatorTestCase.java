@@ -0,0 +1,122 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.commons.bcel6.analysis;
+
+import org.apache.commons.bcel6.AbstractTestCase;
+import org.apache.commons.bcel6.Constants;
+import org.apache.commons.bcel6.generic.BranchHandle;
+import org.apache.commons.bcel6.generic.ClassGen;
+import org.apache.commons.bcel6.generic.CodeExceptionGen;
+import org.apache.commons.bcel6.generic.GOTO;
+import org.apache.commons.bcel6.generic.IFLT;
+import org.apache.commons.bcel6.generic.ILOAD;
+import org.apache.commons.bcel6.generic.ISTORE;
+import org.apache.commons.bcel6.generic.InstructionConstants;
+import org.apache.commons.bcel6.generic.InstructionHandle;
+import org.apache.commons.bcel6.generic.InstructionList;
+import org.apache.commons.bcel6.generic.LineNumberGen;
+import org.apache.commons.bcel6.generic.LocalVariableGen;
+import org.apache.commons.bcel6.generic.MethodGen;
+import org.apache.commons.bcel6.generic.ObjectType;
+import org.apache.commons.bcel6.generic.Type;
+
+/**
+ * Tests the removal of unreachable code, running the result.
+ */
+public class DeadCodeEliminatorTestCase extends AbstractTestCase {
+
+    private final ClassGen cg = newClassGen("DeadCodeTest");
+    private InstructionHandle handler;
+    private LocalVariableGen narrowed;
+
+    /**
+     * static int sign(int p) { return p &lt; 0 ? -1 : 1; } with two dead
+     * blocks in between, the second one branching back to the first.
+     */
+    private MethodGen createMethod() {
+        InstructionList il = new InstructionList();
+        il.append(new ILOAD(0));
+        BranchHandle to_neg = il.append(new IFLT(null));
+        InstructionHandle one = il.append(InstructionConstants.ICONST_1);
+        il.append(InstructionConstants.IRETURN);
+        InstructionHandle dead_a = il.append(new ILOAD(1));
+        InstructionHandle dead_a_end = il.append(InstructionConstants.IRETURN);
+        InstructionHandle neg = il.append(InstructionConstants.ICONST_M1);
+        to_neg.setTarget(neg);
+        il.append(InstructionConstants.IRETURN);
+        InstructionHandle dead_b = il.append(InstructionConstants.ICONST_2);
+        InstructionHandle store = il.append(new ISTORE(1));
+        il.append(new GOTO(dead_a));
+        handler = il.append(InstructionConstants.ATHROW);
+        InstructionHandle dead_handler = il.append(InstructionConstants.ATHROW);
+        MethodGen mg = new MethodGen(Constants.ACC_PUBLIC | Constants.ACC_STATIC, Type.INT,
+                new Type[] { Type.INT }, new String[] { "p" }, "sign", cg.getClassName(), il,
+                cg.getConstantPool());
+        mg.addExceptionHandler(one, dead_a_end, handler, ObjectType.THROWABLE);
+        mg.addExceptionHandler(dead_b, store, dead_handler, null);
+        mg.addLocalVariable("x", Type.INT, 1, dead_b, store.getNext());
+        narrowed = mg.addLocalVariable("y", Type.INT, 1, one, store);
+        mg.addLineNumber(one, 10);
+        mg.addLineNumber(dead_a, 11);
+        mg.addLineNumber(neg, 12);
+        mg.addLineNumber(dead_b, 13);
+        mg.setMaxStack();
+        mg.setMaxLocals();
+        return mg;
+    }
+
+    public void testElimination() throws Exception {
+        MethodGen mg = createMethod();
+        assertEquals(13, mg.getInstructionList().getLength());
+
+        DeadCodeEliminator eliminator = new DeadCodeEliminator();
+        assertTrue(eliminator.eliminate(mg));
+        assertEquals(7, mg.getInstructionList().getLength());
+        CodeExceptionGen[] handlers = mg.getExceptionHandlers();
+        assertEquals(1, handlers.length);
+        assertSame(handler, handlers[0].getHandlerPC());
+        assertEquals(Constants.IRETURN, handlers[0].getEndPC().getInstruction().getOpcode());
+
+        LocalVariableGen[] variables = mg.getLocalVariables();
+        assertEquals(2, variables.length); // p and y
+        assertSame(narrowed, variables[1]);
+        assertEquals(Constants.IRETURN, narrowed.getEnd().getInstruction().getOpcode());
+        assertSame(handler.getPrev(), narrowed.getEnd());
+
+        LineNumberGen[] lines = mg.getLineNumbers();
+        assertEquals(3, lines.length);
+        assertEquals(13, lines[2].getSourceLine()); // applies to the live handler now
+        assertSame(handler, lines[2].getInstruction());
+
+        assertEquals(1, runInt(cg, mg, 5));
+        assertEquals(-1, runInt(cg, mg, -5));
+        assertFalse(eliminator.eliminate(mg));
+    }
+
+    public void testEmptyHandler() {
+        InstructionList il = new InstructionList();
+        InstructionHandle ret = il.append(InstructionConstants.RETURN);
+        InstructionHandle nop = il.append(InstructionConstants.NOP);
+        MethodGen mg = new MethodGen(Constants.ACC_STATIC, Type.VOID, Type.NO_ARGS, null, "m", "C", il,
+                cg.getConstantPool());
+        mg.addExceptionHandler(nop, ret, ret, null); // start after end
+        assertTrue(new DeadCodeEliminator().eliminate(mg));
+        assertEquals(0, mg.getExceptionHandlers().length);
+        assertEquals(1, il.getLength());
+    }
+}
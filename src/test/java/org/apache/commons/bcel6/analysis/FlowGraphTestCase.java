@@ -0,0 +1,204 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.apache.commons.bcel6.analysis;
+
+import java.util.Arrays;
+
+import org.apache.commons.bcel6.AbstractTestCase;
+import org.apache.commons.bcel6.classfile.JavaClass;
+import org.apache.commons.bcel6.classfile.Method;
+import org.apache.commons.bcel6.generic.ATHROW;
+import org.apache.commons.bcel6.generic.BIPUSH;
+import org.apache.commons.bcel6.generic.BranchHandle;
+import org.apache.commons.bcel6.generic.ConstantPoolGen;
+import org.apache.commons.bcel6.generic.GOTO;
+import org.apache.commons.bcel6.generic.IF_ICMPGE;
+import org.apache.commons.bcel6.generic.IINC;
+import org.apache.commons.bcel6.generic.ILOAD;
+import org.apache.commons.bcel6.generic.ISTORE;
+import org.apache.commons.bcel6.generic.InstructionConstants;
+import org.apache.commons.bcel6.generic.InstructionHandle;
+import org.apache.commons.bcel6.generic.InstructionList;
+import org.apache.commons.bcel6.generic.MethodGen;
+import org.apache.commons.bcel6.generic.ObjectType;
+import org.apache.commons.bcel6.generic.Type;
+
+/**
+ * Tests the flow graph, dominator trees, loops and their cache.
+ */
+public class FlowGraphTestCase extends AbstractTestCase {
+
+    private InstructionList il;
+    private InstructionHandle loop_start;
+    private InstructionHandle loop_body;
+    private InstructionHandle ret;
+
+    /**
+     * for (int i = 0; i < 10; i++) {} return;
+     */
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        il = new InstructionList();
+        il.append(InstructionConstants.ICONST_0);
+        il.append(new ISTORE(1));
+        loop_start = il.append(new ILOAD(1));
+        il.append(new BIPUSH((byte) 10));
+        BranchHandle exit = il.append(new IF_ICMPGE(null));
+        loop_body = il.append(new IINC(1, 1));
+        il.append(new GOTO(loop_start));
+        ret = il.append(InstructionConstants.RETURN);
+        exit.setTarget(ret);
+    }
+
+    private MethodGen newMethod() {
+        return new MethodGen(0, Type.VOID, Type.NO_ARGS, null, "m", "C", il, new ConstantPoolGen());
+    }
+
+    public void testBlocks() {
+        FlowGraph graph = new FlowGraph(il, null);
+        assertEquals(4, graph.getBlockCount());
+        assertEquals(1, graph.getBlock(loop_start));
+        assertEquals(2, graph.getBlock(loop_body));
+        assertEquals(3, graph.getBlock(ret));
+        assertEquals(-1, graph.getBlock(new InstructionList(InstructionConstants.NOP).getStart()));
+        assertTrue(Arrays.equals(new int[] { 1 }, graph.getSuccessors(0)));
+        assertTrue(Arrays.equals(new int[] { 3, 2 }, graph.getSuccessors(1)));
+        assertTrue(Arrays.equals(new int[] { 1 }, graph.getSuccessors(2)));
+        assertEquals(0, graph.getSuccessors(3).length);
+        assertTrue(Arrays.equals(new int[] { 0, 2 }, graph.getPredecessors(1)));
+        assertTrue(Arrays.equals(new int[] { 3 }, graph.getExitBlocks()));
+        assertEquals(0, graph.getReversePostorder()[0]);
+        assertEquals(4, graph.getReversePostorder().length);
+    }
+
+    public void testDominators() {
+        FlowGraph graph = new FlowGraph(il, null);
+        DominatorTree dom = DominatorTree.dominators(graph);
+        assertEquals(-1, dom.getImmediateDominator(0));
+        assertEquals(0, dom.getImmediateDominator(1));
+        assertEquals(1, dom.getImmediateDominator(2));
+        assertEquals(1, dom.getImmediateDominator(3));
+        assertTrue(dom.dominates(0, 3));
+        assertTrue(dom.dominates(2, 2));
+        assertFalse(dom.strictlyDominates(2, 2));
+        assertFalse(dom.dominates(2, 3));
+
+        DominatorTree post = DominatorTree.postDominators(graph);
+        assertEquals(graph.getExit(), post.getRoot());
+        assertEquals(1, post.getImmediateDominator(0));
+        assertEquals(3, post.getImmediateDominator(1));
+        assertEquals(1, post.getImmediateDominator(2));
+        assertEquals(graph.getExit(), post.getImmediateDominator(3));
+        assertTrue(post.dominates(3, 0));
+        assertFalse(post.dominates(2, 0));
+    }
+
+    public void testLoops() {
+        FlowGraph graph = new FlowGraph(il, null);
+        Loops loops = new Loops(graph, DominatorTree.dominators(graph));
+        assertEquals(1, loops.getLoopCount());
+        assertEquals(1, loops.getHeader(0));
+        assertTrue(Arrays.equals(new int[] { 1, 2 }, loops.getBody(0)));
+        assertEquals(-1, loops.getParent(0));
+        assertEquals(0, loops.getLoop(2));
+        assertEquals(-1, loops.getLoop(3));
+        assertEquals(1, loops.getDepth(1));
+        assertEquals(0, loops.getDepth(0));
+    }
+
+    public void testExceptionEdges() {
+        InstructionHandle handler = il.append(InstructionConstants.ATHROW);
+        MethodGen mg = newMethod();
+        mg.addExceptionHandler(loop_body, loop_body.getNext(), handler, ObjectType.THROWABLE);
+        FlowGraph graph = new FlowGraph(mg);
+        int h = graph.getBlock(handler);
+        assertTrue(graph.isHandler(h));
+        assertTrue(Arrays.equals(new int[] { h }, graph.getExceptionSuccessors(graph.getBlock(loop_body))));
+        assertEquals(0, graph.getExceptionSuccessors(0).length);
+        assertTrue(graph.isReachable(h));
+        assertTrue(graph.getEnd(h).getInstruction() instanceof ATHROW);
+        assertEquals(2, graph.getExitBlocks().length);
+        assertEquals(graph.getBlock(loop_body), DominatorTree.dominators(graph).getImmediateDominator(h));
+    }
+
+    public void testUnreachable() {
+        il.insert(ret, InstructionConstants.NOP); // after the GOTO, never executed
+        FlowGraph graph = new FlowGraph(il, null);
+        int dead = graph.getBlock(ret.getPrev());
+        assertFalse(graph.isReachable(dead));
+        DominatorTree dom = DominatorTree.dominators(graph);
+        assertFalse(dom.contains(dead));
+        assertEquals(-1, dom.getImmediateDominator(dead));
+    }
+
+    public void testCache() {
+        MethodGen mg = newMethod();
+        AnalysisCache cache = new AnalysisCache();
+        FlowGraph graph = cache.getFlowGraph(mg);
+        assertSame(graph, cache.getFlowGraph(mg));
+        assertSame(cache.getDominators(mg), cache.getDominators(mg));
+        assertEquals(1, cache.getLoops(mg).getLoopCount());
+
+        il.insert(ret, InstructionConstants.NOP);
+        assertNotSame(graph, cache.getFlowGraph(mg)); // the length changed
+        graph = cache.getFlowGraph(mg);
+
+        il.update();
+        assertNotSame(graph, cache.getFlowGraph(mg));
+        graph = cache.getFlowGraph(mg);
+
+        mg.addExceptionHandler(loop_body, loop_body.getNext(), ret, null);
+        assertNotSame(graph, cache.getFlowGraph(mg));
+
+        cache.clear();
+        assertEquals(0, cache.size());
+        il.update(); // no observers left to fail
+    }
+
+    public void testRealMethods() throws Exception {
+        JavaClass clazz = getTestClass(PACKAGE_BASE_NAME + ".generic.InstructionList");
+        ConstantPoolGen cp = new ConstantPoolGen(clazz.getConstantPool());
+        AnalysisCache cache = new AnalysisCache();
+        for (Method m : clazz.getMethods()) {
+            MethodGen mg = new MethodGen(m, clazz.getClassName(), cp);
+            if (mg.getInstructionList() == null) {
+                continue;
+            }
+            FlowGraph graph = cache.getFlowGraph(mg);
+            DominatorTree dom = cache.getDominators(mg);
+            Loops loops = cache.getLoops(mg);
+            for (int b : graph.getReversePostorder()) {
+                assertTrue(dom.dominates(0, b));
+                for (int s : graph.getSuccessors(b)) {
+                    assertTrue(graph.isReachable(s));
+                }
+            }
+            for (int l = 0; l < loops.getLoopCount(); l++) {
+                for (int b : loops.getBody(l)) {
+                    assertTrue(dom.dominates(loops.getHeader(l), b));
+                }
+            }
+            DominatorTree post = cache.getPostDominators(mg);
+            for (int b : graph.getExitBlocks()) {
+                assertEquals(graph.getExit(), post.getImmediateDominator(b));
+            }
+        }
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.apache.commons.bcel6.analysis;
+
+import org.apache.commons.bcel6.AbstractTestCase;
+import org.apache.commons.bcel6.Constants;
+import org.apache.commons.bcel6.classfile.Attribute;
+import org.apache.commons.bcel6.classfile.Method;
+import org.apache.commons.bcel6.classfile.StackMap;
+import org.apache.commons.bcel6.generic.ClassGen;
+import org.apache.commons.bcel6.generic.ConstantPoolGen;
+import org.apache.commons.bcel6.generic.GOTO;
+import org.apache.commons.bcel6.generic.IINC;
+import org.apache.commons.bcel6.generic.IF_ICMPGE;
+import org.apache.commons.bcel6.generic.ILOAD;
+import org.apache.commons.bcel6.generic.ISTORE;
+import org.apache.commons.bcel6.generic.InstructionConstants;
+import org.apache.commons.bcel6.generic.InstructionHandle;
+import org.apache.commons.bcel6.generic.InstructionList;
+import org.apache.commons.bcel6.generic.LLOAD;
+import org.apache.commons.bcel6.generic.LSTORE;
+import org.apache.commons.bcel6.generic.LocalVariableGen;
+import org.apache.commons.bcel6.generic.LocalVariableInstruction;
+import org.apache.commons.bcel6.generic.MethodGen;
+import org.apache.commons.bcel6.generic.BranchHandle;
+import org.apache.commons.bcel6.generic.SIPUSH;
+import org.apache.commons.bcel6.generic.Type;
+
+/**
+ * Tests the local variable slot allocator, running the rewritten code.
+ */
+public class LocalSlotAllocatorTestCase extends AbstractTestCase {
+
+    /**
+     * static long compute(int p) {
+     *     int a = p + 1; long b = a; int c = 7; // a dead after b, b dead after the loop
+     *     for (int i = 0; i &lt; c; i++) b += i;
+     *     int d = (int) b; long e = d * 2L; return e + p;
+     * }
+     */
+    private MethodGen createMethod(ClassGen cg) {
+        InstructionList il = new InstructionList();
+        il.append(new ILOAD(0));
+        il.append(InstructionConstants.ICONST_1);
+        il.append(InstructionConstants.IADD);
+        il.append(new ISTORE(1));           // a
+        il.append(new ILOAD(1));
+        il.append(InstructionConstants.I2L);
+        il.append(new LSTORE(2));           // b
+        il.append(new SIPUSH((short) 7));
+        il.append(new ISTORE(4));           // c
+        il.append(InstructionConstants.ICONST_0);
+        il.append(new ISTORE(5));           // i
+        InstructionHandle head = il.append(new ILOAD(5));
+        il.append(new ILOAD(4));
+        BranchHandle exit = il.append(new IF_ICMPGE(null));
+        il.append(new LLOAD(2));
+        il.append(new ILOAD(5));
+        il.append(InstructionConstants.I2L);
+        il.append(InstructionConstants.LADD);
+        il.append(new LSTORE(2));
+        il.append(new IINC(5, 1));
+        il.append(new GOTO(head));
+        exit.setTarget(il.append(new LLOAD(2)));
+        il.append(InstructionConstants.L2I);
+        InstructionHandle d = il.append(new ISTORE(6)); // d
+        il.append(new ILOAD(6));
+        il.append(InstructionConstants.I2L);
+        il.append(InstructionConstants.ICONST_2);
+        il.append(InstructionConstants.I2L);
+        il.append(InstructionConstants.LMUL);
+        il.append(new LSTORE(7));           // e
+        il.append(new LLOAD(7));
+        il.append(new ILOAD(0));
+        il.append(InstructionConstants.I2L);
+        il.append(InstructionConstants.LADD);
+        il.append(InstructionConstants.LRETURN);
+        MethodGen mg = new MethodGen(Constants.ACC_PUBLIC | Constants.ACC_STATIC, Type.LONG,
+                new Type[] { Type.INT }, new String[] { "p" }, "compute", cg.getClassName(), il,
+                cg.getConstantPool());
+        mg.addLocalVariable("d", Type.INT, 6, d.getNext(), il.getEnd());
+        mg.addLocalVariable("unused", Type.INT, 9, head, exit);
+        mg.setMaxStack();
+        return mg;
+    }
+
+    private long compute(ClassGen cg, MethodGen mg, int p) throws Exception {
+        return ((Long) run(cg, mg, Integer.valueOf(p))).longValue();
+    }
+
+    public void testCompaction() throws Exception {
+        ClassGen cg = newClassGen("AllocatorTest");
+        MethodGen mg = createMethod(cg);
+        assertEquals(10, mg.getMaxLocals());
+        long expected = compute(cg, mg, 5);
+
+        assertTrue(new LocalSlotAllocator().allocate(mg));
+        // p, b (2 slots), c and i live together
+        assertEquals(5, mg.getMaxLocals());
+        for (InstructionHandle ih = mg.getInstructionList().getStart(); ih != null; ih = ih.getNext()) {
+            if (ih.getInstruction() instanceof LocalVariableInstruction) {
+                LocalVariableInstruction lvi = (LocalVariableInstruction) ih.getInstruction();
+                assertTrue(lvi.getIndex() + lvi.getType(null).getSize() <= 5);
+                if (lvi.getIndex() == 0) {
+                    assertTrue(lvi.getType(null) == Type.INT); // the parameter keeps its slot
+                }
+            }
+        }
+        LocalVariableGen[] variables = mg.getLocalVariables();
+        assertEquals(2, variables.length); // p and d, the unused variable is gone
+        assertEquals("d", variables[1].getName());
+        assertEquals(expected, compute(cg, mg, 5));
+        assertEquals(compute(cg, createMethod(cg), -3), compute(cg, mg, -3));
+
+        assertFalse(new LocalSlotAllocator().allocate(mg)); // already compact
+    }
+
+    public void testCatchInLoop() throws Exception {
+        ClassGen cg = newClassGen("AllocatorTest");
+        MethodGen mg = DataflowTestCase.createCatchInLoop(cg.getClassName(), cg.getConstantPool());
+        assertEquals(1, runInt(cg, mg, 1));
+        assertEquals(2, runInt(cg, mg, 3));
+        new LocalSlotAllocator().allocate(mg);
+        // The handler reads the x = 2 of the previous iteration
+        assertEquals(1, runInt(cg, mg, 1));
+        assertEquals(2, runInt(cg, mg, 3));
+    }
+
+    public void testUninitialized() {
+        InstructionList il = new InstructionList();
+        il.append(new ILOAD(3));
+        il.append(InstructionConstants.IRETURN);
+        MethodGen mg = new MethodGen(Constants.ACC_STATIC, Type.INT, Type.NO_ARGS, null, "m", "C", il,
+                new ConstantPoolGen());
+        mg.setMaxLocals();
+        assertFalse(new LocalSlotAllocator().allocate(mg));
+        assertEquals(3, ((ILOAD) il.getStart().getInstruction()).getIndex());
+    }
+
+    /**
+     * Reallocates all methods of a class and has the JVM verify the result
+     * with the type inferring verifier.
+     */
+    private void verifyReallocated(String name) throws Exception {
+        ClassGen cg = new ClassGen(getTestClass(name));
+        cg.setMajor(49);
+        cg.setMinor(0);
+        LocalSlotAllocator allocator = new LocalSlotAllocator();
+        int before = 0;
+        int after = 0;
+        for (Method m : cg.getMethods()) {
+            MethodGen mg = new MethodGen(m, cg.getClassName(), cg.getConstantPool());
+            if (mg.getInstructionList() == null) {
+                continue;
+            }
+            for (Attribute a : mg.getCodeAttributes()) {
+                if (a instanceof StackMap) {
+                    mg.removeCodeAttribute(a);
+                }
+            }
+            before += mg.getMaxLocals();
+            allocator.allocate(mg);
+            after += mg.getMaxLocals();
+            mg.setMaxStack();
+            cg.replaceMethod(m, mg.getMethod());
+        }
+        assertTrue(after <= before);
+        defineClass(cg.getJavaClass()).getDeclaredMethods(); // links and verifies
+    }
+
+    public void testVerifiedByJvm() throws Exception {
+        verifyReallocated(PACKAGE_BASE_NAME + ".generic.MethodGen");
+        verifyReallocated(PACKAGE_BASE_NAME + ".classfile.Utility");
+        verifyReallocated(PACKAGE_BASE_NAME + ".verifier.structurals.Pass3bVerifier");
+    }
+}
@@ -0,0 +1,250 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.commons.bcel6.analysis;
+
+import org.apache.commons.bcel6.AbstractTestCase;
+import org.apache.commons.bcel6.Constants;
+import org.apache.commons.bcel6.generic.ASTORE;
+import org.apache.commons.bcel6.generic.BIPUSH;
+import org.apache.commons.bcel6.generic.BranchHandle;
+import org.apache.commons.bcel6.generic.ClassGen;
+import org.apache.commons.bcel6.generic.ClassGenException;
+import org.apache.commons.bcel6.generic.CodeExceptionGen;
+import org.apache.commons.bcel6.generic.GOTO;
+import org.apache.commons.bcel6.generic.IFLT;
+import org.apache.commons.bcel6.generic.IFNE;
+import org.apache.commons.bcel6.generic.IF_ICMPEQ;
+import org.apache.commons.bcel6.generic.IF_ICMPGE;
+import org.apache.commons.bcel6.generic.IF_ICMPLT;
+import org.apache.commons.bcel6.generic.IINC;
+import org.apache.commons.bcel6.generic.ILOAD;
+import org.apache.commons.bcel6.generic.InstructionConstants;
+import org.apache.commons.bcel6.generic.InstructionHandle;
+import org.apache.commons.bcel6.generic.InstructionList;
+import org.apache.commons.bcel6.generic.JSR;
+import org.apache.commons.bcel6.generic.JsrInstruction;
+import org.apache.commons.bcel6.generic.LineNumberGen;
+import org.apache.commons.bcel6.generic.MethodGen;
+import org.apache.commons.bcel6.generic.RET;
+import org.apache.commons.bcel6.generic.Type;
+
+/**
+ * Tests the inlining of JSR/RET subroutines, running the result.
+ */
+public class SubroutineInlinerTestCase extends AbstractTestCase {
+
+    private final ClassGen cg = newClassGen("SubroutineTest");
+
+    private MethodGen newMethod(InstructionList il) {
+        return new MethodGen(Constants.ACC_PUBLIC | Constants.ACC_STATIC, Type.INT, new Type[] { Type.INT },
+                new String[] { "x" }, "f", cg.getClassName(), il, cg.getConstantPool());
+    }
+
+    /**
+     * static int f(int x) { try { if (x != 0) throw null; } catch (Throwable t) { }
+     * finally { x += 10; inner: x += 100; } return x; } with the finally block and
+     * the inner block as nested subroutines, called from the normal and the
+     * exceptional path.
+     */
+    private MethodGen createMethod() {
+        InstructionList il = new InstructionList();
+        InstructionHandle start = il.append(new ILOAD(0));
+        BranchHandle to_throw = il.append(new IFNE(null));
+        BranchHandle jsr_normal = il.append(new JSR(null));
+        il.append(new ILOAD(0));
+        il.append(InstructionConstants.IRETURN);
+        to_throw.setTarget(il.append(InstructionConstants.ACONST_NULL));
+        InstructionHandle end = il.append(InstructionConstants.ATHROW);
+        InstructionHandle handler = il.append(new ASTORE(2));
+        BranchHandle jsr_handler = il.append(new JSR(null));
+        il.append(new ILOAD(0));
+        InstructionHandle last = il.append(InstructionConstants.IRETURN);
+        InstructionHandle fin = il.append(new ASTORE(1));
+        InstructionHandle add = il.append(new IINC(0, 10));
+        BranchHandle jsr_inner = il.append(new JSR(null));
+        il.append(new RET(1));
+        InstructionHandle inner = il.append(new ASTORE(3));
+        il.append(new IINC(0, 100));
+        InstructionHandle ret = il.append(new RET(3));
+        jsr_normal.setTarget(fin);
+        jsr_handler.setTarget(fin);
+        jsr_inner.setTarget(inner);
+        MethodGen mg = newMethod(il);
+        mg.addExceptionHandler(start, end, handler, null);
+        mg.addLocalVariable("x", Type.INT, 0, start, ret);
+        mg.addLineNumber(start, 10);
+        mg.addLineNumber(last, 11);
+        mg.addLineNumber(add, 20);
+        mg.setMaxStack();
+        mg.setMaxLocals();
+        return mg;
+    }
+
+    public void testInlining() throws Exception {
+        MethodGen mg = createMethod();
+        assertEquals(110, runInt(cg, mg, 0));
+        assertEquals(111, runInt(cg, mg, 1));
+        int max_stack = mg.getMaxStack();
+
+        assertTrue(new SubroutineInliner().inline(mg));
+        InstructionList il = mg.getInstructionList();
+        assertEquals(29, il.getLength());
+        for (InstructionHandle ih : il.getInstructionHandles()) {
+            assertFalse(ih.getInstruction() instanceof JsrInstruction);
+            assertFalse(ih.getInstruction() instanceof RET);
+        }
+        CodeExceptionGen[] handlers = mg.getExceptionHandlers();
+        assertEquals(1, handlers.length);
+        assertSame(il.getStart(), handlers[0].getStartPC());
+        assertEquals(Constants.ATHROW, handlers[0].getEndPC().getInstruction().getOpcode());
+        assertTrue(handlers[0].getHandlerPC().getInstruction() instanceof ASTORE);
+        assertEquals(5, mg.getLocalVariables().length);
+        int twenty = 0;
+        for (LineNumberGen l : mg.getLineNumbers()) {
+            if (l.getSourceLine() == 20) {
+                twenty++;
+                assertEquals(Constants.IINC, l.getInstruction().getInstruction().getOpcode());
+            }
+        }
+        assertEquals(2, twenty);
+        mg.setMaxStack();
+        assertEquals(max_stack, mg.getMaxStack());
+
+        assertEquals(110, runInt(cg, mg, 0));
+        assertEquals(111, runInt(cg, mg, 1));
+        assertFalse(new SubroutineInliner().inline(mg));
+    }
+
+    /**
+     * static int f(int x) { if (x >= 0) { try { } finally { x += 10; if (x != 10) goto shared; } return x; }
+     * shared: x += 1000; return x; } with the subroutine falling through into the code it
+     * shares with the main routine.
+     */
+    public void testFallThroughIntoSharedCode() throws Exception {
+        InstructionList il = new InstructionList();
+        il.append(new ILOAD(0));
+        BranchHandle to_shared = il.append(new IFLT(null));
+        BranchHandle call = il.append(new JSR(null));
+        il.append(new ILOAD(0));
+        il.append(InstructionConstants.IRETURN);
+        InstructionHandle sub = il.append(new ASTORE(1));
+        il.append(new IINC(0, 10));
+        il.append(new ILOAD(0));
+        il.append(new BIPUSH((byte) 10));
+        BranchHandle to_ret = il.append(new IF_ICMPEQ(null));
+        InstructionHandle shared = il.append(new IINC(0, 1000));
+        il.append(new ILOAD(0));
+        il.append(InstructionConstants.IRETURN);
+        InstructionHandle ret = il.append(new RET(1));
+        to_shared.setTarget(shared);
+        call.setTarget(sub);
+        to_ret.setTarget(ret);
+        MethodGen mg = newMethod(il);
+        mg.setMaxStack();
+        mg.setMaxLocals();
+        assertEquals(10, runInt(cg, mg, 0));
+        assertEquals(1013, runInt(cg, mg, 3));
+        assertEquals(999, runInt(cg, mg, -1));
+
+        assertTrue(new SubroutineInliner().inline(mg));
+        assertEquals(10, runInt(cg, mg, 0));
+        assertEquals(1013, runInt(cg, mg, 3));
+        assertEquals(999, runInt(cg, mg, -1));
+    }
+
+
+    /**
+     * static int f(int x) { while (x < 100) { try { x += 1; } finally { if (x >= 5) break; } }
+     * return x * 2; } with the break jumping from the subroutine to the loop exit.
+     */
+    public void testBreakOutOfFinally() throws Exception {
+        InstructionList il = new InstructionList();
+        InstructionHandle loop = il.append(new ILOAD(0));
+        il.append(new BIPUSH((byte) 100));
+        BranchHandle to_exit = il.append(new IF_ICMPGE(null));
+        il.append(new IINC(0, 1));
+        BranchHandle call = il.append(new JSR(null));
+        il.append(new GOTO(loop));
+        InstructionHandle exit = il.append(new ILOAD(0));
+        il.append(InstructionConstants.ICONST_2);
+        il.append(InstructionConstants.IMUL);
+        il.append(InstructionConstants.IRETURN);
+        InstructionHandle fin = il.append(new ASTORE(1));
+        il.append(new ILOAD(0));
+        il.append(InstructionConstants.ICONST_5);
+        BranchHandle to_ret = il.append(new IF_ICMPLT(null));
+        il.append(new GOTO(exit));
+        InstructionHandle ret = il.append(new RET(1));
+        to_exit.setTarget(exit);
+        call.setTarget(fin);
+        to_ret.setTarget(ret);
+        MethodGen mg = newMethod(il);
+        mg.setMaxStack();
+        mg.setMaxLocals();
+        assertEquals(10, runInt(cg, mg, 0));
+        assertEquals(16, runInt(cg, mg, 7));
+        assertEquals(400, runInt(cg, mg, 200));
+
+        assertTrue(new SubroutineInliner().inline(mg));
+        int exits = 0;
+        for (InstructionHandle ih : mg.getInstructionList().getInstructionHandles()) {
+            if (ih.getInstruction().getOpcode() == Constants.IMUL) {
+                exits++;
+            }
+        }
+        assertEquals(1, exits); // shared, not copied
+        assertEquals(10, runInt(cg, mg, 0));
+        assertEquals(16, runInt(cg, mg, 7));
+        assertEquals(400, runInt(cg, mg, 200));
+    }
+
+
+    public void testRecursion() {
+        InstructionList il = new InstructionList();
+        BranchHandle call = il.append(new JSR(null));
+        il.append(new ILOAD(0));
+        il.append(InstructionConstants.IRETURN);
+        InstructionHandle sub = il.append(new ASTORE(1));
+        BranchHandle again = il.append(new JSR(null));
+        il.append(new RET(1));
+        call.setTarget(sub);
+        again.setTarget(sub);
+        try {
+            new SubroutineInliner().inline(newMethod(il));
+            fail("recursive subroutine inlined");
+        } catch (ClassGenException e) {
+            // expected
+        }
+    }
+
+    public void testRetInMainRoutine() {
+        InstructionList il = new InstructionList();
+        BranchHandle call = il.append(new JSR(null));
+        il.append(new RET(1));
+        InstructionHandle sub = il.append(new ASTORE(1));
+        il.append(new ILOAD(0));
+        il.append(InstructionConstants.IRETURN);
+        call.setTarget(sub);
+        try {
+            new SubroutineInliner().inline(newMethod(il));
+            fail("RET of the main routine inlined");
+        } catch (ClassGenException e) {
+            // expected
+        }
+    }
+}
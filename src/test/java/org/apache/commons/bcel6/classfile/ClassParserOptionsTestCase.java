@@ -0,0 +1,117 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.apache.commons.bcel6.classfile;
+
+import java.io.ByteArrayInputStream;
+import java.util.Arrays;
+
+import org.apache.commons.bcel6.AbstractTestCase;
+
+/**
+ * Test parsing with some attributes skipped.
+ */
+public class ClassParserOptionsTestCase extends AbstractTestCase {
+
+    private static final String ANNOTATED = PACKAGE_BASE_NAME + ".data.ComplexAnnotatedClass";
+    private static final String PLAIN = PACKAGE_BASE_NAME + ".classfile.JavaClass";
+
+    private static JavaClass parse(byte[] bytes, int options) throws Exception {
+        ClassParser parser = new ClassParser(new ByteArrayInputStream(bytes), "test.class");
+        parser.setOptions(options);
+        return parser.parse();
+    }
+
+    private static boolean hasAttribute(Attribute[] attributes, Class<?> type) {
+        for (Attribute attribute : attributes) {
+            if (type.isInstance(attribute)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public void testNoOptions() throws Exception {
+        byte[] bytes = getTestClass(PLAIN).getBytes();
+        assertTrue(Arrays.equals(bytes, parse(bytes, 0).getBytes()));
+    }
+
+    public void testSkipDebug() throws Exception {
+        byte[] bytes = getTestClass(PLAIN).getBytes();
+        JavaClass clazz = parse(bytes, ClassParser.SKIP_DEBUG);
+        assertEquals("<Unknown>", clazz.getSourceFileName());
+        for (Method method : clazz.getMethods()) {
+            Code code = method.getCode();
+            if (code != null) {
+                assertNull(code.getLineNumberTable());
+                assertNull(code.getLocalVariableTable());
+            }
+        }
+        // The result still dumps into a consistent class file
+        byte[] stripped = clazz.getBytes();
+        assertTrue(stripped.length < bytes.length);
+        assertEquals(stripped.length, clazz.getSize());
+        JavaClass reparsed = parse(stripped, 0);
+        assertTrue(Arrays.equals(stripped, reparsed.getBytes()));
+        assertEquals(clazz.getMethods().length, reparsed.getMethods().length);
+    }
+
+    public void testSkipFrames() throws Exception {
+        JavaClass clazz = parse(getTestClass(PLAIN).getBytes(), ClassParser.SKIP_FRAMES);
+        for (Method method : clazz.getMethods()) {
+            Code code = method.getCode();
+            if (code != null) {
+                assertFalse(hasAttribute(code.getAttributes(), StackMap.class));
+            }
+        }
+    }
+
+    public void testSkipAnnotations() throws Exception {
+        byte[] bytes = getTestClass(ANNOTATED).getBytes();
+        assertTrue(parse(bytes, 0).getAnnotationEntries().length > 0);
+        JavaClass clazz = parse(bytes, ClassParser.SKIP_ANNOTATIONS);
+        assertEquals(0, clazz.getAnnotationEntries().length);
+        for (Method method : clazz.getMethods()) {
+            assertEquals(0, method.getAnnotationEntries().length);
+        }
+        for (Field field : clazz.getFields()) {
+            assertEquals(0, field.getAnnotationEntries().length);
+        }
+    }
+
+    public void testSkipCode() throws Exception {
+        byte[] bytes = getTestClass(PLAIN).getBytes();
+        JavaClass clazz = parse(bytes, ClassParser.SKIP_CODE);
+        assertTrue(clazz.getMethods().length > 0);
+        for (Method method : clazz.getMethods()) {
+            assertNull(method.getCode());
+        }
+        // Everything after the methods is still read correctly
+        assertEquals(getTestClass(PLAIN).getSourceFileName(), clazz.getSourceFileName());
+    }
+
+    public void testSkipUnknown() throws Exception {
+        byte[] bytes = getTestClass(PLAIN).getBytes();
+        JavaClass all = parse(bytes, ClassParser.SKIP_DEBUG | ClassParser.SKIP_FRAMES
+                | ClassParser.SKIP_ANNOTATIONS | ClassParser.SKIP_UNKNOWN);
+        assertEquals(getTestClass(PLAIN).getMethods().length, all.getMethods().length);
+        for (Attribute attribute : all.getAttributes()) {
+            assertFalse(attribute instanceof Unknown);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.apache.commons.bcel6.classfile;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.apache.commons.bcel6.AbstractTestCase;
+import org.apache.commons.bcel6.Constants;
+import org.apache.commons.bcel6.generic.ClassGen;
+
+/**
+ * Test that the exact-size serialization matches the stream based dump().
+ */
+public class JavaClassDumpTestCase extends AbstractTestCase {
+
+    private static final String[] CLASSES = {
+        PACKAGE_BASE_NAME + ".data.SimpleClass",
+        PACKAGE_BASE_NAME + ".data.ComplexAnnotatedClass",
+        PACKAGE_BASE_NAME + ".data.AnnotatedFields",
+        PACKAGE_BASE_NAME + ".data.AnonymousClassTest",
+        PACKAGE_BASE_NAME + ".classfile.JavaClass",
+        PACKAGE_BASE_NAME + ".generic.InstructionFactory"
+    };
+
+    private static byte[] streamDump(JavaClass clazz) throws Exception {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(baos);
+        clazz.dump(dos);
+        dos.close();
+        return baos.toByteArray();
+    }
+
+    public void testGetBytes() throws Exception {
+        for (String name : CLASSES) {
+            JavaClass clazz = getTestClass(name);
+            byte[] expected = streamDump(clazz);
+            assertEquals(name, expected.length, clazz.getSize());
+            assertTrue(name, Arrays.equals(expected, clazz.getBytes()));
+        }
+    }
+
+    public void testGetBytesFromClassGen() throws Exception {
+        for (String name : CLASSES) {
+            JavaClass clazz = new ClassGen(getTestClass(name)).getJavaClass();
+            byte[] expected = streamDump(clazz);
+            assertEquals(name, expected.length, clazz.getSize());
+            assertTrue(name, Arrays.equals(expected, clazz.getBytes()));
+        }
+    }
+
+    public void testDumpByteBuffer() throws Exception {
+        JavaClass clazz = getTestClass(CLASSES[1]);
+        byte[] expected = streamDump(clazz);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(clazz.getSize() + 4);
+        buffer.putInt(42);
+        clazz.dump(buffer);
+        assertEquals(expected.length + 4, buffer.position());
+        buffer.flip();
+        buffer.getInt();
+        byte[] actual = new byte[expected.length];
+        buffer.get(actual);
+        assertTrue(Arrays.equals(expected, actual));
+    }
+
+    public void testConstantTooLong() {
+        ClassGen cg = new ClassGen("TooLong", "java.lang.Object", "TooLong.java", Constants.ACC_PUBLIC, null);
+        char[] chars = new char[70000];
+        Arrays.fill(chars, 'x');
+        cg.getConstantPool().addUtf8(new String(chars));
+        JavaClass clazz = cg.getJavaClass();
+        try {
+            clazz.dump(ByteBuffer.allocate(clazz.getSize()));
+            fail("constant of 70000 bytes dumped");
+        } catch (ClassFormatException e) {
+            assertTrue(e.getMessage(), e.getMessage().indexOf("TooLong") >= 0);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.commons.bcel6.generic;
+
+import org.apache.commons.bcel6.AbstractTestCase;
+import org.apache.commons.bcel6.classfile.AnnotationEntry;
+import org.apache.commons.bcel6.classfile.Constant;
+import org.apache.commons.bcel6.classfile.ConstantPool;
+import org.apache.commons.bcel6.classfile.ConstantUtf8;
+import org.apache.commons.bcel6.classfile.JavaClass;
+import org.apache.commons.bcel6.classfile.Method;
+
+/**
+ * Tests the removal of unused constants, comparing the code and having
+ * the JVM verify the compacted classes.
+ */
+public class ConstantPoolCompactorTestCase extends AbstractTestCase {
+
+    private static boolean containsUtf8(ConstantPool cp, String value) {
+        for (int i = 1; i < cp.getLength(); i++) {
+            Constant c = cp.getConstant(i);
+            if (c instanceof ConstantUtf8 && value.equals(((ConstantUtf8) c).getBytes())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void assertSameCode(JavaClass expected, JavaClass actual) {
+        Method[] expected_methods = expected.getMethods();
+        Method[] actual_methods = actual.getMethods();
+        assertEquals(expected_methods.length, actual_methods.length);
+        for (int i = 0; i < expected_methods.length; i++) {
+            assertEquals(expected_methods[i].toString(), actual_methods[i].toString());
+            if (expected_methods[i].getCode() != null) {
+                assertEquals(expected_methods[i].getCode().toString(false),
+                        actual_methods[i].getCode().toString(false));
+            }
+        }
+    }
+
+    public void testUnusedConstants() throws Exception {
+        JavaClass original = getTestClass(PACKAGE_BASE_NAME + ".data.ComplexAnnotatedClass");
+        ClassGen cg = new ClassGen(original);
+        ConstantPoolGen cp = cg.getConstantPool();
+        cp.addString("unused string");
+        cp.addMethodref("some.Class", "unusedMethod", "()V");
+        cp.addLong(42L);
+        cp.addFloat(1.5f);
+
+        JavaClass uncompacted = cg.getJavaClass();
+        assertTrue(containsUtf8(uncompacted.getConstantPool(), "unused string"));
+        cg.setCompactConstantPool(true);
+        JavaClass compacted = cg.getJavaClass();
+        ConstantPool pool = compacted.getConstantPool();
+        assertFalse(containsUtf8(pool, "unused string"));
+        assertFalse(containsUtf8(pool, "unusedMethod"));
+        assertTrue(pool.getLength() <= original.getConstantPool().getLength());
+        assertTrue(containsUtf8(cg.getConstantPool().getFinalConstantPool(), "unused string"));
+
+        assertSameCode(uncompacted, compacted);
+        AnnotationEntry[] expected = uncompacted.getAnnotationEntries();
+        AnnotationEntry[] actual = compacted.getAnnotationEntries();
+        assertEquals(expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i].toShortString(), actual[i].toShortString());
+        }
+
+        // Nothing left to remove
+        assertSame(compacted, ConstantPoolCompactor.compact(compacted));
+    }
+
+    /**
+     * Drops methods from a class so that their constants become unused,
+     * and has the JVM verify the compacted class, including its stack map
+     * frames.
+     */
+    public void testVerifiedByJvm() throws Exception {
+        JavaClass original = getTestClass(PACKAGE_BASE_NAME + ".generic.InstructionList");
+        ClassGen cg = new ClassGen(original);
+        Method[] methods = cg.getMethods();
+        for (int i = 0; i < methods.length; i += 2) {
+            if (!methods[i].getName().startsWith("<")) {
+                cg.removeMethod(methods[i]);
+            }
+        }
+        JavaClass uncompacted = cg.getJavaClass();
+        JavaClass compacted = ConstantPoolCompactor.compact(uncompacted);
+        assertNotSame(uncompacted, compacted);
+        assertTrue(compacted.getConstantPool().getLength() < uncompacted.getConstantPool().getLength());
+        assertEquals(uncompacted.getConstantPool().getLength(), cg.getConstantPool().getSize());
+        assertSameCode(uncompacted, compacted);
+
+        defineClass(compacted).getDeclaredMethods(); // links and verifies
+    }
+}
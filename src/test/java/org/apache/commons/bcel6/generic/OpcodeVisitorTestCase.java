@@ -0,0 +1,134 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.apache.commons.bcel6.generic;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.bcel6.Constants;
+import org.apache.commons.bcel6.Repository;
+import org.apache.commons.bcel6.classfile.JavaClass;
+import org.apache.commons.bcel6.classfile.Method;
+
+import junit.framework.TestCase;
+
+public class OpcodeVisitorTestCase extends TestCase {
+
+    private List<InstructionList> getInstructionLists(Class<?> cls) throws ClassNotFoundException {
+        JavaClass jc = Repository.lookupClass(cls);
+        ConstantPoolGen cp = new ConstantPoolGen(jc.getConstantPool());
+        List<InstructionList> result = new ArrayList<>();
+        for (Method method : jc.getMethods()) {
+            InstructionList il = new MethodGen(method, jc.getClassName(), cp).getInstructionList();
+            if (il != null) {
+                result.add(il);
+            }
+        }
+        return result;
+    }
+
+    /** @return visitor recording the names of the methods called on it */
+    private static Visitor recorder(final List<String> calls) {
+        return (Visitor) Proxy.newProxyInstance(Visitor.class.getClassLoader(), new Class<?>[] { Visitor.class },
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, java.lang.reflect.Method method, Object[] args) {
+                        calls.add(method.getName());
+                        return null;
+                    }
+                });
+    }
+
+    public void testVisitLeafCallsLastMethodOfAccept() throws Exception {
+        List<String> chain = new ArrayList<>();
+        List<String> leaf = new ArrayList<>();
+        Visitor chainRecorder = recorder(chain);
+        Visitor leafRecorder = recorder(leaf);
+        for (InstructionList il : getInstructionLists(InstructionFactory.class)) {
+            for (Instruction i : il.getInstructions()) {
+                chain.clear();
+                leaf.clear();
+                i.accept(chainRecorder);
+                OpcodeVisitor.visitLeaf(i, leafRecorder);
+                assertEquals(i.toString(), 1, leaf.size());
+                assertEquals(i.toString(), chain.get(chain.size() - 1), leaf.get(0));
+            }
+        }
+    }
+
+    public void testCategoryRegistration() throws Exception {
+        final int[] counts = new int[3];
+        OpcodeVisitor visitor = new OpcodeVisitor()
+            .register(StackProducer.class, new OpcodeVisitor.Handler<StackProducer>() {
+                @Override
+                public void visit(StackProducer obj) {
+                    counts[0]++;
+                }
+            })
+            .register(LoadInstruction.class, new OpcodeVisitor.Handler<LoadInstruction>() {
+                @Override
+                public void visit(LoadInstruction obj) {
+                    counts[1]++;
+                }
+            })
+            .setDefaultHandler(new OpcodeVisitor.Handler<Instruction>() {
+                @Override
+                public void visit(Instruction obj) {
+                    counts[2]++;
+                }
+            });
+
+        int producers = 0;
+        int loads = 0;
+        int total = 0;
+        for (InstructionList il : getInstructionLists(InstructionFactory.class)) {
+            visitor.visit(il);
+            for (Instruction i : il.getInstructions()) {
+                if (i instanceof LoadInstruction) {
+                    loads++;
+                } else if (i instanceof StackProducer) {
+                    producers++;
+                }
+                total++;
+            }
+        }
+        assertTrue(loads > 0);
+        assertEquals(producers, counts[0]);
+        assertEquals(loads, counts[1]);
+        assertEquals(total - producers - loads, counts[2]);
+    }
+
+    public void testInvalidRegistration() {
+        OpcodeVisitor visitor = new OpcodeVisitor();
+        try {
+            visitor.register(Constants.WIDE, null);
+            fail("WIDE is not an instruction");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            visitor.register(String.class, null);
+            fail("String is not an instruction category");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+}
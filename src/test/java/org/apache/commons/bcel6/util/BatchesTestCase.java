@@ -0,0 +1,102 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.commons.bcel6.util;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import junit.framework.TestCase;
+
+public class BatchesTestCase extends TestCase {
+
+    private ExecutorService executor;
+
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        executor = Executors.newFixedThreadPool(2);
+    }
+
+
+    @Override
+    protected void tearDown() throws Exception {
+        executor.shutdown();
+        super.tearDown();
+    }
+
+
+    public void testBatchesInOrder() throws Exception {
+        List<Future<Integer>> futures = Batches.submit(executor, Arrays.asList(1, 2, 3, 4, 5), 2,
+                new Batches.Task<Integer, Integer>() {
+
+                    @Override
+                    public Integer run( List<Integer> batch ) {
+                        int sum = 0;
+                        for (Integer i : batch) {
+                            sum += i.intValue();
+                        }
+                        return Integer.valueOf(sum);
+                    }
+                });
+        assertEquals(3, futures.size());
+        assertEquals(3, Batches.get(futures.get(0), RuntimeException.class).intValue());
+        assertEquals(7, Batches.get(futures.get(1), RuntimeException.class).intValue());
+        assertEquals(5, Batches.get(futures.get(2), RuntimeException.class).intValue());
+    }
+
+
+    private Future<Void> failing( final Exception e ) {
+        return Batches.submit(executor, Arrays.asList("x"), new Batches.Task<String, Void>() {
+
+            @Override
+            public Void run( List<String> batch ) throws Exception {
+                throw e;
+            }
+        });
+    }
+
+
+    public void testExceptionsUnwrapped() throws Exception {
+        IOException io = new IOException("io");
+        try {
+            Batches.get(failing(io), IOException.class);
+            fail();
+        } catch (IOException e) {
+            assertSame(io, e);
+        }
+        IllegalArgumentException runtime = new IllegalArgumentException("runtime");
+        try {
+            Batches.get(failing(runtime), IOException.class);
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertSame(runtime, e);
+        }
+        ClassNotFoundException other = new ClassNotFoundException("other");
+        try {
+            Batches.get(failing(other), IOException.class);
+            fail();
+        } catch (IllegalStateException e) {
+            assertSame(other, e.getCause());
+        }
+    }
+}
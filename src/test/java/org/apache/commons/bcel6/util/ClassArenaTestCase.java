@@ -0,0 +1,198 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.commons.bcel6.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.bcel6.classfile.ClassFormatException;
+import org.apache.commons.bcel6.classfile.ClassParser;
+import org.apache.commons.bcel6.classfile.Code;
+import org.apache.commons.bcel6.classfile.JavaClass;
+import org.apache.commons.bcel6.classfile.Method;
+
+public class ClassArenaTestCase extends TestCase {
+
+    private static byte[] bytes( int length, int seed ) {
+        byte[] b = new byte[length];
+        for (int i = 0; i < length; i++) {
+            b[i] = (byte) (i * 31 + seed);
+        }
+        return b;
+    }
+
+
+    public void testChunks() throws Exception {
+        ClassArena arena = new ClassArena(true, 100);
+        assertTrue(arena.isDirect());
+        arena.put("a", bytes(60, 1));
+        arena.put("b", bytes(30, 2));
+        arena.put("c", bytes(30, 3)); // new chunk
+        arena.put("d", bytes(250, 4)); // chunk of its own
+        assertEquals(4, arena.size());
+        assertEquals(370, arena.getUsed());
+        assertEquals(450, arena.getAllocated());
+        assertTrue(Arrays.equals(bytes(60, 1), arena.getBytes("a")));
+        assertTrue(Arrays.equals(bytes(30, 2), arena.getBytes("b")));
+        assertTrue(Arrays.equals(bytes(30, 3), arena.getBytes("c")));
+        assertTrue(Arrays.equals(bytes(250, 4), arena.getBytes("d")));
+
+        arena.put("b", bytes(10, 5));
+        assertTrue(Arrays.equals(bytes(10, 5), arena.getBytes("b")));
+        assertEquals(350, arena.getUsed());
+        assertFalse(arena.putIfAbsent("b", bytes(20, 7)));
+        assertTrue(Arrays.equals(bytes(10, 5), arena.getBytes("b")));
+        assertEquals(350, arena.getUsed());
+        assertTrue(arena.remove("a"));
+        assertFalse(arena.remove("a"));
+        assertFalse(arena.contains("a"));
+        assertNull(arena.getBytes("a"));
+        assertNull(arena.getInputStream("a"));
+        assertEquals(290, arena.getUsed());
+        assertEquals(450, arena.getAllocated());
+
+        InputStream in = arena.getInputStream("c");
+        arena.release();
+        assertEquals(0, arena.size());
+        assertEquals(0, arena.getAllocated());
+        byte[] read = new byte[30];
+        assertEquals(30, in.read(read, 0, 30));
+        assertEquals(-1, in.read());
+        assertTrue(Arrays.equals(bytes(30, 3), read));
+
+        arena.put("a", bytes(5, 6));
+        assertEquals(100, arena.getAllocated());
+    }
+
+
+    public void testParse() throws Exception {
+        ClassArena arena = new ClassArena();
+        ClassPath path = ClassPath.SYSTEM_CLASS_PATH;
+        for (String name : new String[] { "java.lang.Object", "java.lang.String" }) {
+            try (InputStream is = path.getInputStream(name)) {
+                arena.put(name, new ClassParser(is, name).parse().getBytes());
+            }
+        }
+        try (InputStream is = arena.getInputStream("java.lang.String")) {
+            JavaClass clazz = new ClassParser(is, "java.lang.String").parse();
+            assertEquals("java.lang.String", clazz.getClassName());
+            assertTrue(Arrays.equals(clazz.getBytes(), arena.getBytes("java.lang.String")));
+        }
+    }
+
+
+    public void testCodeView() throws Exception {
+        ClassArena arena = new ClassArena(true, 1024);
+        JavaClass clazz;
+        try (InputStream is = ClassPath.SYSTEM_CLASS_PATH.getInputStream("java.lang.Integer")) {
+            clazz = new ClassParser(is, "java.lang.Integer").parse();
+        }
+        arena.put("java.lang.Integer", clazz.getBytes());
+        Method method = null;
+        for (Method m : clazz.getMethods()) {
+            if (m.getName().equals("toString") && m.getSignature().equals("(II)Ljava/lang/String;")) {
+                method = m;
+            }
+        }
+        Code code = method.getCode();
+        CodeView view = arena.getCode("java.lang.Integer", "toString", "(II)Ljava/lang/String;");
+        assertEquals(code.getMaxStack(), view.getMaxStack());
+        assertEquals(code.getMaxLocals(), view.getMaxLocals());
+        assertEquals(code.getCode().length, view.getLength());
+        assertEquals(code.getCode()[0] & 0xff, view.getByte(0));
+        assertTrue(Arrays.equals(code.getCode(), view.toByteArray()));
+        assertTrue(view.getCode().isDirect());
+        assertTrue(view.getCode().isReadOnly());
+
+        assertNull(arena.getCode("java.lang.Integer", "toString", "(J)Ljava/lang/String;"));
+        assertNull(arena.getCode("java.lang.Number", "intValue", "()I"));
+        arena.release();
+        assertTrue(Arrays.equals(code.getCode(), view.toByteArray()));
+
+        arena.put("bogus", bytes(100, 7));
+        try {
+            arena.getCode("bogus", "m", "()V");
+            fail("expected ClassFormatException");
+        } catch (ClassFormatException e) {
+            // expected
+        }
+        byte[] truncated = Arrays.copyOf(clazz.getBytes(), 200);
+        arena.put("truncated", truncated);
+        try {
+            arena.getCode("truncated", "m", "()V");
+            fail("expected ClassFormatException");
+        } catch (ClassFormatException e) {
+            // expected
+        }
+    }
+
+
+    /**
+     * Appends Dynamic, Module and Package constants to the constant pool of
+     * a class file, as the class files of newer versions may contain them.
+     */
+    private static byte[] addNewerConstants(JavaClass clazz) throws Exception {
+        ByteArrayOutputStream pool = new ByteArrayOutputStream();
+        clazz.getConstantPool().dump(new DataOutputStream(pool));
+        byte[] bytes = clazz.getBytes();
+        int end = 8 + pool.size();
+        byte[] constants = { 17, 0, 0, 0, 1, 19, 0, 1, 20, 0, 1 };
+        int count = clazz.getConstantPool().getLength() + 3;
+        byte[] result = new byte[bytes.length + constants.length];
+        System.arraycopy(bytes, 0, result, 0, end);
+        System.arraycopy(constants, 0, result, end, constants.length);
+        System.arraycopy(bytes, end, result, end + constants.length, bytes.length - end);
+        result[8] = (byte) (count >> 8);
+        result[9] = (byte) count;
+        return result;
+    }
+
+
+    public void testNewerConstants() throws Exception {
+        JavaClass clazz;
+        try (InputStream is = ClassPath.SYSTEM_CLASS_PATH.getInputStream("java.lang.Number")) {
+            clazz = new ClassParser(is, "java.lang.Number").parse();
+        }
+        byte[] bytes = addNewerConstants(clazz);
+        ClassArena arena = new ClassArena();
+        arena.put("java.lang.Number", bytes);
+        CodeView view = arena.getCode("java.lang.Number", "shortValue", "()S");
+        assertNotNull(view);
+        for (Method m : clazz.getMethods()) {
+            if (m.getName().equals("shortValue")) {
+                assertTrue(Arrays.equals(m.getCode().getCode(), view.toByteArray()));
+            }
+        }
+        assertEquals(DependencyExtractor.getReferencedClassNames(clazz.getBytes()),
+                DependencyExtractor.getReferencedClassNames(bytes));
+    }
+
+
+    public void testAbstractMethodHasNoCode() throws Exception {
+        ClassArena arena = new ClassArena();
+        try (InputStream is = ClassPath.SYSTEM_CLASS_PATH.getInputStream("java.lang.Number")) {
+            arena.put("java.lang.Number", new ClassParser(is, "java.lang.Number").parse().getBytes());
+        }
+        assertNull(arena.getCode("java.lang.Number", "intValue", "()I"));
+        assertNotNull(arena.getCode("java.lang.Number", "shortValue", "()S"));
+    }
+}
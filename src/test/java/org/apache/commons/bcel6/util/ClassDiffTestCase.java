@@ -0,0 +1,222 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.commons.bcel6.util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.SortedMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.bcel6.Constants;
+import org.apache.commons.bcel6.classfile.ClassParser;
+import org.apache.commons.bcel6.classfile.JavaClass;
+import org.apache.commons.bcel6.classfile.Method;
+import org.apache.commons.bcel6.generic.ClassGen;
+import org.apache.commons.bcel6.generic.CodeExceptionGen;
+import org.apache.commons.bcel6.generic.ConstantPoolGen;
+import org.apache.commons.bcel6.generic.InstructionFactory;
+import org.apache.commons.bcel6.generic.InstructionList;
+import org.apache.commons.bcel6.generic.MethodGen;
+import org.apache.commons.bcel6.generic.PUSH;
+import org.apache.commons.bcel6.generic.Type;
+
+public class ClassDiffTestCase extends TestCase {
+
+    /** Variations of the generated class */
+    private static final int SHUFFLED = 1, BODY = 2, PRIVATE = 4, PUBLIC = 8, LINES = 16;
+
+
+    /**
+     * public class Sample { public static String name() { return "sample"; }
+     * static int answer() { return 42; } }, varied as given.
+     */
+    private static JavaClass build( String name, int variation ) {
+        ClassGen cg = new ClassGen(name, "java.lang.Object", name + ".java", Constants.ACC_PUBLIC
+                | Constants.ACC_SUPER, null);
+        ConstantPoolGen cp = cg.getConstantPool();
+        if ((variation & SHUFFLED) != 0) {
+            cp.addString("unused");
+            cp.addInteger(100000);
+            cp.addString("sample");
+            cp.addUtf8("()I");
+        }
+        InstructionFactory factory = new InstructionFactory(cg);
+
+        InstructionList il = new InstructionList();
+        il.append(new PUSH(cp, (variation & BODY) != 0 ? "changed" : "sample"));
+        il.append(InstructionFactory.createReturn(Type.STRING));
+        MethodGen mg = new MethodGen(Constants.ACC_PUBLIC | Constants.ACC_STATIC, Type.STRING, Type.NO_ARGS,
+                null, "name", name, il, cp);
+        if ((variation & LINES) != 0) {
+            mg.addLineNumber(il.getStart(), 7);
+        }
+        mg.setMaxStack();
+        cg.addMethod(mg.getMethod());
+
+        il = new InstructionList();
+        il.append(new PUSH(cp, 100000));
+        il.append(InstructionFactory.createReturn(Type.INT));
+        mg = new MethodGen(Constants.ACC_STATIC, Type.INT, Type.NO_ARGS, null, "answer", name, il, cp);
+        mg.setMaxStack();
+        cg.addMethod(mg.getMethod());
+
+        if ((variation & (PRIVATE | PUBLIC)) != 0) {
+            il = new InstructionList();
+            il.append(factory.createInvoke(name, "answer", Type.INT, Type.NO_ARGS, Constants.INVOKESTATIC));
+            il.append(InstructionFactory.createReturn(Type.INT));
+            mg = new MethodGen(((variation & PUBLIC) != 0 ? Constants.ACC_PUBLIC : Constants.ACC_PRIVATE)
+                    | Constants.ACC_STATIC, Type.INT, Type.NO_ARGS, null, "extra", name, il, cp);
+            mg.setMaxStack();
+            cg.addMethod(mg.getMethod());
+        }
+        return cg.getJavaClass();
+    }
+
+
+    private static ClassDiff diff( int variation ) {
+        return new ClassDiff(new ClassDigest(build("Sample", 0)), new ClassDigest(build("Sample", variation)));
+    }
+
+
+    public void testConstantPoolOrder() {
+        JavaClass plain = build("Sample", 0);
+        JavaClass shuffled = build("Sample", SHUFFLED);
+        assertFalse(Arrays.equals(plain.getBytes(), shuffled.getBytes()));
+        assertEquals(new ClassDigest(plain), new ClassDigest(shuffled));
+        assertFalse(diff(SHUFFLED).isChanged());
+        assertFalse(diff(LINES).isChanged());
+    }
+
+
+    public void testBodyChange() {
+        ClassDiff diff = diff(BODY | SHUFFLED);
+        assertTrue(diff.isChanged());
+        assertFalse(diff.isApiChanged());
+        assertEquals(Collections.singleton("name()Ljava/lang/String;"), diff.getChangedMethods());
+        assertTrue(diff.getAddedMethods().isEmpty());
+        assertTrue(diff.getRemovedMethods().isEmpty());
+    }
+
+
+    public void testMemberChanges() {
+        ClassDiff diff = diff(PRIVATE);
+        assertTrue(diff.isChanged());
+        assertFalse(diff.isApiChanged());
+        assertEquals(Collections.singleton("extra()I"), diff.getAddedMethods());
+        assertTrue(diff.getChangedMethods().isEmpty());
+
+        diff = diff(PUBLIC);
+        assertTrue(diff.isApiChanged());
+        assertEquals(Collections.singleton("extra()I"), diff.getAddedMethods());
+
+        diff = new ClassDiff(new ClassDigest(build("Sample", PUBLIC)), new ClassDigest(build("Sample", PRIVATE)));
+        assertTrue(diff.isApiChanged());
+        assertTrue(diff.getAddedMethods().isEmpty());
+        assertTrue(diff.getRemovedMethods().isEmpty());
+    }
+
+
+    /**
+     * Regenerates the code of classes into fresh constant pools, in which the
+     * constants are in a different order, and compares the body hashes.
+     */
+    public void testRegeneratedCode() throws Exception {
+        File dir = new File("target/classes/org/apache/commons/bcel6/generic");
+        int methods = 0;
+        for (String file : dir.list()) {
+            if (!file.endsWith(".class")) {
+                continue;
+            }
+            JavaClass clazz = new ClassParser(new File(dir, file).getPath()).parse();
+            ConstantPoolGen old_cp = new ConstantPoolGen(clazz.getConstantPool());
+            ClassGen cg = new ClassGen(clazz.getClassName(), clazz.getSuperclassName(), file,
+                    clazz.getAccessFlags(), null);
+            cg.getConstantPool().addUtf8("shift");
+            for (Method m : clazz.getMethods()) {
+                if (m.getCode() == null) {
+                    continue;
+                }
+                MethodGen orig = new MethodGen(m, cg.getClassName(), old_cp);
+                InstructionList il = orig.getInstructionList();
+                il.replaceConstantPool(old_cp, cg.getConstantPool());
+                MethodGen mg = new MethodGen(m.getAccessFlags(), orig.getReturnType(), orig.getArgumentTypes(),
+                        null, m.getName(), cg.getClassName(), il, cg.getConstantPool());
+                for (CodeExceptionGen h : orig.getExceptionHandlers()) {
+                    mg.addExceptionHandler(h.getStartPC(), h.getEndPC(), h.getHandlerPC(), h.getCatchType());
+                }
+                mg.setMaxStack(orig.getMaxStack());
+                mg.setMaxLocals(orig.getMaxLocals());
+                cg.addMethod(mg.getMethod());
+            }
+            ClassDigest original = new ClassDigest(clazz);
+            ClassDigest regenerated = new ClassDigest(cg.getJavaClass());
+            for (String m : regenerated.getMethods()) {
+                assertEquals(file + " " + m, original.getBodyHash(m), regenerated.getBodyHash(m));
+                methods++;
+            }
+        }
+        assertTrue(methods > 1000);
+    }
+
+
+    public void testCompareJars() throws Exception {
+        File before = new File("target/classdiff-before.jar");
+        File after = new File("target/classdiff-after.jar");
+        writeJar(before, build("p.Same", 0), build("p.Body", 0), build("p.Api", 0), build("p.Removed", 0));
+        writeJar(after, build("p.Same", SHUFFLED), build("p.Body", BODY), build("p.Api", PUBLIC),
+                build("p.Added", 0));
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        SortedMap<String, ClassDiff> diffs;
+        try {
+            diffs = ClassDiff.compare(executor, before, after);
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(Arrays.asList("p.Added", "p.Api", "p.Body", "p.Removed"),
+                Arrays.asList(diffs.keySet().toArray()));
+        assertNull(diffs.get("p.Added").getBefore());
+        assertNull(diffs.get("p.Removed").getAfter());
+        assertTrue(diffs.get("p.Removed").getChangedMethods().isEmpty());
+        assertEquals(2, diffs.get("p.Removed").getRemovedMethods().size());
+        assertTrue(diffs.get("p.Api").isApiChanged());
+        assertFalse(diffs.get("p.Body").isApiChanged());
+        assertEquals(diffs.keySet(), ClassDiff.compare(before, after).keySet());
+    }
+
+
+    private static void writeJar( File file, JavaClass... classes ) throws Exception {
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(file))) {
+            for (JavaClass clazz : classes) {
+                out.putNextEntry(new ZipEntry(clazz.getClassName().replace('.', '/') + ".class"));
+                out.write(clazz.getBytes());
+                out.closeEntry();
+            }
+            // not parseable by BCEL, must be skipped
+            out.putNextEntry(new ZipEntry("module-info.class"));
+            out.write(new byte[] { (byte) 0xca, (byte) 0xfe, (byte) 0xba, (byte) 0xbe, 0, 0, 0, 53, 0, 2, 19 });
+            out.closeEntry();
+        }
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.apache.commons.bcel6.util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.bcel6.Constants;
+import org.apache.commons.bcel6.Repository;
+import org.apache.commons.bcel6.classfile.ClassHeader;
+import org.apache.commons.bcel6.classfile.ClassParser;
+import org.apache.commons.bcel6.classfile.JavaClass;
+import org.apache.commons.bcel6.generic.ClassGen;
+
+import junit.framework.TestCase;
+
+public class ClassHierarchyTestCase extends TestCase {
+
+    private static final String GENERIC = "org.apache.commons.bcel6.generic.";
+
+    private final ClassPath path = new ClassPath("target" + File.separator + "classes");
+
+    public void testParseHeader() throws Exception {
+        String file = "target/classes/org/apache/commons/bcel6/generic/ALOAD.class".replace('/', File.separatorChar);
+        JavaClass clazz = new ClassParser(file).parse();
+        ClassHeader header = new ClassParser(file).parseHeader();
+        assertEquals(clazz.getClassName(), header.getClassName());
+        assertEquals(clazz.getSuperclassName(), header.getSuperclassName());
+        assertEquals(clazz.getAccessFlags(), header.getAccessFlags());
+        assertEquals(clazz.getMajor(), header.getMajor());
+        assertTrue(Arrays.equals(clazz.getInterfaceNames(), header.getInterfaceNames()));
+    }
+
+    public void testClassNames() {
+        List<String> names = path.getClassNames();
+        assertTrue(names.contains(GENERIC + "ALOAD"));
+        assertTrue(names.contains(ClassHierarchy.class.getName()));
+    }
+
+    public void testClassNamesOfJar() throws Exception {
+        File jar = File.createTempFile("hierarchy", ".jar");
+        try {
+            try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(jar))) {
+                for (String name : new String[] { "a/B.class", "META-INF/versions/9/a/B.class",
+                        "module-info.class", "a/package-info.class" }) {
+                    out.putNextEntry(new ZipEntry(name));
+                    out.closeEntry();
+                }
+            }
+            ClassPath jarPath = new ClassPath(jar.getPath());
+            assertEquals(Collections.singletonList("a.B"), jarPath.getClassNames());
+        } finally {
+            jar.delete();
+        }
+    }
+
+    private static JavaClass createClass(String name, String superclass) {
+        return new ClassGen(name, superclass, "<generated>", Constants.ACC_PUBLIC | Constants.ACC_SUPER, null)
+                .getJavaClass();
+    }
+
+    public void testCircularHierarchy() throws Exception {
+        ClassHierarchy hierarchy = new ClassHierarchy(path);
+        hierarchy.add(createClass("A", "B"));
+        hierarchy.add(createClass("B", "A"));
+        hierarchy.add(createClass("C", "A"));
+        try {
+            hierarchy.getSuperClassNames("C");
+            fail("Circular hierarchy should be detected");
+        } catch (ClassCircularityError e) {
+            // expected
+        }
+        try {
+            hierarchy.getAllInterfaceNames("A");
+            fail("Circular hierarchy should be detected");
+        } catch (ClassCircularityError e) {
+            // expected
+        }
+        assertTrue(hierarchy.getSubtypeNames("A").isEmpty());
+    }
+
+    public void testQueries() throws Exception {
+        ClassHierarchy hierarchy = new ClassHierarchy(path);
+        hierarchy.load();
+        assertEquals(path.getClassNames().size(), hierarchy.size());
+
+        String aload = GENERIC + "ALOAD";
+        JavaClass clazz = Repository.lookupClass(aload);
+        String[] expected = new String[clazz.getSuperClasses().length];
+        for (int i = 0; i < expected.length; i++) {
+            expected[i] = clazz.getSuperClasses()[i].getClassName();
+        }
+        assertTrue(Arrays.equals(expected, hierarchy.getSuperClassNames(aload)));
+        assertEquals(clazz.getAllInterfaces().length, hierarchy.getAllInterfaceNames(aload).length);
+
+        assertTrue(hierarchy.instanceOf(aload, GENERIC + "LoadInstruction"));
+        assertTrue(hierarchy.instanceOf(aload, GENERIC + "StackProducer"));
+        assertTrue(hierarchy.implementationOf(aload, GENERIC + "TypedInstruction"));
+        assertFalse(hierarchy.instanceOf(aload, GENERIC + "StoreInstruction"));
+        assertTrue(hierarchy.instanceOf(aload, "java.lang.Object"));
+
+        List<String> loads = hierarchy.getSubtypeNames(GENERIC + "LoadInstruction");
+        assertTrue(loads.contains(aload));
+        assertTrue(loads.contains(GENERIC + "ILOAD"));
+        assertFalse(loads.contains(GENERIC + "ISTORE"));
+    }
+
+    public void testMissingClass() {
+        try {
+            new ClassHierarchy(path).getHeader("does.not.Exist");
+            fail("Class should not be found");
+        } catch (ClassNotFoundException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.commons.bcel6.util;
+
+import java.io.File;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import junit.framework.TestCase;
+
+public class DependencyClosureTestCase extends TestCase {
+
+    private static final String PACKAGE = "org.apache.commons.bcel6.";
+
+    private final ClassPath path = new ClassPath("target" + File.separator + "classes");
+
+
+    private DependencyClosure newClosure() {
+        DependencyClosure closure = new DependencyClosure(path);
+        closure.addExcludes(DependencyClosure.PLATFORM_PACKAGES);
+        return closure;
+    }
+
+    public void testClosure() throws Exception {
+        DependencyGraph graph = newClosure().compute(PACKAGE + "generic.ClassGen");
+        assertTrue(graph.contains(PACKAGE + "generic.ClassGen"));
+        assertTrue(graph.contains(PACKAGE + "generic.ConstantPoolGen"));
+        assertTrue(graph.contains(PACKAGE + "classfile.JavaClass"));
+        assertFalse(graph.contains("java.lang.String"));
+        assertEquals(0, graph.getMissingClassNames().length);
+
+        List<String> deps = Arrays.asList(graph.getDependencies(PACKAGE + "generic.ClassGen"));
+        assertTrue(deps.contains(PACKAGE + "generic.ConstantPoolGen"));
+        assertTrue(deps.contains(PACKAGE + "classfile.Method")); // descriptor of a method
+        assertFalse(deps.contains(PACKAGE + "generic.ClassGen"));
+        assertTrue(Arrays.asList(graph.getDependents(PACKAGE + "generic.ConstantPoolGen"))
+                .contains(PACKAGE + "generic.ClassGen"));
+        assertTrue(graph.dependsOn(PACKAGE + "generic.ClassGen", PACKAGE + "classfile.Constant"));
+
+        // Every class found is in the graph together with its dependencies
+        for (int i = 0; i < graph.size(); i++) {
+            assertEquals(i, graph.indexOf(graph.getClassName(i)));
+            for (int d : graph.getDependencies(i)) {
+                assertTrue(d >= 0 && d < graph.size());
+            }
+        }
+    }
+
+    public void testSameResultSequentially() throws Exception {
+        DependencyGraph parallel = newClosure().compute(PACKAGE + "util.DependencyClosure",
+                PACKAGE + "verifier.Verifier");
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        DependencyGraph sequential;
+        try {
+            sequential = newClosure().compute(executor, PACKAGE + "util.DependencyClosure",
+                    PACKAGE + "verifier.Verifier");
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(sequential.size(), parallel.size());
+        assertEquals(sequential.getEdgeCount(), parallel.getEdgeCount());
+        StringWriter expected = new StringWriter();
+        sequential.write(expected);
+        StringWriter actual = new StringWriter();
+        parallel.write(actual);
+        assertEquals(expected.toString(), actual.toString());
+    }
+
+    public void testFilters() throws Exception {
+        DependencyClosure closure = new DependencyClosure(path);
+        closure.addInclude("org[.]apache[.]commons[.]bcel6[.]classfile[.].*");
+        closure.addExclude(".*Constant[A-Z].*");
+        assertTrue(closure.accept(PACKAGE + "classfile.JavaClass"));
+        assertFalse(closure.accept(PACKAGE + "classfile.ConstantUtf8"));
+        assertFalse(closure.accept(PACKAGE + "generic.ClassGen"));
+        DependencyGraph graph = closure.compute(PACKAGE + "generic.ClassGen", "does.not.Exist");
+        assertTrue(graph.contains(PACKAGE + "generic.ClassGen")); // roots are always included
+        for (String name : graph.getClassNames()) {
+            assertTrue(name, closure.accept(name) || name.equals(PACKAGE + "generic.ClassGen")
+                    || name.equals("does.not.Exist"));
+        }
+        assertEquals(Arrays.asList("does.not.Exist"), Arrays.asList(graph.getMissingClassNames()));
+        assertTrue(graph.isMissing(graph.indexOf("does.not.Exist")));
+
+        StringWriter dot = new StringWriter();
+        graph.writeDot(dot);
+        assertTrue(dot.toString().startsWith("digraph"));
+        assertTrue(dot.toString().contains("\"does.not.Exist\" [style=dashed]"));
+    }
+}
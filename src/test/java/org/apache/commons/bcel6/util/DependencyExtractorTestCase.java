@@ -0,0 +1,87 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.commons.bcel6.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.util.Arrays;
+import java.util.Set;
+
+import org.apache.commons.bcel6.classfile.ClassFormatException;
+import org.apache.commons.bcel6.classfile.ClassParser;
+import org.apache.commons.bcel6.classfile.JavaClass;
+
+import junit.framework.TestCase;
+
+public class DependencyExtractorTestCase extends TestCase {
+
+    private final ClassPath path = new ClassPath("target" + File.separator + "classes");
+
+
+    /**
+     * The extractor finds the same classes as a walk over the parsed class.
+     */
+    public void testSameAsParsed() throws Exception {
+        int count = 0;
+        for (String name : path.getClassNames()) {
+            byte[] bytes = path.getBytes(name);
+            JavaClass clazz = new ClassParser(new ByteArrayInputStream(bytes), name).parse();
+            Set<String> expected = DependencyClosure.getReferencedClassNames(clazz);
+            Set<String> actual = DependencyExtractor.getReferencedClassNames(bytes);
+            assertEquals(name, expected, actual);
+            assertTrue(actual.contains(name));
+            count++;
+        }
+        assertTrue(count > 300);
+    }
+
+    public void testDescriptorsAndArrays() throws Exception {
+        byte[] bytes = path.getBytes("org.apache.commons.bcel6.generic.ClassGen");
+        Set<String> names = DependencyExtractor.getReferencedClassNames(new ByteArrayInputStream(bytes));
+        assertTrue(names.contains("org.apache.commons.bcel6.classfile.Method")); // Method[] getMethods()
+        assertTrue(names.contains("java.lang.String"));
+        for (String name : names) {
+            assertFalse(name, name.startsWith("[") || name.indexOf('/') >= 0 || name.endsWith(";"));
+        }
+        String string = null;
+        for (String name : DependencyExtractor.getReferencedClassNames(
+                path.getBytes("org.apache.commons.bcel6.generic.MethodGen"))) {
+            if (name.equals("java.lang.String")) {
+                string = name;
+            }
+        }
+        assertSame("java.lang.String", string); // interned
+    }
+
+    public void testInvalid() throws Exception {
+        byte[] bytes = path.getBytes("org.apache.commons.bcel6.generic.ClassGen");
+        try {
+            DependencyExtractor.getReferencedClassNames(Arrays.copyOf(bytes, bytes.length / 2));
+            fail("truncated class accepted");
+        } catch (ClassFormatException e) {
+            // expected
+        }
+        bytes[0] = 0;
+        try {
+            DependencyExtractor.getReferencedClassNames(bytes);
+            fail("wrong magic number accepted");
+        } catch (ClassFormatException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.commons.bcel6.util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.bcel6.Constants;
+import org.apache.commons.bcel6.classfile.JavaClass;
+import org.apache.commons.bcel6.generic.ClassGen;
+import org.apache.commons.bcel6.generic.ConstantPoolGen;
+import org.apache.commons.bcel6.generic.ILOAD;
+import org.apache.commons.bcel6.generic.ISTORE;
+import org.apache.commons.bcel6.generic.InstructionConstants;
+import org.apache.commons.bcel6.generic.InstructionList;
+import org.apache.commons.bcel6.generic.MethodGen;
+import org.apache.commons.bcel6.generic.PUSH;
+import org.apache.commons.bcel6.generic.Type;
+
+public class DuplicateIndexTestCase extends TestCase {
+
+    /**
+     * static int f(int a, int b) { int t = a; t = t * 1000 + b; ... ; return t; },
+     * with the temporary in the given slot and the constant of the step
+     * "changed" replaced.
+     */
+    private static MethodGen createMethod( ClassGen cg, String name, int slot, int changed, boolean swap ) {
+        ConstantPoolGen cp = cg.getConstantPool();
+        InstructionList il = new InstructionList();
+        il.append(new ILOAD(swap ? 1 : 0));
+        il.append(new ILOAD(swap ? 0 : 1));
+        il.append(InstructionConstants.ISUB);
+        il.append(new ISTORE(slot));
+        for (int step = 0; step < 12; step++) {
+            il.append(new ILOAD(slot));
+            il.append(new PUSH(cp, step == changed ? 77777 : 1000 + step));
+            il.append(InstructionConstants.IMUL);
+            il.append(new ILOAD(1));
+            il.append(InstructionConstants.IADD);
+            il.append(new ISTORE(slot));
+        }
+        il.append(new ILOAD(slot));
+        il.append(InstructionConstants.IRETURN);
+        MethodGen mg = new MethodGen(Constants.ACC_PUBLIC | Constants.ACC_STATIC, Type.INT, new Type[] {
+                Type.INT, Type.INT }, null, name, cg.getClassName(), il, cp);
+        mg.setMaxStack();
+        mg.setMaxLocals();
+        return mg;
+    }
+
+
+    private static JavaClass createClass( String name, boolean shuffled, int slot ) {
+        ClassGen cg = new ClassGen(name, "java.lang.Object", name + ".java", Constants.ACC_PUBLIC
+                | Constants.ACC_SUPER, null);
+        if (shuffled) {
+            for (int i = 1011; i >= 1000; i--) {
+                cg.getConstantPool().addInteger(i);
+            }
+        }
+        cg.addMethod(createMethod(cg, "f", slot, -1, false).getMethod());
+        cg.addMethod(createMethod(cg, "g", slot, 5, false).getMethod());
+        cg.addMethod(createMethod(cg, "h", slot, -1, true).getMethod());
+        return cg.getJavaClass();
+    }
+
+
+    private static MethodFingerprint find( List<MethodFingerprint> methods, String name ) {
+        for (MethodFingerprint m : methods) {
+            if (m.getMethodName().equals(name)) {
+                return m;
+            }
+        }
+        throw new IllegalArgumentException(name);
+    }
+
+
+    public void testFingerprints() {
+        List<MethodFingerprint> a = MethodFingerprint.compute(createClass("A", false, 2));
+        List<MethodFingerprint> b = MethodFingerprint.compute(createClass("B", true, 7));
+        assertEquals(3, a.size());
+        MethodFingerprint f = find(a, "f");
+        assertEquals(78, f.getLength());
+        assertEquals(f.getHash(), find(b, "f").getHash()); // other pool order and slot
+        assertEquals(1.0, f.similarity(find(b, "f")), 0);
+        assertTrue(f.getHash() != find(a, "g").getHash());
+        assertTrue(f.getHash() != find(a, "h").getHash()); // operands swapped
+        assertTrue(f.similarity(find(a, "g")) > 0.5);
+    }
+
+
+    public void testIndex() {
+        DuplicateIndex index = new DuplicateIndex(10);
+        index.addAll(MethodFingerprint.compute(createClass("A", false, 2)));
+        index.addAll(MethodFingerprint.compute(createClass("B", true, 7)));
+        assertEquals(6, index.size());
+        MethodFingerprint f = find(index.getMethods(), "f");
+        assertEquals("B.f(II)I", index.findIdentical(f).get(0).toString());
+        assertEquals(1, index.findIdentical(f).size());
+        List<MethodFingerprint> similar = index.findSimilar(f, 0.5);
+        assertEquals("B.f(II)I", similar.get(0).toString());
+        assertTrue(similar.contains(find(index.getMethods(), "g")));
+        assertEquals(3, index.getDuplicateGroups().size());
+        assertEquals(2, index.getDuplicateGroups().get(0).size());
+        assertEquals(0, new DuplicateIndex(100).getDuplicateGroups().size());
+        assertFalse(new DuplicateIndex(100).add(f));
+    }
+
+
+    public void testBuild() throws Exception {
+        File jar = new File("target/duplicates.jar");
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(jar))) {
+            for (int i = 0; i < 40; i++) {
+                JavaClass clazz = createClass("p.C" + i, i % 2 == 0, 2 + i % 3);
+                out.putNextEntry(new ZipEntry(clazz.getClassName().replace('.', '/') + ".class"));
+                out.write(clazz.getBytes());
+                out.closeEntry();
+            }
+            // left out: a module descriptor BCEL cannot parse and a versioned copy of a class
+            out.putNextEntry(new ZipEntry("module-info.class"));
+            out.write(new byte[] { (byte) 0xca, (byte) 0xfe, (byte) 0xba, (byte) 0xbe, 0, 0, 0, 53, 0, 2, 19 });
+            out.closeEntry();
+            out.putNextEntry(new ZipEntry("META-INF/versions/9/p/C0.class"));
+            out.write(createClass("p.C0", true, 2).getBytes());
+            out.closeEntry();
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        DuplicateIndex index;
+        try {
+            index = DuplicateIndex.build(executor, 10, jar);
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(120, index.size());
+        List<List<MethodFingerprint>> groups = index.getDuplicateGroups();
+        assertEquals(3, groups.size());
+        for (List<MethodFingerprint> group : groups) {
+            assertEquals(40, group.size());
+        }
+    }
+}
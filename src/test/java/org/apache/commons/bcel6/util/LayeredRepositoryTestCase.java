@@ -0,0 +1,93 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.commons.bcel6.util;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.bcel6.classfile.JavaClass;
+import org.apache.commons.bcel6.generic.ClassGen;
+
+public class LayeredRepositoryTestCase extends TestCase {
+
+    private SharedRepository shared;
+
+
+    @Override
+    protected void setUp() {
+        shared = new SharedRepository(ClassPath.SYSTEM_CLASS_PATH, DependencyClosure.PLATFORM_PACKAGES);
+    }
+
+
+    public void testPlatformClassesAreShared() throws Exception {
+        Repository a = new LayeredRepository(shared, ClassPath.SYSTEM_CLASS_PATH);
+        Repository b = new LayeredRepository(shared, ClassPath.SYSTEM_CLASS_PATH);
+        JavaClass string = a.loadClass("java.lang.String");
+        assertSame(string, b.loadClass("java.lang.String"));
+        assertSame(string, shared.findClass("java.lang.String"));
+        assertSame(shared, string.getRepository());
+        assertFalse(((LayeredRepository) a).isLocal("java.lang.String"));
+    }
+
+
+    public void testApplicationClassesArePerLayer() throws Exception {
+        String name = LayeredRepositoryTestCase.class.getName();
+        LayeredRepository a = new LayeredRepository(shared, ClassPath.SYSTEM_CLASS_PATH);
+        LayeredRepository b = new LayeredRepository(shared, ClassPath.SYSTEM_CLASS_PATH);
+        JavaClass ca = a.loadClass(name);
+        JavaClass cb = b.loadClass(name);
+        assertNotSame(ca, cb);
+        assertSame(ca, a.loadClass(name));
+        assertTrue(a.isLocal(name));
+        assertNull(shared.findClass(name));
+        try {
+            shared.loadClass(name);
+            fail("application class in shared layer");
+        } catch (ClassNotFoundException e) {
+            // expected
+        }
+        assertEquals("junit.framework.TestCase", ca.getSuperClass().getClassName());
+        assertEquals("java.lang.Object", ca.getSuperClass().getSuperClass().getSuperClass().getClassName());
+        assertNotNull(shared.findClass("java.lang.Object"));
+
+        a.clear();
+        assertFalse(a.isLocal(name));
+        assertNotNull(shared.findClass("java.lang.Object"));
+    }
+
+
+    public void testStoredClassesShadowParent() throws Exception {
+        LayeredRepository layer = new LayeredRepository(shared, ClassPath.SYSTEM_CLASS_PATH);
+        JavaClass fake = new ClassGen("java.lang.Fake", "java.lang.Object", "Fake.java", 0, null)
+                .getJavaClass();
+        layer.storeClass(fake);
+        assertSame(fake, layer.loadClass("java.lang.Fake"));
+        assertNull(shared.findClass("java.lang.Fake"));
+        try {
+            shared.storeClass(fake);
+            fail("shared layer modified");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+        try {
+            layer.loadClass("java.lang.DoesNotExist");
+            fail("found missing class");
+        } catch (ClassNotFoundException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.apache.commons.bcel6.util;
+
+import java.io.File;
+
+import org.apache.commons.bcel6.classfile.JavaClass;
+import org.apache.commons.bcel6.classfile.Method;
+import org.apache.commons.bcel6.generic.ClassGen;
+import org.apache.commons.bcel6.generic.MethodGen;
+import org.apache.commons.bcel6.verifier.Verifier;
+import org.apache.commons.bcel6.verifier.VerifierFactory;
+
+import junit.framework.TestCase;
+
+public class MetricsTestCase extends TestCase {
+
+    private static final String CLASS_NAME = "org.apache.commons.bcel6.data.SimpleClass";
+
+    private final MetricsCollector collector = new MetricsCollector();
+
+    @Override
+    protected void setUp() {
+        Metrics.setListener(collector);
+    }
+
+    @Override
+    protected void tearDown() {
+        Metrics.setListener(null);
+    }
+
+    public void testRepository() throws Exception {
+        ClassPath cp = new ClassPath("target" + File.separator + "test-classes");
+        SyntheticRepository repository = SyntheticRepository.getInstance(cp);
+        repository.clear();
+        JavaClass clazz = repository.loadClass(CLASS_NAME);
+        assertSame(clazz, repository.loadClass(CLASS_NAME));
+
+        assertEquals(1, collector.getCount(Metric.REPOSITORY_MISS));
+        assertEquals(1, collector.getCount(Metric.REPOSITORY_HIT));
+        assertEquals(1, collector.getCount(Metric.REPOSITORY_LOAD));
+        assertEquals(1, collector.getCount(Metric.CLASSPATH_LOOKUP));
+        assertEquals(1, collector.getCount(Metric.PARSE));
+        assertEquals(clazz.getSize(), collector.getBytes(Metric.PARSE));
+        assertTrue(collector.getBytes(Metric.PARSE_CONSTANT_POOL) > 0);
+        assertTrue(collector.getBytes(Metric.PARSE_METHODS) > 0);
+        assertTrue(collector.getNanos(Metric.PARSE) >= collector.getNanos(Metric.PARSE_METHODS));
+    }
+
+    public void testGenerateAndVerify() throws Exception {
+        JavaClass clazz = org.apache.commons.bcel6.Repository.lookupClass(CLASS_NAME);
+        ClassGen cg = new ClassGen(clazz);
+        for (Method m : clazz.getMethods()) {
+            new MethodGen(m, cg.getClassName(), cg.getConstantPool()).getMethod();
+        }
+        assertEquals(clazz.getMethods().length, collector.getCount(Metric.GENERATE_METHOD));
+
+        Verifier verifier = VerifierFactory.getVerifier(CLASS_NAME);
+        verifier.flush();
+        verifier.doPass2();
+        verifier.doPass2();
+        verifier.doPass3a(0);
+        assertTrue(collector.getCount(Metric.VERIFY_PASS1) >= 1); // includes the superclasses
+        assertEquals(1, collector.getCount(Metric.VERIFY_PASS2));
+        assertEquals(1, collector.getCount(Metric.VERIFY_PASS3A));
+    }
+
+    public void testDisabled() throws Exception {
+        Metrics.setListener(null);
+        assertFalse(Metrics.isEnabled());
+        assertEquals(0, Metrics.start());
+        org.apache.commons.bcel6.Repository.lookupClass(CLASS_NAME);
+        assertEquals("", collector.toString());
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.apache.commons.bcel6.util;
+
+import org.apache.commons.bcel6.AbstractTestCase;
+import org.apache.commons.bcel6.Constants;
+import org.apache.commons.bcel6.classfile.Attribute;
+import org.apache.commons.bcel6.classfile.Method;
+import org.apache.commons.bcel6.classfile.StackMap;
+import org.apache.commons.bcel6.generic.BranchHandle;
+import org.apache.commons.bcel6.generic.ClassGen;
+import org.apache.commons.bcel6.generic.GOTO;
+import org.apache.commons.bcel6.generic.IF_ICMPLT;
+import org.apache.commons.bcel6.generic.IFEQ;
+import org.apache.commons.bcel6.generic.ILOAD;
+import org.apache.commons.bcel6.generic.ISTORE;
+import org.apache.commons.bcel6.generic.InstructionConstants;
+import org.apache.commons.bcel6.generic.InstructionHandle;
+import org.apache.commons.bcel6.generic.InstructionList;
+import org.apache.commons.bcel6.generic.LocalVariableGen;
+import org.apache.commons.bcel6.generic.MethodGen;
+import org.apache.commons.bcel6.generic.ObjectType;
+import org.apache.commons.bcel6.generic.Type;
+
+/**
+ * Tests the peephole optimizer and its standard rules, running the
+ * optimized code.
+ */
+public class PeepholeOptimizerTestCase extends AbstractTestCase {
+
+    private final ClassGen cg = newClassGen("PeepholeTest");
+    private LocalVariableGen local;
+
+    /**
+     * Computes 2 * p in a roundabout way.
+     */
+    private MethodGen createMethod() {
+        InstructionList il = new InstructionList();
+        BranchHandle to_e = il.append(new GOTO(null));
+        InstructionHandle e = il.append(new ILOAD(0));
+        to_e.setTarget(e);
+        il.append(new ISTORE(1));
+        InstructionHandle load = il.append(new ILOAD(1)); // store-load
+        il.append(new ILOAD(1));
+        il.append(new ISTORE(1));                       // load-store
+        il.append(InstructionConstants.ICONST_1);
+        il.append(InstructionConstants.ICONST_2);
+        BranchHandle to_a = il.append(new IF_ICMPLT(null)); // constant-branch, taken
+        il.append(InstructionConstants.ICONST_0);
+        il.append(InstructionConstants.IRETURN);
+        BranchHandle a = il.append(new GOTO(null));
+        to_a.setTarget(a);
+        InstructionHandle c = il.append(new ILOAD(1));
+        il.append(InstructionConstants.IADD);
+        InstructionHandle ret = il.append(InstructionConstants.IRETURN);
+        InstructionHandle b = il.append(new ILOAD(0));
+        a.setTarget(b);
+        il.append(InstructionConstants.POP);            // push-pop
+        il.append(InstructionConstants.DUP);
+        il.append(InstructionConstants.POP);            // push-pop
+        il.append(InstructionConstants.ICONST_0);
+        BranchHandle to_d = il.append(new IFEQ(null));  // constant-branch, taken
+        il.append(InstructionConstants.ICONST_M1);
+        il.append(InstructionConstants.IRETURN);
+        InstructionHandle d = il.append(new GOTO(c));
+        to_d.setTarget(d);
+        MethodGen mg = new MethodGen(Constants.ACC_PUBLIC | Constants.ACC_STATIC, Type.INT,
+                new Type[] { Type.INT }, new String[] { "p" }, "compute", cg.getClassName(), il,
+                cg.getConstantPool());
+        local = mg.addLocalVariable("x", Type.INT, 1, load, ret);
+        mg.setMaxStack();
+        return mg;
+    }
+
+    public void testRules() throws Exception {
+        MethodGen mg = createMethod();
+        int length = mg.getInstructionList().getLength();
+        assertEquals(42, runInt(cg, mg, 21));
+
+        PeepholeOptimizer optimizer = new PeepholeOptimizer();
+        assertTrue(optimizer.optimize(mg));
+        assertEquals(1, optimizer.getHits(PeepholeRules.STORE_LOAD));
+        assertEquals(1, optimizer.getHits(PeepholeRules.LOAD_STORE));
+        assertEquals(2, optimizer.getHits(PeepholeRules.PUSH_POP));
+        assertEquals(2, optimizer.getHits(PeepholeRules.CONSTANT_BRANCH));
+        // Folding the IFEQ leaves a GOTO at b, which is then threaded as well
+        assertEquals(3, optimizer.getHits(PeepholeRules.JUMP_THREADING));
+        assertTrue(optimizer.getHits(PeepholeRules.GOTO_NEXT) >= 1);
+        assertTrue(mg.getInstructionList().getLength() < length);
+        assertEquals(42, runInt(cg, mg, 21));
+        assertEquals(-6, runInt(cg, mg, -3));
+
+        // The local variable still starts right after the store
+        assertTrue(local.getStart().getPrev().getInstruction() instanceof ISTORE);
+        assertTrue(optimizer.toString().indexOf("push-pop=2") > 0);
+
+        int total = optimizer.getTotalHits();
+        assertFalse(optimizer.optimize(mg));
+        assertEquals(total, optimizer.getTotalHits());
+        optimizer.resetStatistics();
+        assertEquals(0, optimizer.getTotalHits());
+    }
+
+    public void testStoreLoadLocalRange() {
+        InstructionList il = new InstructionList();
+        il.append(new ILOAD(0));
+        il.append(new ISTORE(1));
+        InstructionHandle load = il.append(new ILOAD(1));
+        InstructionHandle ret = il.append(InstructionConstants.IRETURN);
+        MethodGen mg = new MethodGen(Constants.ACC_STATIC, Type.INT, new Type[] { Type.INT }, null, "m", "C",
+                il, cg.getConstantPool());
+        LocalVariableGen x = mg.addLocalVariable("x", Type.INT, 1, load, ret);
+        LocalVariableGen y = mg.addLocalVariable("y", Type.INT, 1, load, load);
+        assertTrue(new PeepholeOptimizer(PeepholeRules.STORE_LOAD).optimize(mg));
+        assertEquals("iload_0, dup, istore_1, ireturn", toString(il));
+        assertSame(ret, x.getStart());
+        assertSame(ret, x.getEnd());
+        assertSame(ret, y.getStart());
+        assertSame(ret, y.getEnd());
+    }
+
+    private static String toString(InstructionList il) {
+        StringBuilder buf = new StringBuilder();
+        for (InstructionHandle ih = il.getStart(); ih != null; ih = ih.getNext()) {
+            if (buf.length() > 0) {
+                buf.append(", ");
+            }
+            buf.append(ih.getInstruction().getName());
+        }
+        return buf.toString();
+    }
+
+    public void testExceptionRange() {
+        InstructionList il = new InstructionList();
+        il.append(new ILOAD(0));
+        InstructionHandle store = il.append(new ISTORE(1));
+        InstructionHandle load = il.append(new ILOAD(1));
+        il.append(InstructionConstants.IRETURN);
+        InstructionHandle handler = il.append(InstructionConstants.ATHROW);
+        MethodGen mg = new MethodGen(Constants.ACC_STATIC, Type.INT, new Type[] { Type.INT }, null, "m", "C",
+                il, cg.getConstantPool());
+        mg.addExceptionHandler(store, store, handler, ObjectType.THROWABLE);
+        PeepholeOptimizer optimizer = new PeepholeOptimizer(PeepholeRules.STORE_LOAD);
+        assertFalse(optimizer.optimize(mg)); // only the store is covered
+        assertSame(store, mg.getExceptionHandlers()[0].getStartPC());
+
+        mg.getExceptionHandlers()[0].setEndPC(load);
+        assertFalse(optimizer.optimize(mg)); // the load ends the range
+        mg.getExceptionHandlers()[0].setEndPC(load.getNext());
+        assertTrue(optimizer.optimize(mg));
+        assertEquals(Constants.DUP, mg.getExceptionHandlers()[0].getStartPC().getInstruction().getOpcode());
+    }
+
+    public void testVerifiedByJvm() throws Exception {
+        ClassGen clazz = new ClassGen(getTestClass(PACKAGE_BASE_NAME + ".util.InstructionFinder"));
+        clazz.setMajor(49);
+        clazz.setMinor(0);
+        for (Method m : clazz.getMethods()) {
+            MethodGen mg = new MethodGen(m, clazz.getClassName(), clazz.getConstantPool());
+            for (Attribute a : mg.getCodeAttributes()) {
+                if (a instanceof StackMap) {
+                    mg.removeCodeAttribute(a);
+                }
+            }
+            clazz.replaceMethod(m, mg.getMethod());
+        }
+        PeepholeOptimizer optimizer = new PeepholeOptimizer();
+        optimizer.optimize(clazz);
+        defineClass(clazz.getJavaClass()).getDeclaredMethods(); // links and verifies
+    }
+}
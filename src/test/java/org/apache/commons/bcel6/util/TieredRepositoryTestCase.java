@@ -0,0 +1,138 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.commons.bcel6.util;
+
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.bcel6.classfile.Code;
+import org.apache.commons.bcel6.classfile.JavaClass;
+import org.apache.commons.bcel6.classfile.Method;
+import org.apache.commons.bcel6.generic.ClassGen;
+
+public class TieredRepositoryTestCase extends TestCase {
+
+    private static final String[] NAMES = { "java.lang.String", "java.lang.Integer", "java.util.ArrayList",
+            "java.util.HashMap" };
+
+
+    private void checkEviction( boolean compressed ) throws Exception {
+        TieredRepository repository = new TieredRepository(ClassPath.SYSTEM_CLASS_PATH, 2, compressed);
+        JavaClass string = repository.loadClass(NAMES[0]);
+        assertSame(string, repository.loadClass(NAMES[0]));
+        for (String name : NAMES) {
+            assertEquals(name, repository.loadClass(name).getClassName());
+        }
+        assertEquals(NAMES.length, repository.size());
+        assertEquals(2, repository.getHotSize());
+        assertTrue(repository.getColdBytes() > 0);
+
+        // evicted, parsed again from the cold tier
+        JavaClass again = repository.findClass(NAMES[0]);
+        assertNotSame(string, again);
+        assertEquals(string.getMethods().length, again.getMethods().length);
+        assertSame(repository, again.getRepository());
+        assertEquals("java.lang.Object", again.getSuperClass().getClassName());
+        assertEquals(2, repository.getHotSize());
+
+        repository.clear();
+        assertEquals(0, repository.size());
+        assertEquals(0, repository.getColdBytes());
+        assertNull(repository.findClass(NAMES[0]));
+    }
+
+
+    public void testEviction() throws Exception {
+        checkEviction(false);
+    }
+
+
+    public void testCompressedEviction() throws Exception {
+        checkEviction(true);
+    }
+
+
+    public void testCompression() throws Exception {
+        TieredRepository plain = new TieredRepository(ClassPath.SYSTEM_CLASS_PATH, 1, false);
+        TieredRepository compressed = new TieredRepository(ClassPath.SYSTEM_CLASS_PATH, 1, true);
+        for (String name : NAMES) {
+            plain.loadClass(name);
+            compressed.loadClass(name);
+        }
+        assertTrue(compressed.getColdBytes() < plain.getColdBytes());
+    }
+
+
+    public void testDirectArena() throws Exception {
+        ClassArena arena = new ClassArena(true, 64 * 1024);
+        TieredRepository repository = new TieredRepository(ClassPath.SYSTEM_CLASS_PATH, 1, true, arena);
+        for (String name : NAMES) {
+            repository.loadClass(name);
+        }
+        assertSame(arena, repository.getArena());
+        assertEquals(NAMES.length, arena.size());
+        assertEquals(arena.getUsed(), repository.getColdBytes());
+        JavaClass string = repository.loadClass(NAMES[0]);
+        assertEquals(NAMES[0], string.getClassName());
+        assertTrue(string.getMethods().length > 0);
+
+        repository.clear();
+        assertEquals(0, arena.getAllocated());
+    }
+
+
+    public void testCodeOfColdClass() throws Exception {
+        TieredRepository repository = new TieredRepository(ClassPath.SYSTEM_CLASS_PATH);
+        assertTrue(repository.getArena().isDirect());
+        JavaClass string = repository.loadClass(NAMES[0]);
+        for (Method m : string.getMethods()) {
+            Code code = m.getCode();
+            CodeView view = repository.getArena().getCode(NAMES[0], m.getName(), m.getSignature());
+            if (code == null) {
+                assertNull(view);
+                continue;
+            }
+            assertEquals(code.getMaxStack(), view.getMaxStack());
+            assertEquals(code.getMaxLocals(), view.getMaxLocals());
+            assertTrue(Arrays.equals(code.getCode(), view.toByteArray()));
+        }
+    }
+
+
+    public void testStoredClassesSurviveEviction() throws Exception {
+        TieredRepository repository = new TieredRepository(ClassPath.SYSTEM_CLASS_PATH, 1, true);
+        JavaClass generated = new ClassGen("Generated", "java.lang.Object", "Generated.java", 0, null)
+                .getJavaClass();
+        repository.storeClass(generated);
+        assertSame(generated, repository.loadClass("Generated"));
+        repository.loadClass(NAMES[0]);
+        JavaClass again = repository.loadClass("Generated");
+        assertNotSame(generated, again);
+        assertEquals("Generated", again.getClassName());
+
+        repository.removeClass(again);
+        assertNull(repository.findClass("Generated"));
+        try {
+            repository.loadClass("Generated");
+            fail("removed class found");
+        } catch (ClassNotFoundException e) {
+            // expected
+        }
+    }
+}
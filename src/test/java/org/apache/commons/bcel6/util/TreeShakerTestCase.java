@@ -0,0 +1,211 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.commons.bcel6.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.bcel6.classfile.JavaClass;
+import org.apache.commons.bcel6.classfile.Method;
+
+public class TreeShakerTestCase extends TestCase {
+
+    private static final String PREFIX = TreeShakerTestCase.class.getName() + "$";
+
+    private static final String[] CLASSES = { "Shape", "Square", "Circle", "Unused", "Reflected", "Main" };
+
+    private final Repository repository = SyntheticRepository.getInstance(
+            new ClassPath("target" + File.separator + "test-classes"));
+
+    public interface Shape {
+
+        double area();
+    }
+
+    public static class Square implements Shape {
+
+        private final double side;
+
+
+        public Square(double side) {
+            this.side = side;
+        }
+
+
+        @Override
+        public double area() {
+            return side * side;
+        }
+
+
+        @Override
+        public String toString() {
+            return "square";
+        }
+
+
+        public double perimeter() {
+            return 4 * side;
+        }
+    }
+
+    public static class Circle implements Shape {
+
+        @Override
+        public double area() {
+            return 3;
+        }
+    }
+
+    public static class Unused {
+
+        public static void run() {
+        }
+    }
+
+    public static class Reflected {
+
+        public int value;
+
+
+        public void call() {
+        }
+    }
+
+    public static class Main {
+
+        public static double result;
+        public static int unused;
+
+
+        public static void main( String[] args ) {
+            Shape shape = new Square(3);
+            result = shape.area();
+        }
+
+
+        static void helper() {
+            Unused.run();
+        }
+    }
+
+
+    private List<String> classNames() {
+        List<String> names = new ArrayList<>();
+        for (String name : CLASSES) {
+            names.add(PREFIX + name);
+        }
+        return names;
+    }
+
+
+    private TreeShaker analyze() throws Exception {
+        TreeShaker shaker = new TreeShaker(repository);
+        shaker.addEntryPoint(PREFIX + "Main", "main", null);
+        shaker.addKeepRule(".*[$]Reflected");
+        shaker.analyze(classNames());
+        return shaker;
+    }
+
+
+    public void testReachability() throws Exception {
+        TreeShaker shaker = analyze();
+        assertEquals(Arrays.asList(PREFIX + "Main", PREFIX + "Reflected", PREFIX + "Shape", PREFIX + "Square"),
+                Arrays.asList(shaker.getReachableClassNames()));
+        assertTrue(shaker.isReachable(PREFIX + "Main", "main", "([Ljava/lang/String;)V"));
+        assertFalse(shaker.isReachable(PREFIX + "Main", "helper", "()V"));
+        assertTrue(shaker.isReachable(PREFIX + "Shape", "area", "()D"));
+        assertTrue(shaker.isReachable(PREFIX + "Square", "area", "()D"));
+        assertTrue(shaker.isReachable(PREFIX + "Square", "toString", "()Ljava/lang/String;")); // Object
+        assertFalse(shaker.isReachable(PREFIX + "Square", "perimeter", "()D"));
+        assertFalse(shaker.isReachable(PREFIX + "Circle", "area", "()D"));
+        assertTrue(shaker.isReachable(PREFIX + "Reflected", "call", "()V"));
+        assertTrue(shaker.isFieldReachable(PREFIX + "Reflected", "value", "I"));
+        assertTrue(shaker.isFieldReachable(PREFIX + "Main", "result", "D"));
+        assertTrue(shaker.isFieldReachable(PREFIX + "Square", "side", "D"));
+        assertFalse(shaker.isFieldReachable(PREFIX + "Main", "unused", "I"));
+    }
+
+
+    public void testShakeClass() throws Exception {
+        TreeShaker shaker = analyze();
+        JavaClass main = repository.loadClass(PREFIX + "Main");
+        JavaClass shaken = shaker.shake(main);
+        assertEquals(1, shaken.getFields().length);
+        for (Method m : shaken.getMethods()) {
+            assertFalse(m.getName().equals("helper"));
+        }
+        assertTrue(shaken.getConstantPool().getLength() < main.getConstantPool().getLength());
+        JavaClass reflected = repository.loadClass(PREFIX + "Reflected");
+        assertSame(reflected, shaker.shake(reflected));
+        assertNull(shaker.shake(repository.loadClass(PREFIX + "Unused")));
+    }
+
+
+    public void testShakeJar() throws Exception {
+        File in = new File("target" + File.separator + "treeshaker-in.jar");
+        File out = new File("target" + File.separator + "treeshaker-out.jar");
+        try (ZipOutputStream zout = new ZipOutputStream(new FileOutputStream(in))) {
+            zout.putNextEntry(new ZipEntry("README"));
+            zout.write("resource".getBytes("US-ASCII"));
+            zout.closeEntry();
+            for (String name : classNames()) {
+                String file = name.replace('.', '/') + ".class";
+                zout.putNextEntry(new ZipEntry(file));
+                try (FileInputStream fin = new FileInputStream("target/test-classes/" + file)) {
+                    byte[] buffer = new byte[4096];
+                    int n;
+                    while ((n = fin.read(buffer)) > 0) {
+                        zout.write(buffer, 0, n);
+                    }
+                }
+                zout.closeEntry();
+            }
+        }
+        assertEquals(classNames(), TreeShaker.getClassNames(in));
+        TreeShaker shaker = new TreeShaker(repository);
+        shaker.addEntryPoint(PREFIX + "Main", "main", null);
+        shaker.analyze(TreeShaker.getClassNames(in));
+        shaker.shake(in, out);
+
+        assertEquals(Arrays.asList(PREFIX + "Shape", PREFIX + "Square", PREFIX + "Main"),
+                TreeShaker.getClassNames(out));
+        try (URLClassLoader loader = new URLClassLoader(new URL[] { out.toURI().toURL() }, null)) {
+            assertNotNull(loader.getResource("README"));
+            Class<?> main = loader.loadClass(PREFIX + "Main");
+            main.getMethod("main", String[].class).invoke(null, (Object) new String[0]);
+            assertEquals(9.0, main.getField("result").getDouble(null), 0);
+            try {
+                main.getDeclaredMethod("helper");
+                fail("helper() should have been removed");
+            } catch (NoSuchMethodException e) {
+                // expected
+            }
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.apache.commons.bcel6.verifier;
+
+import junit.framework.TestCase;
+
+public class BoundedVerifierFactoryTestCase extends TestCase {
+
+    private static final String CLASS_NAME = AbstractVerifierTestCase.TEST_PACKAGE + "TestLegalInvokeVirtual01";
+
+    public void testReuse() {
+        BoundedVerifierFactory factory = new BoundedVerifierFactory(Long.MAX_VALUE);
+        Verifier verifier = factory.getVerifier(CLASS_NAME);
+        assertSame(verifier, factory.getVerifier(CLASS_NAME));
+        assertNotSame(verifier, VerifierFactory.getVerifier(CLASS_NAME));
+        assertEquals(1, factory.getMisses());
+        assertEquals(1, factory.getHits());
+        assertTrue(factory.getWeight() > 1);
+    }
+
+    public void testReferencedClassesUseSameFactory() {
+        BoundedVerifierFactory factory = new BoundedVerifierFactory(Long.MAX_VALUE);
+        Verifier verifier = factory.getVerifier(CLASS_NAME);
+        assertEquals(VerificationResult.VERIFIED_OK, verifier.doPass2().getStatus());
+        assertEquals(VerificationResult.VERIFIED_OK, verifier.doPass3b(0).getStatus());
+        // The superclass java.lang.Object has been verified through the factory
+        assertTrue(factory.size() > 1);
+        assertEquals(factory.size(), factory.getVerifiers().length);
+    }
+
+    public void testEviction() {
+        BoundedVerifierFactory factory = new BoundedVerifierFactory(20);
+        String[] names = { CLASS_NAME, "java.lang.Object", "java.lang.String", "java.util.ArrayList" };
+        for (String name : names) {
+            factory.getVerifier(name);
+            assertTrue(factory.size() == 1 || factory.getWeight() <= factory.getMaxWeight());
+        }
+        assertTrue(factory.getEvictions() > 0);
+        assertEquals(names.length, factory.getMisses());
+        // The most recent one is always kept
+        factory.getVerifier(names[names.length - 1]);
+        assertEquals(1, factory.getHits());
+    }
+
+    public void testLeastRecentlyUsedIsEvicted() {
+        // Missing classes weigh 1 each
+        BoundedVerifierFactory factory = new BoundedVerifierFactory(3);
+        Verifier first = factory.getVerifier("missing.First");
+        factory.getVerifier("missing.Second");
+        Verifier third = factory.getVerifier("missing.Third");
+        assertSame(first, factory.getVerifier("missing.First"));
+        Verifier fourth = factory.getVerifier("missing.Fourth");
+        assertEquals(1, factory.getEvictions());
+        assertEquals(3, factory.size());
+        assertSame(first, factory.getVerifier("missing.First"));
+        assertSame(third, factory.getVerifier("missing.Third"));
+        assertSame(fourth, factory.getVerifier("missing.Fourth"));
+        assertEquals(4, factory.getMisses());
+    }
+
+    public void testFlushAndClose() {
+        BoundedVerifierFactory factory = new BoundedVerifierFactory(Long.MAX_VALUE);
+        Verifier verifier = factory.getVerifier(CLASS_NAME);
+        factory.flush();
+        assertEquals(0, factory.size());
+        assertEquals(0, factory.getWeight());
+        assertNotSame(verifier, factory.getVerifier(CLASS_NAME));
+        factory.close();
+        assertEquals(0, factory.size());
+        try {
+            factory.getVerifier(CLASS_NAME);
+            fail("Closed factory must not hand out verifiers");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.apache.commons.bcel6.verifier;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.bcel6.Repository;
+import org.apache.commons.bcel6.generic.InstructionFactory;
+
+public class VerificationBudgetTestCase extends TestCase {
+
+    private static final String CLASS_NAME = InstructionFactory.class.getName();
+
+    private static Verifier getVerifier(VerificationBudget budget) {
+        BoundedVerifierFactory factory = new BoundedVerifierFactory(Long.MAX_VALUE);
+        factory.setVerificationBudget(budget);
+        return factory.getVerifier(CLASS_NAME);
+    }
+
+    private static int getMethodCount() throws ClassNotFoundException {
+        return Repository.lookupClass(CLASS_NAME).getMethods().length;
+    }
+
+    /**
+     * Runs pass 3b on all methods and returns the first limit hit.
+     */
+    private static VerificationBudget.Limit verifyMethods(Verifier verifier) throws ClassNotFoundException {
+        for (int i = 0; i < getMethodCount(); i++) {
+            VerificationResult vr = verifier.doPass3b(i);
+            if (vr.getExceededLimit() != null) {
+                assertEquals(VerificationResult.VERIFIED_REJECTED, vr.getStatus());
+                return vr.getExceededLimit();
+            }
+        }
+        return null;
+    }
+
+    public void testUnlimited() throws Exception {
+        Verifier verifier = getVerifier(new VerificationBudget());
+        assertNull(verifyMethods(verifier));
+        for (int i = 0; i < getMethodCount(); i++) {
+            assertEquals(VerificationResult.VR_OK, verifier.doPass3b(i));
+        }
+    }
+
+    public void testInstructionLimit() throws Exception {
+        VerificationBudget budget = new VerificationBudget();
+        budget.setMethodLimit(VerificationBudget.Limit.INSTRUCTIONS, 5);
+        assertEquals(VerificationBudget.Limit.INSTRUCTIONS, verifyMethods(getVerifier(budget)));
+    }
+
+    public void testMergeLimit() throws Exception {
+        VerificationBudget budget = new VerificationBudget();
+        budget.setClassLimit(VerificationBudget.Limit.MERGES, 0);
+        assertEquals(VerificationBudget.Limit.MERGES, verifyMethods(getVerifier(budget)));
+    }
+
+    public void testLoadLimit() {
+        VerificationBudget budget = new VerificationBudget();
+        budget.setClassLimit(VerificationBudget.Limit.LOADS, 0);
+        VerificationResult vr = getVerifier(budget).doPass2();
+        assertEquals(VerificationResult.VERIFIED_REJECTED, vr.getStatus());
+        assertEquals(VerificationBudget.Limit.LOADS, vr.getExceededLimit());
+    }
+
+    public void testTimeLimit() {
+        VerificationBudget budget = new VerificationBudget();
+        budget.setClassLimit(VerificationBudget.Limit.TIME, 0);
+        VerificationResult vr = getVerifier(budget).doPass2();
+        assertEquals(VerificationBudget.Limit.TIME, vr.getExceededLimit());
+    }
+
+    public void testTimeLimitWithoutMeteredWork() {
+        VerificationBudget budget = new VerificationBudget();
+        budget.setClassLimit(VerificationBudget.Limit.TIME, 0);
+        VerificationResult vr = getVerifier(budget).doPass1();
+        assertEquals(VerificationBudget.Limit.TIME, vr.getExceededLimit());
+    }
+
+    public void testTimeBetweenPassesIsNotCounted() throws Exception {
+        VerificationBudget budget = new VerificationBudget();
+        budget.setClassLimit(VerificationBudget.Limit.TIME, 1000);
+        Verifier verifier = getVerifier(budget);
+        assertEquals(VerificationResult.VR_OK, verifier.doPass2());
+        Thread.sleep(1200);
+        VerificationResult vr = verifier.doPass3a(0);
+        assertNull(vr.getExceededLimit());
+        assertEquals(VerificationResult.VR_OK, vr);
+    }
+
+    public void testCompleteResultsAreCached() throws Exception {
+        BoundedVerifierFactory factory = new BoundedVerifierFactory(Long.MAX_VALUE);
+        VerificationCache cache = new VerificationCache();
+        factory.setVerificationCache(cache);
+        factory.setVerificationBudget(new VerificationBudget());
+        Verifier verifier = factory.getVerifier(CLASS_NAME);
+        assertEquals(VerificationResult.VR_OK, verifier.doPass3b(0));
+        assertTrue(cache.getMisses() > 0);
+        assertEquals(0, cache.getHits());
+
+        verifier.flush();
+        assertEquals(VerificationResult.VR_OK, verifier.doPass3b(0));
+        assertEquals(1, cache.getHits());
+    }
+
+    public void testCutOffResultsAreNotCached() throws Exception {
+        BoundedVerifierFactory factory = new BoundedVerifierFactory(Long.MAX_VALUE);
+        VerificationCache cache = new VerificationCache();
+        factory.setVerificationCache(cache);
+        VerificationBudget budget = new VerificationBudget();
+        budget.setMethodLimit(VerificationBudget.Limit.INSTRUCTIONS, 5);
+        factory.setVerificationBudget(budget);
+        Verifier verifier = factory.getVerifier(CLASS_NAME);
+        int method = -1;
+        for (int i = 0; i < getMethodCount() && method < 0; i++) {
+            if (verifier.doPass3b(i).getExceededLimit() != null) {
+                method = i;
+            }
+        }
+        assertTrue(method >= 0);
+        long misses = cache.getMisses();
+        assertTrue(misses > 0);
+
+        factory.setVerificationBudget(null);
+        verifier.flush();
+        assertEquals(VerificationResult.VR_OK, verifier.doPass3b(method));
+        assertTrue(cache.getMisses() > misses);
+    }
+
+    public void testFailFast() throws Exception {
+        VerificationBudget budget = new VerificationBudget();
+        budget.setMethodLimit(VerificationBudget.Limit.INSTRUCTIONS, 5);
+        budget.setFailFast(true);
+        Verifier verifier = getVerifier(budget);
+        int first = -1;
+        for (int i = 0; i < getMethodCount(); i++) {
+            VerificationResult vr = verifier.doPass3b(i);
+            if (first >= 0) {
+                assertEquals("method " + i, VerificationResult.VR_NOTYET, vr);
+            } else if (vr.getStatus() == VerificationResult.VERIFIED_REJECTED) {
+                first = i;
+            }
+        }
+        assertTrue(first >= 0);
+        assertTrue(first < getMethodCount() - 1);
+    }
+}
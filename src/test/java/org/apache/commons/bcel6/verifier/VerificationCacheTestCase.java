@@ -0,0 +1,161 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.apache.commons.bcel6.verifier;
+
+import java.io.File;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.bcel6.Constants;
+import org.apache.commons.bcel6.Repository;
+import org.apache.commons.bcel6.classfile.JavaClass;
+import org.apache.commons.bcel6.generic.ClassGen;
+import org.apache.commons.bcel6.generic.FieldGen;
+import org.apache.commons.bcel6.generic.Type;
+
+public class VerificationCacheTestCase extends TestCase {
+
+    private static final String BASE = "cachetest.Base";
+    private static final String DERIVED = "cachetest.Derived";
+
+    private File directory;
+
+    @Override
+    protected void setUp() throws Exception {
+        directory = File.createTempFile("verification", "cache");
+        assertTrue(directory.delete());
+        Repository.addClass(createClass(BASE, "java.lang.Object", false));
+        Repository.addClass(createClass(DERIVED, BASE, false));
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        VerifierFactory.setVerificationCache(null);
+        VerifierFactory.getVerifier(DERIVED).flush();
+        VerifierFactory.getVerifier(BASE).flush();
+        Repository.removeClass(DERIVED);
+        Repository.removeClass(BASE);
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    private static JavaClass createClass(String name, String superclass, boolean withField) {
+        ClassGen cg = new ClassGen(name, superclass, "<generated>", Constants.ACC_PUBLIC
+                | Constants.ACC_SUPER, null);
+        cg.addEmptyConstructor(Constants.ACC_PUBLIC);
+        if (withField) {
+            cg.addField(new FieldGen(Constants.ACC_PUBLIC, Type.INT, "added", cg.getConstantPool()).getField());
+        }
+        return cg.getJavaClass();
+    }
+
+    private static VerificationResult[] verify() {
+        Verifier verifier = VerifierFactory.getVerifier(DERIVED);
+        verifier.flush();
+        return new VerificationResult[] {
+            verifier.doPass1(), verifier.doPass2(), verifier.doPass3a(0), verifier.doPass3b(0)
+        };
+    }
+
+    public void testReuseAcrossCaches() throws Exception {
+        VerificationCache cache = new VerificationCache(directory);
+        VerifierFactory.setVerificationCache(cache);
+        VerificationResult[] first = verify();
+        for (VerificationResult vr : first) {
+            assertEquals(vr.getMessage(), VerificationResult.VERIFIED_OK, vr.getStatus());
+        }
+        assertEquals(0, cache.getHits());
+        assertTrue(cache.getMisses() >= first.length);
+        cache.flush();
+        assertTrue(directory.list().length > 0);
+
+        // A fresh cache on the same directory serves every pass of the class
+        cache = new VerificationCache(directory);
+        VerifierFactory.setVerificationCache(cache);
+        VerificationResult[] second = verify();
+        for (int i = 0; i < first.length; i++) {
+            assertEquals(first[i], second[i]);
+        }
+        assertEquals(first.length, cache.getHits());
+        assertEquals(0, cache.getInvalidations());
+    }
+
+    public void testEvictedEntriesArePersisted() throws Exception {
+        VerificationCache cache = new VerificationCache(directory, 1);
+        VerifierFactory.setVerificationCache(cache);
+        verify();
+        Verifier base = VerifierFactory.getVerifier(BASE);
+        base.flush();
+        assertEquals(VerificationResult.VR_OK, base.doPass1()); // evicts the entry of DERIVED
+        assertTrue(directory.list().length > 0);
+
+        cache = new VerificationCache(directory, 1);
+        VerifierFactory.setVerificationCache(cache);
+        verify();
+        assertEquals(4, cache.getHits());
+    }
+
+    public void testConcurrentLookupsShareTheEntry() throws Exception {
+        final VerificationCache cache = new VerificationCache();
+        final VerificationCache.Entry[] found = new VerificationCache.Entry[8];
+        Thread[] threads = new Thread[found.length];
+        for (int i = 0; i < threads.length; i++) {
+            final int n = i;
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    found[n] = cache.lookup(DERIVED);
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        VerificationCache.Entry entry = cache.lookup(DERIVED);
+        assertNotNull(entry);
+        for (VerificationCache.Entry e : found) {
+            assertSame(entry, e);
+        }
+    }
+
+    public void testInvalidationByDependency() throws Exception {
+        VerificationCache cache = new VerificationCache();
+        VerifierFactory.setVerificationCache(cache);
+        verify();
+        long misses = cache.getMisses();
+
+        verify();
+        assertEquals(4, cache.getHits());
+        assertEquals(misses, cache.getMisses());
+
+        // Changing the superclass must discard the cached results
+        Repository.addClass(createClass(BASE, "java.lang.Object", true));
+        VerificationResult[] results = verify();
+        assertEquals(VerificationResult.VERIFIED_OK, results[3].getStatus());
+        assertEquals(1, cache.getInvalidations());
+        assertEquals(4, cache.getHits());
+        assertTrue(cache.getMisses() > misses);
+    }
+}
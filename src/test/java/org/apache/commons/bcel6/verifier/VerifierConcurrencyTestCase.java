@@ -0,0 +1,76 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.apache.commons.bcel6.verifier;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.bcel6.Repository;
+import org.apache.commons.bcel6.generic.InstructionFactory;
+
+public class VerifierConcurrencyTestCase extends TestCase {
+
+    private static final String CLASS_NAME = InstructionFactory.class.getName();
+
+    private ExecutorService executor;
+
+    @Override
+    protected void setUp() {
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @Override
+    protected void tearDown() {
+        executor.shutdownNow();
+    }
+
+    public void testParallelMatchesSequential() throws Exception {
+        int methods = Repository.lookupClass(CLASS_NAME).getMethods().length;
+        Verifier sequential = new BoundedVerifierFactory(Long.MAX_VALUE).getVerifier(CLASS_NAME);
+        VerificationResult[] expected = new VerificationResult[methods];
+        for (int i = 0; i < methods; i++) {
+            expected[i] = sequential.doPass3a(i);
+            if (expected[i].getStatus() == VerificationResult.VERIFIED_OK) {
+                expected[i] = sequential.doPass3b(i);
+            }
+        }
+
+        Verifier parallel = new BoundedVerifierFactory(Long.MAX_VALUE).getVerifier(CLASS_NAME);
+        VerificationResult[] actual = parallel.doPass3(executor);
+        assertEquals(methods, actual.length);
+        for (int i = 0; i < methods; i++) {
+            assertEquals("method " + i, expected[i], actual[i]);
+            assertEquals(VerificationResult.VERIFIED_OK, actual[i].getStatus());
+        }
+        assertEquals(sequential.getMessages().length, parallel.getMessages().length);
+
+        // Asking again returns the results of the passes already run
+        VerificationResult[] again = parallel.doPass3(executor);
+        for (int i = 0; i < methods; i++) {
+            assertSame(actual[i], again[i]);
+        }
+    }
+
+    public void testUnknownClass() throws Exception {
+        Verifier verifier = new BoundedVerifierFactory(Long.MAX_VALUE).getVerifier("no.such.Clazz");
+        assertEquals(0, verifier.doPass3(executor).length);
+    }
+}